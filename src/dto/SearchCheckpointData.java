@@ -0,0 +1,84 @@
+package dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of a decomposed neighborhood search at the end of a shake, from which the search is resumed.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SearchCheckpointData {
+    @JsonProperty("numVesselPeriods")
+    public int numVesselPeriods;
+
+    @JsonProperty("numSubblocks")
+    public int numSubblocks;
+
+    @JsonProperty("nextShake")
+    public int nextShake;
+
+    @JsonProperty("elapsedMillis")
+    public long elapsedMillis;
+
+    @JsonProperty("evaluatedSolutions")
+    public int evaluatedSolutions;
+
+    @JsonProperty("cacheHits")
+    public int cacheHits;
+
+    @JsonProperty("cacheMisses")
+    public int cacheMisses;
+
+    @JsonProperty("screenedNeighbors")
+    public int screenedNeighbors;
+
+    @JsonProperty("dominatedNeighbors")
+    public int dominatedNeighbors;
+
+    @JsonProperty("rankCorrelationSum")
+    public double rankCorrelationSum;
+
+    @JsonProperty("rankCorrelationCount")
+    public int rankCorrelationCount;
+
+    // vpIds
+    @JsonProperty("shakingPriority")
+    public List<Integer> shakingPriority;
+
+    // indexed by vpId * numSubblocks + subblockId, NaN if undefined
+    @JsonProperty("shakingCosts")
+    public double[] shakingCosts;
+
+    // vpIds, the oldest first
+    @JsonProperty("tabuPriorities")
+    public List<List<Integer>> tabuPriorities;
+
+    // vpId -> subblockIds
+    @JsonProperty("bestAssignment")
+    public Map<Integer, List<Integer>> bestAssignment;
+
+    @JsonProperty("currentAssignment")
+    public Map<Integer, List<Integer>> currentAssignment;
+
+    @JsonProperty("bestSolution")
+    public SolutionData bestSolution;
+
+    @JsonProperty("currentSolution")
+    public SolutionData currentSolution;
+
+    @JsonProperty("initialSolution")
+    public SolutionData initialSolution;
+
+    // Base64 of the serialized java.util.Random
+    @JsonProperty("random")
+    public String random;
+
+    @JsonProperty("briefLog")
+    public String briefLog;
+
+    public SearchCheckpointData() {
+    }
+}
@@ -0,0 +1,145 @@
+package entity;
+
+import java.util.*;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Costs of assigning subblocks to vessel periods, stored densely in a {@code double[numVesselPeriods * numSubblocks]}
+ * indexed by {@code vpId * numSubblocks + subblockId}.
+ * <p>
+ * A cost may be undefined (e.g. an estimate only covers the subblocks assigned in a solution). The bulk merges only
+ * take the defined costs of the other matrix, and a cost that is undefined in this matrix takes the other cost, as
+ * {@link Map#merge} does for an absent key.
+ */
+public class CostMatrix {
+    private final Instance instance;
+    private final int numSubblocks;
+    private final double[] costs; // NaN if undefined
+
+    /**
+     * A matrix with all costs undefined.
+     */
+    public CostMatrix(Instance instance) {
+        this.instance = instance;
+        this.numSubblocks = instance.getNumSubblocks();
+        this.costs = new double[instance.getNumVesselPeriods() * numSubblocks];
+        Arrays.fill(costs, Double.NaN);
+    }
+
+    public CostMatrix(CostMatrix other) {
+        this.instance = other.instance;
+        this.numSubblocks = other.numSubblocks;
+        this.costs = other.costs.clone();
+    }
+
+    /**
+     * @param costs indexed by {@code vpId * numSubblocks + subblockId}, NaN if undefined
+     */
+    public CostMatrix(Instance instance, double[] costs) {
+        this.instance = instance;
+        this.numSubblocks = instance.getNumSubblocks();
+        if (costs.length != instance.getNumVesselPeriods() * numSubblocks)
+            throw new IllegalArgumentException("Invalid number of costs: " + costs.length);
+        this.costs = costs.clone();
+    }
+
+    /**
+     * @return a copy of the costs, indexed by {@code vpId * numSubblocks + subblockId}
+     */
+    public double[] toArray() {
+        return costs.clone();
+    }
+
+    private int index(VesselPeriod ip, Subblock k) {
+        return ip.getVpId() * numSubblocks + k.getId();
+    }
+
+    /**
+     * @return the cost, or NaN if undefined
+     */
+    public double get(VesselPeriod ip, Subblock k) {
+        return costs[index(ip, k)];
+    }
+
+    public void set(VesselPeriod ip, Subblock k, double cost) {
+        costs[index(ip, k)] = cost;
+    }
+
+    /**
+     * Add the costs of the vessel period to {@code target[offset + subblockId]}; an undefined cost makes the sum NaN.
+     */
+    public void addRowTo(VesselPeriod ip, double[] target, int offset) {
+        int from = ip.getVpId() * numSubblocks;
+        for (int k = 0; k < numSubblocks; k++)
+            target[offset + k] += costs[from + k];
+    }
+
+    public boolean isDefined(VesselPeriod ip, Subblock k) {
+        return !Double.isNaN(costs[index(ip, k)]);
+    }
+
+    /**
+     * @return the sum of the defined costs of the vessel period
+     */
+    public double getSum(VesselPeriod ip) {
+        double sum = 0;
+        for (int i = ip.getVpId() * numSubblocks, end = i + numSubblocks; i < end; i++)
+            if (!Double.isNaN(costs[i]))
+                sum += costs[i];
+        return sum;
+    }
+
+    /**
+     * @return the sum of the vessel period per container it loads, 0 if it loads none
+     */
+    public double getSumPerLoadContainer(VesselPeriod ip) {
+        return ip.totalLoadContainers > 0 ? getSum(ip) / ip.totalLoadContainers : 0;
+    }
+
+    /**
+     * @return the subblocks with a defined cost for the vessel period, by increasing cost
+     */
+    public List<Subblock> getSubblocksByCost(VesselPeriod ip) {
+        int offset = ip.getVpId() * numSubblocks;
+        List<Integer> ids = new ArrayList<>(numSubblocks);
+        for (int k = 0; k < numSubblocks; k++)
+            if (!Double.isNaN(costs[offset + k]))
+                ids.add(k);
+        ids.sort(Comparator.comparingDouble(k -> costs[offset + k]));
+
+        List<Subblock> subblocks = new ArrayList<>(ids.size());
+        for (int k : ids)
+            subblocks.add(instance.getSubblock(k));
+        return subblocks;
+    }
+
+    public void overwrite(CostMatrix other) {
+        merge(other, (current, val) -> val);
+    }
+
+    public void mergeMin(CostMatrix other) {
+        merge(other, Math::min);
+    }
+
+    public void mergeAverage(CostMatrix other) {
+        merge(other, (current, val) -> (val + current) / 2);
+    }
+
+    /**
+     * Move each cost towards the other cost by {@code 1 / weight} of their difference.
+     */
+    public void mergeWeighted(CostMatrix other, double weight) {
+        merge(other, (current, val) -> current + (val - current) / weight);
+    }
+
+    private void merge(CostMatrix other, DoubleBinaryOperator function) {
+        if (other.costs.length != costs.length)
+            throw new IllegalArgumentException("Cost matrices of different instances");
+        for (int i = 0; i < costs.length; i++) {
+            double val = other.costs[i];
+            if (Double.isNaN(val))
+                continue;
+            costs[i] = Double.isNaN(costs[i]) ? val : function.applyAsDouble(costs[i], val);
+        }
+    }
+}
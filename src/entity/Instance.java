@@ -2,12 +2,16 @@ package entity;
 
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import dto.*;
 import util.MyMathMethods;
 
 import java.io.File;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
@@ -531,6 +535,32 @@ public class Instance {
         return data;
     }
 
+    /**
+     * @return the SHA-256 digest in hex of the content of the instance, i.e. of its data without the name, with the
+     * properties and the routing and transshipment infos in a fixed order
+     */
+    public String getFingerprint() {
+        InstanceData data = toData();
+        data.name = null;
+        Set<SubblockRoutingInfo> routingInfos = new TreeSet<>(Comparator
+                .comparingInt((SubblockRoutingInfo info) -> info.vpId)
+                .thenComparingInt(info -> info.subblockId));
+        routingInfos.addAll(data.routingInfos);
+        data.routingInfos = routingInfos;
+        Set<TransshipmentInfo> transshipmentInfos = new TreeSet<>(Comparator
+                .comparingInt((TransshipmentInfo info) -> info.srcVpId)
+                .thenComparingInt(info -> info.dstVpId));
+        transshipmentInfos.addAll(data.transshipmentInfos);
+        data.transshipmentInfos = transshipmentInfos;
+        try {
+            ObjectMapper mapper = JsonMapper.builder().enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY).build();
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(mapper.writeValueAsBytes(data));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     // 从 InstanceData 构造 Instance
     public static Instance fromData(InstanceData data) {
         Instance instance = new Instance();
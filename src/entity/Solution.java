@@ -161,6 +161,20 @@ public class Solution {
         this.setSubBlock(ip, subBlock);
     }
 
+    /**
+     * @return the load schedule of the subblock for the vessel period, or null if not assigned
+     */
+    public Schedule getLoadSchedule(VesselPeriod ip, Subblock subBlock) {
+        return loadSchedules.getOrDefault(ip, Collections.emptyMap()).get(subBlock);
+    }
+
+    /**
+     * @return the unload schedules of the subblock for the vessel period by source vessel period
+     */
+    public Map<VesselPeriod, Schedule> getUnloadSchedules(VesselPeriod ip, Subblock subBlock) {
+        return unloadSchedules.getOrDefault(ip, Collections.emptyMap()).getOrDefault(subBlock, Collections.emptyMap());
+    }
+
     public void addScheduleProgressively(VesselPeriod jq, VesselPeriod ip, Subblock subBlock,
                                          int unloadTime, int loadTime, int number) {
         Map<VesselPeriod, Schedule> unloadSchedule = unloadSchedules.computeIfAbsent(ip, key -> new LinkedHashMap<>())
@@ -369,6 +383,11 @@ public class Solution {
         solution.setRunningTime(data.runningTime);
         solution.setSolverName(data.solverName);
 
+        if (data.turnaroundInfos != null)
+            for (TurnaroundInfo info : data.turnaroundInfos)
+                for (int subblockId : info.subblocks)
+                    solution.setSubBlock(instance.getVesselPeriod(info.vpId), instance.getSubblock(subblockId));
+
         for (ScheduleInfo info : data.scheduleInfos) {
             solution.addScheduleProgressively(
                     instance.getVesselPeriod(info.srcVpId),
@@ -0,0 +1,106 @@
+package entity;
+
+import java.util.*;
+
+/**
+ * A move from a subblock assignment to one of its neighbors, kept instead of a copy of the neighbor assignment.
+ * <p>
+ * A single move replaces the subblock {@code oldSubblock} of {@code vesselPeriod} by {@code newSubblock}.
+ * A batch swap exchanges {@code oldSubblock} and {@code newSubblock} between all the vessel periods assigned to them.
+ * A move is only meaningful for the assignment it is generated from.
+ */
+public class SubblockMove {
+    public final VesselPeriod vesselPeriod; // null for a batch swap
+    public final Subblock oldSubblock;
+    public final Subblock newSubblock;
+
+    private SubblockMove(VesselPeriod vesselPeriod, Subblock oldSubblock, Subblock newSubblock) {
+        this.vesselPeriod = vesselPeriod;
+        this.oldSubblock = Objects.requireNonNull(oldSubblock, "old subblock");
+        this.newSubblock = Objects.requireNonNull(newSubblock, "new subblock");
+    }
+
+    public static SubblockMove single(VesselPeriod ip, Subblock oldSubblock, Subblock newSubblock) {
+        return new SubblockMove(Objects.requireNonNull(ip, "vessel period"), oldSubblock, newSubblock);
+    }
+
+    public static SubblockMove swap(Subblock oldSubblock, Subblock newSubblock) {
+        return new SubblockMove(null, oldSubblock, newSubblock);
+    }
+
+    public boolean isSwap() {
+        return vesselPeriod == null;
+    }
+
+    /**
+     * @return the move that restores the assignment this move is generated from.
+     */
+    public SubblockMove inverse() {
+        return isSwap() ? this : single(vesselPeriod, newSubblock, oldSubblock);
+    }
+
+    /**
+     * @param assignment the assignment the move is generated from
+     * @return the replacement of each vessel period changed by the move
+     */
+    public Map<VesselPeriod, SubblockChange> getChanges(Map<VesselPeriod, ? extends Collection<Subblock>> assignment) {
+        if (!isSwap()) {
+            if (!assignment.get(vesselPeriod).contains(oldSubblock))
+                throw new IllegalArgumentException(this + " does not match the assignment of " + vesselPeriod);
+            return Collections.singletonMap(vesselPeriod, new SubblockChange(oldSubblock, newSubblock));
+        }
+
+        Map<VesselPeriod, SubblockChange> changes = new HashMap<>();
+        for (Map.Entry<VesselPeriod, ? extends Collection<Subblock>> entry : assignment.entrySet()) {
+            boolean hasOld = entry.getValue().contains(oldSubblock);
+            boolean hasNew = entry.getValue().contains(newSubblock);
+            // a vessel period holding both subblocks is not changed by the swap
+            if (hasOld && !hasNew)
+                changes.put(entry.getKey(), new SubblockChange(oldSubblock, newSubblock));
+            else if (hasNew && !hasOld)
+                changes.put(entry.getKey(), new SubblockChange(newSubblock, oldSubblock));
+        }
+        return changes;
+    }
+
+    /**
+     * @param assignment the assignment the move is generated from, which is not modified
+     * @return a deep copy of the assignment with the move applied
+     */
+    public Map<VesselPeriod, Set<Subblock>> applyTo(Map<VesselPeriod, Set<Subblock>> assignment) {
+        Map<VesselPeriod, Set<Subblock>> neighbor = new HashMap<>();
+        assignment.forEach((vp, subblocks) -> neighbor.put(vp, new HashSet<>(subblocks)));
+        getChanges(assignment).forEach((vp, change) -> {
+            Set<Subblock> subblocks = neighbor.get(vp);
+            subblocks.remove(change.oldSubblock);
+            subblocks.add(change.newSubblock);
+        });
+        return neighbor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SubblockMove)) return false;
+        SubblockMove that = (SubblockMove) o;
+        if (isSwap() != that.isSwap()) return false;
+        if (isSwap())
+            return (oldSubblock.equals(that.oldSubblock) && newSubblock.equals(that.newSubblock))
+                    || (oldSubblock.equals(that.newSubblock) && newSubblock.equals(that.oldSubblock));
+        return vesselPeriod.equals(that.vesselPeriod)
+                && oldSubblock.equals(that.oldSubblock) && newSubblock.equals(that.newSubblock);
+    }
+
+    @Override
+    public int hashCode() {
+        // a swap is symmetric in its subblocks
+        return isSwap() ? oldSubblock.hashCode() + newSubblock.hashCode()
+                : Objects.hash(vesselPeriod, oldSubblock, newSubblock);
+    }
+
+    @Override
+    public String toString() {
+        return isSwap() ? "SubblockMove{" + oldSubblock + "<->" + newSubblock + '}'
+                : "SubblockMove{" + vesselPeriod + ": " + oldSubblock + "->" + newSubblock + '}';
+    }
+}
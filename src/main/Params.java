@@ -20,7 +20,22 @@ public class Params {
                     "  seeds       - Random seed range (e.g. 1-5,7,9-11)\n" +
                     "  write       - Enable solution output [true|false] (default: false)\n" +
                     "  timelimit   - Solver time limit in seconds (default: no limit)\n" +
+                    "  evallimit   - Time limit of a subproblem of decomposed search and alns in seconds (default: no limit)\n" +
                     "  threads     - CPU thread count (default: no limit)\n" +
+                    "  workers     - Parallel neighbor evaluators of decomposed search (default: 1)\n" +
+                    "  surrogate   - Neighbors solved per iteration after surrogate screening (default: all)\n" +
+                    "  cutoff      - Abandon neighbors not better than the current solution, leaving them out of the learned costs [true|false] (default: false)\n" +
+                    "  warmstart   - Start neighbors from the current schedule [true|false] (default: false)\n" +
+                    "  batchchanges - Reach neighbors by one LP matrix update [true|false] (default: false)\n" +
+                    "  evaluator   - Subproblem evaluator of decomposed search [cplex|heuristic] (default: cplex)\n" +
+                    "  portfolio   - Parallel shake workers of decomposed search (default: 1)\n" +
+                    "  islands     - Processes running decomposed search with migration (default: 1)\n" +
+                    "  migration   - Seconds between migrations of the islands (default: 60)\n" +
+                    "  checkpoint  - Seconds between checkpoints of decomposed search (default: no checkpoints)\n" +
+                    "  resume      - Checkpoint directory to resume decomposed search from\n" +
+                    "  modelcache  - Directory of the built CPLEX models reused across runs (default: no cache)\n" +
+                    "  bulkbuild   - Add the constraints of the CPLEX model as one LP matrix [true|false] (default: false)\n" +
+                    "  cplexenvs   - CPLEX environments alive at once, reused across the models (default: no limit)\n" +
                     "  parallel    - indicator for parallel testing\n\n" +
                     "Examples:\n" +
                     "  java org.example.Runner solver=sequential small=3 large=2 timelimit=1800\n" +
@@ -30,7 +45,26 @@ public class Params {
     public SolverType solver;
     public boolean write;
     public Integer timeLimit;
+    public Integer evaluationLimit;
     public Integer threads;
+    public Integer workers;
+    public Integer surrogate;
+    public boolean cutoff;
+    public boolean warmStart;
+    public boolean batchChanges;
+    public boolean heuristicEvaluation;
+    public Integer portfolio;
+    public Integer islands;
+    public Integer migration;
+    public Integer checkpoint;
+    public String resume;
+    public String modelCache;
+    public Integer cplexEnvironments;
+    public boolean bulkBuild;
+    // set for the islands started by the first one
+    public Integer island;
+    public String exchange;
+    public String instanceFile;
     public boolean parallel;
     public Integer processes;
 
@@ -109,7 +143,25 @@ public class Params {
                 case "seed", "seeds" -> this.seeds = parseSeeds(value, key);
                 case "write" -> this.write = parseBoolean(value, key);
                 case "timelimit" -> this.timeLimit = parseInt(value, key);
+                case "evallimit" -> this.evaluationLimit = parseInt(value, key);
                 case "threads" -> this.threads = parseInt(value, key);
+                case "workers" -> this.workers = parseInt(value, key);
+                case "surrogate" -> this.surrogate = parseInt(value, key);
+                case "cutoff" -> this.cutoff = parseBoolean(value, key);
+                case "warmstart" -> this.warmStart = parseBoolean(value, key);
+                case "batchchanges" -> this.batchChanges = parseBoolean(value, key);
+                case "evaluator" -> this.heuristicEvaluation = parseEvaluator(value, key);
+                case "portfolio" -> this.portfolio = parseInt(value, key);
+                case "islands" -> this.islands = parseInt(value, key);
+                case "migration" -> this.migration = parseInt(value, key);
+                case "checkpoint" -> this.checkpoint = parseInt(value, key);
+                case "resume" -> this.resume = value;
+                case "modelcache" -> this.modelCache = value;
+                case "bulkbuild" -> this.bulkBuild = parseBoolean(value, key);
+                case "cplexenvs" -> this.cplexEnvironments = parseInt(value, key);
+                case "island" -> this.island = parseInt(value, key);
+                case "exchange" -> this.exchange = value;
+                case "instance" -> this.instanceFile = value;
                 case "processes" -> this.processes = parseInt(value, key);
                 default -> throw new IllegalArgumentException("Unknown parameter: " + key);
             }
@@ -148,8 +200,38 @@ public class Params {
 
         if (this.timeLimit != null)
             checkRange(this.timeLimit, 1, 86400, "timelimit");
+        if (this.evaluationLimit != null)
+            checkRange(this.evaluationLimit, 1, 86400, "evallimit");
         if (this.threads != null)
             checkRange(this.threads, 1, 32, "threads");
+        if (this.workers != null)
+            checkRange(this.workers, 1, 32, "workers");
+        if (this.surrogate != null)
+            checkRange(this.surrogate, 1, 10000, "surrogate");
+        if (this.portfolio != null)
+            checkRange(this.portfolio, 1, 64, "portfolio");
+        if (this.islands != null)
+            checkRange(this.islands, 1, 16, "islands");
+        if (this.migration != null)
+            checkRange(this.migration, 1, 86400, "migration");
+        if (this.cplexEnvironments != null) {
+            checkRange(this.cplexEnvironments, 1, 256, "cplexenvs");
+            checkCplexEnvironments(1);
+        }
+        if (this.island != null) {
+            Objects.requireNonNull(this.islands, "islands");
+            Objects.requireNonNull(this.exchange, "exchange");
+            checkRange(this.island, 0, this.islands - 1, "island");
+        }
+        if (this.checkpoint != null)
+            checkRange(this.checkpoint, 1, 86400, "checkpoint");
+        if ((this.checkpoint != null || this.resume != null)
+                && ((this.portfolio != null && this.portfolio > 1) || (this.islands != null && this.islands > 1)))
+            throw new IllegalArgumentException("Cannot checkpoint or resume a portfolio or island search");
+        // an island runs one searcher, and the options of the CPLEX model are not passed on to the islands
+        if (this.islands != null && this.islands > 1
+                && ((this.portfolio != null && this.portfolio > 1) || this.modelCache != null || this.bulkBuild))
+            throw new IllegalArgumentException("Cannot run a portfolio, or use modelcache or bulkbuild, in an island search");
     }
 
     // 默认值填充方法
@@ -221,6 +303,19 @@ public class Params {
         }
     }
 
+    /**
+     * @return whether the evaluator is the heuristic one rather than CPLEX
+     */
+    private boolean parseEvaluator(String value, String paramName) {
+        if (value.equalsIgnoreCase("cplex")) {
+            return false;
+        } else if (value.equalsIgnoreCase("heuristic")) {
+            return true;
+        } else {
+            throw new IllegalArgumentException("Invalid evaluator for " + paramName + ": " + value);
+        }
+    }
+
     private IntervalSet parseSeeds(String seedsStr, String paramName) {
         IntervalSet seeds = IntervalSet.empty();
         for (String part : seedsStr.split(",")) {
@@ -270,6 +365,30 @@ public class Params {
         }
     }
 
+    /**
+     * @return the CPLEX environments a run may hold at once: one for the other solvers, which release it before
+     * borrowing another; for decomposed search, each searcher of the portfolio holds one, unless it evaluates
+     * heuristically, and borrows one per evaluation worker if there are several evaluating with CPLEX
+     */
+    public int cplexEnvironmentsPerRun() {
+        if (this.solver != SolverType.DECOMPOSED_NEIGHBORHOOD_SEARCH)
+            return 1;
+        if (this.heuristicEvaluation)
+            return 0;
+        int searchers = this.portfolio != null ? this.portfolio : 1;
+        int evaluators = this.workers != null && this.workers > 1 ? this.workers : 0;
+        return searchers * (1 + evaluators);
+    }
+
+    /**
+     * @param runs the runs sharing the CPLEX environments of the process at the same time
+     */
+    public void checkCplexEnvironments(int runs) {
+        if (this.cplexEnvironments != null && this.cplexEnvironments < runs * cplexEnvironmentsPerRun())
+            throw new IllegalArgumentException("Value for cplexenvs below the " + runs * cplexEnvironmentsPerRun() +
+                    " CPLEX environments held at once by " + runs + " run(s): " + this.cplexEnvironments);
+    }
+
     private void checkRange(int value, int min, int max, String name) {
         if (value < min || value > max) {
             throw new IllegalArgumentException("Value for " + name + " out of range [" + min + ", " + max + "]: " + value);
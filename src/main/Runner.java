@@ -6,14 +6,28 @@ import entity.Subblock;
 import entity.VesselPeriod;
 import ilog.concert.IloException;
 import ilog.cplex.IloCplex;
+import solver.AdaptiveLargeNeighborhoodSearch;
+import solver.AsyncSearchListener;
+import solver.ConsoleSearchListener;
 import solver.CplexFixedSubblockModel;
 import solver.CplexOriginalModel;
+import solver.CplexPool;
 import solver.DecomposedNeighborhoodSearch;
+import solver.IslandExchange;
+import solver.ModelCache;
+import solver.SearchCheckpointer;
+import solver.SearchPortfolio;
+import solver.SearchStatistics;
+import util.Deadline;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -27,10 +41,13 @@ public class Runner {
 
     public static Solution solveCplexIntegratedModel(Instance instance, Params params) {
         Solution solution;
-        try (IloCplex cplex = new IloCplex()) {
+        try (CplexPool.Lease lease = CplexPool.shared().acquire()) {
+            IloCplex cplex = lease.cplex();
             cplex.setOut(LOG_STREAM.get());
 
-            CplexOriginalModel model = CplexOriginalModel.buildCompactIntegratedModel(instance, cplex);
+            ModelCache cache = params.modelCache == null ? null : new ModelCache(Path.of(params.modelCache));
+            CplexOriginalModel model = CplexOriginalModel.buildCompactIntegratedModel(instance, cplex, cache,
+                    params.bulkBuild);
 
 //            model.cplex.exportModel("model.lp");
             if (params.timeLimit != null)
@@ -49,7 +66,7 @@ public class Runner {
             solution = model.getSolution();
 
 
-        } catch (IloException e) {
+        } catch (IloException | IOException e) {
             e.printStackTrace(LOG_STREAM.get());
             throw new RuntimeException(e);
         }
@@ -59,17 +76,15 @@ public class Runner {
     public static Solution solveSequentialDecision(Instance instance, Params params) {
         Solution solution;
 
-        long startTime = System.currentTimeMillis();
+        Deadline deadline = Deadline.of(params.timeLimit);
         Map<VesselPeriod, Map<Subblock, Map<VesselPeriod, Integer>>> containerAssignment;
-        try (IloCplex cplex = new IloCplex()) {
+        try (CplexPool.Lease lease = CplexPool.shared().acquire()) {
+            IloCplex cplex = lease.cplex();
             cplex.setOut(LOG_STREAM.get());
 
             CplexOriginalModel model = CplexOriginalModel.buildYardTemplateStorageAllocationModel(instance, cplex);
-            if (params.timeLimit != null) {
-                int timeLimit = params.timeLimit / 2;
-                if (timeLimit == 0) return null;
-                cplex.setParam(IloCplex.IntParam.TimeLimit, timeLimit);
-            }
+            if (params.timeLimit != null)
+                cplex.setParam(IloCplex.Param.TimeLimit, params.timeLimit / 2.);
             if (params.threads != null)
                 cplex.setParam(IloCplex.Param.Threads, params.threads);
             cplex.setParam(IloCplex.Param.Emphasis.Memory, true);
@@ -90,14 +105,14 @@ public class Runner {
             throw new RuntimeException(e);
         }
 
-        try (IloCplex cplex = new IloCplex()) {
+        try (CplexPool.Lease lease = CplexPool.shared().acquire()) {
+            IloCplex cplex = lease.cplex();
             cplex.setOut(LOG_STREAM.get());
 
             CplexFixedSubblockModel model = new CplexFixedSubblockModel(instance, cplex);
-            if (params.timeLimit != null) {
-                long timeLimit = params.timeLimit - (System.currentTimeMillis() - startTime) / 1000;
-                cplex.setParam(IloCplex.IntParam.TimeLimit, timeLimit);
-            }
+            if (deadline.isExpired())
+                return null;
+            cplex.setParam(IloCplex.Param.TimeLimit, deadline.timeLimit(0));
             if (params.threads != null)
                 cplex.setParam(IloCplex.Param.Threads, params.threads);
             cplex.setParam(IloCplex.Param.Emphasis.Memory, true);
@@ -157,8 +172,186 @@ public class Runner {
     }
 
     public static Solution solveDecomposedSearch(Instance instance, Params params) {
+        if (params.islands != null && params.islands > 1)
+            return solveDecomposedSearchOnIsland(instance, params);
+        if (params.portfolio != null && params.portfolio > 1) {
+            SearchPortfolio portfolio = new SearchPortfolio(instance, params.portfolio, 0,
+                    searcher -> configureDecomposedSearch(instance, params, searcher, params.portfolio));
+            // the statistics and the console output are of the first worker, the only one which logs
+            SearchStatistics statistics = searchWithListeners(portfolio.getFirstSearcher(), portfolio::search);
+
+            LOG_STREAM.get().println(portfolio.searchProcessSummary() + statistics.summary() + portfolio.resultSummary());
+            return portfolio.getBestSolution();
+        }
+
         DecomposedNeighborhoodSearch searcher = new DecomposedNeighborhoodSearch(instance);
-        searcher.setCplexParams(params.timeLimit, params.threads);
+        configureDecomposedSearch(instance, params, searcher, 1);
+        searcher.setSeed(new Random(0));
+
+        SearchStatistics statistics = searchWithListeners(searcher, () -> searchWithCheckpoints(instance, params, searcher));
+        LOG_STREAM.get().println(searcher.searchProcessSummary() + statistics.summary() + searcher.resultSummary());
+        return searcher.getBestSolution();
+
+    }
+
+    /**
+     * Run one island of a multi-process search. The first island writes the instance, starts the other islands as
+     * child processes, and collects their final solutions after its own search.
+     */
+    private static Solution solveDecomposedSearchOnIsland(Instance instance, Params params) {
+        int island = params.island != null ? params.island : 0;
+        List<Process> processes = new ArrayList<>();
+        try {
+            Path exchangeFile;
+            if (island == 0) {
+                Path dir = Files.createDirectories(Path.of("log", "islands_" + LocalDateTime.now().format(dateTimeFormatter)));
+                String instanceFile = dir.resolve("instance.json").toString();
+                instance.writeJson(instanceFile);
+                exchangeFile = dir.resolve("exchange.bin");
+                for (int i = 1; i < params.islands; i++)
+                    processes.add(startIsland(params, i, instanceFile, exchangeFile, dir.resolve("island_" + i + ".log")));
+                LOG_STREAM.get().println("Started " + processes.size() + " islands in " + dir);
+            } else {
+                exchangeFile = Path.of(params.exchange);
+            }
+
+            try (IslandExchange exchange = new IslandExchange(instance, exchangeFile, params.islands, island)) {
+                DecomposedNeighborhoodSearch searcher = new DecomposedNeighborhoodSearch(instance);
+                configureDecomposedSearch(instance, params, searcher, 1);
+                searcher.setSeed(new Random(island));
+                searcher.setIslandExchange(exchange);
+                if (params.migration != null)
+                    searcher.MIGRATION_INTERVAL = params.migration;
+
+                // the migration after the search may still improve the incumbent, so it is listened to as well
+                SearchStatistics statistics = searchWithListeners(searcher, () -> {
+                    searcher.newSearch();
+                    try {
+                        for (Process process : processes)
+                            process.waitFor();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                    // the final solutions of all islands
+                    searcher.migrate();
+                });
+
+                LOG_STREAM.get().println(searcher.searchProcessSummary() + statistics.summary() + searcher.resultSummary());
+                return searcher.getBestSolution();
+            }
+        } catch (IOException e) {
+            e.printStackTrace(LOG_STREAM.get());
+            throw new RuntimeException(e);
+        } finally {
+            for (Process process : processes)
+                if (process.isAlive())
+                    process.destroyForcibly();
+        }
+    }
+
+    private static Process startIsland(Params params, int island, String instanceFile, Path exchangeFile, Path logFile) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        // the JVM options, e.g. java.library.path to load CPLEX and the heap size
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(List.of(
+                "-cp", System.getProperty("java.class.path"),
+                Runner.class.getName(),
+                "solver=decomposed",
+                "instance=" + instanceFile,
+                "exchange=" + exchangeFile,
+                "islands=" + params.islands,
+                "island=" + island));
+        if (params.timeLimit != null)
+            command.add("timelimit=" + params.timeLimit);
+        if (params.threads != null)
+            command.add("threads=" + params.threads);
+        if (params.workers != null)
+            command.add("workers=" + params.workers);
+        if (params.surrogate != null)
+            command.add("surrogate=" + params.surrogate);
+        if (params.cutoff)
+            command.add("cutoff=true");
+        if (params.warmStart)
+            command.add("warmstart=true");
+        if (params.batchChanges)
+            command.add("batchchanges=true");
+        if (params.heuristicEvaluation)
+            command.add("evaluator=heuristic");
+        if (params.evaluationLimit != null)
+            command.add("evallimit=" + params.evaluationLimit);
+        if (params.migration != null)
+            command.add("migration=" + params.migration);
+        if (params.cplexEnvironments != null)
+            command.add("cplexenvs=" + params.cplexEnvironments);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile.toFile())
+                .start();
+    }
+
+    /**
+     * Run a search with the console output of the searcher formatted on a background thread, and collect the
+     * statistics of its search process. The searcher is verbose again afterwards if it was.
+     *
+     * @param search runs the searcher; the events it fires after the run are not delivered
+     */
+    private static SearchStatistics searchWithListeners(DecomposedNeighborhoodSearch searcher, Runnable search) {
+        SearchStatistics statistics = new SearchStatistics();
+        searcher.addListener(statistics);
+        boolean verbose = searcher.verbose;
+        try (AsyncSearchListener console = new AsyncSearchListener(
+                new ConsoleSearchListener(searcher.out, searcher.verboseBriefly), searcher.out)) {
+            if (verbose) {
+                searcher.verbose = false;
+                searcher.addListener(console);
+            }
+            try {
+                search.run();
+            } finally {
+                searcher.verbose = verbose;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Run the search, resumed from the checkpoint directory if given. The checkpoints are written to the resumed
+     * directory, or to a new one under {@code log/} if only checkpointing is enabled.
+     */
+    private static void searchWithCheckpoints(Instance instance, Params params, DecomposedNeighborhoodSearch searcher) {
+        if (params.checkpoint == null && params.resume == null) {
+            searcher.newSearch();
+            return;
+        }
+        try {
+            Path dir;
+            if (params.resume != null) {
+                dir = Path.of(params.resume);
+                searcher.resumeFrom(SearchCheckpointer.load(dir));
+                LOG_STREAM.get().println("Resume from " + dir);
+            } else {
+                dir = Path.of("log", "checkpoint_" + instance.name + "_" + LocalDateTime.now().format(dateTimeFormatter));
+            }
+            if (params.checkpoint != null)
+                searcher.CHECKPOINT_INTERVAL = params.checkpoint;
+            try (SearchCheckpointer checkpointer = new SearchCheckpointer(dir)) {
+                searcher.setCheckpointer(checkpointer);
+                searcher.newSearch();
+            }
+        } catch (IOException e) {
+            e.printStackTrace(LOG_STREAM.get());
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param searchers number of searchers run at the same time, which share the threads
+     */
+    private static void configureDecomposedSearch(Instance instance, Params params, DecomposedNeighborhoodSearch searcher, int searchers) {
+        Integer threads = params.threads != null ? Math.max(params.threads / searchers, 1) : null;
+        searcher.setCplexParams(params.timeLimit, threads);
 
         searcher.SHAKING_TIMES = 10;
         searcher.NEIGHBOR_LIMIT = Math.min(instance.getNumVesselPeriods() * 5 * instance.getNumSubblocks(), 500);
@@ -169,14 +362,21 @@ public class Runner {
         searcher.meetBestAndBreak = true;
         searcher.meetImprovedAndBreak = true;
 
-        searcher.out = LOG_STREAM.get();
-        searcher.setSeed(new Random(0));
-
-        searcher.newSearch();
-
-        LOG_STREAM.get().println(searcher.searchProcessSummary() + searcher.resultSummary());
-        return searcher.getBestSolution();
+        if (params.workers != null) {
+            // the threads are shared by the evaluators
+            searcher.EVALUATION_WORKERS = params.workers;
+            searcher.EVALUATION_THREADS = threads != null ? Math.max(threads / params.workers, 1) : 1;
+        }
+        if (params.surrogate != null)
+            searcher.SURROGATE_TOP_K = params.surrogate;
+        searcher.INCUMBENT_CUTOFF = params.cutoff;
+        searcher.WARM_START = params.warmStart;
+        searcher.BATCHED_CHANGES = params.batchChanges;
+        searcher.HEURISTIC_EVALUATION = params.heuristicEvaluation;
+        if (params.evaluationLimit != null)
+            searcher.EVALUATION_TIME_LIMIT = params.evaluationLimit;
 
+        searcher.out = LOG_STREAM.get();
     }
 
     public static Solution solveDecomposedOldSearch(Instance instance, Params params) {
@@ -245,11 +445,25 @@ public class Runner {
 
         searcher.LOCAL_REFINEMENT = true;
 
-        searcher.newSearch();
+        SearchStatistics statistics = searchWithListeners(searcher, () -> searchWithCheckpoints(instance, params, searcher));
+        LOG_STREAM.get().println(searcher.searchProcessSummary() + statistics.summary() + searcher.resultSummary());
+        return searcher.getBestSolution();
+
+    }
+
+
+    public static Solution solveAdaptiveLargeNeighborhoodSearch(Instance instance, Params params) {
+        AdaptiveLargeNeighborhoodSearch searcher = new AdaptiveLargeNeighborhoodSearch(instance);
+        searcher.setCplexParams(params.timeLimit, params.threads);
+        if (params.evaluationLimit != null)
+            searcher.EVALUATION_TIME_LIMIT = params.evaluationLimit;
+        searcher.setSeed(new Random(0));
+        searcher.out = LOG_STREAM.get();
+
+        searcher.search();
 
         LOG_STREAM.get().println(searcher.searchProcessSummary() + searcher.resultSummary());
         return searcher.getBestSolution();
-
     }
 
 
@@ -266,6 +480,7 @@ public class Runner {
             case DECOMPOSED_OLD_NEIGHBORHOOD_SEARCH -> solveDecomposedOldSearch(instance, params);
             case DECOMPOSED_RANDOM_SEARCH -> solveDecomposedRandomSearch(instance, params);
             case LOCAL_REFINEMENT_SEARCH -> solveLocalRefinementSearch(instance, params);
+            case ADAPTIVE_LARGE_NEIGHBORHOOD_SEARCH -> solveAdaptiveLargeNeighborhoodSearch(instance, params);
         };
 
         if (solution == null)
@@ -273,6 +488,7 @@ public class Runner {
         else {
             LOG_STREAM.get().println("TemporarySolution found: " + solution.briefObjectives());
         }
+        LOG_STREAM.get().print(CplexPool.shared().summary());
         return solution;
     }
 
@@ -292,6 +508,7 @@ public class Runner {
         int maxAffordable = Runtime.getRuntime().availableProcessors() / divisor - 1;
         int expected = params.processes != null ? Math.min(params.processes, maxAffordable) : maxAffordable;
         int threadCount = Math.min(params.configs.size(), expected);
+        params.checkCplexEnvironments(threadCount);
 
         ExecutorService executor = Executors.newFixedThreadPool(threadCount);
         List<Future<?>> futures = new ArrayList<>();
@@ -450,10 +667,15 @@ public class Runner {
 //        timelimit=3600
 //        threads=4
         Params params = Params.parse(args);
-        if (params.parallel)
+        if (params.cplexEnvironments != null)
+            CplexPool.shared().setCapacity(params.cplexEnvironments);
+        if (params.instanceFile != null)
+            solve(params.instanceFile, params);
+        else if (params.parallel)
             parallelRun(params);
         else
             run(params);
+        CplexPool.shared().clear();
     }
 
 
@@ -8,7 +8,8 @@ public enum SolverType {
     DECOMPOSED_NEIGHBORHOOD_SEARCH("decomposedNeighborhoodSearch"),
     DECOMPOSED_OLD_NEIGHBORHOOD_SEARCH("decomposedRecreateCplexNeighborhoodSearch"),
     DECOMPOSED_RANDOM_SEARCH("decomposedRandom"),
-    LOCAL_REFINEMENT_SEARCH("localRefinement");
+    LOCAL_REFINEMENT_SEARCH("localRefinement"),
+    ADAPTIVE_LARGE_NEIGHBORHOOD_SEARCH("adaptiveLargeNeighborhoodSearch");
     private final String name;
 
     SolverType(String name) {
@@ -25,6 +26,7 @@ public enum SolverType {
             case "decomposed_old" -> DECOMPOSED_OLD_NEIGHBORHOOD_SEARCH;
             case "decomposed_random" -> DECOMPOSED_RANDOM_SEARCH;
             case "local_refinement" -> LOCAL_REFINEMENT_SEARCH;
+            case "alns", "adaptive_large_neighborhood_search" -> ADAPTIVE_LARGE_NEIGHBORHOOD_SEARCH;
             default -> throw new IllegalArgumentException("Unknown solver type: " + name);
         };
     }
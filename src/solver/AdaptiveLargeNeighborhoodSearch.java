@@ -0,0 +1,391 @@
+package solver;
+
+import entity.*;
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+import util.Deadline;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Adaptive large neighborhood search over the subblock assignment.
+ * <p>
+ * Each iteration destroys the assignment of some vessel periods, repairs it by
+ * {@link MasterYardTemplateHeuristic#assignNeededSubblocksByPreference(List, Map, Map)} with noisy cost-based
+ * preferences, and evaluates the new assignment with a persistent {@link IndexedCplexFixedSubblockModel}. New
+ * assignments are accepted by simulated annealing. The destroy operator is drawn by roulette wheel, and its weight is
+ * updated at the end of each segment by its score per second spent, so that the operators finding improvements
+ * fastest are favored.
+ */
+public class AdaptiveLargeNeighborhoodSearch {
+    public PrintStream out = System.out;
+    public boolean verbose = true;
+
+    public int MAX_ITERATIONS = Integer.MAX_VALUE;
+    public int MAX_NO_BEST_ITERATIONS = 500;
+    // share of the vessel periods destroyed in an iteration
+    public double DESTROY_RATIO = 0.2;
+    // relative noise on the costs of the destroyed vessel periods when they are repaired
+    public double COST_NOISE = 0.2;
+    // the larger, the more the highest-cost operator sticks to the highest costs
+    public double HIGHEST_COST_DETERMINISM = 3;
+
+    public int SEGMENT_LENGTH = 50;
+    public double REACTION_FACTOR = 0.3;
+    public double MIN_WEIGHT = 0.05;
+    public double SCORE_BEST = 10;
+    public double SCORE_IMPROVED = 4;
+    public double SCORE_ACCEPTED = 1;
+
+    // a solution this much (relatively) worse than the initial one is accepted with probability 1/2 at the start
+    public double START_TEMPERATURE_RATIO = 0.01;
+    public double COOLING_RATE = 0.995;
+
+    public int EVALUATION_CACHE_SIZE = 1000;
+    // Seconds a single repair may be solved for, besides the deadline of the search; 0 for no cap.
+    public double EVALUATION_TIME_LIMIT = 0;
+
+    private static final int MAX_HEURISTIC_RANDOM_ATTEMPTS = 1000;
+    private static final double PRECISION = 1e-8;
+
+    private enum DestroyOperator {
+        RANDOM("random"),
+        HIGHEST_COST("highestCost"),
+        SHARED_ROAD("sharedRoad"),
+        TIME_WINDOW("timeWindow");
+
+        private final String label;
+
+        DestroyOperator(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final DestroyOperator[] OPERATORS = DestroyOperator.values();
+
+    private final Instance instance;
+    private final MasterYardTemplateHeuristic heuristic;
+    private final CostAttribution costAttribution;
+    private Random rand = new Random();
+
+    private Deadline deadline = Deadline.unlimited();
+    private Integer timeLimit;
+    private Integer threads;
+
+    private final double[] weights = new double[OPERATORS.length];
+    // of the current segment
+    private final double[] segmentScores = new double[OPERATORS.length];
+    private final double[] segmentSeconds = new double[OPERATORS.length];
+    private final int[] segmentUses = new int[OPERATORS.length];
+    // of the whole search
+    private final int[] uses = new int[OPERATORS.length];
+    private final int[] bestsFound = new int[OPERATORS.length];
+    private final int[] improvementsFound = new int[OPERATORS.length];
+
+    private IndexedCplexFixedSubblockModel model;
+    private EvaluationCache evaluationCache;
+    private int evaluatedSolutions = 0;
+    private int cacheHits = 0;
+    private int failedRepairs = 0;
+
+    private Solution initialSolution;
+    private Map<VesselPeriod, Set<Subblock>> bestAssignment;
+    private Solution bestSolution;
+    private Map<VesselPeriod, Set<Subblock>> currentAssignment;
+    private Solution currentSolution;
+    private CostMatrix currentEstimate;
+
+    public AdaptiveLargeNeighborhoodSearch(Instance instance) {
+        this.instance = instance;
+        this.heuristic = new MasterYardTemplateHeuristic(instance);
+        this.costAttribution = new CostAttribution(instance);
+        Arrays.fill(weights, 1);
+    }
+
+    public void setSeed(Random seed) {
+        this.rand = seed;
+    }
+
+    public void setCplexParams(Integer timeLimit, Integer threads) {
+        this.timeLimit = timeLimit;
+        this.threads = threads;
+    }
+
+    private boolean hasTimeLeft() {
+        return !deadline.isExpired();
+    }
+
+    public void search() {
+        deadline = Deadline.of(timeLimit);
+        evaluationCache = EVALUATION_CACHE_SIZE > 0 ? new EvaluationCache(instance, EVALUATION_CACHE_SIZE) : null;
+
+        try (CplexPool.Lease lease = CplexPool.shared().acquire()) {
+            IloCplex cplex = lease.cplex();
+            cplex.setOut(null);
+            cplex.setWarning(null);
+            if (threads != null)
+                cplex.setParam(IloCplex.Param.Threads, threads);
+            cplex.setParam(IloCplex.Param.Emphasis.Memory, true);
+
+            // costs learned from the evaluated solutions, which guide the repair
+            CostMatrix costs = heuristic.getDistanceCostsByEqualStorage();
+            List<VesselPeriod> priority = heuristic.getFirstCommeFirstServedPriority();
+
+            for (int attempts = 0; currentSolution == null && attempts <= MAX_HEURISTIC_RANDOM_ATTEMPTS && hasTimeLeft(); attempts++) {
+                if (attempts > 0)
+                    Collections.shuffle(priority, rand);
+                Map<VesselPeriod, Set<Subblock>> assignment = heuristic.assignNeededSubblocksByCost(priority, costs);
+                if (assignment != null) {
+                    currentSolution = evaluate(cplex, assignment);
+                    currentAssignment = assignment;
+                }
+            }
+            if (currentSolution == null) {
+                if (verbose)
+                    out.println("No Initial TemporarySolution Found by Heuristic");
+                return;
+            }
+            initialSolution = bestSolution = currentSolution;
+            bestAssignment = currentAssignment;
+            currentEstimate = estimateCosts(currentSolution);
+            costs.mergeAverage(currentEstimate);
+            if (verbose)
+                out.printf("Initial TemporarySolution by Heuristic: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n",
+                        currentSolution.briefObjectives(), deadline.elapsedSeconds(), evaluatedSolutions);
+
+            double temperature = -START_TEMPERATURE_RATIO * currentSolution.getObjAll() / Math.log(0.5);
+            int noBestIterations = 0;
+            for (int iteration = 1; iteration <= MAX_ITERATIONS && noBestIterations < MAX_NO_BEST_ITERATIONS && hasTimeLeft();
+                 iteration++) {
+                int operator = selectOperator();
+                long operatorStart = System.nanoTime();
+
+                Map<VesselPeriod, Set<Subblock>> candidateAssignment = repair(destroy(OPERATORS[operator]), costs);
+                Solution candidateSolution = null;
+                if (candidateAssignment == null)
+                    failedRepairs++;
+                else
+                    candidateSolution = evaluate(cplex, candidateAssignment);
+
+                segmentSeconds[operator] += (System.nanoTime() - operatorStart) / 1e9;
+                segmentUses[operator]++;
+                uses[operator]++;
+                noBestIterations++;
+
+                if (candidateSolution != null) {
+                    CostMatrix candidateEstimate = estimateCosts(candidateSolution);
+                    costs.mergeAverage(candidateEstimate);
+
+                    double delta = candidateSolution.getObjAll() - currentSolution.getObjAll();
+                    String mark = null;
+                    if (candidateSolution.getObjAll() < bestSolution.getObjAll() - PRECISION) {
+                        bestSolution = candidateSolution;
+                        bestAssignment = candidateAssignment;
+                        segmentScores[operator] += SCORE_BEST;
+                        bestsFound[operator]++;
+                        noBestIterations = 0;
+                        mark = "***";
+                    } else if (delta < -PRECISION) {
+                        segmentScores[operator] += SCORE_IMPROVED;
+                        improvementsFound[operator]++;
+                        mark = "+++";
+                    } else if (delta > PRECISION && rand.nextDouble() < Math.exp(-delta / temperature)) {
+                        segmentScores[operator] += SCORE_ACCEPTED;
+                        mark = "---";
+                    }
+                    if (mark != null) {
+                        currentAssignment = candidateAssignment;
+                        currentSolution = candidateSolution;
+                        currentEstimate = candidateEstimate;
+                        if (verbose && !mark.equals("---"))
+                            out.printf("%d\t%s [%s] Neighbor TemporarySolution: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n",
+                                    iteration, mark, OPERATORS[operator].label, candidateSolution.briefObjectives(),
+                                    deadline.elapsedSeconds(), evaluatedSolutions);
+                    }
+                }
+
+                temperature *= COOLING_RATE;
+                if (iteration % SEGMENT_LENGTH == 0)
+                    updateWeights();
+            }
+        } catch (IloException e) {
+            e.printStackTrace(out);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Solution evaluate(IloCplex cplex, Map<VesselPeriod, Set<Subblock>> assignment) throws IloException {
+        long hash = evaluationCache != null ? evaluationCache.hash(assignment) : 0;
+        Solution solution = evaluationCache != null ? evaluationCache.get(hash) : null;
+        if (solution != null) {
+            cacheHits++;
+            return solution;
+        }
+
+        model = model == null ? IndexedCplexFixedSubblockModel.buildIntegratedSubproblemModel(instance, cplex, assignment)
+                : model.changeSubblockAssignmentTo(assignment);
+        double timeLimit = deadline.limitedTo(EVALUATION_TIME_LIMIT).timeLimit(0);
+        if (timeLimit <= 0)
+            return null;
+        cplex.setParam(IloCplex.Param.TimeLimit, timeLimit);
+        solution = model.solve() ? model.getIntegratedSolution() : null;
+        evaluatedSolutions++;
+        if (evaluationCache != null)
+            evaluationCache.put(hash, solution);
+        return solution;
+    }
+
+    private CostMatrix estimateCosts(Solution solution) {
+        costAttribution.update(solution);
+        return costAttribution.toCostMatrix();
+    }
+
+    private int selectOperator() {
+        double total = 0;
+        for (double weight : weights)
+            total += weight;
+        double r = rand.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0)
+                return i;
+        }
+        return weights.length - 1;
+    }
+
+    private void updateWeights() {
+        double[] rates = new double[OPERATORS.length];
+        double maxRate = 0;
+        for (int i = 0; i < OPERATORS.length; i++) {
+            rates[i] = segmentSeconds[i] > 0 ? segmentScores[i] / segmentSeconds[i] : 0;
+            maxRate = Math.max(maxRate, rates[i]);
+        }
+        for (int i = 0; i < OPERATORS.length; i++) {
+            // the weights of the operators not used in the segment are kept
+            if (segmentUses[i] > 0) {
+                double performance = maxRate > 0 ? rates[i] / maxRate : 0;
+                weights[i] = Math.max((1 - REACTION_FACTOR) * weights[i] + REACTION_FACTOR * performance, MIN_WEIGHT);
+            }
+        }
+        Arrays.fill(segmentScores, 0);
+        Arrays.fill(segmentSeconds, 0);
+        Arrays.fill(segmentUses, 0);
+    }
+
+    private List<VesselPeriod> destroy(DestroyOperator operator) {
+        int size = Math.max(1, (int) Math.round(DESTROY_RATIO * instance.getNumVesselPeriods()));
+        List<VesselPeriod> vesselPeriods = new ArrayList<>(instance.getVesselPeriods());
+        VesselPeriod seed = vesselPeriods.get(rand.nextInt(vesselPeriods.size()));
+
+        switch (operator) {
+            case RANDOM -> {
+                Collections.shuffle(vesselPeriods, rand);
+                return new ArrayList<>(vesselPeriods.subList(0, size));
+            }
+            case HIGHEST_COST -> {
+                // randomized selection by decreasing cost per container
+                vesselPeriods.sort(Comparator.comparingDouble(vp -> -currentEstimate.getSumPerLoadContainer(vp)));
+                List<VesselPeriod> destroyed = new ArrayList<>(size);
+                while (destroyed.size() < size)
+                    destroyed.add(vesselPeriods.remove((int) (Math.pow(rand.nextDouble(), HIGHEST_COST_DETERMINISM) * vesselPeriods.size())));
+                return destroyed;
+            }
+            case SHARED_ROAD -> {
+                List<Integer> seedRoads = new ArrayList<>(getRoads(seed));
+                if (seedRoads.isEmpty())
+                    return List.of(seed);
+                int road = seedRoads.get(rand.nextInt(seedRoads.size()));
+                List<VesselPeriod> sharing = new ArrayList<>();
+                for (VesselPeriod vp : vesselPeriods)
+                    if (vp != seed && getRoads(vp).contains(road))
+                        sharing.add(vp);
+                Collections.shuffle(sharing, rand);
+                List<VesselPeriod> destroyed = new ArrayList<>(size);
+                destroyed.add(seed);
+                destroyed.addAll(sharing.subList(0, Math.min(size - 1, sharing.size())));
+                return destroyed;
+            }
+            case TIME_WINDOW -> {
+                // the vessel periods starting closest to the seed in the cyclic horizon
+                int start = seed.getPeriodInterval().getStart();
+                vesselPeriods.sort(Comparator.comparingInt(vp -> {
+                    int distance = Math.abs(vp.getPeriodInterval().getStart() - start);
+                    return Math.min(distance, instance.horizon - distance);
+                }));
+                return new ArrayList<>(vesselPeriods.subList(0, size));
+            }
+            default -> throw new IllegalStateException("Unknown destroy operator: " + operator);
+        }
+    }
+
+    /**
+     * @return the roads used by the operations of the vessel period in the current assignment
+     */
+    private Set<Integer> getRoads(VesselPeriod ip) {
+        Set<Integer> roads = new HashSet<>();
+        for (Subblock k : currentAssignment.get(ip)) {
+            roads.addAll(instance.getRouteFromSubblock(ip, k));
+            for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
+                roads.addAll(instance.getRouteToSubblock(jq, k));
+        }
+        return roads;
+    }
+
+    /**
+     * @return the current assignment with the destroyed vessel periods assigned again, or {@code null} if the heuristic
+     * fails to assign them
+     */
+    private Map<VesselPeriod, Set<Subblock>> repair(List<VesselPeriod> destroyed, CostMatrix costs) {
+        Map<VesselPeriod, Set<Subblock>> fixed = new HashMap<>(currentAssignment);
+        fixed.keySet().removeAll(destroyed);
+
+        CostMatrix noisyCosts = new CostMatrix(costs);
+        for (VesselPeriod vp : destroyed)
+            for (Subblock k : instance.getSubblocks())
+                if (noisyCosts.isDefined(vp, k))
+                    noisyCosts.set(vp, k, noisyCosts.get(vp, k) * (1 + COST_NOISE * (2 * rand.nextDouble() - 1)));
+
+        List<VesselPeriod> priority = new ArrayList<>(destroyed);
+        Collections.shuffle(priority, rand);
+        return heuristic.assignNeededSubblocksByPreference(priority, heuristic.identifyPreference(noisyCosts), fixed);
+    }
+
+    public Solution getBestSolution() {
+        return bestSolution;
+    }
+
+    public Map<VesselPeriod, Set<Subblock>> getBestAssignment() {
+        return bestAssignment;
+    }
+
+    public String searchProcessSummary() {
+        StringBuilder summary = new StringBuilder("Brief Search Log:\n");
+        for (int i = 0; i < OPERATORS.length; i++)
+            summary.append(String.format("Destroy Operator %s: weight = %.3f, uses = %d, best found = %d, improved = %d%n",
+                    OPERATORS[i].label, weights[i], uses[i], bestsFound[i], improvementsFound[i]));
+        summary.append(String.format("Evaluated solutions = %d, cache hits = %d, failed repairs = %d%n",
+                evaluatedSolutions, cacheHits, failedRepairs));
+        return summary.append("\n").toString();
+    }
+
+    public String resultSummary() {
+        String initial = initialSolution != null ? initialSolution.briefObjectives() : "N/A";
+        String best = bestSolution != null ? bestSolution.briefObjectives() : "N/A";
+        String improvement = "N/A";
+
+        if (initialSolution != null && bestSolution != null) {
+            double improvementValue = initialSolution.getObjAll() == 0 ? 0 :
+                    (initialSolution.getObjAll() - bestSolution.getObjAll()) / initialSolution.getObjAll() * 100;
+            improvement = String.format("%.2f %%", improvementValue);
+        }
+
+        return String.format(
+                "\nSummary:\n" +
+                        "Initial TemporarySolution: %s\n" +
+                        "Best TemporarySolution: %s\n" +
+                        "Improvement: %s\n",
+                initial, best, improvement
+        );
+    }
+}
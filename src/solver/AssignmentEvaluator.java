@@ -0,0 +1,106 @@
+package solver;
+
+import entity.Solution;
+import entity.Subblock;
+import entity.SubblockMove;
+import entity.VesselPeriod;
+import util.Deadline;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The subproblem of a subblock assignment as seen by the searches: the assignment in, its best found solution and the
+ * status of the evaluation out.
+ * <p>
+ * {@link CplexAssignmentEvaluator} solves the subproblem model with CPLEX, {@link HeuristicAssignmentEvaluator}
+ * schedules the operations without CPLEX, e.g. on machines without a CPLEX license. An evaluator is used by one thread
+ * at a time, except for {@link #abort()}. The interface has no solver types: a failure of the solver of an
+ * implementation is thrown as a {@link RuntimeException}.
+ */
+public interface AssignmentEvaluator extends AutoCloseable {
+
+    enum Status {
+        // a solution is found, optimal or not
+        SOLVED,
+        // the subproblem has no solution (for a heuristic evaluator: none could be found)
+        INFEASIBLE,
+        // no solution better than the cutoff is found, see evaluate; the subproblem may also be infeasible
+        CUT_OFF,
+        // the deadline passed, or the evaluation was aborted, before a solution was found
+        NO_SOLUTION
+    }
+
+    /**
+     * @param solution the best solution found, null unless {@link Status#SOLVED}
+     */
+    record Evaluation(Status status, Solution solution) {
+        public static Evaluation solved(Solution solution) {
+            return new Evaluation(Status.SOLVED, solution);
+        }
+
+        public static Evaluation of(Status status) {
+            if (status == Status.SOLVED)
+                throw new IllegalArgumentException("A solved evaluation has a solution");
+            return new Evaluation(status, null);
+        }
+
+        public boolean isCutOff() {
+            return status == Status.CUT_OFF;
+        }
+    }
+
+    interface Factory {
+        AssignmentEvaluator create();
+    }
+
+    /**
+     * Evaluate a subblock assignment, which must not be modified while the evaluator is used, so that the next
+     * evaluations may be reached from it.
+     *
+     * @param deadline the deadline of this evaluation
+     * @param cutoff   the objective to beat, or {@link IndexedCplexFixedSubblockModel#NO_CUTOFF}: the evaluation may
+     *                 be abandoned as {@link Status#CUT_OFF} once no solution below it can be found
+     */
+    Evaluation evaluate(Map<VesselPeriod, Set<Subblock>> assignment, Deadline deadline, double cutoff);
+
+    /**
+     * Evaluate the neighbor reached by a move from a base assignment, without materializing it when the evaluator can
+     * reach it from its previous evaluations.
+     *
+     * @param base      the assignment the move is generated from, which must not be modified afterward
+     * @param warmStart the solution of an assignment close to the neighbor the evaluation may start from, or null
+     */
+    default Evaluation evaluate(Map<VesselPeriod, Set<Subblock>> base, SubblockMove move, Deadline deadline,
+                                double cutoff, Solution warmStart) {
+        return evaluate(move.applyTo(base), deadline, cutoff);
+    }
+
+    /**
+     * Tell the evaluator that the search goes on from a neighbor of a base, so that the next evaluations from the
+     * neighbor may reach it by the move instead of from a new assignment.
+     *
+     * @param next the neighbor, i.e. the move applied to the base, which must not be modified afterward
+     */
+    default void rebase(Map<VesselPeriod, Set<Subblock>> base, SubblockMove move, Map<VesselPeriod, Set<Subblock>> next) {
+    }
+
+    /**
+     * Drop what is kept from the previous evaluations, e.g. to free the memory of a model between two shakes.
+     */
+    default void reset() {
+    }
+
+    /**
+     * Make the running evaluation, if any, and the ones started until {@link #clearAbort()} return as soon as
+     * possible. May be called from another thread.
+     */
+    default void abort() {
+    }
+
+    default void clearAbort() {
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,118 @@
+package solver;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes the events to another listener on a background thread, so that the search does not wait for its formatting
+ * and output. The events are delivered in order.
+ */
+public class AsyncSearchListener implements SearchListener, AutoCloseable {
+    private final SearchListener delegate;
+    // where the delegate writes, and the dropped events are reported
+    private final PrintStream out;
+    private final boolean ownsOut;
+    private final ExecutorService executor;
+
+    public AsyncSearchListener(SearchListener delegate, PrintStream out) {
+        this(delegate, out, false);
+    }
+
+    private AsyncSearchListener(SearchListener delegate, PrintStream out, boolean ownsOut) {
+        this.delegate = delegate;
+        this.out = out;
+        this.ownsOut = ownsOut;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-listener");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * A listener writing the search process to a file in the format of {@link ConsoleSearchListener}.
+     */
+    public static AsyncSearchListener toFile(Path file, boolean briefly) throws IOException {
+        PrintStream out = new PrintStream(new FileOutputStream(file.toFile()), false);
+        return new AsyncSearchListener(new ConsoleSearchListener(out, briefly), out, true);
+    }
+
+    @Override
+    public void shakeStarted(ShakeStarted event) {
+        executor.execute(() -> delegate.shakeStarted(event));
+    }
+
+    @Override
+    public void heuristicAttempt(HeuristicAttempt event) {
+        executor.execute(() -> delegate.heuristicAttempt(event));
+    }
+
+    @Override
+    public void neighborsGenerated(NeighborsGenerated event) {
+        executor.execute(() -> delegate.neighborsGenerated(event));
+    }
+
+    @Override
+    public void neighborEvaluated(NeighborEvaluated event) {
+        executor.execute(() -> delegate.neighborEvaluated(event));
+    }
+
+    @Override
+    public void noFeasibleNeighbor(NoFeasibleNeighbor event) {
+        executor.execute(() -> delegate.noFeasibleNeighbor(event));
+    }
+
+    @Override
+    public void neighborhoodSearchEnded(NeighborhoodSearchEnded event) {
+        executor.execute(() -> delegate.neighborhoodSearchEnded(event));
+    }
+
+    @Override
+    public void refinementStep(RefinementStep event) {
+        executor.execute(() -> delegate.refinementStep(event));
+    }
+
+    @Override
+    public void refinementEnded(RefinementEnded event) {
+        executor.execute(() -> delegate.refinementEnded(event));
+    }
+
+    @Override
+    public void incumbentImproved(IncumbentImproved event) {
+        executor.execute(() -> delegate.incumbentImproved(event));
+    }
+
+    @Override
+    public void shakeAttemptsExhausted(ShakeAttemptsExhausted event) {
+        executor.execute(() -> delegate.shakeAttemptsExhausted(event));
+    }
+
+    @Override
+    public void shakeEnded(ShakeEnded event) {
+        executor.execute(() -> delegate.shakeEnded(event));
+    }
+
+    /**
+     * Deliver the pending events and close the file, if any. The events still pending after a minute, or when the
+     * calling thread is interrupted, are dropped.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                out.println("Search listener did not finish within a minute, " + executor.shutdownNow().size() + " events dropped");
+        } catch (InterruptedException e) {
+            out.println("Search listener interrupted, " + executor.shutdownNow().size() + " events dropped");
+            Thread.currentThread().interrupt();
+        } finally {
+            if (ownsOut)
+                out.close();
+        }
+    }
+}
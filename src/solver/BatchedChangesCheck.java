@@ -0,0 +1,126 @@
+package solver;
+
+import entity.Instance;
+import entity.Subblock;
+import entity.VesselPeriod;
+import ilog.concert.*;
+import ilog.cplex.IloCplex;
+import main.InstanceGenerator;
+
+import java.util.*;
+
+/**
+ * Check that a batched {@link IndexedCplexFixedSubblockModel} brought to random neighbors by its LP matrix updates is
+ * the model built afresh for the assignment it ends at: the bounds and nonzeros of every row of the LP matrix, whose
+ * columns and rows the two models add in the same order, and the objective coefficient of every variable.
+ */
+public class BatchedChangesCheck {
+    private static final double PRECISION = 1e-9;
+
+    /**
+     * @throws IllegalStateException if a modified model differs from the built one
+     */
+    public static void check() throws IloException {
+        for (int seed = 1; seed <= 3; seed++) {
+            Instance instance = InstanceGenerator.generate(8, 2, 2, 6, 4, seed);
+            Map<VesselPeriod, Set<Subblock>> assignment = new MasterYardTemplateHeuristic(instance).assignByFirstComeFirstServed();
+            if (assignment == null)
+                continue;
+
+            Random random = new Random(seed);
+            List<Subblock> subblocks = instance.getSubblocks();
+            try (IloCplex modifiedCplex = new IloCplex(); IloCplex builtCplex = new IloCplex()) {
+                modifiedCplex.setOut(null);
+                builtCplex.setOut(null);
+                IndexedCplexFixedSubblockModel modified = IndexedCplexFixedSubblockModel.buildIntegratedSubproblemModel(
+                        instance, modifiedCplex, assignment, true);
+                for (int neighbor = 0; neighbor < 50; neighbor++) {
+                    // replace a few subblocks at once, as a neighbor of the search does
+                    Map<VesselPeriod, Set<Subblock>> target = new HashMap<>();
+                    modified.getSubblockAssignmentArray().forEach((ip, list) -> target.put(ip, new LinkedHashSet<>(list)));
+                    for (VesselPeriod ip : instance.getVesselPeriods()) {
+                        Set<Subblock> assigned = target.get(ip);
+                        Subblock subblock = subblocks.get(random.nextInt(subblocks.size()));
+                        if (assigned != null && !assigned.isEmpty() && random.nextInt(4) == 0 && !assigned.contains(subblock)) {
+                            assigned.remove(assigned.iterator().next());
+                            assigned.add(subblock);
+                        }
+                    }
+                    modified.changeSubblockAssignmentTo(target);
+                }
+                IndexedCplexFixedSubblockModel built = IndexedCplexFixedSubblockModel.buildIntegratedSubproblemModel(
+                        instance, builtCplex, modified.getSubblockAssignmentArray(), true);
+
+                String difference = differenceOf(modified.getLPMatrix(), built.getLPMatrix());
+                if (difference == null)
+                    difference = differenceOf(modified.objective, built.objective);
+                if (difference != null)
+                    throw new IllegalStateException("Instance seed " + seed + ": the modified model differs from the " +
+                            "built one, " + difference);
+                System.out.println("Instance seed " + seed + ": the modified model is the built one");
+            }
+        }
+    }
+
+    /**
+     * @return the first row whose bounds or nonzeros differ, or null if there is none
+     */
+    private static String differenceOf(IloLPMatrix modified, IloLPMatrix built) throws IloException {
+        if (modified.getNrows() != built.getNrows() || modified.getNcols() != built.getNcols())
+            return "the LP matrices have " + modified.getNrows() + "x" + modified.getNcols() + " instead of " +
+                    built.getNrows() + "x" + built.getNcols() + " coefficients";
+        int rows = modified.getNrows();
+        double[] modifiedLbs = new double[rows], modifiedUbs = new double[rows], builtLbs = new double[rows], builtUbs = new double[rows];
+        int[][] modifiedColumns = new int[rows][], builtColumns = new int[rows][];
+        double[][] modifiedValues = new double[rows][], builtValues = new double[rows][];
+        modified.getRows(0, rows, modifiedLbs, modifiedUbs, modifiedColumns, modifiedValues);
+        built.getRows(0, rows, builtLbs, builtUbs, builtColumns, builtValues);
+        for (int r = 0; r < rows; r++) {
+            String row = "row " + built.getRange(r).getName();
+            if (Math.abs(modifiedLbs[r] - builtLbs[r]) > PRECISION || Math.abs(modifiedUbs[r] - builtUbs[r]) > PRECISION)
+                return row + ": bounds [" + modifiedLbs[r] + ", " + modifiedUbs[r] + "] instead of [" + builtLbs[r] + ", " + builtUbs[r] + "]";
+            Map<Integer, Double> coefficients = nonzeros(modifiedColumns[r], modifiedValues[r]);
+            Map<Integer, Double> builtCoefficients = nonzeros(builtColumns[r], builtValues[r]);
+            if (!coefficients.equals(builtCoefficients))
+                return row + ": nonzeros " + coefficients + " instead of " + builtCoefficients;
+        }
+        return null;
+    }
+
+    private static Map<Integer, Double> nonzeros(int[] columns, double[] values) {
+        Map<Integer, Double> nonzeros = new TreeMap<>();
+        for (int i = 0; i < columns.length; i++)
+            if (Math.abs(values[i]) > PRECISION)
+                nonzeros.merge(columns[i], values[i], Double::sum);
+        return nonzeros;
+    }
+
+    /**
+     * @return the first variable whose objective coefficients differ, matched by name, or null if there is none
+     */
+    private static String differenceOf(IloObjective modified, IloObjective built) throws IloException {
+        Map<String, Double> coefficients = coefficients(modified), builtCoefficients = coefficients(built);
+        Set<String> vars = new TreeSet<>(coefficients.keySet());
+        vars.addAll(builtCoefficients.keySet());
+        for (String var : vars) {
+            double coefficient = coefficients.getOrDefault(var, 0.), builtCoefficient = builtCoefficients.getOrDefault(var, 0.);
+            if (Math.abs(coefficient - builtCoefficient) > PRECISION)
+                return "the objective: coefficient " + coefficient + " of " + var + " instead of " + builtCoefficient;
+        }
+        return null;
+    }
+
+    private static Map<String, Double> coefficients(IloObjective objective) throws IloException {
+        Map<String, Double> coefficients = new HashMap<>();
+        IloLinearNumExprIterator terms = ((IloLinearNumExpr) objective.getExpr()).linearIterator();
+        while (terms.hasNext()) {
+            IloNumVar var = terms.nextNumVar();
+            coefficients.merge(var.getName(), terms.getValue(), Double::sum);
+        }
+        return coefficients;
+    }
+
+    public static void main(String[] args) throws IloException {
+        check();
+    }
+}
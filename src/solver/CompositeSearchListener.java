@@ -0,0 +1,91 @@
+package solver;
+
+import java.util.List;
+
+/**
+ * Passes the events to several listeners in turn.
+ */
+class CompositeSearchListener implements SearchListener {
+    private final SearchListener[] listeners;
+
+    CompositeSearchListener(List<SearchListener> listeners) {
+        this.listeners = listeners.toArray(new SearchListener[0]);
+    }
+
+    /**
+     * @return null if there is no listener, so that no event is created
+     */
+    static SearchListener of(List<SearchListener> listeners) {
+        return switch (listeners.size()) {
+            case 0 -> null;
+            case 1 -> listeners.get(0);
+            default -> new CompositeSearchListener(listeners);
+        };
+    }
+
+    @Override
+    public void shakeStarted(ShakeStarted event) {
+        for (SearchListener listener : listeners)
+            listener.shakeStarted(event);
+    }
+
+    @Override
+    public void heuristicAttempt(HeuristicAttempt event) {
+        for (SearchListener listener : listeners)
+            listener.heuristicAttempt(event);
+    }
+
+    @Override
+    public void neighborsGenerated(NeighborsGenerated event) {
+        for (SearchListener listener : listeners)
+            listener.neighborsGenerated(event);
+    }
+
+    @Override
+    public void neighborEvaluated(NeighborEvaluated event) {
+        for (SearchListener listener : listeners)
+            listener.neighborEvaluated(event);
+    }
+
+    @Override
+    public void noFeasibleNeighbor(NoFeasibleNeighbor event) {
+        for (SearchListener listener : listeners)
+            listener.noFeasibleNeighbor(event);
+    }
+
+    @Override
+    public void neighborhoodSearchEnded(NeighborhoodSearchEnded event) {
+        for (SearchListener listener : listeners)
+            listener.neighborhoodSearchEnded(event);
+    }
+
+    @Override
+    public void refinementStep(RefinementStep event) {
+        for (SearchListener listener : listeners)
+            listener.refinementStep(event);
+    }
+
+    @Override
+    public void refinementEnded(RefinementEnded event) {
+        for (SearchListener listener : listeners)
+            listener.refinementEnded(event);
+    }
+
+    @Override
+    public void incumbentImproved(IncumbentImproved event) {
+        for (SearchListener listener : listeners)
+            listener.incumbentImproved(event);
+    }
+
+    @Override
+    public void shakeAttemptsExhausted(ShakeAttemptsExhausted event) {
+        for (SearchListener listener : listeners)
+            listener.shakeAttemptsExhausted(event);
+    }
+
+    @Override
+    public void shakeEnded(ShakeEnded event) {
+        for (SearchListener listener : listeners)
+            listener.shakeEnded(event);
+    }
+}
@@ -0,0 +1,57 @@
+package solver;
+
+import entity.Instance;
+import entity.VesselPeriod;
+
+/**
+ * The vessel periods which cannot share a subblock: periods of different vessels whose period intervals intersect.
+ * <p>
+ * The neighbors of each vessel period are a bitset over the vpIds, stored as {@code long} words, so that the conflicts
+ * of a vessel period with the holders of a subblock (see {@link SubblockOccupancy}) are checked by a single AND over
+ * {@code numVesselPeriods / 64} words.
+ */
+public class ConflictGraph {
+    private final int numVesselPeriods;
+    private final int words;
+    private final long[] conflicts; // vpId * words + word
+
+    public ConflictGraph(Instance instance) {
+        this.numVesselPeriods = instance.getNumVesselPeriods();
+        this.words = wordsFor(numVesselPeriods);
+        this.conflicts = new long[numVesselPeriods * words];
+        for (VesselPeriod vp1 : instance.getVesselPeriods())
+            for (VesselPeriod vp2 : instance.getVesselPeriods()) {
+                if (vp1.equals(vp2) || instance.getVesselOf(vp1).equals(instance.getVesselOf(vp2)))
+                    continue;
+                if (vp1.getPeriodInterval().isIntersecting(vp2.getPeriodInterval(), instance.horizon))
+                    conflicts[vp1.getVpId() * words + (vp2.getVpId() >>> 6)] |= 1L << vp2.getVpId();
+            }
+    }
+
+    static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    public int getNumVesselPeriods() {
+        return numVesselPeriods;
+    }
+
+    int getWords() {
+        return words;
+    }
+
+    public boolean isConflicting(VesselPeriod ip, VesselPeriod jq) {
+        return (conflicts[ip.getVpId() * words + (jq.getVpId() >>> 6)] & (1L << jq.getVpId())) != 0;
+    }
+
+    /**
+     * @return whether the vessel period conflicts with any vessel period of a bitset over the vpIds
+     */
+    boolean conflictsWithAny(int vpId, long[] bitset, int offset) {
+        int from = vpId * words;
+        for (int w = 0; w < words; w++)
+            if ((conflicts[from + w] & bitset[offset + w]) != 0)
+                return true;
+        return false;
+    }
+}
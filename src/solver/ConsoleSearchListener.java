@@ -0,0 +1,87 @@
+package solver;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the search process in the format read by {@link main.LogParser}.
+ */
+public class ConsoleSearchListener implements SearchListener {
+    private final PrintStream out;
+    private final boolean briefly;
+
+    /**
+     * @param briefly whether the neighbors worse than the current solution are left out
+     */
+    public ConsoleSearchListener(PrintStream out, boolean briefly) {
+        this.out = out;
+        this.briefly = briefly;
+    }
+
+    private static double seconds(long millis) {
+        return millis * 1. / 1000;
+    }
+
+    @Override
+    public void heuristicAttempt(HeuristicAttempt event) {
+        out.printf("Attempt %d: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n", event.attempt(),
+                (event.solution() != null ? "Initial TemporarySolution by Heuristic: " + event.solution().briefObjectives()
+                        : "No Initial TemporarySolution Found by Heuristic"),
+                seconds(event.elapsedMillis()), event.evaluatedSolutions());
+    }
+
+    @Override
+    public void neighborsGenerated(NeighborsGenerated event) {
+        out.println(event.explored() + "  Number of neighbors to be explored: " + event.neighbors());
+    }
+
+    @Override
+    public void neighborEvaluated(NeighborEvaluated event) {
+        if (event.solution() == null || (event.outcome() == Outcome.WORSE && briefly))
+            return;
+        out.printf("%d\t%s Neighbor TemporarySolution: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n",
+                event.explored(), event.outcome().marker, event.solution().briefObjectives(),
+                seconds(event.elapsedMillis()), event.evaluatedSolutions());
+    }
+
+    @Override
+    public void noFeasibleNeighbor(NoFeasibleNeighbor event) {
+        out.println(event.explored() + "\t    " + "No Feasible TemporarySolution in Current TemporarySolution's Neighborhood ("
+                + event.neighbors() + "[<=" + event.neighborLimit() + "]).");
+    }
+
+    @Override
+    public void neighborhoodSearchEnded(NeighborhoodSearchEnded event) {
+        out.println("Neighborhood Search Ends With Best TemporarySolution: " + event.best().briefObjectives());
+        out.printf("\t Improve %f %% from %s\n\n", 100 * (event.initial().getObjAll() - event.best().getObjAll()) / event.initial().getObjAll(),
+                event.initial().briefObjectives());
+    }
+
+    @Override
+    public void refinementStep(RefinementStep event) {
+        out.printf("%s\t+++ Local Refined TemporarySolution: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n",
+                event.step(), event.solution().briefObjectives(), seconds(event.elapsedMillis()), event.evaluatedSolutions());
+    }
+
+    @Override
+    public void refinementEnded(RefinementEnded event) {
+        out.println("Local Refinement Ends With Best TemporarySolution: " + event.best().briefObjectives());
+        out.printf("\t Improve %f %% from current solution(%s)\n\n", 100 * (event.current().getObjAll() - event.refined().getObjAll()) / event.current().getObjAll(),
+                event.current().briefObjectives());
+    }
+
+    @Override
+    public void shakeAttemptsExhausted(ShakeAttemptsExhausted event) {
+        out.println("Reached the maximal shake attempts for new Priority (" + event.attempts() + ")");
+    }
+
+    @Override
+    public void shakeEnded(ShakeEnded event) {
+        out.println("Shake " + event.shake() + " Ends With: " + event.best().briefObjectives());
+        if (event.previousBest() != null)
+            out.printf("\t Improve %f %% from %s\n", 100 * (event.previousBest().getObjAll() - event.best().getObjAll()) / event.previousBest().getObjAll(),
+                    event.previousBest().briefObjectives());
+        out.printf("Elapsed Time = %.2f sec, Evaluated solutions = %d.%n", seconds(event.elapsedMillis()), event.evaluatedSolutions());
+        out.println("-".repeat(100));
+        out.println();
+    }
+}
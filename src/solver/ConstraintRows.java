@@ -0,0 +1,130 @@
+package solver;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloNumVar;
+import ilog.cplex.IloCplex;
+import util.TripletBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The sink of the linear constraints of a model, one row at a time: the terms of a row are added, then the row is
+ * closed by its bounds, e.g. {@code addLe(rhs, name)} for {@code sum of terms <= rhs}.
+ * <p>
+ * {@link Concert} adds each row to the model as a named Concert range. {@link Matrix} collects the rows as CSR arrays
+ * over column indices (see {@link TripletBuilder}) and adds them to an {@link IloLPMatrix} in bulk, without a Concert
+ * expression and range per row nor the formatting of the row names, which are dropped.
+ * <p>
+ * Both give a row in normalized form, the variables on the left and the constants on the right: a big-M row
+ * {@code var <= rhs + M * (1 - ind)} reads {@code var + M * ind <= rhs + M}, also in the named Concert model.
+ */
+abstract class ConstraintRows {
+    private static final double INFINITY = Double.MAX_VALUE;
+
+    abstract void addTerm(double coef, IloNumVar var) throws IloException;
+
+    /**
+     * Close the current row as {@code lb <= sum of terms <= ub}.
+     *
+     * @param name format of the row name with its arguments, or null
+     */
+    abstract void addRow(double lb, double ub, String name, Object... nameArgs) throws IloException;
+
+    void addLe(double rhs, String name, Object... nameArgs) throws IloException {
+        addRow(-INFINITY, rhs, name, nameArgs);
+    }
+
+    void addGe(double rhs, String name, Object... nameArgs) throws IloException {
+        addRow(rhs, INFINITY, name, nameArgs);
+    }
+
+    void addEq(double rhs, String name, Object... nameArgs) throws IloException {
+        addRow(rhs, rhs, name, nameArgs);
+    }
+
+    static class Concert extends ConstraintRows {
+        private final IloCplex cplex;
+        private IloLinearNumExpr expr;
+
+        Concert(IloCplex cplex) {
+            this.cplex = cplex;
+        }
+
+        @Override
+        void addTerm(double coef, IloNumVar var) throws IloException {
+            if (expr == null)
+                expr = cplex.linearNumExpr();
+            expr.addTerm(coef, var);
+        }
+
+        @Override
+        void addRow(double lb, double ub, String name, Object... nameArgs) throws IloException {
+            cplex.addRange(lb, expr == null ? cplex.linearNumExpr() : expr, ub,
+                    name == null ? null : String.format(name, nameArgs));
+            expr = null;
+        }
+    }
+
+    /**
+     * The columns are the variables in the order of their first use, so that, like in the Concert model, a variable of
+     * no constraint is no column. The repeated terms of a row are merged on compression.
+     */
+    static class Matrix extends ConstraintRows {
+        private final IdentityHashMap<IloNumVar, Integer> columns = new IdentityHashMap<>();
+        private final List<IloNumVar> vars = new ArrayList<>();
+        private final TripletBuilder triplets = TripletBuilder.appending(8192);
+
+        private int rows;
+        private double[] lbs = new double[1024];
+        private double[] ubs = new double[1024];
+
+        @Override
+        void addTerm(double coef, IloNumVar var) {
+            int column = columns.computeIfAbsent(var, key -> {
+                vars.add(key);
+                return vars.size() - 1;
+            });
+            triplets.add(rows, column, coef);
+        }
+
+        @Override
+        void addRow(double lb, double ub, String name, Object... nameArgs) {
+            if (rows == lbs.length) {
+                lbs = Arrays.copyOf(lbs, rows * 2);
+                ubs = Arrays.copyOf(ubs, rows * 2);
+            }
+            lbs[rows] = lb;
+            ubs[rows++] = ub;
+        }
+
+        int getNumRows() {
+            return rows;
+        }
+
+        int getNumColumns() {
+            return vars.size();
+        }
+
+        /**
+         * Add the columns and then the rows to a new LP matrix of the model.
+         */
+        IloLPMatrix addTo(IloCplex cplex) throws IloException {
+            IloLPMatrix matrix = cplex.addLPMatrix();
+            matrix.addCols(vars.toArray(new IloNumVar[0]));
+            int[] rowStarts = triplets.compressToCsr(rows);
+            int[][] rowIndices = new int[rows][];
+            double[][] rowValues = new double[rows][];
+            for (int r = 0; r < rows; r++) {
+                rowIndices[r] = triplets.getColIndices(rowStarts[r], rowStarts[r + 1]);
+                rowValues[r] = triplets.getValues(rowStarts[r], rowStarts[r + 1]);
+            }
+            matrix.addRows(Arrays.copyOf(lbs, rows), Arrays.copyOf(ubs, rows), rowIndices, rowValues);
+            return matrix;
+        }
+    }
+}
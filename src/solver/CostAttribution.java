@@ -0,0 +1,315 @@
+package solver;
+
+import entity.*;
+import util.LongIntHashMap;
+
+import java.util.*;
+
+/**
+ * Attribution of the objective of a solution to its (vessel period, subblock) pairs, which is the cost estimate used
+ * by {@link DecomposedNeighborhoodSearch} to rank neighbors and to build assignments.
+ * <p>
+ * The cost of (ip, k) sums
+ * <ul>
+ *     <li>the route cost of the containers unloaded to k for ip;</li>
+ *     <li>the earliness and tardiness costs of each vessel period, shared by its operations in proportion to their
+ *     relative earliness and tardiness;</li>
+ *     <li>the overload of the roads, shared by the operations using an overloaded road at that time step.</li>
+ * </ul>
+ * The contributions are kept per operation and per (ip, k) in primitive arrays. {@link #update(Solution)} diffs the
+ * schedule of the new solution against the last attributed one, and only recomputes the contributions of the changed
+ * operations, of the operations of the vessel periods whose time costs changed, and of the operations using a road
+ * whose flow changed.
+ */
+public class CostAttribution {
+    private final Instance instance;
+    private final int numVesselPeriods, numSubblocks;
+
+    // Operations are kept in slots: a load of (ip, k), or an unload of (ip, k) from jq.
+    private final LongIntHashMap slotOf = new LongIntHashMap(16);
+    private int numSlots = 0;
+    private int[] freeSlots = new int[16];
+    private int numFreeSlots = 0;
+    private int[] slotPair = new int[16]; // ip, k; -1 for a free slot
+    private int[] slotSource = new int[16]; // jq; -1 for a load
+    private int[] slotTime = new int[16];
+    private int[] slotNumber = new int[16];
+    private int[] slotStamp = new int[16];
+    private boolean[] slotChanged = new boolean[16];
+    private double[] slotEarliness = new double[16];
+    private double[] slotTardiness = new double[16];
+    private double[] slotCongestion = new double[16];
+    private int stamp = 0;
+
+    // (ip, k), indexed by vpId * numSubblocks + subblockId
+    private final int[] operations;
+    private final double[] route, earliness, tardiness, loadCongestion, unloadCongestion;
+
+    // vpId
+    private final int[] earlinessWeight, tardinessWeight, vpEarliness, vpTardiness;
+    private final boolean[] dirtyVesselPeriods;
+
+    // road -> t
+    private final int[][] loadFlows, unloadFlows;
+    private final boolean[][] dirtyLoadFlows, dirtyUnloadFlows;
+    private int totalLoadOverload = 0, totalUnloadOverload = 0;
+    private double loadScale = 0, unloadScale = 0;
+
+    public CostAttribution(Instance instance) {
+        this.instance = instance;
+        this.numVesselPeriods = instance.getNumVesselPeriods();
+        this.numSubblocks = instance.getNumSubblocks();
+
+        int numPairs = numVesselPeriods * numSubblocks;
+        operations = new int[numPairs];
+        route = new double[numPairs];
+        earliness = new double[numPairs];
+        tardiness = new double[numPairs];
+        loadCongestion = new double[numPairs];
+        unloadCongestion = new double[numPairs];
+
+        earlinessWeight = new int[numVesselPeriods];
+        tardinessWeight = new int[numVesselPeriods];
+        vpEarliness = new int[numVesselPeriods];
+        vpTardiness = new int[numVesselPeriods];
+        dirtyVesselPeriods = new boolean[numVesselPeriods];
+
+        loadFlows = new int[instance.roads][instance.horizon];
+        unloadFlows = new int[instance.roads][instance.horizon];
+        dirtyLoadFlows = new boolean[instance.roads][instance.horizon];
+        dirtyUnloadFlows = new boolean[instance.roads][instance.horizon];
+    }
+
+    /**
+     * Attribute the costs of the solution, incrementally from the last attributed one.
+     */
+    public void update(Solution solution) {
+        stamp++;
+        solution.forEachLoadSchedule((ip, k, schedule) -> visit(ip, k, null, schedule.time, 0));
+        solution.forEachUnloadSchedule((ip, k, jq, schedule) -> visit(ip, k, jq, schedule.time, schedule.number));
+        for (int slot = 0; slot < numSlots; slot++)
+            if (slotPair[slot] >= 0 && slotStamp[slot] != stamp)
+                release(slot);
+
+        for (VesselPeriod ip : instance.getVesselPeriods()) {
+            int vp = ip.getVpId();
+            if (vpEarliness[vp] != solution.getEarliness(ip) || vpTardiness[vp] != solution.getTardiness(ip)) {
+                vpEarliness[vp] = solution.getEarliness(ip);
+                vpTardiness[vp] = solution.getTardiness(ip);
+                dirtyVesselPeriods[vp] = true;
+            }
+        }
+        loadScale = totalLoadOverload == 0 ? 0 : solution.getLoadOverload() * 1. / totalLoadOverload;
+        unloadScale = totalUnloadOverload == 0 ? 0 : solution.getUnloadOverload() * 1. / totalUnloadOverload;
+
+        for (int slot = 0; slot < numSlots; slot++) {
+            if (slotPair[slot] < 0)
+                continue;
+            VesselPeriod ip = instance.getVesselPeriod(slotPair[slot] / numSubblocks);
+            Subblock k = instance.getSubblock(slotPair[slot] % numSubblocks);
+            VesselPeriod owner = slotSource[slot] < 0 ? ip : instance.getVesselPeriod(slotSource[slot]);
+            if (slotChanged[slot] || dirtyVesselPeriods[owner.getVpId()])
+                attributeTime(slot, owner);
+            if (slotChanged[slot] || usesDirtyRoad(slot, ip, k))
+                attributeCongestion(slot, ip, k);
+            slotChanged[slot] = false;
+        }
+
+        Arrays.fill(dirtyVesselPeriods, false);
+        for (boolean[] dirty : dirtyLoadFlows)
+            Arrays.fill(dirty, false);
+        for (boolean[] dirty : dirtyUnloadFlows)
+            Arrays.fill(dirty, false);
+    }
+
+    public double getCost(VesselPeriod ip, Subblock k) {
+        int pair = ip.getVpId() * numSubblocks + k.getId();
+        return route[pair] + earliness[pair] + tardiness[pair]
+                + loadCongestion[pair] * loadScale * instance.etaCongestion + unloadCongestion[pair] * unloadScale;
+    }
+
+    /**
+     * @return the costs of the (ip, k) pairs operated in the last attributed solution, the others being undefined.
+     */
+    public CostMatrix toCostMatrix() {
+        CostMatrix costs = new CostMatrix(instance);
+        for (int pair = 0; pair < operations.length; pair++)
+            if (operations[pair] > 0) {
+                VesselPeriod ip = instance.getVesselPeriod(pair / numSubblocks);
+                Subblock k = instance.getSubblock(pair % numSubblocks);
+                costs.set(ip, k, getCost(ip, k));
+            }
+        return costs;
+    }
+
+    private void visit(VesselPeriod ip, Subblock k, VesselPeriod jq, int time, int number) {
+        int pair = ip.getVpId() * numSubblocks + k.getId();
+        int source = jq == null ? -1 : jq.getVpId();
+        long key = (long) pair * (numVesselPeriods + 1) + source + 1;
+
+        int slot = slotOf.get(key);
+        if (slot == LongIntHashMap.MISSING) {
+            slot = allocate(pair, source);
+            slotOf.put(key, slot);
+            slotTime[slot] = time;
+            slotNumber[slot] = number;
+            add(slot);
+        } else if (slotTime[slot] != time || slotNumber[slot] != number) {
+            remove(slot);
+            slotTime[slot] = time;
+            slotNumber[slot] = number;
+            add(slot);
+        }
+        slotStamp[slot] = stamp;
+    }
+
+    private void add(int slot) {
+        int pair = slotPair[slot];
+        VesselPeriod ip = instance.getVesselPeriod(pair / numSubblocks);
+        Subblock k = instance.getSubblock(pair % numSubblocks);
+        int t = slotTime[slot];
+        operations[pair]++;
+        slotChanged[slot] = true;
+
+        if (slotSource[slot] < 0) {
+            changeWeights(ip, t, 1);
+            for (int l : instance.getRouteFromSubblock(ip, k))
+                totalLoadOverload += changeFlow(loadFlows, dirtyLoadFlows, l, t, 1, instance.maxLoadFlows);
+        } else {
+            VesselPeriod jq = instance.getVesselPeriod(slotSource[slot]);
+            changeWeights(jq, t, 1);
+            route[pair] += routeCost(ip, k, jq, slotNumber[slot]);
+            for (int l : instance.getRouteToSubblock(jq, k))
+                totalUnloadOverload += changeFlow(unloadFlows, dirtyUnloadFlows, l, t, 1, instance.maxUnloadFlows);
+        }
+    }
+
+    private void remove(int slot) {
+        int pair = slotPair[slot];
+        VesselPeriod ip = instance.getVesselPeriod(pair / numSubblocks);
+        Subblock k = instance.getSubblock(pair % numSubblocks);
+        int t = slotTime[slot];
+        operations[pair]--;
+
+        earliness[pair] -= slotEarliness[slot];
+        tardiness[pair] -= slotTardiness[slot];
+        slotEarliness[slot] = slotTardiness[slot] = 0;
+        if (slotSource[slot] < 0) {
+            loadCongestion[pair] -= slotCongestion[slot];
+            changeWeights(ip, t, -1);
+            for (int l : instance.getRouteFromSubblock(ip, k))
+                totalLoadOverload += changeFlow(loadFlows, dirtyLoadFlows, l, t, -1, instance.maxLoadFlows);
+        } else {
+            unloadCongestion[pair] -= slotCongestion[slot];
+            VesselPeriod jq = instance.getVesselPeriod(slotSource[slot]);
+            changeWeights(jq, t, -1);
+            route[pair] -= routeCost(ip, k, jq, slotNumber[slot]);
+            for (int l : instance.getRouteToSubblock(jq, k))
+                totalUnloadOverload += changeFlow(unloadFlows, dirtyUnloadFlows, l, t, -1, instance.maxUnloadFlows);
+        }
+        slotCongestion[slot] = 0;
+    }
+
+    private double routeCost(VesselPeriod ip, Subblock k, VesselPeriod jq, int number) {
+        return (instance.getDistanceToSubblock(jq, k) + instance.getDistanceFromSubblock(ip, k)) * number * instance.etaRoute;
+    }
+
+    private void changeWeights(VesselPeriod owner, int t, int sign) {
+        earlinessWeight[owner.getVpId()] += sign * instance.getRelativeEarliness(t, owner);
+        tardinessWeight[owner.getVpId()] += sign * instance.getRelativeTardiness(t, owner);
+        dirtyVesselPeriods[owner.getVpId()] = true;
+    }
+
+    /**
+     * @return the change of the overload of the road at t
+     */
+    private static int changeFlow(int[][] flows, boolean[][] dirty, int l, int t, int sign, int expectedFlow) {
+        int over = Math.max(flows[l][t] - expectedFlow, 0);
+        flows[l][t] += sign;
+        dirty[l][t] = true;
+        return Math.max(flows[l][t] - expectedFlow, 0) - over;
+    }
+
+    private void attributeTime(int slot, VesselPeriod owner) {
+        int pair = slotPair[slot];
+        int vp = owner.getVpId();
+        int t = slotTime[slot];
+
+        double newEarliness = earlinessWeight[vp] == 0 ? 0 : owner.getEarlinessCost() * vpEarliness[vp]
+                * instance.getRelativeEarliness(t, owner) / earlinessWeight[vp];
+        double newTardiness = tardinessWeight[vp] == 0 ? 0 : owner.getTardinessCost() * vpTardiness[vp]
+                * instance.getRelativeTardiness(t, owner) / tardinessWeight[vp];
+        earliness[pair] += newEarliness - slotEarliness[slot];
+        tardiness[pair] += newTardiness - slotTardiness[slot];
+        slotEarliness[slot] = newEarliness;
+        slotTardiness[slot] = newTardiness;
+    }
+
+    private boolean usesDirtyRoad(int slot, VesselPeriod ip, Subblock k) {
+        int t = slotTime[slot];
+        if (slotSource[slot] < 0) {
+            for (int l : instance.getRouteFromSubblock(ip, k))
+                if (dirtyLoadFlows[l][t])
+                    return true;
+        } else {
+            for (int l : instance.getRouteToSubblock(instance.getVesselPeriod(slotSource[slot]), k))
+                if (dirtyUnloadFlows[l][t])
+                    return true;
+        }
+        return false;
+    }
+
+    private void attributeCongestion(int slot, VesselPeriod ip, Subblock k) {
+        int pair = slotPair[slot];
+        int t = slotTime[slot];
+        double congestion = 0;
+        if (slotSource[slot] < 0) {
+            for (int l : instance.getRouteFromSubblock(ip, k))
+                congestion += Math.max(loadFlows[l][t] - instance.maxLoadFlows, 0) * 1. / loadFlows[l][t];
+            loadCongestion[pair] += congestion - slotCongestion[slot];
+        } else {
+            for (int l : instance.getRouteToSubblock(instance.getVesselPeriod(slotSource[slot]), k))
+                congestion += Math.max(unloadFlows[l][t] - instance.maxUnloadFlows, 0) * 1. / unloadFlows[l][t];
+            unloadCongestion[pair] += congestion - slotCongestion[slot];
+        }
+        slotCongestion[slot] = congestion;
+    }
+
+    private int allocate(int pair, int source) {
+        int slot;
+        if (numFreeSlots > 0) {
+            slot = freeSlots[--numFreeSlots];
+        } else {
+            if (numSlots == slotPair.length)
+                grow();
+            slot = numSlots++;
+        }
+        slotPair[slot] = pair;
+        slotSource[slot] = source;
+        slotEarliness[slot] = slotTardiness[slot] = slotCongestion[slot] = 0;
+        return slot;
+    }
+
+    private void release(int slot) {
+        remove(slot);
+        int pair = slotPair[slot];
+        slotOf.remove((long) pair * (numVesselPeriods + 1) + slotSource[slot] + 1);
+        slotPair[slot] = -1;
+        if (numFreeSlots == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, 2 * freeSlots.length);
+        freeSlots[numFreeSlots++] = slot;
+    }
+
+    private void grow() {
+        int capacity = 2 * slotPair.length;
+        slotPair = Arrays.copyOf(slotPair, capacity);
+        slotSource = Arrays.copyOf(slotSource, capacity);
+        slotTime = Arrays.copyOf(slotTime, capacity);
+        slotNumber = Arrays.copyOf(slotNumber, capacity);
+        slotStamp = Arrays.copyOf(slotStamp, capacity);
+        slotChanged = Arrays.copyOf(slotChanged, capacity);
+        slotEarliness = Arrays.copyOf(slotEarliness, capacity);
+        slotTardiness = Arrays.copyOf(slotTardiness, capacity);
+        slotCongestion = Arrays.copyOf(slotCongestion, capacity);
+    }
+}
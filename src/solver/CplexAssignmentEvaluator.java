@@ -0,0 +1,194 @@
+package solver;
+
+import entity.Instance;
+import entity.Solution;
+import entity.Subblock;
+import entity.SubblockMove;
+import entity.VesselPeriod;
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+import util.Deadline;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Solves the subproblems with an {@link IndexedCplexFixedSubblockModel}, built for the first assignment evaluated and
+ * afterward only modified: a neighbor is reached by undoing the previous move and applying its own, and another
+ * assignment by {@link IndexedCplexFixedSubblockModel#changeSubblockAssignmentTo}.
+ */
+public class CplexAssignmentEvaluator implements AssignmentEvaluator {
+    private final Instance instance;
+    private final IloCplex cplex;
+    private final CplexPool.Lease lease; // of the CPLEX, if owned
+    private final IloCplex.Aborter aborter = new IloCplex.Aborter();
+    private final MipStartMonitor mipStarts;
+    private final boolean batchedChanges;
+
+    private IndexedCplexFixedSubblockModel model;
+    // the model is at base + applied
+    private Map<VesselPeriod, Set<Subblock>> base;
+    private SubblockMove applied;
+
+    /**
+     * Evaluate in a CPLEX configured and ended by the caller, which may use it for other models after {@link #reset()}.
+     *
+     * @param mipStarts      the monitor counting the warm starts, already attached to the CPLEX, or null
+     * @param batchedChanges whether the model reaches a neighbor by one LP matrix update
+     */
+    public CplexAssignmentEvaluator(Instance instance, IloCplex cplex, MipStartMonitor mipStarts,
+                                    boolean batchedChanges) throws IloException {
+        this(instance, cplex, null, mipStarts, batchedChanges);
+    }
+
+    private CplexAssignmentEvaluator(Instance instance, IloCplex cplex, CplexPool.Lease lease,
+                                     MipStartMonitor mipStarts, boolean batchedChanges) throws IloException {
+        this.instance = instance;
+        this.cplex = cplex;
+        this.lease = lease;
+        this.mipStarts = mipStarts;
+        this.batchedChanges = batchedChanges;
+        cplex.use(aborter);
+    }
+
+    /**
+     * Evaluate in a CPLEX of its own, borrowed from the {@link CplexPool#shared() shared pool} and returned on
+     * {@link #close()}.
+     *
+     * @param threads the CPLEX threads, or null for no limit
+     */
+    public static CplexAssignmentEvaluator create(Instance instance, Integer threads, MipStartMonitor mipStarts,
+                                                  boolean batchedChanges) {
+        CplexPool.Lease lease;
+        try {
+            lease = CplexPool.shared().acquire();
+        } catch (IloException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            IloCplex cplex = lease.cplex();
+            cplex.setOut(null);
+            cplex.setWarning(null);
+            if (mipStarts != null)
+                mipStarts.attach(cplex);
+            if (threads != null)
+                cplex.setParam(IloCplex.Param.Threads, threads);
+            cplex.setParam(IloCplex.Param.Emphasis.Memory, true);
+            return new CplexAssignmentEvaluator(instance, cplex, lease, mipStarts, batchedChanges);
+        } catch (IloException e) {
+            lease.close();
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Evaluation evaluate(Map<VesselPeriod, Set<Subblock>> assignment, Deadline deadline, double cutoff) {
+        try {
+            moveTo(assignment);
+            return solve(deadline, cutoff);
+        } catch (IloException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Evaluation evaluate(Map<VesselPeriod, Set<Subblock>> base, SubblockMove move, Deadline deadline,
+                               double cutoff, Solution warmStart) {
+        try {
+            moveTo(base);
+            model.applyMove(move);
+            applied = move;
+            if (warmStart != null && model.addMipStart(warmStart) && mipStarts != null)
+                mipStarts.started();
+            return solve(deadline, cutoff);
+        } catch (IloException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Bring the model to the assignment, building it if there is none, without the MIP start of a previous evaluation.
+     */
+    private void moveTo(Map<VesselPeriod, Set<Subblock>> assignment) throws IloException {
+        if (model == null)
+            model = IndexedCplexFixedSubblockModel.buildIntegratedSubproblemModel(instance, cplex, assignment, batchedChanges);
+        else if (base != assignment)
+            model.changeSubblockAssignmentTo(assignment);
+        else if (applied != null)
+            model.applyMove(applied.inverse());
+        model.deleteMipStarts();
+        base = assignment;
+        applied = null;
+    }
+
+    private Evaluation solve(Deadline deadline, double cutoff) throws IloException {
+        double timeLimit = deadline.timeLimit(0);
+        if (timeLimit <= 0)
+            return Evaluation.of(Status.NO_SOLUTION);
+        cplex.setParam(IloCplex.Param.TimeLimit, timeLimit);
+        model.setUpperCutoff(cutoff);
+        if (model.solve())
+            return Evaluation.solved(model.getIntegratedSolution());
+        if (model.isCutOff())
+            return Evaluation.of(Status.CUT_OFF);
+        IloCplex.Status status = cplex.getStatus();
+        return Evaluation.of(status == IloCplex.Status.Infeasible || status == IloCplex.Status.InfeasibleOrUnbounded ?
+                Status.INFEASIBLE : Status.NO_SOLUTION);
+    }
+
+    @Override
+    public void rebase(Map<VesselPeriod, Set<Subblock>> base, SubblockMove move, Map<VesselPeriod, Set<Subblock>> next) {
+        // a model elsewhere reaches the next base by changeSubblockAssignmentTo
+        if (model == null || this.base != base)
+            return;
+        if (applied != move) {
+            try {
+                if (applied != null)
+                    model.applyMove(applied.inverse());
+                model.applyMove(move);
+            } catch (IloException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        this.base = next;
+        applied = null;
+    }
+
+    /**
+     * Clear the model from the CPLEX, with its upper cutoff and MIP starts, so that the CPLEX can solve other models.
+     */
+    @Override
+    public void reset() {
+        if (model != null) {
+            try {
+                model.setUpperCutoff(IndexedCplexFixedSubblockModel.NO_CUTOFF);
+                model.deleteMipStarts();
+                cplex.clearModel();
+            } catch (IloException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        model = null;
+        base = null;
+        applied = null;
+    }
+
+    @Override
+    public void abort() {
+        aborter.abort();
+    }
+
+    @Override
+    public void clearAbort() {
+        aborter.clear();
+    }
+
+    @Override
+    public void close() {
+        if (lease != null)
+            lease.close();
+    }
+}
@@ -10,6 +10,12 @@ import util.MyMathMethods;
 import java.util.*;
 
 public class CplexOriginalModel {
+    public static final String COMPACT_INTEGRATED_MODEL = "compact";
+    // the model of bulkbuild, whose rows are unnamed, is cached apart from the named one
+    public static final String BULK_COMPACT_INTEGRATED_MODEL = "compact_bulk";
+    // bump on any change of the variables or constraints, to invalidate the cached models
+    public static final int COMPACT_FORMULATION_VERSION = 1;
+
     public final Instance instance;
     public IloCplex cplex;
 
@@ -38,12 +44,21 @@ public class CplexOriginalModel {
     public IloLinearNumExpr objTime;
     public IloLinearNumExpr objCongestion;
 
+    // names of the created variables, in order, as the variable table of the model cache
+    private final List<String> variableNames = new ArrayList<>();
+    private Iterator<Map.Entry<String, IloNumVar>> importedVariables;
+    private boolean importMismatch;
+
+    // the constraints go through the rows, added one by one to the model or in bulk as an LP matrix
+    private ConstraintRows rows;
+
     private CplexOriginalModel(Instance instance, IloCplex cplex) throws IloException {
         this.instance = instance;
         this.horizon = instance.horizon;
         this.roads = instance.roads;
 
         this.cplex = cplex;
+        this.rows = new ConstraintRows.Concert(cplex);
 
 //        buildOriginalModel();
 //        buildConciseModel();
@@ -81,23 +96,55 @@ public class CplexOriginalModel {
     }
 
     public static CplexOriginalModel buildCompactIntegratedModel(Instance instance, IloCplex cplex) throws IloException {
+        return buildCompactIntegratedModel(instance, cplex, null, false);
+    }
+
+    /**
+     * Import the model from the cache if it holds the current formulation for the instance, otherwise build it and
+     * store it in the cache.
+     *
+     * @param bulk whether to add the constraints as a single LP matrix of unnamed rows, computed as CSR arrays, instead
+     *             of a named Concert range per constraint
+     */
+    public static CplexOriginalModel buildCompactIntegratedModel(Instance instance, IloCplex cplex, ModelCache cache,
+                                                                 boolean bulk) throws IloException {
+        ModelCache.Entry entry = cache == null ? null
+                : cache.entry(bulk ? BULK_COMPACT_INTEGRATED_MODEL : COMPACT_INTEGRATED_MODEL,
+                COMPACT_FORMULATION_VERSION, instance);
+        if (entry != null) {
+            Map<String, IloNumVar> imported = entry.load(cplex);
+            if (imported != null) {
+                CplexOriginalModel model = new CplexOriginalModel(instance, cplex);
+                model.importedVariables = imported.entrySet().iterator();
+                model.initCompactVariables();
+                boolean matched = !model.importMismatch && !model.importedVariables.hasNext();
+                model.importedVariables = null;
+                if (matched) {
+                    // the objective is part of the imported model, only the expressions are rebuilt
+                    model.initObjRoute();
+                    model.initObjTime();
+                    model.initObjCongestion();
+                    return model;
+                }
+                cplex.clearModel();
+            }
+        }
+
         CplexOriginalModel model = new CplexOriginalModel(instance, cplex);
+        ConstraintRows.Matrix matrix = bulk ? new ConstraintRows.Matrix() : null;
+        if (bulk)
+            model.rows = matrix;
 
-        model.initVarX();
-        model.initVarY();
-        model.initVarZ();
-        model.initVarW();
-        model.initVarDeltaU();
-        model.initVarDeltaL();
-        model.initVarEpsilonSigma();
-        model.initVarRho();
-        model.initVarPi();
-        model.initVarRoadFlow();
+        model.initCompactVariables();
 
         model.initYardTemplateConstraints();
         model.initStorageAllocationConstraints();
         model.initBinaryHandlingTimeConstraints();
         model.initCongestionConstraints();
+        if (bulk) {
+            matrix.addTo(cplex);
+            model.rows = new ConstraintRows.Concert(cplex);
+        }
 
         model.initObjRoute();
         model.initObjTime();
@@ -109,6 +156,8 @@ public class CplexOriginalModel {
                 model.objCongestion
         ));
 
+        if (entry != null)
+            entry.save(cplex, model.variableNames);
         return model;
     }
 
@@ -132,6 +181,49 @@ public class CplexOriginalModel {
     }
 
 
+    private void initCompactVariables() throws IloException {
+        initVarX();
+        initVarY();
+        initVarZ();
+        initVarW();
+        initVarDeltaU();
+        initVarDeltaL();
+        initVarEpsilonSigma();
+        initVarRho();
+        initVarPi();
+        initVarRoadFlow();
+    }
+
+    private IloIntVar boolVar(String name) throws IloException {
+        IloIntVar var = importedVariable(name);
+        return var != null ? var : cplex.boolVar(name);
+    }
+
+    private IloIntVar intVar(int lb, int ub, String name) throws IloException {
+        IloIntVar var = importedVariable(name);
+        return var != null ? var : cplex.intVar(lb, ub, name);
+    }
+
+    /**
+     * @return the next variable of the imported model, or null if the model is built, if the variable is used by no
+     * constraint (and so is not in the imported model), or if the variable table does not match
+     */
+    private IloIntVar importedVariable(String name) {
+        variableNames.add(name);
+        if (importedVariables == null || importMismatch)
+            return null;
+        if (!importedVariables.hasNext()) {
+            importMismatch = true;
+            return null;
+        }
+        Map.Entry<String, IloNumVar> next = importedVariables.next();
+        if (!next.getKey().equals(name)) {
+            importMismatch = true;
+            return null;
+        }
+        return (IloIntVar) next.getValue();
+    }
+
     private void initVarX() throws IloException {
         varX = new HashMap<>(instance.getNumVessels());
         for (Vessel vessel : instance.getVessels()) {
@@ -139,7 +231,7 @@ public class CplexOriginalModel {
             for (Subblock k : instance.getSubblocks()) {
                 IloIntVar[] __varX = new IloIntVar[horizon];
                 for (int t = 0; t < horizon; t++) {
-                    __varX[t] = cplex.boolVar(String.format("X_%d_%d_%d", vessel.getVid(), k.getId(), t));
+                    __varX[t] = boolVar(String.format("X_%d_%d_%d", vessel.getVid(), k.getId(), t));
                 }
                 _varX.put(k, __varX);
             }
@@ -152,7 +244,7 @@ public class CplexOriginalModel {
         for (VesselPeriod vesselPeriod : instance.getVesselPeriods()) {
             HashMap<Subblock, IloIntVar> _varY = new HashMap<>(instance.getNumSubblocks());
             for (Subblock k : instance.getSubblocks()) {
-                _varY.put(k, cplex.boolVar(String.format("Y_%d_%d_%d", vesselPeriod.getVid(), vesselPeriod.getPid(), k.getId())));
+                _varY.put(k, boolVar(String.format("Y_%d_%d_%d", vesselPeriod.getVid(), vesselPeriod.getPid(), k.getId())));
             }
             varY.put(vesselPeriod, _varY);
         }
@@ -165,7 +257,7 @@ public class CplexOriginalModel {
             for (VesselPeriod that : instance.getDestinationVesselPeriodsOf(vesselPeriod)) {
                 HashMap<Subblock, IloIntVar> __varZ = new HashMap<>();
                 for (Subblock k : instance.getSubblocks()) {
-                    __varZ.put(k, cplex.boolVar(String.format("Z_%d_%d_%d_%d_%d",
+                    __varZ.put(k, boolVar(String.format("Z_%d_%d_%d_%d_%d",
                             vesselPeriod.getVid(), vesselPeriod.getPid(), k.getId(), that.getVid(), that.getPid())));
                 }
                 _varZ.put(that, __varZ);
@@ -181,7 +273,7 @@ public class CplexOriginalModel {
             for (VesselPeriod that : instance.getDestinationVesselPeriodsOf(vesselPeriod)) {
                 HashMap<Subblock, IloIntVar> __varW = new HashMap<>();
                 for (Subblock k : instance.getSubblocks()) {
-                    __varW.put(k, cplex.intVar(0, instance.spaceCapacity, String.format("W_%d_%d_%d_%d_%d",
+                    __varW.put(k, intVar(0, instance.spaceCapacity, String.format("W_%d_%d_%d_%d_%d",
                             vesselPeriod.getVid(), vesselPeriod.getPid(), k.getId(), that.getVid(), that.getPid())));
                 }
                 _varW.put(that, __varW);
@@ -200,7 +292,7 @@ public class CplexOriginalModel {
                 for (Subblock k : instance.getSubblocks()) {
                     IloIntVar[] ___varDeltaU = new IloIntVar[horizon];
                     for (int t = 0; t < horizon; t++) {
-                        ___varDeltaU[t] = cplex.boolVar(String.format("DeltaU_%d_%d_%d_%d", vessel.getVid(), that.getVid(), k.getId(), t));
+                        ___varDeltaU[t] = boolVar(String.format("DeltaU_%d_%d_%d_%d", vessel.getVid(), that.getVid(), k.getId(), t));
                     }
                     __varDeltaU.put(k, ___varDeltaU);
                 }
@@ -217,7 +309,7 @@ public class CplexOriginalModel {
             for (Subblock k : instance.getSubblocks()) {
                 IloIntVar[] __varDeltaL = new IloIntVar[horizon];
                 for (int t = 0; t < horizon; t++) {
-                    __varDeltaL[t] = cplex.boolVar(String.format("DeltaL_%d_%d_%d", vessel.getVid(), k.getId(), t));
+                    __varDeltaL[t] = boolVar(String.format("DeltaL_%d_%d_%d", vessel.getVid(), k.getId(), t));
                 }
                 _varDeltaL.put(k, __varDeltaL);
             }
@@ -234,12 +326,12 @@ public class CplexOriginalModel {
         varKappa = new HashMap<>();
         for (Vessel v : instance.getVessels())
             for (VesselPeriod ip : v.getPeriods()) {
-                varEpsilonU.put(ip, cplex.intVar(ip.getRelativeFeasibleIntervalStart(), ip.getRelativeFeasibleIntervalEnd() - 1, String.format("EpsilonU_%d_%d", ip.getVid(), ip.getPid())));
-                varEpsilonL.put(ip, cplex.intVar(ip.getRelativeFeasibleIntervalStart(), ip.getRelativeFeasibleIntervalEnd() - 1, String.format("EpsilonL_%d_%d", ip.getVid(), ip.getPid())));
-                varSigmaU.put(ip, cplex.intVar(ip.getRelativeFeasibleIntervalStart(), ip.getRelativeFeasibleIntervalEnd(), String.format("SigmaU_%d_%d", ip.getVid(), ip.getPid())));
-                varSigmaL.put(ip, cplex.intVar(ip.getRelativeFeasibleIntervalStart(), ip.getRelativeFeasibleIntervalEnd(), String.format("SigmaL_%d_%d", ip.getVid(), ip.getPid())));
-                varIota.put(ip, cplex.intVar(0, ip.getRelativeExpectedIntervalStart() - ip.getRelativeFeasibleIntervalStart(), String.format("Iota_%d_%d", ip.getVid(), ip.getPid())));
-                varKappa.put(ip, cplex.intVar(0, ip.getRelativeFeasibleIntervalEnd() - ip.getRelativeExpectedIntervalStart(), String.format("Kappa_%d_%d", ip.getVid(), ip.getPid())));
+                varEpsilonU.put(ip, intVar(ip.getRelativeFeasibleIntervalStart(), ip.getRelativeFeasibleIntervalEnd() - 1, String.format("EpsilonU_%d_%d", ip.getVid(), ip.getPid())));
+                varEpsilonL.put(ip, intVar(ip.getRelativeFeasibleIntervalStart(), ip.getRelativeFeasibleIntervalEnd() - 1, String.format("EpsilonL_%d_%d", ip.getVid(), ip.getPid())));
+                varSigmaU.put(ip, intVar(ip.getRelativeFeasibleIntervalStart(), ip.getRelativeFeasibleIntervalEnd(), String.format("SigmaU_%d_%d", ip.getVid(), ip.getPid())));
+                varSigmaL.put(ip, intVar(ip.getRelativeFeasibleIntervalStart(), ip.getRelativeFeasibleIntervalEnd(), String.format("SigmaL_%d_%d", ip.getVid(), ip.getPid())));
+                varIota.put(ip, intVar(0, ip.getRelativeExpectedIntervalStart() - ip.getRelativeFeasibleIntervalStart(), String.format("Iota_%d_%d", ip.getVid(), ip.getPid())));
+                varKappa.put(ip, intVar(0, ip.getRelativeFeasibleIntervalEnd() - ip.getRelativeExpectedIntervalStart(), String.format("Kappa_%d_%d", ip.getVid(), ip.getPid())));
             }
     }
 
@@ -248,7 +340,7 @@ public class CplexOriginalModel {
         for (Subblock k : instance.getSubblocks()) {
             IloIntVar[] _varRho = new IloIntVar[horizon];
             for (int t = 0; t < horizon; t++) {
-                _varRho[t] = cplex.boolVar(String.format("Rho_%d_%d", k.getId(), t));
+                _varRho[t] = boolVar(String.format("Rho_%d_%d", k.getId(), t));
             }
             varRho.put(k, _varRho);
         }
@@ -263,9 +355,9 @@ public class CplexOriginalModel {
             IloIntVar[] _varPiL = new IloIntVar[instance.horizon];
             IloIntVar[] _varPiUD = new IloIntVar[instance.horizon];
             for (int t = 0; t < horizon; t++) {
-                _varPiU[t] = cplex.boolVar(String.format("PiU_%d_%d", v.getVid(), t));
-                _varPiL[t] = cplex.boolVar(String.format("PiL_%d_%d", v.getVid(), t));
-                _varPiUD[t] = cplex.boolVar(String.format("PiUD_%d_%d", v.getVid(), t));
+                _varPiU[t] = boolVar(String.format("PiU_%d_%d", v.getVid(), t));
+                _varPiL[t] = boolVar(String.format("PiL_%d_%d", v.getVid(), t));
+                _varPiUD[t] = boolVar(String.format("PiUD_%d_%d", v.getVid(), t));
             }
             varPiU.put(v, _varPiU);
             varPiL.put(v, _varPiL);
@@ -274,8 +366,8 @@ public class CplexOriginalModel {
     }
 
     private void initVarRoadFlow() throws IloException {
-        varLoadOverload = cplex.intVar(0, Integer.MAX_VALUE, "largestLoadFlow");
-        varUnloadOverload = cplex.intVar(0, Integer.MAX_VALUE, "largestUnloadFlow");
+        varLoadOverload = intVar(0, Integer.MAX_VALUE, "largestLoadFlow");
+        varUnloadOverload = intVar(0, Integer.MAX_VALUE, "largestUnloadFlow");
 
 //        loadFlows = new IloIntVar[roads][horizon];
 //        unloadFlows = new IloIntVar[roads][horizon];
@@ -294,42 +386,34 @@ public class CplexOriginalModel {
 // Yard Template Constraints
         for (Subblock k : instance.getSubblocks())
             for (int t = 0; t < horizon; t++) {
-                IloLinearIntExpr expr = cplex.linearIntExpr();
                 for (Vessel v : instance.getVessels())
-                    expr.addTerm(1, varX.get(v).get(k)[t]);
-                cplex.addLe(expr, 1, String.format("ConsYardX%d,%d", k.getId(), t));
+                    rows.addTerm(1, varX.get(v).get(k)[t]);
+                rows.addLe(1, "ConsYardX%d,%d", k.getId(), t);
             }
 
 
         for (VesselPeriod vp : instance.getVesselPeriods()) {
-            IloLinearIntExpr expr = cplex.linearIntExpr();
             for (Subblock k : instance.getSubblocks())
-                expr.addTerm(1, varY.get(vp).get(k));
-            cplex.addLe(expr, MyMathMethods.ceilDiv(vp.totalLoadContainers, instance.spaceCapacity),
-                    String.format("ConsYardMax%d,%d", vp.getVid(), vp.getPid()));
+                rows.addTerm(1, varY.get(vp).get(k));
+            rows.addLe(MyMathMethods.ceilDiv(vp.totalLoadContainers, instance.spaceCapacity),
+                    "ConsYardMax%d,%d", vp.getVid(), vp.getPid());
         }
 
         for (VesselPeriod vp : instance.getVesselPeriods())
             for (Subblock k : instance.getSubblocks()) {
-                IloLinearIntExpr expr = cplex.linearIntExpr();
-//                for (int t = vp.getFirstPeriodTimeStep(); t <= vp.getLastPeriodTimeStep(); t++)
-//                    expr.addTerm(1, varX.get(vp.vessel).get(k)[getOriginalTimeStep(vp.vessel, t)]);
-
-                vp.getPeriodInterval().intStream(instance.horizon).forEach(t -> {
-                    try {
-                        expr.addTerm(1, varX.get(instance.getVesselOf(vp)).get(k)[instance.getOriginalTimeStep(vp, t)]);
-                    } catch (IloException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-                expr.addTerm(-1 * (vp.getPeriodInterval().getLength()), varY.get(vp).get(k));
-                cplex.addEq(expr, 0, String.format("ConsYardY%d,%d,%d", vp.getVid(), vp.getPid(), k.getId()));
+                for (int t : vp.getPeriodInterval().intStream(instance.horizon))
+                    rows.addTerm(1, varX.get(instance.getVesselOf(vp)).get(k)[instance.getOriginalTimeStep(vp, t)]);
+                rows.addTerm(-1 * (vp.getPeriodInterval().getLength()), varY.get(vp).get(k));
+                rows.addEq(0, "ConsYardY%d,%d,%d", vp.getVid(), vp.getPid(), k.getId());
             }
 
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (Subblock k : instance.getSubblocks()) {
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-                    cplex.addLe(varZ.get(jq).get(ip).get(k), varY.get(ip).get(k));
+                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
+                    rows.addTerm(1, varZ.get(jq).get(ip).get(k));
+                    rows.addTerm(-1, varY.get(ip).get(k));
+                    rows.addLe(0, null);
+                }
             }
     }
 
@@ -338,202 +422,131 @@ public class CplexOriginalModel {
         // Storage Allocation Constraints
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-                for (Subblock k : instance.getSubblocks())
-                    cplex.addLe(varW.get(jq).get(ip).get(k),
-                            cplex.prod(instance.spaceCapacity, varZ.get(jq).get(ip).get(k)),
-                            String.format("ConsFlowWZ%d,%d,%d,%d,%d", ip.getVid(), ip.getPid(), k.getId(), jq.getVid(), jq.getPid()));
+                for (Subblock k : instance.getSubblocks()) {
+                    rows.addTerm(1, varW.get(jq).get(ip).get(k));
+                    rows.addTerm(-instance.spaceCapacity, varZ.get(jq).get(ip).get(k));
+                    rows.addLe(0, "ConsFlowWZ%d,%d,%d,%d,%d",
+                            ip.getVid(), ip.getPid(), k.getId(), jq.getVid(), jq.getPid());
+                }
 
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-                IloLinearIntExpr expr = cplex.linearIntExpr();
                 for (Subblock k : instance.getSubblocks())
-                    expr.addTerm(1, varW.get(jq).get(ip).get(k));
-                cplex.addEq(expr, instance.getTransshipmentTo(jq, ip),
-                        String.format("ConsFlowN%d,%d,%d,%d", ip.getVid(), ip.getPid(),
-                                jq.getVid(), jq.getPid()));
+                    rows.addTerm(1, varW.get(jq).get(ip).get(k));
+                rows.addEq(instance.getTransshipmentTo(jq, ip),
+                        "ConsFlowN%d,%d,%d,%d", ip.getVid(), ip.getPid(), jq.getVid(), jq.getPid());
             }
 
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (Subblock k : instance.getSubblocks()) {
-                IloLinearIntExpr expr = cplex.linearIntExpr();
                 for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-                    expr.addTerm(1, varW.get(jq).get(ip).get(k));
-                cplex.addLe(expr, instance.spaceCapacity,
-                        String.format("ConsFlowC%d,%d,%d", ip.getVid(), ip.getPid(), k.getId()));
+                    rows.addTerm(1, varW.get(jq).get(ip).get(k));
+                rows.addLe(instance.spaceCapacity, "ConsFlowC%d,%d,%d", ip.getVid(), ip.getPid(), k.getId());
             }
     }
 
+    /**
+     * Add {@code var <= rhs + bigM * (1 - indicator)}, i.e. {@code var + bigM * indicator <= rhs + bigM}.
+     */
+    private void addLeUnless(IloNumVar var, double rhs, int bigM, IloNumVar indicator,
+                             String name, Object... nameArgs) throws IloException {
+        rows.addTerm(1, var);
+        rows.addTerm(bigM, indicator);
+        rows.addLe(rhs + bigM, name, nameArgs);
+    }
+
+    /**
+     * Add {@code var >= rhs - bigM * (1 - indicator)}, i.e. {@code var - bigM * indicator >= rhs - bigM}.
+     */
+    private void addGeUnless(IloNumVar var, double rhs, int bigM, IloNumVar indicator,
+                             String name, Object... nameArgs) throws IloException {
+        rows.addTerm(1, var);
+        rows.addTerm(-bigM, indicator);
+        rows.addGe(rhs - bigM, name, nameArgs);
+    }
+
     private void initOriginalHandlingTimeConstraints() throws IloException {
 
         // Handling Time Constraints
-//        for (Vessel i : instance.getVessels())
-//            for (Subblock k : instance.getSubblocks())
-//                for (int t = 0; t < horizon; t++) {
-//                    IloLinearIntExpr expr = cplex.linearIntExpr();
-//                    for (Vessel j : instance.getVessels())
-//                        if (!j.equals(i))
-//                            expr.addTerm(1, varDeltaU.get(j).get(i).get(k)[t]);
-//                    expr.addTerm(1, varDeltaL.get(i).get(k)[t]);
-//                    cplex.addLe(expr, cplex.prod(instance.getNumVessels() + 1, varX.get(i).get(k)[t]),
-//                            String.format("ConsHandleX%d,%d,%d", i.getVId(), k.getId(), t));
-//                }
-
         for (Vessel i : instance.getVessels())
             for (VesselPeriod ip : i.getPeriods())
                 for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
                     for (Subblock k : instance.getSubblocks()) {
-                        IloLinearIntExpr expr = cplex.linearIntExpr();
-                        ip.getPeriodInterval().intersection(jq.getPeriodInterval(), instance.horizon).forEach(t -> {
-                            try {
-                                expr.addTerm(1, varDeltaU.get(instance.getVesselOf(jq)).get(i).get(k)[t]);
-                            } catch (IloException e) {
-                                throw new RuntimeException(e);
-                            }
-                        });
-//                        for (int tip = ip.getFirstPeriodTimeStep(); tip <= ip.getLastPeriodTimeStep(); tip++) {
-//                            int t = getOriginalTimeStep(i, tip);
-//                            int tjq = getExtendedTimeStep(instance.getVesselOf(jq), t);
-//                            if (tjq >= jq.getFirstPeriodTimeStep() && tjq <= jq.getLastPeriodTimeStep())
-//                                expr.addTerm(1, varDeltaU.get(instance.getVesselOf(jq)).get(i).get(k)[t]);
-//                        }
-                        cplex.addEq(expr, varZ.get(jq).get(ip).get(k),
-                                String.format("ConsHandleZ%d,%d,%d,%d,%d",
-                                        i.getVid(), ip.getPid(), k.getId(), jq.getVid(), jq.getPid()));
+                        for (int t : ip.getPeriodInterval().intersection(jq.getPeriodInterval(), instance.horizon))
+                            rows.addTerm(1, varDeltaU.get(instance.getVesselOf(jq)).get(i).get(k)[t]);
+                        rows.addTerm(-1, varZ.get(jq).get(ip).get(k));
+                        rows.addEq(0, "ConsHandleZ%d,%d,%d,%d,%d",
+                                i.getVid(), ip.getPid(), k.getId(), jq.getVid(), jq.getPid());
                     }
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (Subblock k : instance.getSubblocks()) {
-                IloLinearIntExpr expr = cplex.linearIntExpr();
-                ip.getPeriodInterval().intStream(instance.horizon).forEach(t -> {
-                    try {
-                        expr.addTerm(1, varDeltaL.get(instance.getVesselOf(ip)).get(k)[t]);
-                    } catch (IloException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-//                for (int tip = ip.getFirstPeriodTimeStep(); tip <= ip.getLastPeriodTimeStep(); tip++) {
-//                    expr.addTerm(1, varDeltaL.get(ip.vessel).get(k)[getOriginalTimeStep(ip.vessel, tip)]);
-//                }
-                cplex.addEq(expr, varY.get(ip).get(k),
-                        String.format("ConsHandleY%d,%d,%d",
-                                ip.getVid(), ip.getPid(), k.getId()));
+                for (int t : ip.getPeriodInterval().intStream(instance.horizon))
+                    rows.addTerm(1, varDeltaL.get(instance.getVesselOf(ip)).get(k)[t]);
+                rows.addTerm(-1, varY.get(ip).get(k));
+                rows.addEq(0, "ConsHandleY%d,%d,%d", ip.getVid(), ip.getPid(), k.getId());
             }
 
 
         for (Vessel j : instance.getVessels())
             for (VesselPeriod jq : j.getPeriods())
                 for (Subblock k : instance.getSubblocks())
-                    jq.getPeriodInterval().intStream(instance.horizon).forEach(t -> {
-                        try {
-                            int tjq = jq.getPeriodInterval().shiftsFromStart(t, instance.horizon);
-                            for (Vessel i : instance.getVessels())
-                                if (i != j) {
-                                    IloIntExpr bigM = cplex.prod(jq.getLengthOfPeriod(),
-                                            cplex.diff(1, varDeltaU.get(j).get(i).get(k)[t]));
-
-                                    cplex.addLe(varEpsilonU.get(jq),
-                                            cplex.sum(tjq, bigM),
-                                            String.format("ConsHandleEpsilonU%d,%d,%d,%d,%d",
-                                                    jq.getVid(), jq.getPid(), tjq, i.getVid(), k.getId()));
-                                    cplex.addGe(varSigmaU.get(jq),
-                                            cplex.diff(tjq + 1, bigM),
-                                            String.format("ConsHandleSigmaU%d,%d,%d,%d,%d",
-                                                    jq.getVid(), jq.getPid(), tjq, i.getVid(), k.getId()));
-                                }
-                        } catch (IloException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-
-//                for (int tjq = jq.getFirstPeriodTimeStep(); tjq <= jq.getLastPeriodTimeStep(); tjq++)
-//                    for (Vessel i : instance.getVessels())
-//                        if (i != j) {
-//                            int t = getOriginalTimeStep(j, tjq);
-//                            IloIntExpr bigM = cplex.prod(jq.getLengthOfPeriod(),
-//                                    cplex.diff(1, varDeltaU.get(j).get(i).get(k)[t]));
-//                            cplex.addLe(varEpsilonU.get(jq),
-//                                    cplex.sum(tjq, bigM),
-//                                    String.format("ConsHandleEpsilonU%d,%d,%d,%d,%d",
-//                                            jq.getVId(), jq.getPId(), tjq, i.getVId(), k.getId()));
-//                            cplex.addGe(varSigmaU.get(jq),
-//                                    cplex.diff(tjq + 1, bigM),
-//                                    String.format("ConsHandleSigmaU%d,%d,%d,%d,%d",
-//                                            jq.getVId(), jq.getPId(), tjq, i.getVId(), k.getId()));
-//                        }
+                    for (int t : jq.getPeriodInterval().intStream(instance.horizon)) {
+                        int tjq = jq.getPeriodInterval().shiftsFromStart(t, instance.horizon);
+                        for (Vessel i : instance.getVessels())
+                            if (i != j) {
+                                IloIntVar deltaU = varDeltaU.get(j).get(i).get(k)[t];
+                                addLeUnless(varEpsilonU.get(jq), tjq, jq.getLengthOfPeriod(), deltaU,
+                                        "ConsHandleEpsilonU%d,%d,%d,%d,%d",
+                                        jq.getVid(), jq.getPid(), tjq, i.getVid(), k.getId());
+                                addGeUnless(varSigmaU.get(jq), tjq + 1, jq.getLengthOfPeriod(), deltaU,
+                                        "ConsHandleSigmaU%d,%d,%d,%d,%d",
+                                        jq.getVid(), jq.getPid(), tjq, i.getVid(), k.getId());
+                            }
+                    }
 
         for (Vessel i : instance.getVessels())
             for (VesselPeriod ip : i.getPeriods())
                 for (Subblock k : instance.getSubblocks())
-                    ip.getPeriodInterval().intStream(instance.horizon).forEach(t -> {
-                        try {
-                            int tip = ip.getPeriodInterval().shiftsFromStart(t, instance.horizon);
-                            IloIntExpr bigM = cplex.prod(ip.getLengthOfPeriod(),
-                                    cplex.diff(1, varDeltaL.get(i).get(k)[t]));
-                            cplex.addLe(varEpsilonL.get(ip),
-                                    cplex.sum(tip, bigM),
-                                    String.format("ConsHandleEpsilonL%d,%d,%d,%d",
-                                            ip.getVid(), ip.getPid(), tip, k.getId()));
-                            cplex.addGe(varSigmaL.get(ip),
-                                    cplex.diff(tip + 1, bigM),
-                                    String.format("ConsHandleSigmaL%d,%d,%d,%d",
-                                            ip.getVid(), ip.getPid(), tip, k.getId()));
-                        } catch (IloException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-//                    for (int tip = ip.getFirstPeriodTimeStep(); tip <= ip.getLastPeriodTimeStep(); tip++) {
-//                        int t = getOriginalTimeStep(i, tip);
-//                        IloIntExpr bigM = cplex.prod(ip.getLengthOfPeriod(),
-//                                cplex.diff(1, varDeltaL.get(i).get(k)[t]));
-//                        cplex.addLe(varEpsilonL.get(ip),
-//                                cplex.sum(tip, bigM),
-//                                String.format("ConsHandleEpsilonL%d,%d,%d,%d",
-//                                        ip.getVId(), ip.getPId(), tip, k.getId()));
-//                        cplex.addGe(varSigmaL.get(ip),
-//                                cplex.diff(tip + 1, bigM),
-//                                String.format("ConsHandleSigmaL%d,%d,%d,%d",
-//                                        ip.getVId(), ip.getPId(), tip, k.getId()));
-//                    }
-
-        for (Vessel i : instance.getVessels())
-            for (VesselPeriod ip : i.getPeriods())
-                ip.getPeriodInterval().intStream(instance.horizon).forEach(t -> {
-                    try {
+                    for (int t : ip.getPeriodInterval().intStream(instance.horizon)) {
                         int tip = ip.getPeriodInterval().shiftsFromStart(t, instance.horizon);
-                        for (Vessel j : instance.getVessels())
-                            if (!i.equals(j))
-                                for (Subblock k : instance.getSubblocks()) {
-                                    IloIntExpr bigM = cplex.prod(ip.getLengthOfPeriod(),
-                                            cplex.diff(1, varDeltaU.get(j).get(i).get(k)[t]));
-                                    cplex.addGe(varEpsilonL.get(ip),
-                                            cplex.diff(tip + 1, bigM),
-                                            String.format("ConsHandleTrans%d,%d,%d,%d,%d",
-                                                    ip.getVid(), ip.getPid(), tip, j.getVid(), k.getId()));
-                                }
-                    } catch (IloException e) {
-                        throw new RuntimeException(e);
+                        IloIntVar deltaL = varDeltaL.get(i).get(k)[t];
+                        addLeUnless(varEpsilonL.get(ip), tip, ip.getLengthOfPeriod(), deltaL,
+                                "ConsHandleEpsilonL%d,%d,%d,%d", ip.getVid(), ip.getPid(), tip, k.getId());
+                        addGeUnless(varSigmaL.get(ip), tip + 1, ip.getLengthOfPeriod(), deltaL,
+                                "ConsHandleSigmaL%d,%d,%d,%d", ip.getVid(), ip.getPid(), tip, k.getId());
                     }
-                });
 
-//                for (int tip = ip.getFirstPeriodTimeStep(); tip <= ip.getLastPeriodTimeStep(); tip++)
-//                    for (Vessel j : instance.getVessels())
-//                        if (!i.equals(j))
-//                            for (Subblock k : instance.getSubblocks()) {
-//                                int t = getOriginalTimeStep(i, tip);
-//                                IloIntExpr bigM = cplex.prod(ip.getLengthOfPeriod(),
-//                                        cplex.diff(1, varDeltaU.get(j).get(i).get(k)[t]));
-//                                cplex.addGe(varEpsilonL.get(ip),
-//                                        cplex.diff(tip + 1, bigM),
-//                                        String.format("ConsHandleTrans%d,%d,%d,%d,%d",
-//                                                ip.getVId(), ip.getPId(), tip, j.getVId(), k.getId()));
-//                            }
+        for (Vessel i : instance.getVessels())
+            for (VesselPeriod ip : i.getPeriods())
+                for (int t : ip.getPeriodInterval().intStream(instance.horizon)) {
+                    int tip = ip.getPeriodInterval().shiftsFromStart(t, instance.horizon);
+                    for (Vessel j : instance.getVessels())
+                        if (!i.equals(j))
+                            for (Subblock k : instance.getSubblocks())
+                                addGeUnless(varEpsilonL.get(ip), tip + 1, ip.getLengthOfPeriod(),
+                                        varDeltaU.get(j).get(i).get(k)[t],
+                                        "ConsHandleTrans%d,%d,%d,%d,%d",
+                                        ip.getVid(), ip.getPid(), tip, j.getVid(), k.getId());
+                }
 
         for (Vessel i : instance.getVessels())
             for (VesselPeriod ip : i.getPeriods()) {
-                cplex.addLe(varEpsilonU.get(ip), varSigmaU.get(ip));
-                cplex.addLe(varSigmaU.get(ip), varEpsilonL.get(ip));
-                cplex.addLe(varEpsilonL.get(ip), varSigmaL.get(ip));
-                cplex.addGe(varIota.get(ip), cplex.diff(ip.getRelativeExpectedIntervalStart(), varEpsilonU.get(ip)));
-                cplex.addGe(varKappa.get(ip), cplex.diff(varSigmaL.get(ip), ip.getRelativeExpectedIntervalEnd()));
+                rows.addTerm(1, varEpsilonU.get(ip));
+                rows.addTerm(-1, varSigmaU.get(ip));
+                rows.addLe(0, null);
+                rows.addTerm(1, varSigmaU.get(ip));
+                rows.addTerm(-1, varEpsilonL.get(ip));
+                rows.addLe(0, null);
+                rows.addTerm(1, varEpsilonL.get(ip));
+                rows.addTerm(-1, varSigmaL.get(ip));
+                rows.addLe(0, null);
+                // iota >= expected start - epsilonU, kappa >= sigmaL - expected end
+                rows.addTerm(1, varIota.get(ip));
+                rows.addTerm(1, varEpsilonU.get(ip));
+                rows.addGe(ip.getRelativeExpectedIntervalStart(), null);
+                rows.addTerm(1, varKappa.get(ip));
+                rows.addTerm(-1, varSigmaL.get(ip));
+                rows.addGe(-ip.getRelativeExpectedIntervalEnd(), null);
             }
 
     }
@@ -543,31 +556,18 @@ public class CplexOriginalModel {
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
                 for (Subblock k : instance.getSubblocks()) {
-                    IloLinearIntExpr expr = cplex.linearIntExpr();
-                    ip.getPeriodInterval().intersection(jq.getPeriodInterval(), instance.horizon).forEach(t -> {
-                        try {
-                            expr.addTerm(1, varDeltaU.get(instance.getVesselOf(jq)).get(instance.getVesselOf(ip)).get(k)[t]);
-                        } catch (IloException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-                    cplex.addEq(expr, varZ.get(jq).get(ip).get(k),
-                            String.format("ConsHandleZ%d,%d,%d,%d,%d",
-                                    ip.getVid(), ip.getPid(), k.getId(), jq.getVid(), jq.getPid()));
+                    for (int t : ip.getPeriodInterval().intersection(jq.getPeriodInterval(), instance.horizon))
+                        rows.addTerm(1, varDeltaU.get(instance.getVesselOf(jq)).get(instance.getVesselOf(ip)).get(k)[t]);
+                    rows.addTerm(-1, varZ.get(jq).get(ip).get(k));
+                    rows.addEq(0, "ConsHandleZ%d,%d,%d,%d,%d",
+                            ip.getVid(), ip.getPid(), k.getId(), jq.getVid(), jq.getPid());
                 }
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (Subblock k : instance.getSubblocks()) {
-                IloLinearIntExpr expr = cplex.linearIntExpr();
-                ip.getPeriodInterval().intStream(instance.horizon).forEach(t -> {
-                    try {
-                        expr.addTerm(1, varDeltaL.get(instance.getVesselOf(ip)).get(k)[t]);
-                    } catch (IloException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-                cplex.addEq(expr, varY.get(ip).get(k),
-                        String.format("ConsHandleY%d,%d,%d",
-                                ip.getVid(), ip.getPid(), k.getId()));
+                for (int t : ip.getPeriodInterval().intStream(instance.horizon))
+                    rows.addTerm(1, varDeltaL.get(instance.getVesselOf(ip)).get(k)[t]);
+                rows.addTerm(-1, varY.get(ip).get(k));
+                rows.addEq(0, "ConsHandleY%d,%d,%d", ip.getVid(), ip.getPid(), k.getId());
             }
 
         for (Vessel j : instance.getVessels()) {
@@ -577,9 +577,9 @@ public class CplexOriginalModel {
                 for (Vessel i : instance.getVessels())
                     if (!i.equals(j))
                         for (Subblock k : instance.getSubblocks()) {
-                            IloIntVar rhs = _varDeltaU.get(i).get(k)[t];
-                            cplex.addGe(lhs, rhs, String.format("ConsHandlePiU%d,%d,%d,%d",
-                                    j.getVid(), i.getVid(), k.getId(), t));
+                            rows.addTerm(1, lhs);
+                            rows.addTerm(-1, _varDeltaU.get(i).get(k)[t]);
+                            rows.addGe(0, "ConsHandlePiU%d,%d,%d,%d", j.getVid(), i.getVid(), k.getId(), t);
                         }
             }
         }
@@ -589,9 +589,9 @@ public class CplexOriginalModel {
             for (int t = 0; t < horizon; t++) {
                 IloIntVar lhs = varPiL.get(i)[t];
                 for (Subblock k : instance.getSubblocks()) {
-                    IloIntVar rhs = _varDeltaL.get(k)[t];
-                    cplex.addGe(lhs, rhs, String.format("ConsHandlePiL%d,%d,%d",
-                            i.getVid(), k.getId(), t));
+                    rows.addTerm(1, lhs);
+                    rows.addTerm(-1, _varDeltaL.get(k)[t]);
+                    rows.addGe(0, "ConsHandlePiL%d,%d,%d", i.getVid(), k.getId(), t);
                 }
             }
         }
@@ -602,9 +602,9 @@ public class CplexOriginalModel {
                 for (Vessel j : instance.getVessels())
                     if (!i.equals(j))
                         for (Subblock k : instance.getSubblocks()) {
-                            IloIntVar rhs = varDeltaU.get(j).get(i).get(k)[t];
-                            cplex.addGe(lhs, rhs, String.format("ConsHandlePiUD%d,%d,%d,%d",
-                                    j.getVid(), i.getVid(), k.getId(), t));
+                            rows.addTerm(1, lhs);
+                            rows.addTerm(-1, varDeltaU.get(j).get(i).get(k)[t]);
+                            rows.addGe(0, "ConsHandlePiUD%d,%d,%d,%d", j.getVid(), i.getVid(), k.getId(), t);
                         }
             }
         }
@@ -613,16 +613,12 @@ public class CplexOriginalModel {
             int a = ip.getRelativeFeasibleIntervalStart();
             int b = ip.getRelativeFeasibleIntervalEnd();
             int relativeTimeStep = 0;
-            Iterator<Integer> it = ip.getPeriodInterval().intStream(instance.horizon).iterator();
-            while (it.hasNext()) {
-                int t = it.next();
+            for (int t : ip.getPeriodInterval().intStream(instance.horizon)) {
+                rows.addTerm(1, varPiU.get(instance.getVesselOf(ip))[t]);
+                rows.addTerm(1, varPiL.get(instance.getVesselOf(ip))[t]);
                 // t \notin [a, b)
-                if (relativeTimeStep < a || relativeTimeStep >= b)
-                    cplex.addLe(cplex.sum(varPiU.get(instance.getVesselOf(ip))[t], varPiL.get(instance.getVesselOf(ip))[t]), 0,
-                            String.format("ConsHandlePiUL%d,%d,%d", ip.getVid(), ip.getPid(), t));
-                else
-                    cplex.addLe(cplex.sum(varPiU.get(instance.getVesselOf(ip))[t], varPiL.get(instance.getVesselOf(ip))[t]), 1,
-                            String.format("ConsHandlePiUL%d,%d,%d", ip.getVid(), ip.getPid(), t));
+                rows.addLe(relativeTimeStep < a || relativeTimeStep >= b ? 0 : 1,
+                        "ConsHandlePiUL%d,%d,%d", ip.getVid(), ip.getPid(), t);
                 relativeTimeStep++;
             }
         }
@@ -630,21 +626,14 @@ public class CplexOriginalModel {
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             int relativeTimeStep = 0;
             for (int t : ip.getPeriodInterval().intStream(instance.horizon)) {
-                IloLinearIntExpr expr = cplex.linearIntExpr();
-                ip.getPeriodInterval().intStream(instance.horizon).skip(relativeTimeStep).forEach(s -> {
-                    try {
-                        expr.addTerm(1, varPiU.get(instance.getVesselOf(ip))[s]);
-                        expr.addTerm(1, varPiUD.get(instance.getVesselOf(ip))[s]);
-                    } catch (IloException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-
-
-                cplex.addLe(expr,
-                        cplex.prod(2 * (ip.getLengthOfPeriod() - relativeTimeStep),
-                                cplex.diff(1, varPiL.get(instance.getVesselOf(ip))[t])),
-                        String.format("ConsHandlePiUUD%d,%d,%d", ip.getVid(), ip.getPid(), t));
+                for (int s : ip.getPeriodInterval().intStream(instance.horizon).skip(relativeTimeStep)) {
+                    rows.addTerm(1, varPiU.get(instance.getVesselOf(ip))[s]);
+                    rows.addTerm(1, varPiUD.get(instance.getVesselOf(ip))[s]);
+                }
+                // sum <= 2 * (length - relativeTimeStep) * (1 - piL)
+                int bigM = 2 * (ip.getLengthOfPeriod() - relativeTimeStep);
+                rows.addTerm(bigM, varPiL.get(instance.getVesselOf(ip))[t]);
+                rows.addLe(bigM, "ConsHandlePiUUD%d,%d,%d", ip.getVid(), ip.getPid(), t);
                 relativeTimeStep++;
             }
         }
@@ -656,17 +645,18 @@ public class CplexOriginalModel {
             int expB = ip.getRelativeExpectedIntervalEnd();
 
             for (int t : ip.getPeriodInterval().intStream(instance.horizon)) {
-                IloIntExpr bigM = cplex.prod(ip.getLengthOfPeriod(),
-                        cplex.diff(1, cplex.sum(varPiU.get(instance.getVesselOf(ip))[t], varPiL.get(instance.getVesselOf(ip))[t]))
-                );
-                cplex.addGe(varIota.get(ip),
-                        cplex.diff(expA - relativeTimeStep, bigM),
-                        String.format("ConsHandleIota%d,%d,%d",
-                                ip.getVid(), ip.getPid(), t));
-                cplex.addGe(varKappa.get(ip),
-                        cplex.diff(relativeTimeStep + 1 - expB, bigM),
-                        String.format("ConsHandleKappa%d,%d,%d",
-                                ip.getVid(), ip.getPid(), t));
+                // iota >= expA - relativeTimeStep - bigM * (1 - piU - piL), kappa likewise
+                int bigM = ip.getLengthOfPeriod();
+                IloIntVar piU = varPiU.get(instance.getVesselOf(ip))[t];
+                IloIntVar piL = varPiL.get(instance.getVesselOf(ip))[t];
+                rows.addTerm(1, varIota.get(ip));
+                rows.addTerm(-bigM, piU);
+                rows.addTerm(-bigM, piL);
+                rows.addGe(expA - relativeTimeStep - bigM, "ConsHandleIota%d,%d,%d", ip.getVid(), ip.getPid(), t);
+                rows.addTerm(1, varKappa.get(ip));
+                rows.addTerm(-bigM, piU);
+                rows.addTerm(-bigM, piL);
+                rows.addGe(relativeTimeStep + 1 - expB - bigM, "ConsHandleKappa%d,%d,%d", ip.getVid(), ip.getPid(), t);
                 relativeTimeStep++;
             }
         }
@@ -680,90 +670,68 @@ public class CplexOriginalModel {
         for (Vessel j : instance.getVessels())
             for (int t = 0; t < horizon; t++)
                 for (Subblock k : instance.getSubblocks()) {
-                    IloLinearIntExpr expr = cplex.linearIntExpr();
                     for (Vessel i : instance.getVessels())
                         if (i != j)
-                            expr.addTerm(1, varDeltaU.get(j).get(i).get(k)[t]);
-                    cplex.addLe(expr, varRho.get(k)[t], String.format("ConsCongU%d,%d,%d",
-                            j.getVid(), k.getId(), t));
+                            rows.addTerm(1, varDeltaU.get(j).get(i).get(k)[t]);
+                    rows.addTerm(-1, varRho.get(k)[t]);
+                    rows.addLe(0, "ConsCongU%d,%d,%d", j.getVid(), k.getId(), t);
                 }
 
         for (int t = 0; t < horizon; t++)
             for (Subblock k : instance.getSubblocks()) {
-                IloLinearIntExpr expr = cplex.linearIntExpr();
                 for (Vessel i : instance.getVessels())
-                    expr.addTerm(1, varDeltaL.get(i).get(k)[t]);
-                cplex.addLe(expr, varRho.get(k)[t], String.format("ConsCongL%d,%d",
-                        k.getId(), t));
+                    rows.addTerm(1, varDeltaL.get(i).get(k)[t]);
+                rows.addTerm(-1, varRho.get(k)[t]);
+                rows.addLe(0, "ConsCongL%d,%d", k.getId(), t);
             }
 
         for (Subblock k1 : instance.getSubblocks())
             for (Subblock k2 : instance.getSubblocks())
                 if ((!k1.equals(k2)) && (k1.isNeighborInSameBlock(k2) || k1.isNeighborAcrossLane(k2)))
                     for (int t = 0; t < horizon; t++) {
-                        cplex.addLe(cplex.sum(varRho.get(k1)[t], varRho.get(k2)[t]), 1,
-                                String.format("ConsCongRho%d,%d,%d", k1.getId(), k2.getId(), t));
+                        rows.addTerm(1, varRho.get(k1)[t]);
+                        rows.addTerm(1, varRho.get(k2)[t]);
+                        rows.addLe(1, "ConsCongRho%d,%d,%d", k1.getId(), k2.getId(), t);
                     }
 
 
-        IloLinearIntExpr[][] exprU = new IloLinearIntExpr[roads][horizon];
-
-        for (int l = 0; l < roads; l++)
-            for (int t = 0; t < horizon; t++) {
-                exprU[l][t] = cplex.linearIntExpr();
-            }
+        // the road rows collect their terms across the loops, so they are kept aside until complete
+        List<List<IloIntVar>> termsU = new ArrayList<>(roads * horizon);
+        for (int lt = 0; lt < roads * horizon; lt++)
+            termsU.add(new ArrayList<>());
         for (Vessel j : instance.getVessels())
             for (VesselPeriod jq : j.getPeriods())
                 for (Subblock k : instance.getSubblocks()) {
                     for (int l : instance.getRouteToSubblock(jq, k))
-                        jq.getPeriodInterval().intStream(instance.horizon).forEach(t -> {
+                        for (int t : jq.getPeriodInterval().intStream(instance.horizon))
                             for (Vessel i : instance.getVessels())
-                                if (i != j) {
-                                    try {
-                                        exprU[l][t].addTerm(1, varDeltaU.get(j).get(i).get(k)[t]);
-                                    } catch (IloException e) {
-                                        throw new RuntimeException(e);
-                                    }
-                                }
-                        });
-//                        for (int tjq = jq.getFirstExpectedTimeStep(); tjq <= jq.getLastPeriodTimeStep(); tjq++) {
-//                            int t = getOriginalTimeStep(j, tjq);
-//                            for (Vessel i : instance.getVessels())
-//                                if (i != j)
-//                                    exprU[l][t].addTerm(1, varDeltaU.get(j).get(i).get(k)[t]);
-//                        }
+                                if (i != j)
+                                    termsU.get(l * horizon + t).add(varDeltaU.get(j).get(i).get(k)[t]);
                 }
         for (int l = 0; l < roads; l++)
             for (int t = 0; t < horizon; t++) {
-                cplex.addLe(exprU[l][t], cplex.sum(instance.maxUnloadFlows, varUnloadOverload),
-                        String.format("ConsCongRoadU%d,%d", l, t));
+                for (IloIntVar var : termsU.get(l * horizon + t))
+                    rows.addTerm(1, var);
+                rows.addTerm(-1, varUnloadOverload);
+                rows.addLe(instance.maxUnloadFlows, "ConsCongRoadU%d,%d", l, t);
             }
 
-        IloLinearIntExpr[][] exprL = new IloLinearIntExpr[roads][horizon];
-        for (int l = 0; l < roads; l++)
-            for (int t = 0; t < horizon; t++) {
-                exprL[l][t] = cplex.linearIntExpr();
-            }
+        List<List<IloIntVar>> termsL = new ArrayList<>(roads * horizon);
+        for (int lt = 0; lt < roads * horizon; lt++)
+            termsL.add(new ArrayList<>());
         for (Vessel i : instance.getVessels())
             for (VesselPeriod ip : i.getPeriods())
                 for (Subblock k : instance.getSubblocks()) {
                     for (int l : instance.getRouteFromSubblock(ip, k))
-                        ip.getPeriodInterval().intStream(instance.horizon).forEach(t -> {
-                            try {
-                                exprL[l][t].addTerm(1, varDeltaL.get(i).get(k)[t]);
-                            } catch (IloException e) {
-                                throw new RuntimeException(e);
-                            }
-                        });
-//                        for (int tip = ip.getFirstPeriodTimeStep(); tip <= ip.getLastPeriodTimeStep(); tip++) {
-//                            int t = getOriginalTimeStep(i, tip);
-//                            exprL[l][t].addTerm(1, varDeltaL.get(i).get(k)[t]);
-//                        }
+                        for (int t : ip.getPeriodInterval().intStream(instance.horizon))
+                            termsL.get(l * horizon + t).add(varDeltaL.get(i).get(k)[t]);
                 }
         for (int l = 0; l < roads; l++)
             for (int t = 0; t < horizon; t++) {
-                cplex.addLe(exprL[l][t], cplex.sum(instance.maxLoadFlows, varLoadOverload),
-                        String.format("ConsCongRoadL%d,%d", l, t));
+                for (IloIntVar var : termsL.get(l * horizon + t))
+                    rows.addTerm(1, var);
+                rows.addTerm(-1, varLoadOverload);
+                rows.addLe(instance.maxLoadFlows, "ConsCongRoadL%d,%d", l, t);
             }
     }
 
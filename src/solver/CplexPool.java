@@ -0,0 +1,223 @@
+package solver;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded pool of CPLEX environments reused by the models of a process, since creating a native environment is
+ * costly and fragments the native memory.
+ * <p>
+ * A lent environment is as a new one: on release its model is cleared, its parameters are reset to their defaults,
+ * its log goes back to the standard streams and its aborter is replaced by an idle one. At most {@code capacity}
+ * environments exist at once and a borrower waits while all of them are lent, so the capacity must cover the
+ * environments used at the same time: a decomposed search holds one unless it evaluates heuristically, and borrows
+ * one per CPLEX evaluation worker, see {@code Params.cplexEnvironmentsPerRun}. A thread which already holds an environment
+ * does not wait, as the holders may all be waiting for each other: it fails when none is left.
+ */
+public class CplexPool {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private static final CplexPool SHARED = new CplexPool(UNLIMITED);
+
+    private final Deque<Environment> idle = new ArrayDeque<>();
+    private final Map<Thread, Integer> holders = new HashMap<>(); // thread -> environments lent to it
+    private int capacity;
+    private int alive = 0;
+
+    // metrics
+    private int creations = 0;
+    private int reuses = 0;
+    private int waits = 0;
+    private long waitNanos = 0;
+    private long maxWaitNanos = 0;
+
+    public CplexPool(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * @return the pool of the process, unlimited unless configured, see {@link #setCapacity(int)}
+     */
+    public static CplexPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param capacity the environments alive at once, or {@link #UNLIMITED}; idle environments above it are ended
+     */
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("A CPLEX pool needs at least one environment: " + capacity);
+        this.capacity = capacity;
+        while (alive > capacity && !idle.isEmpty()) {
+            idle.poll().end();
+            alive--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Borrow an idle environment, or create one below the capacity, otherwise wait for one to be released.
+     *
+     * @throws IllegalStateException if none is left while the calling thread holds one
+     */
+    public Lease acquire() throws IloException {
+        Thread holder = Thread.currentThread();
+        Environment environment;
+        synchronized (this) {
+            long start = System.nanoTime();
+            boolean waited = false;
+            while (idle.isEmpty() && alive >= capacity) {
+                if (holders.containsKey(holder))
+                    throw new IllegalStateException("All " + capacity + " CPLEX environments are lent while the " +
+                            "borrower holds one, which may never be released: raise the capacity (cplexenvs)");
+                waited = true;
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a CPLEX environment", e);
+                }
+            }
+            if (waited) {
+                long nanos = System.nanoTime() - start;
+                waits++;
+                waitNanos += nanos;
+                maxWaitNanos = Math.max(maxWaitNanos, nanos);
+            }
+            holders.merge(holder, 1, Integer::sum);
+            environment = idle.poll();
+            if (environment != null) {
+                reuses++;
+                return new Lease(environment, holder);
+            }
+            // reserved here, created outside the lock
+            alive++;
+            creations++;
+        }
+        try {
+            return new Lease(new Environment(), holder);
+        } catch (IloException | RuntimeException e) {
+            synchronized (this) {
+                alive--;
+                holders.computeIfPresent(holder, (thread, n) -> n > 1 ? n - 1 : null);
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @throws RuntimeException if the environment could not be cleared, after ending it
+     */
+    private void release(Environment environment, Thread holder) {
+        IloException failure = null;
+        try {
+            environment.clear();
+        } catch (IloException e) {
+            failure = e;
+        }
+        synchronized (this) {
+            holders.computeIfPresent(holder, (thread, n) -> n > 1 ? n - 1 : null);
+            if (failure == null && alive <= capacity) {
+                idle.push(environment);
+            } else {
+                environment.end();
+                alive--;
+            }
+            notifyAll();
+        }
+        if (failure != null)
+            throw new RuntimeException("A CPLEX environment could not be cleared and was ended", failure);
+    }
+
+    /**
+     * End the idle environments, e.g. at the end of a run. The lent ones are ended on release if above the capacity.
+     */
+    public synchronized void clear() {
+        while (!idle.isEmpty()) {
+            idle.poll().end();
+            alive--;
+        }
+    }
+
+    public synchronized int getCreations() {
+        return creations;
+    }
+
+    public synchronized int getReuses() {
+        return reuses;
+    }
+
+    public synchronized int getWaits() {
+        return waits;
+    }
+
+    public synchronized double getWaitMillis() {
+        return waitNanos / 1e6;
+    }
+
+    public synchronized String summary() {
+        return String.format("CPLEX Pool: created = %d, reused = %d, waits = %d (%.1f ms in total, %.1f ms at most)%n",
+                creations, reuses, waits, waitNanos / 1e6, maxWaitNanos / 1e6);
+    }
+
+    /**
+     * A borrowed environment, returned to the pool on {@link #close()}. The environment must not be ended by the
+     * borrower nor used after the lease is closed.
+     */
+    public final class Lease implements AutoCloseable {
+        private Environment environment;
+        private final Thread holder;
+
+        private Lease(Environment environment, Thread holder) {
+            this.environment = environment;
+            this.holder = holder;
+        }
+
+        public IloCplex cplex() {
+            if (environment == null)
+                throw new IllegalStateException("The CPLEX environment was returned to its pool");
+            return environment.cplex;
+        }
+
+        @Override
+        public void close() {
+            if (environment == null)
+                return;
+            release(environment, holder);
+            environment = null;
+        }
+    }
+
+    private static class Environment {
+        final IloCplex cplex;
+        // installed on release so that an aborter of a borrower cannot abort the next one
+        final IloCplex.Aborter aborter;
+
+        Environment() throws IloException {
+            cplex = new IloCplex();
+            aborter = new IloCplex.Aborter();
+            cplex.use(aborter);
+        }
+
+        void clear() throws IloException {
+            cplex.clearModel();
+            cplex.setDefaults();
+            cplex.setOut(System.out);
+            cplex.setWarning(System.err);
+            aborter.clear();
+            cplex.use(aborter);
+        }
+
+        void end() {
+            aborter.end();
+            cplex.end();
+        }
+    }
+}
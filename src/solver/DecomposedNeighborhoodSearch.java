@@ -1,10 +1,14 @@
 package solver;
 
+import dto.SearchCheckpointData;
 import entity.*;
 import ilog.concert.IloException;
 import ilog.cplex.IloCplex;
-import util.CapacityLimitedMapPriorityQueue;
+import util.BoundedIndexedHeap;
+import util.Deadline;
+import util.MyMathMethods;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -30,11 +34,35 @@ public class DecomposedNeighborhoodSearch {
     public boolean meetBestAndBreak = false;
     public boolean meetImprovedAndBreak = false;
 
+    // Neighbors are solved concurrently by a NeighborEvaluationPool when more than one worker is given.
+    public int EVALUATION_WORKERS = 1;
+    public int EVALUATION_THREADS = 1;
+    // Solutions of evaluated assignments are reused when an assignment is met again; 0 disables the cache.
+    public int EVALUATION_CACHE_SIZE = 1000;
+    // Only the best SURROGATE_TOP_K neighbors by SurrogateEvaluator are solved by CPLEX; 0 disables the screening.
+    public int SURROGATE_TOP_K = 0;
+    // Seconds between two exchanges of the best solutions with the other islands, checked at the end of each shake.
+    public int MIGRATION_INTERVAL = 60;
+    // Seconds between two checkpoints of the search, taken at the end of a shake when a checkpointer is set.
+    public int CHECKPOINT_INTERVAL = 300;
+    // Seconds a single subproblem may be solved for, besides the deadline of the search; 0 for no cap.
+    public double EVALUATION_TIME_LIMIT = 0;
+    // Neighbors are solved with the current objective as upper cutoff, and abandoned once they cannot improve it.
+    // The abandoned (dominated) neighbors do not contribute to the cost estimates.
+    public boolean INCUMBENT_CUTOFF = false;
+    // Neighbors are solved from a MIP start carried over from the schedule of the current solution.
+    public boolean WARM_START = false;
+    // The subproblem models reach a neighbor by one LP matrix update of the changed coefficients, instead of one
+    // Concert change per coefficient.
+    public boolean BATCHED_CHANGES = false;
+    // The subproblems are evaluated by HeuristicAssignmentEvaluator instead of CPLEX, which is then only used by the
+    // local refinement.
+    public boolean HEURISTIC_EVALUATION = false;
+
 
     private Instance instance;
-    private long startTime; // 已存在实例变量
+    private Deadline deadline = Deadline.unlimited();
     private Integer timeLimit;
-    private long expectedEndTime;
     private Integer threads;
 
     private double PRECISION = 1e-8;
@@ -42,19 +70,33 @@ public class DecomposedNeighborhoodSearch {
     private LinkedHashSet<List<VesselPeriod>> tabuPriority = new LinkedHashSet<>();
 
     private final MasterYardTemplateHeuristic heuristic;
-    private final Map<VesselPeriod, Set<VesselPeriod>> conflictPeriods;
+    private final ConflictGraph conflictGraph;
+    // the occupancy of occupancyAssignment, kept up to date with the current assignment across accepted moves
+    private SubblockOccupancy occupancy;
+    private Map<VesselPeriod, Set<Subblock>> occupancyAssignment;
 
 
     private Solution initialSolution;
     private StringBuilder briefLog = new StringBuilder();
 
+    private EvaluationCache evaluationCache;
+    private CostAttribution costAttribution;
+    private int cacheHits = 0;
+    private int cacheMisses = 0;
+
+    private int screenedNeighbors = 0;
+    private int dominatedNeighbors = 0;
+    private MipStartMonitor mipStarts;
+    private double rankCorrelationSum = 0;
+    private int rankCorrelationCount = 0;
+
 //    private List<VesselPeriod> bestPriority;
 //    private Map<VesselPeriod, Map<Subblock, Double>> bestCosts;
 //    private Map<VesselPeriod, List<Subblock>> bestPreference;
 
 
     private List<VesselPeriod> currentPriority;
-    private Map<VesselPeriod, Map<Subblock, Double>> currentCosts;
+    private CostMatrix currentCosts;
     //    private Map<VesselPeriod, List<Subblock>> currentPreference;
 
 
@@ -68,10 +110,28 @@ public class DecomposedNeighborhoodSearch {
 
     private Random rand;
 
+    // set when the search is a worker of a SearchPortfolio
+    private SharedSearchState sharedState;
+    private int worker;
+
+    // set when the search is an island of a multi-process search
+    private IslandExchange islandExchange;
+    private Solution emigratedSolution;
+    private long lastMigrationTime;
+
+    // the console listener (if verbose) and the added ones, null if none so that no event is created
+    private final List<SearchListener> listeners = new ArrayList<>();
+    private SearchListener listener;
+
+    // set when the search is checkpointed or resumed
+    private SearchCheckpointer checkpointer;
+    private long lastCheckpointTime;
+    private SearchCheckpointData resumedCheckpoint;
+
     public DecomposedNeighborhoodSearch(Instance instance) {
         this.instance = instance;
         heuristic = new MasterYardTemplateHeuristic(instance);
-        conflictPeriods = heuristic.conflictPeriods;
+        conflictGraph = heuristic.conflictGraph;
         NUMBER_CRITICAL_ELEMENTS = Math.max(instance.getNumVesselPeriods() / 3, 1);
         rand = new Random();
 
@@ -81,6 +141,48 @@ public class DecomposedNeighborhoodSearch {
         this.rand = seed;
     }
 
+    /**
+     * Publish the best solutions to the shared state, adopt its incumbent at the end of each shake, and draw the shake
+     * priorities against its tabu set instead of the own one.
+     */
+    public void setSharedState(SharedSearchState sharedState, int worker) {
+        this.sharedState = sharedState;
+        this.worker = worker;
+    }
+
+    public void setIslandExchange(IslandExchange islandExchange) {
+        this.islandExchange = islandExchange;
+    }
+
+    /**
+     * Receive the events of the search, in addition to the console output if verbose.
+     */
+    public void addListener(SearchListener listener) {
+        listeners.add(listener);
+    }
+
+    private long elapsedMillis() {
+        return deadline.elapsedMillis();
+    }
+
+    /**
+     * Save the state of the search every {@link #CHECKPOINT_INTERVAL} seconds and every improving incumbent.
+     */
+    public void setCheckpointer(SearchCheckpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    /**
+     * Continue the next search from a checkpoint instead of starting over. The elapsed time of the checkpoint counts
+     * towards the time limit.
+     */
+    public void resumeFrom(SearchCheckpointData checkpoint) {
+        if (checkpoint.numVesselPeriods != instance.getNumVesselPeriods() || checkpoint.numSubblocks != instance.getNumSubblocks())
+            throw new IllegalArgumentException(String.format("Checkpoint of %d vessel periods and %d subblocks does not match the instance",
+                    checkpoint.numVesselPeriods, checkpoint.numSubblocks));
+        this.resumedCheckpoint = checkpoint;
+    }
+
     public void setCplexParams(Integer timeLimit, Integer threads) {
         this.timeLimit = timeLimit;
         this.threads = threads;
@@ -109,6 +211,7 @@ public class DecomposedNeighborhoodSearch {
                             Map.Entry::getKey,
                             e -> new HashSet<>(e.getValue())
                     ));
+            publishBestSolution();
         }
 
     }
@@ -145,7 +248,7 @@ public class DecomposedNeighborhoodSearch {
 //
 //        while (noBestFoundIteration < MAX_NO_BEST_ITERATIONS && noImprovedIteration < MAX_NO_IMPROVED_ITERATIONS
 //                && explored < MAX_EXPLORED_SOLUTION
-//                && (timeLimit == null || (System.currentTimeMillis() - startTime) / 1000 < timeLimit)) {
+//                && !deadline.isExpired()) {
 
     /// /            if (verbose) {
     /// /                out.println(explored + "\tCurrent TemporarySolution : " + currentSolution.briefObjectives());
@@ -239,9 +342,9 @@ public class DecomposedNeighborhoodSearch {
 //        }
 //
 //    }
-    private void setCurrentSolutionByHeuristic(List<VesselPeriod> priority, Map<VesselPeriod, Map<Subblock, Double>> costs) {
+    private void setCurrentSolutionByHeuristic(List<VesselPeriod> priority, CostMatrix costs) {
         currentPriority = deepCopyPriority(priority);
-        currentCosts = deepCopyCost(costs);
+        currentCosts = new CostMatrix(costs);
 
         currentAssignment = heuristic.assignNeededSubblocksByCost(priority, costs);
         currentSolution = evaluateAssignment(currentAssignment);
@@ -265,7 +368,7 @@ public class DecomposedNeighborhoodSearch {
 
         // Ensure that the initial assignment and solution are feasible.
         int shakes = 1;
-        while (currentSolution == null && (timeLimit == null || (System.currentTimeMillis() - startTime) / 1000 < timeLimit)) {
+        while (currentSolution == null && !deadline.isExpired()) {
             Collections.shuffle(currentPriority);
             currentAssignment = heuristic.assignNeededSubblocksByCost(priority, costs);
             currentSolution = evaluateAssignment(currentAssignment);
@@ -298,9 +401,9 @@ public class DecomposedNeighborhoodSearch {
 
     private final int MAX_HEURISTIC_RANDOM_ATTEMPTS = 1000;
 
-    private void findInitialSolution(List<VesselPeriod> shakingPriority, Map<VesselPeriod, Map<Subblock, Double>> shakingCosts) {
+    private void findInitialSolution(List<VesselPeriod> shakingPriority, CostMatrix shakingCosts) {
         currentPriority = deepCopyPriority(shakingPriority);
-        currentCosts = deepCopyCost(shakingCosts);
+        currentCosts = new CostMatrix(shakingCosts);
 
         currentAssignment = heuristic.assignNeededSubblocksByCost(shakingPriority, shakingCosts);
         currentSolution = evaluateAssignment(currentAssignment);
@@ -315,7 +418,7 @@ public class DecomposedNeighborhoodSearch {
 
         // Ensure that the initial assignment and solution are feasible.
         int shakes = 1;
-        while (currentSolution == null && shakes <= MAX_HEURISTIC_RANDOM_ATTEMPTS && (timeLimit == null || (System.currentTimeMillis() - startTime) / 1000 < timeLimit)) {
+        while (currentSolution == null && shakes <= MAX_HEURISTIC_RANDOM_ATTEMPTS && !deadline.isExpired()) {
             Collections.shuffle(currentPriority);
             currentAssignment = heuristic.assignNeededSubblocksByCost(shakingPriority, shakingCosts);
             currentSolution = evaluateAssignment(currentAssignment);
@@ -349,16 +452,11 @@ public class DecomposedNeighborhoodSearch {
                 ));
     }
 
-    private static Solution solveWithTimeLimit(IndexedCplexFixedSubblockModel solver, long remainingTime) throws IloException {
-        if (remainingTime <= 0) {
-            return null;
-        }
-        solver.cplex.setParam(ilog.cplex.IloCplex.IntParam.TimeLimit, remainingTime);
-        return solver.solve() ? solver.getIntegratedSolution() : null;
-    }
-
-    private static Solution solveWithoutTimeLimit(IndexedCplexFixedSubblockModel solver) throws IloException {
-        return solver.solve() ? solver.getIntegratedSolution() : null;
+    /**
+     * @return the upper cutoff of the neighbor subproblems, i.e. the current objective if {@link #INCUMBENT_CUTOFF}
+     */
+    private double neighborCutoff() {
+        return INCUMBENT_CUTOFF ? currentSolution.getObjAll() - PRECISION : IndexedCplexFixedSubblockModel.NO_CUTOFF;
     }
 
     public boolean CRITICAL_NEIGHBORS = true;
@@ -369,74 +467,98 @@ public class DecomposedNeighborhoodSearch {
 
 
     private class ShakeManager {
-        public Map<VesselPeriod, Map<Subblock, Double>> costs;
+        public CostMatrix costs;
         public List<VesselPeriod> priority;
 
-        public ShakeManager(Map<VesselPeriod, Map<Subblock, Double>> costs, List<VesselPeriod> priority) {
+        public ShakeManager(CostMatrix costs, List<VesselPeriod> priority) {
             // deep copy
-            this.costs = costs.entrySet().stream()
-                    .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            entry -> entry.getValue().entrySet().stream()
-                                    .collect(Collectors.toMap(
-                                            Map.Entry::getKey,
-                                            Map.Entry::getValue
-                                    ))
-                    ));
+            this.costs = new CostMatrix(costs);
             this.priority = new ArrayList<>(priority);
         }
     }
 
     public void newSearch() {
-        startTime = System.currentTimeMillis();
+        SearchCheckpointData resumed = resumedCheckpoint;
+        resumedCheckpoint = null;
+        deadline = Deadline.of(timeLimit, resumed != null ? resumed.elapsedMillis : 0);
+        lastMigrationTime = System.currentTimeMillis();
+        lastCheckpointTime = lastMigrationTime;
+        List<SearchListener> searchListeners = new ArrayList<>();
+        if (verbose)
+            searchListeners.add(new ConsoleSearchListener(out, verboseBriefly));
+        searchListeners.addAll(listeners);
+        listener = CompositeSearchListener.of(searchListeners);
         int evaluatedSolutions = 0;
+        if (resumed != null) {
+            restoreCheckpoint(resumed);
+            evaluatedSolutions = resumed.evaluatedSolutions;
+        }
+        evaluationCache = EVALUATION_CACHE_SIZE > 0 ? new EvaluationCache(instance, EVALUATION_CACHE_SIZE) : null;
+
+        mipStarts = WARM_START && !HEURISTIC_EVALUATION ? new MipStartMonitor() : null;
+
+        try (CplexPool.Lease lease = HEURISTIC_EVALUATION && !LOCAL_REFINEMENT ? null : CplexPool.shared().acquire();
+             AssignmentEvaluator evaluator = HEURISTIC_EVALUATION ? new HeuristicAssignmentEvaluator(instance) :
+                     new CplexAssignmentEvaluator(instance, lease.cplex(), mipStarts, BATCHED_CHANGES);
+             NeighborEvaluationPool pool = EVALUATION_WORKERS > 1 ?
+                     new NeighborEvaluationPool(EVALUATION_WORKERS, HEURISTIC_EVALUATION ?
+                             () -> new HeuristicAssignmentEvaluator(instance) :
+                             () -> CplexAssignmentEvaluator.create(instance, EVALUATION_THREADS, mipStarts,
+                                     BATCHED_CHANGES)) : null) {
+
+            IloCplex cplex = lease != null ? lease.cplex() : null;
+            if (cplex != null) {
+                cplex.setOut(null);
+                cplex.setWarning(null);
+                if (mipStarts != null)
+                    mipStarts.attach(cplex);
+                if (threads != null)
+                    cplex.setParam(IloCplex.Param.Threads, threads);
+                cplex.setParam(IloCplex.Param.Emphasis.Memory, true);
+            }
 
-        try (IloCplex cplex = new IloCplex()) {
-
-            cplex.setOut(null);
-            cplex.setWarning(null);
-            if (threads != null)
-                cplex.setParam(IloCplex.Param.Threads, threads);
-            cplex.setParam(IloCplex.Param.Emphasis.Memory, true);
-
-            Map<VesselPeriod, Map<Subblock, Double>> shakingCosts = heuristic.getDistanceCostsByEqualStorage();
-            List<VesselPeriod> shakingPriority = heuristic.getFirstCommeFirstServedPriority();
+            CostMatrix shakingCosts = resumed != null ? new CostMatrix(instance, resumed.shakingCosts) :
+                    heuristic.getDistanceCostsByEqualStorage();
+            List<VesselPeriod> shakingPriority = resumed != null ? toVesselPeriods(resumed.shakingPriority) :
+                    heuristic.getFirstCommeFirstServedPriority();
 
 
-            for (int shakes = 0; shakes <= SHAKING_TIMES &&
-                    (timeLimit == null || (System.currentTimeMillis() - startTime) / 1000 < timeLimit);
+            for (int shakes = resumed != null ? resumed.nextShake : 0; shakes <= SHAKING_TIMES &&
+                    !deadline.isExpired();
                  shakes++) {
 
                 Solution previousBestSolution = bestSolution;
-
-                IndexedCplexFixedSubblockModel solver = null;
+                if (listener != null)
+                    listener.shakeStarted(new SearchListener.ShakeStarted(shakes, elapsedMillis()));
 
                 Map<VesselPeriod, Set<Subblock>> initialHeuristicAssignment = null;
                 Solution initialHeuristicSolution = null;
                 int heuristicAttempts = 0;
                 while (initialHeuristicSolution == null && heuristicAttempts <= MAX_HEURISTIC_RANDOM_ATTEMPTS &&
-                        (timeLimit == null || (System.currentTimeMillis() - startTime) / 1000 < timeLimit)) {
+                        !deadline.isExpired()) {
                     if (heuristicAttempts > 0)
                         Collections.shuffle(shakingPriority, rand);
                     initialHeuristicAssignment = heuristic.assignNeededSubblocksByCost(shakingPriority, shakingCosts);
 
                     if (initialHeuristicAssignment != null) {
-                        solver = solver == null ? IndexedCplexFixedSubblockModel.buildIntegratedSubproblemModel(instance, cplex, initialHeuristicAssignment) :
-                                solver.changeSubblockAssignmentTo(initialHeuristicAssignment);
-
-                        if (timeLimit != null) {
-                            long remainingTime = this.timeLimit - (System.currentTimeMillis() - startTime) / 1000;
-                            initialHeuristicSolution = solveWithTimeLimit(solver, remainingTime);
+                        long hash = evaluationCache != null ? evaluationCache.hash(initialHeuristicAssignment) : 0;
+                        initialHeuristicSolution = evaluationCache != null ? evaluationCache.get(hash) : null;
+                        if (initialHeuristicSolution != null) {
+                            cacheHits++;
                         } else {
-                            initialHeuristicSolution = solveWithoutTimeLimit(solver);
+                            initialHeuristicSolution = evaluator.evaluate(initialHeuristicAssignment,
+                                    deadline.limitedTo(EVALUATION_TIME_LIMIT), IndexedCplexFixedSubblockModel.NO_CUTOFF)
+                                    .solution();
+                            evaluatedSolutions++;
+                            if (evaluationCache != null) {
+                                cacheMisses++;
+                                evaluationCache.put(hash, initialHeuristicSolution);
+                            }
                         }
-                        evaluatedSolutions++;
                     }
-                    if (verbose)
-                        out.printf("Attempt %d: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n", heuristicAttempts,
-                                (initialHeuristicSolution != null ? "Initial TemporarySolution by Heuristic: " + initialHeuristicSolution.briefObjectives()
-                                        : "No Initial TemporarySolution Found by Heuristic"),
-                                (System.currentTimeMillis() - startTime) * 1. / 1000, evaluatedSolutions);
+                    if (listener != null)
+                        listener.heuristicAttempt(new SearchListener.HeuristicAttempt(heuristicAttempts, initialHeuristicSolution,
+                                elapsedMillis(), evaluatedSolutions));
                     heuristicAttempts++;
                 }
 
@@ -446,7 +568,7 @@ public class DecomposedNeighborhoodSearch {
 
                 currentSolution = initialHeuristicSolution;
                 currentAssignment = initialHeuristicAssignment;
-                currentCosts = deepCopyCost(shakingCosts);
+                currentCosts = new CostMatrix(shakingCosts);
 
                 if (initialSolution == null)
                     initialSolution = initialHeuristicSolution;
@@ -463,85 +585,201 @@ public class DecomposedNeighborhoodSearch {
 
                     while (noBestFoundIteration < MAX_NO_BEST_ITERATIONS && noImprovedIteration < MAX_NO_IMPROVED_ITERATIONS
                             && explored < MAX_EXPLORED_SOLUTION
-                            && (timeLimit == null || (System.currentTimeMillis() - startTime) / 1000 < timeLimit)) {
+                            && !deadline.isExpired()) {
 
                         updateCurrentCostsIteratively(noBestFoundIteration);
                         boolean isImprovedFound = false;
                         boolean isBestFound = false;
                         boolean findFeasible = false;
 
-                        List<Map<VesselPeriod, Set<Subblock>>> neighbors = CRITICAL_NEIGHBORS ?
+                        List<SubblockMove> neighbors = CRITICAL_NEIGHBORS ?
                                 generateLimitedNeighbors() : generateRandomNeighbors(currentAssignment);
 
-                        if (verbose)
-                            out.println(explored + "  Number of neighbors to be explored: " + neighbors.size());
-                        for (Map<VesselPeriod, Set<Subblock>> neighborAssignment : neighbors) {
-                            if (timeLimit != null && (System.currentTimeMillis() - startTime) / 1000 >= timeLimit)
+                        double[] surrogateValues = null;
+                        if (SURROGATE_TOP_K > 0) {
+                            SurrogateEvaluator surrogate = new SurrogateEvaluator(instance, currentAssignment, currentSolution);
+                            Map<SubblockMove, Double> values = new HashMap<>();
+                            for (SubblockMove move : neighbors)
+                                values.put(move, surrogate.evaluate(move));
+                            if (neighbors.size() > SURROGATE_TOP_K) {
+                                screenedNeighbors += neighbors.size() - SURROGATE_TOP_K;
+                                neighbors = neighbors.stream()
+                                        .sorted(Comparator.comparingDouble(values::get))
+                                        .limit(SURROGATE_TOP_K)
+                                        .collect(Collectors.toList());
+                            }
+                            surrogateValues = neighbors.stream().mapToDouble(values::get).toArray();
+                        }
+                        // surrogate and true objectives of the feasible neighbors, to log the rank correlation
+                        double[] estimatedObjectives = new double[neighbors.size()];
+                        double[] solvedObjectives = new double[neighbors.size()];
+                        int solvedNeighbors = 0;
+                        // The neighbors are moves from this assignment, which is materialized again only on acceptance.
+                        // The evaluator is told the accepted move after the loop, to go on from the new current one.
+                        Map<VesselPeriod, Set<Subblock>> base = currentAssignment;
+                        SubblockMove accepted = null;
+                        // the neighbors cut off under the current objective: dominated, or infeasible when CPLEX
+                        // cannot tell
+                        List<Integer> cutOffNeighbors = new ArrayList<>();
+
+                        // The neighbors already evaluated are taken from the cache instead of being solved again.
+                        // They are looked up in advance only for the pool, so that a sequential search breaking early
+                        // does not read (and materialize) the rest of the neighborhood.
+                        long[] neighborHashes = new long[neighbors.size()];
+                        Solution[] cachedSolutions = new Solution[neighbors.size()];
+                        long baseHash = evaluationCache != null ? evaluationCache.hash(base) : 0;
+                        if (evaluationCache != null && pool != null) {
+                            for (int n = 0; n < neighbors.size(); n++) {
+                                neighborHashes[n] = evaluationCache.hash(baseHash, neighbors.get(n), base);
+                                cachedSolutions[n] = evaluationCache.get(neighborHashes[n]);
+                            }
+                        }
+
+                        if (listener != null)
+                            listener.neighborsGenerated(new SearchListener.NeighborsGenerated(explored, neighbors.size()));
+                        NeighborEvaluationPool.Batch batch = null;
+                        int[] batchIndices = new int[neighbors.size()];
+                        if (pool != null) {
+                            List<SubblockMove> unsolved = new ArrayList<>();
+                            for (int n = 0; n < neighbors.size(); n++) {
+                                batchIndices[n] = cachedSolutions[n] != null ? -1 : unsolved.size();
+                                if (cachedSolutions[n] == null)
+                                    unsolved.add(neighbors.get(n));
+                            }
+                            batch = pool.submit(base, unsolved, deadline, EVALUATION_TIME_LIMIT, neighborCutoff(),
+                                    mipStarts != null ? currentSolution : null);
+                        }
+                        for (int n = 0; n < neighbors.size(); n++) {
+                            if (deadline.isExpired())
                                 break;
+                            SubblockMove move = neighbors.get(n);
+                            if (evaluationCache != null && pool == null) {
+                                neighborHashes[n] = evaluationCache.hash(baseHash, move, base);
+                                cachedSolutions[n] = evaluationCache.get(neighborHashes[n]);
+                            }
 
-                            Solution neighborSolution;
-                            solver.changeSubblockAssignmentTo(neighborAssignment);
-                            if (timeLimit != null) {
-                                long remainingTime = this.timeLimit - (System.currentTimeMillis() - startTime) / 1000;
-                                neighborSolution = solveWithTimeLimit(solver, remainingTime);
+                            Solution neighborSolution = cachedSolutions[n];
+                            boolean dominated = false;
+                            long evaluationStart = System.nanoTime();
+                            if (neighborSolution != null) {
+                                cacheHits++;
                             } else {
-                                neighborSolution = solveWithoutTimeLimit(solver);
+                                AssignmentEvaluator.Evaluation evaluation = batch != null ? batch.get(batchIndices[n]) :
+                                        evaluator.evaluate(base, move, deadline.limitedTo(EVALUATION_TIME_LIMIT),
+                                                neighborCutoff(), mipStarts != null ? currentSolution : null);
+                                neighborSolution = evaluation.solution();
+                                dominated = evaluation.isCutOff();
+                                evaluatedSolutions++;
+                                if (evaluationCache != null) {
+                                    cacheMisses++;
+                                    // a dominated neighbor is only known not to improve the current solution
+                                    if (!dominated)
+                                        evaluationCache.put(neighborHashes[n], neighborSolution);
+                                }
                             }
-                            evaluatedSolutions++;
+                            long evaluationNanos = cachedSolutions[n] != null ? 0 : System.nanoTime() - evaluationStart;
 
                             explored++;
-                            if (neighborSolution != null) {
+                            if (dominated) {
+                                cutOffNeighbors.add(n);
+                                dominatedNeighbors++;
+                                if (listener != null)
+                                    listener.neighborEvaluated(new SearchListener.NeighborEvaluated(explored, null,
+                                            SearchListener.Outcome.DOMINATED, elapsedMillis(), evaluatedSolutions, evaluationNanos));
+                            } else if (neighborSolution == null) {
+                                if (listener != null)
+                                    listener.neighborEvaluated(new SearchListener.NeighborEvaluated(explored, null,
+                                            SearchListener.Outcome.INFEASIBLE, elapsedMillis(), evaluatedSolutions, evaluationNanos));
+                            } else {
                                 findFeasible = true;
-                                Map<VesselPeriod, Map<Subblock, Double>> neighborCosts = estimateCosts(neighborAssignment, neighborSolution);
+                                if (surrogateValues != null && Double.isFinite(surrogateValues[n])) {
+                                    estimatedObjectives[solvedNeighbors] = surrogateValues[n];
+                                    solvedObjectives[solvedNeighbors] = neighborSolution.getObjAll();
+                                    solvedNeighbors++;
+                                }
+                                CostMatrix neighborCosts = estimateCosts(neighborSolution);
 
                                 if (neighborSolution.getObjAll() < bestSolution.getObjAll() - PRECISION) {
-                                    if (verbose)
-                                        out.printf("%d\t*** Neighbor TemporarySolution: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n",
-                                                explored, neighborSolution.briefObjectives(),
-                                                (System.currentTimeMillis() - startTime) * 1. / 1000, evaluatedSolutions);
+                                    if (listener != null)
+                                        listener.neighborEvaluated(new SearchListener.NeighborEvaluated(explored, neighborSolution,
+                                                SearchListener.Outcome.BEST, elapsedMillis(), evaluatedSolutions, evaluationNanos));
 
+                                    Map<VesselPeriod, Set<Subblock>> neighborAssignment = move.applyTo(base);
                                     updateBestSolution(neighborAssignment, neighborSolution);
                                     updateCurrentSolution(neighborAssignment, neighborSolution);
                                     updateCurrentCostsAggressively(neighborCosts);
+                                    accepted = move;
 
                                     isBestFound = true;
                                     isImprovedFound = true;
                                     if (meetBestAndBreak) break;
                                 } else if (neighborSolution.getObjAll() < currentSolution.getObjAll() - PRECISION) {
-                                    if (verbose)
-                                        out.printf("%d\t+++ Neighbor TemporarySolution: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n",
-                                                explored, neighborSolution.briefObjectives(),
-                                                (System.currentTimeMillis() - startTime) * 1. / 1000, evaluatedSolutions);
+                                    if (listener != null)
+                                        listener.neighborEvaluated(new SearchListener.NeighborEvaluated(explored, neighborSolution,
+                                                SearchListener.Outcome.IMPROVED, elapsedMillis(), evaluatedSolutions, evaluationNanos));
 
-                                    updateCurrentSolution(neighborAssignment, neighborSolution);
+                                    updateCurrentSolution(move.applyTo(base), neighborSolution);
                                     updateCurrentCostsAverage(neighborCosts);
+                                    accepted = move;
                                     isImprovedFound = true;
                                     if (meetImprovedAndBreak) break;
 
                                 } else {
                                     updateCurrentCostsAverage(neighborCosts);
-                                    if (verbose && !verboseBriefly)
-                                        out.printf("%d\t--- Neighbor TemporarySolution: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n",
-                                                explored, neighborSolution.briefObjectives(),
-                                                (System.currentTimeMillis() - startTime) * 1. / 1000, evaluatedSolutions);
+                                    if (listener != null)
+                                        listener.neighborEvaluated(new SearchListener.NeighborEvaluated(explored, neighborSolution,
+                                                SearchListener.Outcome.WORSE, elapsedMillis(), evaluatedSolutions, evaluationNanos));
                                 }
                             }
                         }
+                        // neighbors left behind by a break (or the time limit) are still queued or being solved
+                        if (batch != null)
+                            batch.cancel();
+                        if (accepted != null)
+                            evaluator.rebase(base, accepted, currentAssignment);
+                        if (accepted != null && occupancyAssignment == base) {
+                            occupancy.apply(accepted);
+                            occupancyAssignment = currentAssignment;
+                        }
+                        if (solvedNeighbors >= 3) {
+                            double correlation = MyMathMethods.rankCorrelation(estimatedObjectives, solvedObjectives, solvedNeighbors);
+                            if (!Double.isNaN(correlation)) {
+                                rankCorrelationSum += correlation;
+                                rankCorrelationCount++;
+                                if (verboseLog)
+                                    briefLog.append(String.format("%d\tSurrogate rank correlation = %.3f over %d neighbors%n",
+                                            explored, correlation, solvedNeighbors));
+                            }
+                        }
+                        // Without a feasible neighbor, the cut off ones are solved again without the cutoff until one
+                        // is feasible, so that the neighborhood search ends only if none is, as without the cutoff.
+                        // The other cut off neighbors do not contribute to the cost estimates.
+                        for (int n : cutOffNeighbors) {
+                            if (findFeasible || deadline.isExpired())
+                                break;
+                            Solution neighborSolution = evaluator.evaluate(base, neighbors.get(n),
+                                    deadline.limitedTo(EVALUATION_TIME_LIMIT), IndexedCplexFixedSubblockModel.NO_CUTOFF,
+                                    mipStarts != null ? currentSolution : null).solution();
+                            evaluatedSolutions++;
+                            if (evaluationCache != null)
+                                evaluationCache.put(neighborHashes[n], neighborSolution);
+                            if (neighborSolution != null) {
+                                findFeasible = true;
+                                updateCurrentCostsAverage(estimateCosts(neighborSolution));
+                            }
+                        }
                         if (!findFeasible) {
-                            if (verbose)
-                                out.println(explored + "\t    " + "No Feasible TemporarySolution in Current TemporarySolution's Neighborhood (" + neighbors.size() + "[<=" + NEIGHBOR_LIMIT + "]).");
+                            if (listener != null)
+                                listener.noFeasibleNeighbor(new SearchListener.NoFeasibleNeighbor(explored, neighbors.size(), NEIGHBOR_LIMIT));
                             break;
                         }
                         noBestFoundIteration = isBestFound ? 0 : noBestFoundIteration + 1;
                         noImprovedIteration = isImprovedFound ? 0 : noImprovedIteration + 1;
                     }
-                    if (verbose) {
-                        out.println("Neighborhood Search Ends With Best TemporarySolution: " + bestSolution.briefObjectives());
-                        if (initialHeuristicSolution != null)
-                            out.printf("\t Improve %f %% from %s\n\n", 100 * (initialHeuristicSolution.getObjAll() - bestSolution.getObjAll()) / initialHeuristicSolution.getObjAll(), initialHeuristicSolution.briefObjectives());
-                    }
+                    if (listener != null)
+                        listener.neighborhoodSearchEnded(new SearchListener.NeighborhoodSearchEnded(bestSolution, initialHeuristicSolution));
                 }
-                solver.cplex.clearModel();
+                evaluator.reset();
 
 
                 // local refinement
@@ -552,11 +790,11 @@ public class DecomposedNeighborhoodSearch {
                     boolean flag = true;
 
                     while (flag &&
-                            (timeLimit == null || (System.currentTimeMillis() - startTime) / 1000 < timeLimit)) {
-                        if (timeLimit != null)
-                            cplex.setParam(IloCplex.IntParam.TimeLimit, timeLimit - (double) (System.currentTimeMillis() - startTime) / 1000);
+                            !deadline.isExpired()) {
+                        cplex.setParam(IloCplex.Param.TimeLimit, deadline.timeLimit(0));
 
                         IndexBasedSolution integratedSolution;
+                        long refinementStart = System.nanoTime();
 
                         if (optimizeGivenTimeAssignment) {
                             IndexFormulationCplex model = IndexFormulationCplex.buildModelGivenTimeAssignment(instance, cplex, current);
@@ -582,10 +820,9 @@ public class DecomposedNeighborhoodSearch {
                             current = integratedSolution;
                         else
                             flag = false;
-                        if (verbose)
-                            out.printf("%s\t+++ Local Refined TemporarySolution: %s, Elapsed time = %.2f sec, Evaluated solutions = %d.%n",
-                                    optimizeGivenTimeAssignment ? "OptGivenT" : "OptGivenK", integratedSolution.briefObjectives(),
-                                    (System.currentTimeMillis() - startTime) * 1. / 1000, evaluatedSolutions);
+                        if (listener != null)
+                            listener.refinementStep(new SearchListener.RefinementStep(optimizeGivenTimeAssignment ? "OptGivenT" : "OptGivenK",
+                                    integratedSolution, elapsedMillis(), evaluatedSolutions, System.nanoTime() - refinementStart));
 
                     }
 
@@ -593,50 +830,36 @@ public class DecomposedNeighborhoodSearch {
                     if (refinedSolution.getObjAll() < bestSolution.getObjAll() - PRECISION) {
                         updateBestSolution(refinedSolution.getSubblockAssignments(), refinedSolution);
                     }
-                    if (verbose) {
-                        out.println("Local Refinement Ends With Best TemporarySolution: " + bestSolution.briefObjectives());
-                        out.printf("\t Improve %f %% from current solution(%s)\n\n", 100 * (currentSolution.getObjAll() - refinedSolution.getObjAll()) / currentSolution.getObjAll(), currentSolution.briefObjectives());
-                    }
+                    if (listener != null)
+                        listener.refinementEnded(new SearchListener.RefinementEnded(bestSolution, refinedSolution, currentSolution));
                     if (refinedSolution.getObjAll() < currentSolution.getObjAll() - PRECISION)
                         updateCurrentSolution(refinedSolution.getSubblockAssignments(), refinedSolution);
 
-                    solver.cplex.clearModel();
+                    cplex.clearModel();
                 }
 
+                adoptSharedIncumbent();
+                if (islandExchange != null && System.currentTimeMillis() - lastMigrationTime >= MIGRATION_INTERVAL * 1000L)
+                    migrate();
 
-                if (verbose) {
-                    out.println("Shake " + shakes + " Ends With: " + bestSolution.briefObjectives());
-                    if (previousBestSolution != null)
-                        out.printf("\t Improve %f %% from %s\n", 100 * (previousBestSolution.getObjAll() - bestSolution.getObjAll()) / previousBestSolution.getObjAll(),
-                                previousBestSolution.briefObjectives());
-                    out.printf("Elapsed Time = %.2f sec, Evaluated solutions = %d.%n",
-                            (System.currentTimeMillis() - startTime) * 1. / 1000, evaluatedSolutions);
-                    out.println("-".repeat(100));
-                    out.println();
-                }
+                if (listener != null)
+                    listener.shakeEnded(new SearchListener.ShakeEnded(shakes, bestSolution, previousBestSolution,
+                            elapsedMillis(), evaluatedSolutions));
 
 
-                if (shakes <= SHAKING_TIMES && (timeLimit == null ||
-                        (System.currentTimeMillis() - startTime) / 1000 < timeLimit)) {
+                if (shakes <= SHAKING_TIMES && !deadline.isExpired()) {
                     Map<VesselPeriod, Set<Subblock>> referenceAssignment = previousBestSolution != bestSolution ? bestAssignment : currentAssignment;
                     Solution referenceSolution = previousBestSolution != bestSolution ? bestSolution : currentSolution;
 
-                    Map<VesselPeriod, Map<Subblock, Double>> costs = estimateCosts(referenceAssignment, referenceSolution);
-
-                    Map<VesselPeriod, Double> costsOfVp = costs.entrySet().stream()
-                            .collect(Collectors.toMap(
-                                    Map.Entry::getKey,
-                                    entry -> entry.getValue().values().stream()
-                                            .mapToDouble(Double::doubleValue).sum()
-                                            / entry.getKey().totalLoadContainers
-                            ));
-
-                    shakingPriority = tabuCriticalShake(shakingPriority, costsOfVp);
-                    costs.forEach((vp, subblockMap) ->
-                            subblockMap.forEach((subblock, delta) ->
-                                    shakingCosts.get(vp).merge(subblock, delta, (current, val) -> val)
-                            )
-                    );
+                    CostMatrix costs = estimateCosts(referenceSolution);
+
+                    shakingPriority = tabuCriticalShake(shakingPriority, costsOfVesselPeriods(costs));
+                    shakingCosts.overwrite(costs);
+
+                    if (checkpointer != null && System.currentTimeMillis() - lastCheckpointTime >= CHECKPOINT_INTERVAL * 1000L) {
+                        checkpointer.saveAsync(checkpoint(shakes + 1, shakingPriority, shakingCosts, evaluatedSolutions));
+                        lastCheckpointTime = System.currentTimeMillis();
+                    }
                 } else {
                     break;
                 }
@@ -653,24 +876,25 @@ public class DecomposedNeighborhoodSearch {
 
 
     private List<VesselPeriod> shakePriority(List<VesselPeriod> originalPriority, Map<VesselPeriod, Set<Subblock>> assignment, Solution solution) {
-        Map<VesselPeriod, Map<Subblock, Double>> costs = estimateCosts(assignment, solution);
+        CostMatrix costs = estimateCosts(solution);
 
         // sum the costs of all assigned subblock for each vessel period. Then with the VesselPeriod->Double map,
         // get the list of VesselPeriods sorted by the costs (ascending order).
 
-        Map<VesselPeriod, Double> costsOfVp = costs.entrySet().stream()
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        entry -> entry.getValue().values().stream()
-                                .mapToDouble(Double::doubleValue).sum()
-                                / entry.getKey().totalLoadContainers
-                ));
+        Map<VesselPeriod, Double> costsOfVp = costsOfVesselPeriods(costs);
 
 
 //        return sortAllByCost(costsOfVp);
         return tabuCriticalShake(originalPriority, costsOfVp);
     }
 
+    private Map<VesselPeriod, Double> costsOfVesselPeriods(CostMatrix costs) {
+        Map<VesselPeriod, Double> costsOfVp = new HashMap<>(instance.getNumVesselPeriods());
+        for (VesselPeriod vp : instance.getVesselPeriods())
+            costsOfVp.put(vp, costs.getSumPerLoadContainer(vp));
+        return costsOfVp;
+    }
+
     private List<VesselPeriod> tabuCriticalShake(List<VesselPeriod> originalPriority, Map<VesselPeriod, Double> costsOfVp) {
         List<VesselPeriod> criticalElements = originalPriority.stream()
                 .sorted(Comparator.comparingDouble(vp -> -costsOfVp.getOrDefault(vp, 0.0)))
@@ -689,18 +913,21 @@ public class DecomposedNeighborhoodSearch {
             int insertPos = rand.nextInt(newPriority.size() + 1);
             newPriority.addAll(insertPos, criticalElements);
 
-            isUnique = !tabuPriority.contains(newPriority);
+            isUnique = !(sharedState != null ? sharedState.isTabu(newPriority) : tabuPriority.contains(newPriority));
             attempts++;
 
             if (attempts >= MAX_SHAKE_ATTEMPTS) {
-                if (verbose) {
-                    out.println("Reached the maximal shake attempts for new Priority (" + MAX_SHAKE_ATTEMPTS + ")");
-                }
+                if (listener != null)
+                    listener.shakeAttemptsExhausted(new SearchListener.ShakeAttemptsExhausted(MAX_SHAKE_ATTEMPTS));
                 break;
             }
         } while (!isUnique);
 
         List<VesselPeriod> tabuEntry = new ArrayList<>(newPriority);
+        if (sharedState != null) {
+            sharedState.addTabu(tabuEntry);
+            return newPriority;
+        }
         if (tabuPriority.size() >= MAX_TABU_SIZE) {
             Iterator<List<VesselPeriod>> it = tabuPriority.iterator();
             it.next();
@@ -745,31 +972,148 @@ public class DecomposedNeighborhoodSearch {
     }
 
 
-    private Map<VesselPeriod, Map<Subblock, Double>> deepCopyCost(Map<VesselPeriod, Map<Subblock, Double>> costs) {
-        return costs.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,
-                e -> new HashMap<>(e.getValue())));
-    }
-
     public Solution getBestSolution() {
         return bestSolution;
     }
 
 
     private void updateCurrentCostsIteratively(int iteration) {
-        Map<VesselPeriod, Map<Subblock, Double>> costsFromCurrentSolution = estimateCosts(currentAssignment, currentSolution);
+        CostMatrix costsFromCurrentSolution = estimateCosts(currentSolution);
 
         int updateWeight = iteration + 2;
-        costsFromCurrentSolution.forEach((vp, subblockMap) ->
-                subblockMap.forEach((subblock, delta) ->
-                        currentCosts.get(vp).merge(subblock, delta,
-                                (current, val) -> current + (val - current) / updateWeight)
-                )
-        );
+        currentCosts.mergeWeighted(costsFromCurrentSolution, updateWeight);
     }
 
     private void updateBestSolution(Map<VesselPeriod, Set<Subblock>> neighborAssignment, Solution neighborSolution) {
         bestSolution = neighborSolution;
         bestAssignment = neighborAssignment;
+        publishBestSolution();
+    }
+
+    /**
+     * Exchange the best solutions with the other islands: publish the own one if it has changed since the last
+     * migration, and continue from the best immigrant if it is better.
+     */
+    public void migrate() {
+        if (islandExchange == null)
+            return;
+        try {
+            if (bestSolution != null && bestSolution != emigratedSolution) {
+                islandExchange.emigrate(bestAssignment, bestSolution);
+                emigratedSolution = bestSolution;
+            }
+            IslandExchange.Elite elite = islandExchange.immigrate();
+            if (elite != null && (bestSolution == null || elite.solution.getObjAll() < bestSolution.getObjAll() - PRECISION)) {
+                recordBestSolutionIfNecessary(elite.assignment, elite.solution);
+                // the immigrant is not sent back
+                emigratedSolution = bestSolution;
+                if (verboseLog)
+                    briefLog.append(String.format("Migration: %s from island %d%n", elite.solution.briefObjectives(), elite.island));
+            }
+        } catch (IOException e) {
+            e.printStackTrace(out);
+            throw new RuntimeException(e);
+        }
+        lastMigrationTime = System.currentTimeMillis();
+    }
+
+    private void publishBestSolution() {
+        if (sharedState != null)
+            sharedState.offer(deepCopyOfAssignment(bestAssignment), bestSolution, worker);
+        if (checkpointer != null)
+            checkpointer.writeIncumbentAsync(bestSolution);
+        if (listener != null)
+            listener.incumbentImproved(new SearchListener.IncumbentImproved(bestSolution, elapsedMillis()));
+    }
+
+    /**
+     * @return the state of the search at the end of a shake, copied so that it is serialized in the background
+     */
+    private SearchCheckpointData checkpoint(int nextShake, List<VesselPeriod> shakingPriority, CostMatrix shakingCosts,
+                                            int evaluatedSolutions) {
+        SearchCheckpointData data = new SearchCheckpointData();
+        data.numVesselPeriods = instance.getNumVesselPeriods();
+        data.numSubblocks = instance.getNumSubblocks();
+        data.nextShake = nextShake;
+        data.elapsedMillis = deadline.elapsedMillis();
+        data.evaluatedSolutions = evaluatedSolutions;
+        data.cacheHits = cacheHits;
+        data.cacheMisses = cacheMisses;
+        data.screenedNeighbors = screenedNeighbors;
+        data.dominatedNeighbors = dominatedNeighbors;
+        data.rankCorrelationSum = rankCorrelationSum;
+        data.rankCorrelationCount = rankCorrelationCount;
+        data.shakingPriority = toVpIds(shakingPriority);
+        data.shakingCosts = shakingCosts.toArray();
+        data.tabuPriorities = tabuPriority.stream().map(DecomposedNeighborhoodSearch::toVpIds).collect(Collectors.toList());
+        data.bestAssignment = toIds(bestAssignment);
+        data.currentAssignment = currentAssignment != null ? toIds(currentAssignment) : null;
+        data.bestSolution = bestSolution.toData();
+        data.currentSolution = currentSolution != null ? currentSolution.toData() : null;
+        data.initialSolution = initialSolution != null ? initialSolution.toData() : null;
+        data.random = SearchCheckpointer.encode(rand);
+        data.briefLog = briefLog.toString();
+        return data;
+    }
+
+    private void restoreCheckpoint(SearchCheckpointData data) {
+        cacheHits = data.cacheHits;
+        cacheMisses = data.cacheMisses;
+        screenedNeighbors = data.screenedNeighbors;
+        dominatedNeighbors = data.dominatedNeighbors;
+        rankCorrelationSum = data.rankCorrelationSum;
+        rankCorrelationCount = data.rankCorrelationCount;
+        tabuPriority = data.tabuPriorities.stream().map(this::toVesselPeriods)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        bestAssignment = fromIds(data.bestAssignment);
+        bestSolution = Solution.fromData(data.bestSolution, instance);
+        currentAssignment = data.currentAssignment != null ? fromIds(data.currentAssignment) : null;
+        currentSolution = data.currentSolution != null ? Solution.fromData(data.currentSolution, instance) : null;
+        initialSolution = data.initialSolution != null ? Solution.fromData(data.initialSolution, instance) : null;
+        rand = SearchCheckpointer.decodeRandom(data.random);
+        briefLog = new StringBuilder(data.briefLog);
+        if (verboseLog)
+            briefLog.append(String.format("Resumed at shake %d after %.2f sec: %s%n",
+                    data.nextShake, data.elapsedMillis / 1000., bestSolution.briefObjectives()));
+        publishBestSolution();
+    }
+
+    private static List<Integer> toVpIds(List<VesselPeriod> priority) {
+        return priority.stream().map(VesselPeriod::getVpId).collect(Collectors.toList());
+    }
+
+    private List<VesselPeriod> toVesselPeriods(List<Integer> vpIds) {
+        return vpIds.stream().map(instance::getVesselPeriod).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static Map<Integer, List<Integer>> toIds(Map<VesselPeriod, Set<Subblock>> assignment) {
+        Map<Integer, List<Integer>> ids = new TreeMap<>();
+        assignment.forEach((vp, subblocks) -> ids.put(vp.getVpId(),
+                subblocks.stream().map(Subblock::getId).sorted().collect(Collectors.toList())));
+        return ids;
+    }
+
+    private Map<VesselPeriod, Set<Subblock>> fromIds(Map<Integer, List<Integer>> ids) {
+        Map<VesselPeriod, Set<Subblock>> assignment = new HashMap<>();
+        ids.forEach((vpId, subblockIds) -> assignment.put(instance.getVesselPeriod(vpId),
+                subblockIds.stream().map(instance::getSubblock).collect(Collectors.toCollection(HashSet::new))));
+        return assignment;
+    }
+
+    /**
+     * Continue from the shared incumbent if another worker has found a better solution.
+     */
+    void adoptSharedIncumbent() {
+        if (sharedState == null)
+            return;
+        SharedSearchState.Incumbent incumbent = sharedState.getIncumbent();
+        if (incumbent != null && incumbent.worker != worker
+                && (bestSolution == null || incumbent.solution.getObjAll() < bestSolution.getObjAll() - PRECISION)) {
+            bestSolution = incumbent.solution;
+            bestAssignment = deepCopyOfAssignment(incumbent.assignment);
+            if (listener != null)
+                listener.incumbentImproved(new SearchListener.IncumbentImproved(bestSolution, elapsedMillis()));
+        }
     }
 
     private void updateCurrentSolution(Map<VesselPeriod, Set<Subblock>> neighborAssignment, Solution neighborSolution) {
@@ -778,29 +1122,42 @@ public class DecomposedNeighborhoodSearch {
     }
 
 
-    private void updateCurrentCostsAggressively(Map<VesselPeriod, Map<Subblock, Double>> neighborCosts) {
+    private void updateCurrentCostsAggressively(CostMatrix neighborCosts) {
         // Update aggressively with the better cost if it is the best.
-        neighborCosts.forEach((vp, subblockMap) ->
-                subblockMap.forEach((subblock, delta) ->
-                        currentCosts.get(vp).merge(subblock, delta, Math::min)
-                )
-        );
+        currentCosts.mergeMin(neighborCosts);
     }
 
-    private void updateCurrentCostsAverage(Map<VesselPeriod, Map<Subblock, Double>> neighborCosts) {
+    private void updateCurrentCostsAverage(CostMatrix neighborCosts) {
         // Update moderately with the average.
-        neighborCosts.forEach((vp, subblockMap) ->
-                subblockMap.forEach((subblock, delta) ->
-                        currentCosts.get(vp).merge(subblock, delta,
-                                (current, val) -> (val + current) / 2)
-                )
-        );
-
+        currentCosts.mergeAverage(neighborCosts);
     }
 
 
     public String searchProcessSummary() {
-        return "Brief Search Log:\n" + briefLog.toString() + "\n";
+        StringBuilder summary = new StringBuilder("Brief Search Log:\n").append(briefLog);
+        if (evaluationCache != null) {
+            int lookups = cacheHits + cacheMisses;
+            summary.append(String.format("Evaluation Cache: hits = %d, misses = %d, hit rate = %.2f %%, size = %d/%d%n",
+                    cacheHits, cacheMisses, lookups == 0 ? 0 : cacheHits * 100. / lookups,
+                    evaluationCache.size(), evaluationCache.getCapacity()));
+        }
+        if (mipStarts != null)
+            summary.append(mipStarts.summary());
+        if (INCUMBENT_CUTOFF)
+            summary.append(String.format("Incumbent Cutoff: dominated neighbors = %d%n", dominatedNeighbors));
+        if (SURROGATE_TOP_K > 0)
+            summary.append(String.format("Surrogate Screening: top-k = %d, screened neighbors = %d, mean rank correlation = %.3f over %d iterations%n",
+                    SURROGATE_TOP_K, screenedNeighbors,
+                    rankCorrelationCount == 0 ? Double.NaN : rankCorrelationSum / rankCorrelationCount, rankCorrelationCount));
+        if (sharedState != null) {
+            SharedSearchState.Incumbent incumbent = sharedState.getIncumbent();
+            summary.append(String.format("Shake Portfolio: workers = %d, incumbent improvements = %d, best found by worker %s%n",
+                    sharedState.getWorkers(), sharedState.getImprovements(), incumbent != null ? incumbent.worker : "N/A"));
+        }
+        if (checkpointer != null)
+            summary.append(String.format("Checkpoints: written = %d, incumbents written = %d, directory = %s%n",
+                    checkpointer.getCheckpoints(), checkpointer.getIncumbents(), checkpointer.getDirectory()));
+        return summary.append("\n").toString();
     }
 
     public String resultSummary() {
@@ -835,145 +1192,78 @@ public class DecomposedNeighborhoodSearch {
         return vesselPeriodAssignment;
     }
 
-    private List<Map<VesselPeriod, Set<Subblock>>> generateRandomNeighbors(Map<VesselPeriod, Set<Subblock>> assignment) {
-        ArrayList<Map<VesselPeriod, Set<Subblock>>> neighbors = new ArrayList<>(NEIGHBOR_LIMIT);
+    private List<SubblockMove> generateRandomNeighbors(Map<VesselPeriod, Set<Subblock>> assignment) {
+        // the candidates replaced by later ones are never materialized
+        long[] neighbors = new long[NEIGHBOR_LIMIT];
+        int size = 0;
 
         Map<Subblock, Set<VesselPeriod>> vesselPeriodAssignment = transformAssignment(assignment);
+        SubblockOccupancy occupancy = occupancyOf(assignment);
+        List<Subblock> subblocks = instance.getSubblocks();
 
         for (Map.Entry<VesselPeriod, Set<Subblock>> entry : assignment.entrySet()) {
             VesselPeriod ip = entry.getKey();
-            Set<VesselPeriod> conflicts = conflictPeriods.get(ip);
             Set<Subblock> oldSubblockSet = entry.getValue();
             for (Subblock oldK : oldSubblockSet) {
-                for (Subblock newK : instance.getSubblocks()) {
-                    if (oldSubblockSet.contains(newK)) {
+                for (Subblock newK : subblocks) {
+                    if (!occupancy.canTake(ip, newK))
                         continue;
-                    }
-                    boolean feasible = true;
-                    for (VesselPeriod jq : vesselPeriodAssignment.getOrDefault(newK, Collections.emptySet())) {
-                        if (conflicts.contains(jq)) {
-                            feasible = false;
-                            break;
-                        }
-                    }
-                    if (!feasible)
-                        continue;
-
-                    // deep copy currentAssignment to neighbor
-                    Map<VesselPeriod, Set<Subblock>> neighbor = new HashMap<>();
-                    assignment.forEach((vp, subblocks) ->
-                            neighbor.put(vp, new HashSet<>(subblocks))
-                    );
 
-                    neighbor.get(ip).remove(oldK);
-                    neighbor.get(ip).add(newK);
-                    if (neighbors.size() < NEIGHBOR_LIMIT) {
-                        neighbors.add(neighbor);
+                    long neighbor = Neighborhood.single(ip, oldK, newK);
+                    if (size < NEIGHBOR_LIMIT) {
+                        neighbors[size++] = neighbor;
                     } else {
-                        neighbors.set(rand.nextInt(NEIGHBOR_LIMIT), neighbor);
+                        neighbors[rand.nextInt(NEIGHBOR_LIMIT)] = neighbor;
                     }
                 }
             }
         }
 
-        for (Map.Entry<Subblock, Set<VesselPeriod>> entry : vesselPeriodAssignment.entrySet()) {
-            Subblock oldK = entry.getKey();
-            Set<VesselPeriod> vpOfOldK = entry.getValue();
-            for (Subblock newK : instance.getSubblocks())
+        for (Subblock oldK : vesselPeriodAssignment.keySet()) {
+            for (Subblock newK : subblocks)
                 if (!oldK.equals(newK)) {
-                    Set<VesselPeriod> vpOfNewK = vesselPeriodAssignment.getOrDefault(newK, Collections.emptySet());
-
-                    // deep copy currentAssignment to neighbor
-                    Map<VesselPeriod, Set<Subblock>> neighbor = new HashMap<>();
-                    assignment.forEach((vp, subblocks) ->
-                            neighbor.put(vp, new HashSet<>(subblocks))
-                    );
-
-                    for (VesselPeriod ip : vpOfOldK) {
-                        neighbor.get(ip).remove(oldK);
-                    }
-
-                    for (VesselPeriod ip : vpOfNewK) {
-                        neighbor.get(ip).remove(newK);
-                    }
-
-                    for (VesselPeriod ip : vpOfOldK) neighbor.get(ip).add(newK);
-
-                    for (VesselPeriod ip : vpOfNewK) neighbor.get(ip).add(oldK);
-
-                    if (neighbors.size() < NEIGHBOR_LIMIT) {
-                        neighbors.add(neighbor);
+                    long neighbor = Neighborhood.swap(oldK, newK);
+                    if (size < NEIGHBOR_LIMIT) {
+                        neighbors[size++] = neighbor;
                     } else {
-                        neighbors.set(rand.nextInt(NEIGHBOR_LIMIT), neighbor);
+                        neighbors[rand.nextInt(NEIGHBOR_LIMIT)] = neighbor;
                     }
                 }
         }
 
-        return neighbors;
+        return Neighborhood.of(instance, neighbors, size);
     }
 
-    private List<Map<VesselPeriod, Set<Subblock>>> generateLimitedNeighbors() {
+    private List<SubblockMove> generateLimitedNeighbors() {
+
+        BoundedIndexedHeap neighbors = new BoundedIndexedHeap(NEIGHBOR_LIMIT);
+        List<Subblock> subblocks = instance.getSubblocks();
+        addBatchSwaNeighbors(neighbors, subblocks);
+        addSingleMoveNeighbors(neighbors, subblocks);
 
-        CapacityLimitedMapPriorityQueue<Map<VesselPeriod, Set<Subblock>>, Double>
-                neighbors = new CapacityLimitedMapPriorityQueue<>(NEIGHBOR_LIMIT);
-        addBatchSwaNeighbors(neighbors);
-        addSingleMoveNeighbors(neighbors);
-        return neighbors.getSortedKeys();
+        // ordered lazily as the neighbors are read
+        return Neighborhood.ranked(instance, neighbors.getKeys(), neighbors.getPriorities(), neighbors.size());
     }
 
 
-    private void addBatchSwaNeighbors(CapacityLimitedMapPriorityQueue<Map<VesselPeriod, Set<Subblock>>, Double>
-                                              neighbors) {
+    private void addBatchSwaNeighbors(BoundedIndexedHeap neighbors, List<Subblock> subblocks) {
         Map<Subblock, Set<VesselPeriod>> vesselPeriodAssignment = transformAssignment(currentAssignment);
+        int numSubblocks = instance.getNumSubblocks();
+        double[] deltas = SwapDeltaMatrix.compute(currentCosts, numSubblocks, vesselPeriodAssignment);
         for (Map.Entry<Subblock, Set<VesselPeriod>> entry : vesselPeriodAssignment.entrySet()) {
             Subblock oldK = entry.getKey();
             Set<VesselPeriod> vpOfOldK = entry.getValue();
-            double oldCost = 0;
-            for (VesselPeriod vp : vpOfOldK)
-                oldCost += currentCosts.get(vp).get(oldK);
-            for (Subblock newK : instance.getSubblocks())
+            int row = oldK.getId() * numSubblocks;
+            for (Subblock newK : subblocks)
                 if (!oldK.equals(newK)) {
-                    Set<VesselPeriod> vpOfNewK = vesselPeriodAssignment.getOrDefault(newK, Collections.emptySet());
-
-                    double delta = -oldCost;
-                    for (VesselPeriod ip : vpOfNewK)
-                        delta -= currentCosts.get(ip).get(newK);
-
-                    for (VesselPeriod ip : vpOfOldK) {
-                        delta += currentCosts.get(ip).get(newK);
-                    }
-                    for (VesselPeriod vp : vpOfNewK) {
-                        delta += currentCosts.get(vp).get(oldK);
-                    }
-
-
+                    double delta = deltas[row + newK.getId()];
                     if (delta < -PRECISION) {
-                        // deep copy currentAssignment to neighbor
-                        Map<VesselPeriod, Set<Subblock>> neighbor = new HashMap<>();
-                        currentAssignment.forEach((vp, subblocks) ->
-                                neighbor.put(vp, new HashSet<>(subblocks))
-                        );
-
-                        for (VesselPeriod ip : vpOfOldK) {
-                            neighbor.get(ip).remove(oldK);
-                        }
-
-                        for (VesselPeriod ip : vpOfNewK) {
-                            neighbor.get(ip).remove(newK);
-                        }
-
-                        for (VesselPeriod ip : vpOfOldK) neighbor.get(ip).add(newK);
-
-                        for (VesselPeriod ip : vpOfNewK) neighbor.get(ip).add(oldK);
-
-                        // validate the subblock numbers
-                        for (VesselPeriod ip : currentAssignment.keySet()) {
-                            int n = currentAssignment.get(ip).size();
-                            int newN = neighbor.get(ip).size();
-                            if (newN != n)
-                                throw new IllegalStateException();
-                        }
-
+                        Set<VesselPeriod> vpOfNewK = vesselPeriodAssignment.getOrDefault(newK, Collections.emptySet());
+                        // Moving the only owner of oldK to a free newK is the same neighbor as the single move,
+                        // so it is keyed as such to be merged with it in the queue.
+                        long neighbor = vpOfNewK.isEmpty() && vpOfOldK.size() == 1 ?
+                                Neighborhood.single(vpOfOldK.iterator().next(), oldK, newK) :
+                                Neighborhood.swap(oldK, newK);
                         neighbors.put(neighbor, delta);
                     }
                 }
@@ -981,42 +1271,22 @@ public class DecomposedNeighborhoodSearch {
     }
 
 
-    private void addSingleMoveNeighbors(CapacityLimitedMapPriorityQueue<Map<VesselPeriod, Set<Subblock>>, Double>
-                                                neighbors) {
+    private void addSingleMoveNeighbors(BoundedIndexedHeap neighbors, List<Subblock> subblocks) {
         // For each subblock that are assigned no conflict between the vesselPeriods.
-        Map<Subblock, Set<VesselPeriod>> vesselPeriodAssignment = transformAssignment(currentAssignment);
+        SubblockOccupancy occupancy = occupancyOf(currentAssignment);
 
         for (Map.Entry<VesselPeriod, Set<Subblock>> entry : currentAssignment.entrySet()) {
             VesselPeriod ip = entry.getKey();
-            Set<VesselPeriod> conflicts = conflictPeriods.get(ip);
             Set<Subblock> oldSubblockSet = entry.getValue();
             for (Subblock oldK : oldSubblockSet) {
-                double oldCost = currentCosts.get(ip).get(oldK);
-                for (Subblock newK : instance.getSubblocks()) {
-                    if (oldSubblockSet.contains(newK)) {
-                        continue;
-                    }
-                    boolean feasible = true;
-                    for (VesselPeriod jq : vesselPeriodAssignment.getOrDefault(newK, Collections.emptySet())) {
-                        if (conflicts.contains(jq)) {
-                            feasible = false;
-                            break;
-                        }
-                    }
-                    if (!feasible)
+                double oldCost = currentCosts.get(ip, oldK);
+                for (Subblock newK : subblocks) {
+                    if (!occupancy.canTake(ip, newK))
                         continue;
 
-                    double newCost = currentCosts.get(ip).get(newK);
+                    double newCost = currentCosts.get(ip, newK);
                     if (newCost < oldCost - PRECISION) {
-                        // deep copy currentAssignment to neighbor
-                        Map<VesselPeriod, Set<Subblock>> neighbor = new HashMap<>();
-                        currentAssignment.forEach((vp, subblocks) ->
-                                neighbor.put(vp, new HashSet<>(subblocks)) // 创建新的HashSet
-                        );
-
-                        neighbor.get(ip).remove(oldK);
-                        neighbor.get(ip).add(newK);
-                        neighbors.put(neighbor, newCost - oldCost);
+                        neighbors.put(Neighborhood.single(ip, oldK, newK), newCost - oldCost);
                     }
                 }
             }
@@ -1025,122 +1295,23 @@ public class DecomposedNeighborhoodSearch {
     }
 
 
-    private Map<VesselPeriod, Map<Subblock, Double>> estimateCosts(Map<VesselPeriod, Set<Subblock>> assignment, Solution solution) {
-        Map<VesselPeriod, Map<Subblock, Double>> costs = new HashMap<>();
-
-        // costs of route distance
-        solution.forEachUnloadSchedule((ip, k, jq, schedule) -> {
-            double distanceToSubblock = instance.getDistanceToSubblock(jq, k);
-            double distanceFromSubblock = instance.getDistanceFromSubblock(ip, k);
-            int number = schedule.number;
-            double cost = (distanceToSubblock + distanceFromSubblock) * number * instance.etaRoute;
-            costs.computeIfAbsent(ip, key -> new HashMap<>())
-                    .merge(k, cost, Double::sum);
-        });
-
-        // costs of time deviation
-
-        Map<VesselPeriod, Double> totalEarlinessWeight = new HashMap<>();
-
-        solution.forEachLoadSchedule((ip, k, schedule) -> {
-            int earliness = instance.getRelativeEarliness(schedule.time, ip);
-            totalEarlinessWeight.compute(ip, (key, value) -> value == null ? earliness : value + earliness);
-        });
-
-        solution.forEachUnloadSchedule((ip, k, jq, schedule) -> {
-            int earliness = instance.getRelativeEarliness(schedule.time, jq);
-            totalEarlinessWeight.compute(jq, (key, value) -> value == null ? earliness : value + earliness);
-
-        });
-
-        solution.forEachLoadSchedule((ip, k, schedule) -> {
-            double total = totalEarlinessWeight.get(ip);
-            int earliness = instance.getRelativeEarliness(schedule.time, ip);
-            if (total == 0) {
-                assert earliness == 0 && solution.getEarliness(ip) == 0;
-            } else {
-                double ratio = earliness / total;
-                double cost = ip.getEarlinessCost() * solution.getEarliness(ip) * ratio;
-                costs.get(ip).merge(k, cost, Double::sum);
-            }
-        });
-
-        solution.forEachUnloadSchedule((ip, k, jq, schedule) -> {
-            double total = totalEarlinessWeight.get(jq);
-            int earliness = instance.getRelativeEarliness(schedule.time, jq);
-            if (total == 0) {
-                assert earliness == 0 && solution.getEarliness(jq) == 0;
-            } else {
-                double ratio = earliness / total;
-                double cost = jq.getEarlinessCost() * solution.getEarliness(jq) * ratio;
-                costs.get(ip).merge(k, cost, Double::sum);
-            }
-        });
-
-        Map<VesselPeriod, Double> totalTardinessWeight = new HashMap<>();
-
-        solution.forEachLoadSchedule((ip, k, schedule) -> {
-            int tardiness = instance.getRelativeTardiness(schedule.time, ip);
-            totalTardinessWeight.compute(ip, (key, value) -> value == null ? tardiness : value + tardiness);
-        });
-
-        solution.forEachUnloadSchedule((ip, k, jq, schedule) -> {
-            int tardiness = instance.getRelativeTardiness(schedule.time, jq);
-            totalTardinessWeight.compute(jq, (key, value) -> value == null ? tardiness : value + tardiness);
-
-        });
-
-        solution.forEachLoadSchedule((ip, k, schedule) -> {
-            double total = totalTardinessWeight.get(ip);
-            int tardiness = instance.getRelativeTardiness(schedule.time, ip);
-//            int tardiness = Math.max(0, ip.getRelativeExpectedIntervalEnd() - relativeTime - 1);
-            if (total == 0) {
-                assert tardiness == 0 && solution.getTardiness(ip) == 0 : ip + " tardiness=" + solution.getTardiness(ip) + ", <-> "
-                        + "load task (" + ip + ", " + k + ", " + schedule.time + "), tardiness=" + tardiness;
-            } else {
-                double ratio = tardiness / total;
-                double cost = ip.getTardinessCost() * solution.getTardiness(ip) * ratio;
-                costs.get(ip).merge(k, cost, Double::sum);
-            }
-        });
-
-        solution.forEachUnloadSchedule((ip, k, jq, schedule) -> {
-            double total = totalTardinessWeight.get(jq);
-            int tardiness = instance.getRelativeTardiness(schedule.time, jq);
-            if (total == 0) {
-                assert tardiness == 0 && solution.getTardiness(jq) == 0;
-            } else {
-                double ratio = tardiness / total;
-                double cost = jq.getTardinessCost() * solution.getTardiness(jq) * ratio;
-                costs.get(ip).merge(k, cost, Double::sum);
-            }
-        });
-
-        // costs of congestion
-        // road -> time -> coefficient
-
-        Map<Integer, Map<Integer, Double>> loadRoadCoefficients, unloadRoadCoefficients;
-        loadRoadCoefficients = calculateOverloadCoefficient(solution.getAuxiliaryLoadRoadFlows(), instance.maxLoadFlows, solution.getLoadOverload());
-        unloadRoadCoefficients = calculateOverloadCoefficient(solution.getAuxiliaryUnloadRoadFlows(), instance.maxUnloadFlows, solution.getUnloadOverload());
-
-
-        solution.forEachLoadSchedule((ip, k, schedule) -> {
-            int time = schedule.time;
-            double cost = 0;
-            for (int road : instance.getRouteFromSubblock(ip, k))
-                cost += loadRoadCoefficients.get(road).get(time) * instance.etaCongestion;
-            costs.get(ip).merge(k, cost, Double::sum);
-        });
-
-        solution.forEachUnloadSchedule((ip, k, jq, schedule) -> {
-            int time = schedule.time;
-            double cost = 0;
-            for (int road : instance.getRouteToSubblock(jq, k))
-                cost += unloadRoadCoefficients.get(road).get(time);
-            costs.get(ip).merge(k, cost, Double::sum);
-        });
+    /**
+     * @return the occupancy of the assignment, rebuilt unless it is the one kept up to date by the accepted moves
+     */
+    private SubblockOccupancy occupancyOf(Map<VesselPeriod, Set<Subblock>> assignment) {
+        if (occupancyAssignment != assignment) {
+            occupancy = new SubblockOccupancy(instance, conflictGraph, assignment);
+            occupancyAssignment = assignment;
+        }
+        return occupancy;
+    }
 
-        return costs;
+    private CostMatrix estimateCosts(Solution solution) {
+        // successive estimates share most of their schedules, so the attribution is updated from the last one
+        if (costAttribution == null)
+            costAttribution = new CostAttribution(instance);
+        costAttribution.update(solution);
+        return costAttribution.toCostMatrix();
     }
 
 
@@ -1152,43 +1323,17 @@ public class DecomposedNeighborhoodSearch {
 //    }
 
 
-    private Map<Integer, Map<Integer, Double>> calculateOverloadCoefficient(Map<Integer, Map<Integer, Integer>> flows, int expectedFlow, int largestOverload) {
-        int totalOverload = flows.values().stream()
-                .flatMap(roadMap -> roadMap.values().stream())
-                .mapToInt(f -> Math.max(f - expectedFlow, 0))
-                .sum();
-
-        return flows.entrySet().stream()
-                .collect(Collectors.toMap(Map.Entry::getKey,
-                                roadEntry -> roadEntry.getValue().entrySet().stream()
-                                        .collect(Collectors.toMap(Map.Entry::getKey,
-                                                timeEntry -> {
-                                                    int f = timeEntry.getValue();
-                                                    int over = Math.max(f - expectedFlow, 0);
-                                                    return totalOverload == 0 ?
-                                                            0 : (over * largestOverload * 1.) / (f * totalOverload);
-                                                }
-                                        ))
-                        )
-                );
-
-    }
-
-
     private Solution evaluateAssignment(Map<VesselPeriod, Set<Subblock>> assignment) {
         if (assignment == null)
             return null;
-        try (IloCplex cplex = new IloCplex()) {
+        try (CplexPool.Lease lease = CplexPool.shared().acquire()) {
+            IloCplex cplex = lease.cplex();
             cplex.setOut(null);
             cplex.setWarning(null);
-            if (timeLimit != null) {
-                long timeLimit = this.timeLimit - (System.currentTimeMillis() - startTime) / 1000;
-                if (timeLimit < 1) {
-//                    out.println("Remaining time " + timeLimit + "s is not enough");
-                    return null;
-                }
-                cplex.setParam(IloCplex.IntParam.TimeLimit, timeLimit);
-            }
+            double timeLimit = deadline.timeLimit(EVALUATION_TIME_LIMIT);
+            if (timeLimit <= 0)
+                return null;
+            cplex.setParam(IloCplex.Param.TimeLimit, timeLimit);
             if (threads != null)
                 cplex.setParam(IloCplex.Param.Threads, threads);
             cplex.setParam(IloCplex.Param.Emphasis.Memory, true);
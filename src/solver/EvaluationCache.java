@@ -0,0 +1,90 @@
+package solver;
+
+import entity.*;
+
+import java.util.*;
+
+/**
+ * A size-bounded LRU cache of the solutions of evaluated subblock assignments.
+ * <p>
+ * An assignment is keyed by its Zobrist hash, the XOR of a random 64-bit code for each assigned (vessel period,
+ * subblock) pair. The key does not depend on the order of the subblocks, and the key of a neighbor is derived from the
+ * key of its base assignment in O(1) per changed pair by {@link #hash(long, SubblockMove, Map)}.
+ */
+public class EvaluationCache {
+    private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+
+    private final int numSubblocks;
+    private final long[] codes; // vpId * numSubblocks + subblockId
+    private final int capacity;
+    private final LinkedHashMap<Long, Solution> solutions;
+
+    public EvaluationCache(Instance instance, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+        this.numSubblocks = instance.getNumSubblocks();
+        this.codes = new long[instance.getNumVesselPeriods() * numSubblocks];
+        // independent of the random generator of the search, so that caching does not change the search trajectory
+        Random rand = new Random(ZOBRIST_SEED);
+        for (int i = 0; i < codes.length; i++)
+            codes[i] = rand.nextLong();
+
+        this.capacity = capacity;
+        this.solutions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Solution> eldest) {
+                return size() > EvaluationCache.this.capacity;
+            }
+        };
+    }
+
+    private long code(VesselPeriod ip, Subblock k) {
+        return codes[ip.getVpId() * numSubblocks + k.getId()];
+    }
+
+    public long hash(Map<VesselPeriod, ? extends Collection<Subblock>> assignment) {
+        long hash = 0;
+        for (Map.Entry<VesselPeriod, ? extends Collection<Subblock>> entry : assignment.entrySet())
+            for (Subblock k : entry.getValue())
+                hash ^= code(entry.getKey(), k);
+        return hash;
+    }
+
+    /**
+     * @param hash the hash of the base assignment
+     * @param move a move generated from the base assignment
+     * @param base the base assignment
+     * @return the hash of the neighbor reached by the move
+     */
+    public long hash(long hash, SubblockMove move, Map<VesselPeriod, ? extends Collection<Subblock>> base) {
+        for (Map.Entry<VesselPeriod, SubblockChange> entry : move.getChanges(base).entrySet()) {
+            VesselPeriod ip = entry.getKey();
+            hash ^= code(ip, entry.getValue().oldSubblock) ^ code(ip, entry.getValue().newSubblock);
+        }
+        return hash;
+    }
+
+    /**
+     * @return the cached solution, or {@code null} if the assignment has not been evaluated or has been evicted
+     */
+    public Solution get(long hash) {
+        return solutions.get(hash);
+    }
+
+    /**
+     * Store a newly evaluated solution. Infeasible results are not kept since the solver may also return no solution
+     * because of the time limit.
+     */
+    public void put(long hash, Solution solution) {
+        if (solution != null)
+            solutions.put(hash, solution);
+    }
+
+    public int size() {
+        return solutions.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,506 @@
+package solver;
+
+import entity.Instance;
+import entity.Solution;
+import entity.Subblock;
+import entity.VesselPeriod;
+import util.Deadline;
+
+import java.util.*;
+
+/**
+ * A CPLEX-free {@link AssignmentEvaluator}. The containers of each vessel period are sent to its subblocks by the
+ * greedy transportation plan of {@link SurrogateEvaluator}. The operations are then scheduled by a constructive
+ * heuristic: each vessel period unloads before a split time step and loads from it, and the operations are placed at
+ * their cheapest time steps, the most constrained first, the splits and the order being repaired after each failure.
+ * The schedule is improved by moving one operation at a time to a cheaper time step until no move improves it or the
+ * deadline passes.
+ * <p>
+ * The schedule meets the constraints of {@link IndexedCplexFixedSubblockModel}: a vessel period unloads before it
+ * loads, the containers of its subblocks are unloaded before it loads, and no two neighboring subblocks are operated
+ * at the same time step. It is not optimal, and an assignment reported infeasible may have a schedule the heuristic
+ * did not find.
+ */
+public class HeuristicAssignmentEvaluator implements AssignmentEvaluator {
+    private static final double PRECISION = 1e-8;
+    private static final int MAX_IMPROVEMENT_PASSES = 100;
+    private static final int MAX_CONSTRUCTION_ROUNDS = 50;
+
+    private final Instance instance;
+    private final int horizon;
+    private final int[][] neighbors; // subblock id -> ids of its neighboring subblocks
+    private final VesselPeriod[][] sources; // vpId -> j
+    private final int[][] loadTimes; // vpId -> the time steps a subblock of the vessel period may be loaded at
+    private final int[][][] unloadTimes; // vpId -> j -> the time steps the containers from the j-th source may be unloaded at
+
+    private volatile boolean aborted = false;
+
+    public HeuristicAssignmentEvaluator(Instance instance) {
+        this.instance = instance;
+        this.horizon = instance.horizon;
+        // as ConsCongNeighbor of the model
+        neighbors = new int[instance.getNumSubblocks()][];
+        for (Subblock k1 : instance.getSubblocks())
+            neighbors[k1.getId()] = instance.getSubblocks().stream()
+                    .filter(k2 -> !k1.equals(k2) && (k1.isNeighborInSameBlock(k2) || k1.isNeighborAcrossLane(k2)))
+                    .mapToInt(Subblock::getId).toArray();
+
+        int vesselPeriods = instance.getNumVesselPeriods();
+        sources = new VesselPeriod[vesselPeriods][];
+        loadTimes = new int[vesselPeriods][];
+        unloadTimes = new int[vesselPeriods][][];
+        for (VesselPeriod ip : instance.getVesselPeriods()) {
+            int vp = ip.getVpId();
+            sources[vp] = instance.getSourceVesselPeriodsOf(ip).toArray(new VesselPeriod[0]);
+            loadTimes[vp] = ip.getFeasibleInterval().intStream(horizon).toArray();
+            unloadTimes[vp] = new int[sources[vp].length][];
+            for (int j = 0; j < sources[vp].length; j++)
+                unloadTimes[vp][j] = ip.getPeriodInterval().intersection(sources[vp][j].getFeasibleInterval(), horizon).toArray();
+        }
+    }
+
+    @Override
+    public Evaluation evaluate(Map<VesselPeriod, Set<Subblock>> assignment, Deadline deadline, double cutoff) {
+        if (aborted || deadline.isExpired())
+            return Evaluation.of(Status.NO_SOLUTION);
+        Schedule schedule = new Schedule(assignment);
+        if (!schedule.isTransportable())
+            return Evaluation.of(Status.INFEASIBLE);
+        if (!schedule.construct(deadline))
+            return Evaluation.of(aborted || deadline.isExpired() ? Status.NO_SOLUTION : Status.INFEASIBLE);
+        schedule.improve(deadline);
+
+        Solution solution = schedule.toSolution();
+        return solution.getObjAll() > cutoff ? Evaluation.of(Status.CUT_OFF) : Evaluation.solved(solution);
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public void clearAbort() {
+        aborted = false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * The load of a subblock k of ip, or the unload into it of the containers from a source vessel period jq.
+     */
+    private static class Operation {
+        final VesselPeriod ip;
+        final VesselPeriod jq; // null for a load
+        final Subblock k;
+        final int containers;
+        final int[] roads;
+        final int[] times;
+        final Operation load; // of the subblock, for an unload
+        final List<Operation> unloads = new ArrayList<>(); // into the subblock, for a load
+        int time = -1;
+
+        Operation(VesselPeriod ip, VesselPeriod jq, Subblock k, int containers, List<Integer> roads, int[] times,
+                  Operation load) {
+            this.ip = ip;
+            this.jq = jq;
+            this.k = k;
+            this.containers = containers;
+            this.roads = roads.stream().mapToInt(Integer::intValue).toArray();
+            this.times = times;
+            this.load = load;
+        }
+
+        boolean isLoad() {
+            return jq == null;
+        }
+
+        /**
+         * @return the vessel period whose earliness and tardiness the time of the operation counts for
+         */
+        VesselPeriod owner() {
+            return jq == null ? ip : jq;
+        }
+    }
+
+    /**
+     * The flows of the roads at each time step, with the number of (road, time step) pairs at each flow, from which
+     * the largest flow is kept.
+     */
+    private static class RoadFlows {
+        final int[][] flows; // road -> t
+        final int[] cells; // flow -> pairs at the flow, for a flow of at least 1
+        int max = 0;
+
+        RoadFlows(int roads, int horizon, int operations) {
+            flows = new int[roads][horizon];
+            cells = new int[operations + 2];
+        }
+
+        void add(int[] roads, int t) {
+            for (int l : roads) {
+                int f = ++flows[l][t];
+                if (f > 1)
+                    cells[f - 1]--;
+                cells[f]++;
+                max = Math.max(max, f);
+            }
+        }
+
+        void remove(int[] roads, int t) {
+            for (int l : roads) {
+                int f = flows[l][t]--;
+                cells[f]--;
+                if (f > 1)
+                    cells[f - 1]++;
+                while (max > 0 && cells[max] == 0)
+                    max--;
+            }
+        }
+
+        int overload(int expectedFlow) {
+            return Math.max(max - expectedFlow, 0);
+        }
+
+        /**
+         * @return the pairs at the largest flow if it is an overload, which a move may reduce without changing it
+         */
+        int cellsAtOverload(int expectedFlow) {
+            return max > expectedFlow ? cells[max] : 0;
+        }
+    }
+
+    private class Schedule {
+        private final Map<VesselPeriod, List<Subblock>> subblocks = new LinkedHashMap<>();
+        private final List<Operation> unloads = new ArrayList<>();
+        private final List<Operation> loads = new ArrayList<>();
+        private double routeCost = 0;
+
+        private final int[][] busy; // subblock id -> t -> operations
+        private final RoadFlows loadFlows, unloadFlows;
+        // vpId -> relative time step within the period of the vessel period
+        private final int[][] operations; // the operations the time cost of the vessel period counts
+        private final int[][] sourceUnloads; // the unloads from the vessel period
+        private final int[][] feasibleUnloads; // the unloads into the vessel period within its feasible interval
+        private final int[][] loadsAt; // the loads of the vessel period
+        private final double[] timeCosts; // vpId
+        private double timeCost = 0;
+
+        Schedule(Map<VesselPeriod, Set<Subblock>> assignment) {
+            for (VesselPeriod ip : instance.getVesselPeriods()) {
+                int vp = ip.getVpId();
+                List<Subblock> ks = new ArrayList<>(assignment.getOrDefault(ip, Collections.emptySet()));
+                subblocks.put(ip, ks);
+                int[][] plan = new int[sources[vp].length][ks.size()];
+                routeCost += SurrogateEvaluator.greedyTransportation(instance, ip, ks, plan);
+                for (int k = 0; k < ks.size(); k++) {
+                    int containers = 0;
+                    for (int j = 0; j < sources[vp].length; j++)
+                        containers += plan[j][k];
+                    Operation load = new Operation(ip, null, ks.get(k), containers,
+                            instance.getRouteFromSubblock(ip, ks.get(k)), loadTimes[vp], null);
+                    loads.add(load);
+                    for (int j = 0; j < sources[vp].length; j++)
+                        if (plan[j][k] > 0) {
+                            VesselPeriod jq = sources[vp][j];
+                            Operation unload = new Operation(ip, jq, ks.get(k), plan[j][k],
+                                    instance.getRouteToSubblock(jq, ks.get(k)), unloadTimes[vp][j], load);
+                            load.unloads.add(unload);
+                            unloads.add(unload);
+                        }
+                }
+            }
+
+            int numOperations = unloads.size() + loads.size();
+            busy = new int[instance.getNumSubblocks()][horizon];
+            loadFlows = new RoadFlows(instance.roads, horizon, numOperations);
+            unloadFlows = new RoadFlows(instance.roads, horizon, numOperations);
+            int vesselPeriods = instance.getNumVesselPeriods();
+            operations = new int[vesselPeriods][];
+            sourceUnloads = new int[vesselPeriods][];
+            feasibleUnloads = new int[vesselPeriods][];
+            loadsAt = new int[vesselPeriods][];
+            timeCosts = new double[vesselPeriods];
+            for (VesselPeriod ip : instance.getVesselPeriods()) {
+                operations[ip.getVpId()] = new int[ip.getLengthOfPeriod()];
+                sourceUnloads[ip.getVpId()] = new int[ip.getLengthOfPeriod()];
+                feasibleUnloads[ip.getVpId()] = new int[ip.getLengthOfPeriod()];
+                loadsAt[ip.getVpId()] = new int[ip.getLengthOfPeriod()];
+            }
+        }
+
+        boolean isTransportable() {
+            return routeCost < Double.POSITIVE_INFINITY;
+        }
+
+        private int relative(VesselPeriod ip, int t) {
+            return ip.getRelativeTimeWithinPeriod(t, horizon);
+        }
+
+        private boolean isFeasible(VesselPeriod ip, int t) {
+            int relative = relative(ip, t);
+            return relative >= ip.getRelativeFeasibleIntervalStart() && relative < ip.getRelativeFeasibleIntervalEnd();
+        }
+
+        private int first(int[] counts) {
+            for (int i = 0; i < counts.length; i++)
+                if (counts[i] > 0)
+                    return i;
+            return counts.length;
+        }
+
+        private int last(int[] counts) {
+            for (int i = counts.length - 1; i >= 0; i--)
+                if (counts[i] > 0)
+                    return i;
+            return -1;
+        }
+
+        private void updateTimeCost(VesselPeriod ip) {
+            int[] counts = operations[ip.getVpId()];
+            int first = first(counts);
+            double cost = 0;
+            if (first < counts.length) {
+                int earliness = Math.max(ip.getRelativeExpectedIntervalStart() - first, 0);
+                int tardiness = Math.max(last(counts) + 1 - ip.getRelativeExpectedIntervalEnd(), 0);
+                cost = earliness * ip.getEarlinessCost() + tardiness * ip.getTardinessCost();
+            }
+            timeCost += cost - timeCosts[ip.getVpId()];
+            timeCosts[ip.getVpId()] = cost;
+        }
+
+        private void place(Operation op, int t) {
+            op.time = t;
+            busy[op.k.getId()][t]++;
+            operations[op.owner().getVpId()][relative(op.owner(), t)]++;
+            if (op.isLoad()) {
+                loadFlows.add(op.roads, t);
+                loadsAt[op.ip.getVpId()][relative(op.ip, t)]++;
+            } else {
+                unloadFlows.add(op.roads, t);
+                sourceUnloads[op.jq.getVpId()][relative(op.jq, t)]++;
+                if (isFeasible(op.ip, t))
+                    feasibleUnloads[op.ip.getVpId()][relative(op.ip, t)]++;
+            }
+            updateTimeCost(op.owner());
+        }
+
+        private void remove(Operation op) {
+            int t = op.time;
+            op.time = -1;
+            busy[op.k.getId()][t]--;
+            operations[op.owner().getVpId()][relative(op.owner(), t)]--;
+            if (op.isLoad()) {
+                loadFlows.remove(op.roads, t);
+                loadsAt[op.ip.getVpId()][relative(op.ip, t)]--;
+            } else {
+                unloadFlows.remove(op.roads, t);
+                sourceUnloads[op.jq.getVpId()][relative(op.jq, t)]--;
+                if (isFeasible(op.ip, t))
+                    feasibleUnloads[op.ip.getVpId()][relative(op.ip, t)]--;
+            }
+            updateTimeCost(op.owner());
+        }
+
+        /**
+         * A vessel period unloads before it loads, the unloads into a subblock precede its load, and the unloads into
+         * a vessel period within its feasible interval precede its loads, as in the model and {@link Solution#validate}.
+         *
+         * @return whether the operation, not placed, may be placed at t given the placed ones
+         */
+        private boolean canPlace(Operation op, int t) {
+            for (int neighbor : neighbors[op.k.getId()])
+                if (busy[neighbor][t] > 0)
+                    return false;
+            int relative = relative(op.ip, t);
+            if (op.isLoad()) {
+                for (Operation unload : op.unloads)
+                    if (unload.time >= 0 && relative(op.ip, unload.time) >= relative)
+                        return false;
+                return relative > last(sourceUnloads[op.ip.getVpId()])
+                        && relative > last(feasibleUnloads[op.ip.getVpId()]);
+            }
+            return relative(op.jq, t) < first(loadsAt[op.jq.getVpId()])
+                    && (!isFeasible(op.ip, t) || relative < first(loadsAt[op.ip.getVpId()]))
+                    && (op.load.time < 0 || relative < relative(op.ip, op.load.time));
+        }
+
+        private double cost() {
+            return routeCost + timeCost + instance.etaCongestion * (loadFlows.overload(instance.maxLoadFlows)
+                    + unloadFlows.overload(instance.maxUnloadFlows));
+        }
+
+        private int overloadedCells() {
+            return loadFlows.cellsAtOverload(instance.maxLoadFlows) + unloadFlows.cellsAtOverload(instance.maxUnloadFlows);
+        }
+
+        /**
+         * @param split the time step, relative to each vessel period, from which it loads and before which it and its
+         *              subblocks are unloaded, or null to take the constraints of the placed operations only
+         * @return the time step of the operation, not placed, of the lowest cost and then of the fewest overloaded
+         * road flows, the earliest for the vessel period it counts for on a tie, or -1 if none is feasible
+         */
+        private int bestTime(Operation op, int[] split) {
+            int best = -1;
+            double bestCost = 0;
+            int bestCells = 0;
+            int bestRelative = 0;
+            for (int t : op.times) {
+                if (split != null && !isWithin(op, t, split) || !canPlace(op, t))
+                    continue;
+                int relative = relative(op.owner(), t);
+                place(op, t);
+                double cost = cost();
+                int cells = overloadedCells();
+                remove(op);
+                if (best < 0 || cost < bestCost - PRECISION || cost <= bestCost + PRECISION
+                        && (cells < bestCells || cells == bestCells && relative < bestRelative)) {
+                    best = t;
+                    bestCost = cost;
+                    bestCells = cells;
+                    bestRelative = relative;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * @return whether the operation at t is on its side of the splits, which implies the precedence constraints
+         */
+        private boolean isWithin(Operation op, int t, int[] split) {
+            if (op.isLoad())
+                return relative(op.ip, t) >= split[op.ip.getVpId()];
+            return relative(op.jq, t) < split[op.jq.getVpId()] && relative(op.ip, t) < split[op.ip.getVpId()];
+        }
+
+        /**
+         * @return the earliest time step, relative to each vessel period, from which it may load and before which it
+         * and its subblocks are unloaded, i.e. leaving each unload its earliest time step only
+         */
+        int[] earliestSplits() {
+            int[] earliest = new int[instance.getNumVesselPeriods()];
+            for (VesselPeriod ip : instance.getVesselPeriods())
+                earliest[ip.getVpId()] = ip.getRelativeFeasibleIntervalStart();
+            for (Operation op : unloads) {
+                int jqFirst = Integer.MAX_VALUE, ipFirst = Integer.MAX_VALUE;
+                for (int t : op.times) {
+                    jqFirst = Math.min(jqFirst, relative(op.jq, t));
+                    ipFirst = Math.min(ipFirst, relative(op.ip, t));
+                }
+                earliest[op.jq.getVpId()] = Math.max(earliest[op.jq.getVpId()], jqFirst + 1);
+                earliest[op.ip.getVpId()] = Math.max(earliest[op.ip.getVpId()], ipFirst + 1);
+            }
+            return earliest;
+        }
+
+        /**
+         * Place the operations within the splits of their vessel periods, the urgent ones first and then the ones with
+         * the fewest time steps, each at its best time given the ones already placed.
+         *
+         * @param urgent the operations which could not be placed in the previous constructions
+         * @return the operation which could not be placed, in which case none is, or null if all are placed
+         */
+        Operation construct(int[] split, Collection<Operation> urgent) {
+            List<Operation> ordered = new ArrayList<>(unloads);
+            ordered.addAll(loads);
+            ordered.removeAll(urgent);
+            Map<Operation, Integer> choices = new HashMap<>();
+            for (Operation op : ordered)
+                choices.put(op, (int) Arrays.stream(op.times).filter(t -> isWithin(op, t, split)).count());
+            ordered.sort(Comparator.comparingInt(choices::get));
+            ordered.addAll(0, urgent);
+
+            List<Operation> placed = new ArrayList<>();
+            for (Operation op : ordered) {
+                int t = bestTime(op, split);
+                if (t < 0) {
+                    for (Operation p : placed)
+                        remove(p);
+                    return op;
+                }
+                place(op, t);
+                placed.add(op);
+            }
+            return null;
+        }
+
+        /**
+         * Construct a schedule from the splits in the middle of the feasible intervals, each failure making the
+         * operation which could not be placed urgent and moving its splits, if possible, to give it more time steps.
+         *
+         * @return whether a schedule is constructed
+         */
+        boolean construct(Deadline deadline) {
+            int[] earliest = earliestSplits();
+            int[] split = new int[instance.getNumVesselPeriods()];
+            for (VesselPeriod ip : instance.getVesselPeriods()) {
+                int vp = ip.getVpId();
+                if (earliest[vp] >= ip.getRelativeFeasibleIntervalEnd())
+                    return false;
+                split[vp] = (earliest[vp] + ip.getRelativeFeasibleIntervalEnd()) / 2;
+            }
+            Set<Operation> urgent = new LinkedHashSet<>();
+            for (int round = 0; round < MAX_CONSTRUCTION_ROUNDS; round++) {
+                if (aborted || deadline.isExpired())
+                    return false;
+                Operation failed = construct(split, urgent);
+                if (failed == null)
+                    return true;
+                urgent.add(failed);
+                if (failed.isLoad()) {
+                    if (split[failed.ip.getVpId()] > earliest[failed.ip.getVpId()])
+                        split[failed.ip.getVpId()]--;
+                } else {
+                    for (VesselPeriod vp : List.of(failed.jq, failed.ip))
+                        if (split[vp.getVpId()] < vp.getRelativeFeasibleIntervalEnd() - 1
+                                && Arrays.stream(failed.times).anyMatch(t -> relative(vp, t) >= split[vp.getVpId()]))
+                            split[vp.getVpId()]++;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Move one operation at a time to its best time step while it improves the schedule.
+         */
+        void improve(Deadline deadline) {
+            boolean improved = true;
+            for (int pass = 0; pass < MAX_IMPROVEMENT_PASSES && improved; pass++) {
+                improved = false;
+                for (List<Operation> ops : List.of(unloads, loads))
+                    for (Operation op : ops) {
+                        if (aborted || deadline.isExpired())
+                            return;
+                        int current = op.time;
+                        double cost = cost();
+                        int cells = overloadedCells();
+                        remove(op);
+                        int best = bestTime(op, null);
+                        place(op, best);
+                        if (best != current) {
+                            if (cost() < cost - PRECISION || cost() <= cost + PRECISION && overloadedCells() < cells) {
+                                improved = true;
+                            } else {
+                                // a tie broken by the earliest time step only
+                                remove(op);
+                                place(op, current);
+                            }
+                        }
+                    }
+            }
+        }
+
+        Solution toSolution() {
+            Solution solution = new Solution(instance);
+            subblocks.forEach((ip, ks) -> ks.forEach(k -> solution.setSubBlock(ip, k)));
+            for (Operation op : unloads)
+                solution.setUnloadSchedule(op.jq, op.ip, op.k, op.time, op.containers);
+            for (Operation op : loads)
+                solution.setLoadSchedule(op.ip, op.k, op.time, op.containers);
+            solution.calculateObjectives();
+            return solution;
+        }
+    }
+}
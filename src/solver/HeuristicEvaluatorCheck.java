@@ -0,0 +1,83 @@
+package solver;
+
+import entity.Instance;
+import entity.Solution;
+import entity.Subblock;
+import entity.VesselPeriod;
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+import main.InstanceGenerator;
+import util.Deadline;
+
+import java.util.*;
+
+/**
+ * Checks the schedules of {@link HeuristicAssignmentEvaluator} and compares them with {@link CplexAssignmentEvaluator},
+ * kept apart so that the heuristic evaluator does not depend on CPLEX.
+ */
+public class HeuristicEvaluatorCheck {
+
+    /**
+     * @return a time step at which two neighboring subblocks are both operated, or -1 if there is none
+     */
+    private static int findNeighborConflict(Solution solution) {
+        Map<Integer, Set<Subblock>> operated = new HashMap<>();
+        solution.forEachLoadSchedule((ip, k, schedule) ->
+                operated.computeIfAbsent(schedule.time, t -> new HashSet<>()).add(k));
+        solution.forEachUnloadSchedule((ip, k, jq, schedule) ->
+                operated.computeIfAbsent(schedule.time, t -> new HashSet<>()).add(k));
+        for (Map.Entry<Integer, Set<Subblock>> entry : operated.entrySet())
+            for (Subblock k1 : entry.getValue())
+                for (Subblock k2 : entry.getValue())
+                    if (!k1.equals(k2) && (k1.isNeighborInSameBlock(k2) || k1.isNeighborAcrossLane(k2)))
+                        return entry.getKey();
+        return -1;
+    }
+
+    /**
+     * Compare with CPLEX on the assignments of the master heuristic: the objectives and the evaluation times, after
+     * checking that the heuristic schedules are feasible. Without the argument "cplex" only the heuristic is run, e.g.
+     * on a machine without CPLEX.
+     */
+    public static void main(String[] args) throws IloException {
+        boolean withCplex = args.length > 0 && args[0].equals("cplex");
+        int[][] configurations = {{4, 1, 1, 6, 2}, {8, 2, 2, 6, 4}, {12, 3, 3, 6, 6}};
+        System.out.printf("%-16s %4s %14s %10s %14s %10s%n", "instance", "seed", "heuristic", "ms", "cplex", "ms");
+        for (int[] c : configurations)
+            for (int seed = 1; seed <= 3; seed++) {
+                Instance instance = InstanceGenerator.generate(c[0], c[1], c[2], c[3], c[4], seed);
+                Map<VesselPeriod, Set<Subblock>> assignment = new MasterYardTemplateHeuristic(instance).assignByFirstComeFirstServed();
+                if (assignment == null)
+                    continue;
+
+                long start = System.nanoTime();
+                AssignmentEvaluator.Evaluation heuristic = new HeuristicAssignmentEvaluator(instance)
+                        .evaluate(assignment, Deadline.unlimited(), IndexedCplexFixedSubblockModel.NO_CUTOFF);
+                double heuristicMillis = (System.nanoTime() - start) / 1e6;
+                if (heuristic.solution() != null) {
+                    heuristic.solution().validate();
+                    int conflict = findNeighborConflict(heuristic.solution());
+                    if (conflict >= 0)
+                        throw new IllegalStateException("Neighboring subblocks operated at time step " + conflict);
+                }
+
+                String cplexObjective = "-";
+                double cplexMillis = 0;
+                if (withCplex) {
+                    try (IloCplex cplex = new IloCplex()) {
+                        cplex.setOut(null);
+                        cplex.setWarning(null);
+                        start = System.nanoTime();
+                        AssignmentEvaluator.Evaluation exact = new CplexAssignmentEvaluator(instance, cplex, null, false)
+                                .evaluate(assignment, Deadline.after(60), IndexedCplexFixedSubblockModel.NO_CUTOFF);
+                        cplexMillis = (System.nanoTime() - start) / 1e6;
+                        cplexObjective = exact.solution() != null ? String.format("%.2f", exact.solution().getObjAll())
+                                : exact.status().toString();
+                    }
+                }
+                System.out.printf("%-16s %4d %14s %10.1f %14s %10.1f%n", Arrays.toString(c), seed,
+                        heuristic.solution() != null ? String.format("%.2f", heuristic.solution().getObjAll())
+                                : heuristic.status(), heuristicMillis, cplexObjective, cplexMillis);
+            }
+    }
+}
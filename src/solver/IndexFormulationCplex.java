@@ -3,6 +3,8 @@ package solver;
 import entity.*;
 import ilog.concert.*;
 import ilog.cplex.IloCplex;
+import util.Deadline;
+import util.TripletBuilder;
 
 import java.util.*;
 
@@ -689,56 +691,11 @@ public class IndexFormulationCplex {
     }
 
 
-    private class TripletPool {
-        private final List<Integer> rows;
-        private final List<Integer> cols;
-        private final List<Double> values;
-        private final Map<Long, Integer> indexMap;
-
-
-        public TripletPool() {
-            this.rows = new ArrayList<>();
-            this.cols = new ArrayList<>();
-            this.values = new ArrayList<>();
-            this.indexMap = new HashMap<>();
-        }
-
-        public void add(int row, int col, double val) {
-            long key = ((long) row << 32) | (col & 0xFFFFFFFFL);
-            Integer index = indexMap.get(key);
-            if (index != null) {
-                double old = values.get(index);
-                values.set(index, old + val);
-            } else {
-                indexMap.put(key, rows.size());
-                rows.add(row);
-                cols.add(col);
-                values.add(val);
-            }
-        }
-
-        public int getN() {
-            return rows.size();
-        }
-
-        public int[] getRowIndices() {
-            return rows.stream().mapToInt(Integer::intValue).toArray();
-        }
-
-        public int[] getColIndices() {
-            return cols.stream().mapToInt(Integer::intValue).toArray();
-        }
-
-        public double[] getValues() {
-            return values.stream().mapToDouble(Double::doubleValue).toArray();
-        }
-    }
-
     private void setSpecialCongestionConstraintsGivenTimeAssignment() throws IloException {
         congestionMatrixIndexManager = new LPMatrix();
         congestionMatrix = congestionMatrixIndexManager.buildMatrixGivenTimeAssignment();
 
-        TripletPool pool = new TripletPool();
+        TripletBuilder pool = TripletBuilder.merging(1024);
         partialSolution.forEachUnloadingTimes((ip, m, jq, schedule) -> {
             for (Subblock k : instance.getSubblocks()) {
                 int colId = congestionMatrixIndexManager.getVarYIndex(ip, m, k);
@@ -782,7 +739,7 @@ public class IndexFormulationCplex {
         congestionMatrixIndexManager = new LPMatrix();
         congestionMatrix = congestionMatrixIndexManager.buildMatrixGivenSubblockAssignment();
 
-        TripletPool pool = new TripletPool();
+        TripletBuilder pool = TripletBuilder.merging(1024);
 
         partialSolution.forEachSubblockAssignments((ip, m, k) -> {
             for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
@@ -924,10 +881,13 @@ public class IndexFormulationCplex {
     }
 
     public static Solution solve(Instance instance, Integer timeLimit, Integer threads) throws IloException {
+        return solve(instance, Deadline.of(timeLimit), threads);
+    }
+
+    public static Solution solve(Instance instance, Deadline deadline, Integer threads) throws IloException {
         Random random = new Random(1);
-        long startTime = System.currentTimeMillis();
         MasterYardTemplateHeuristic heuristic = new MasterYardTemplateHeuristic(instance);
-        Map<VesselPeriod, Map<Subblock, Double>> costs = heuristic.getDistanceCostsByEqualStorage();
+        CostMatrix costs = heuristic.getDistanceCostsByEqualStorage();
         List<VesselPeriod> priority = heuristic.getFirstCommeFirstServedPriority();
         Map<VesselPeriod, Set<Subblock>> initialSubblockAssignment = heuristic.assignNeededSubblocksByCost(priority, costs);
         while (initialSubblockAssignment == null) {
@@ -942,9 +902,9 @@ public class IndexFormulationCplex {
         }
         current.build();
 
-        try (IloCplex cplex = new IloCplex()) {
-            if (timeLimit != null)
-                cplex.setParam(IloCplex.IntParam.TimeLimit, timeLimit - (double) (System.currentTimeMillis() - startTime) / 1000);
+        try (CplexPool.Lease lease = CplexPool.shared().acquire()) {
+            IloCplex cplex = lease.cplex();
+            cplex.setParam(IloCplex.Param.TimeLimit, deadline.timeLimit(0));
             IndexFormulationCplex model = IndexFormulationCplex.buildModelGivenSubblockAssignment(instance, cplex, current);
             model.solve();
             IndexBasedSolution solutionOperation = model.getSolutionOperationSchedule();
@@ -954,12 +914,10 @@ public class IndexFormulationCplex {
         boolean solveTimeProblem = true;
         boolean flag = true;
 
-        while (flag &&
-                (timeLimit == null || (System.currentTimeMillis() - startTime) / 1000 < timeLimit)) {
-            try (IloCplex cplex = new IloCplex()) {
-
-                if (timeLimit != null)
-                    cplex.setParam(IloCplex.IntParam.TimeLimit, timeLimit - (double) (System.currentTimeMillis() - startTime) / 1000);
+        while (flag && !deadline.isExpired()) {
+            try (CplexPool.Lease lease = CplexPool.shared().acquire()) {
+                IloCplex cplex = lease.cplex();
+                cplex.setParam(IloCplex.Param.TimeLimit, deadline.timeLimit(0));
 
                 IndexBasedSolution integratedSolution;
 
@@ -990,7 +948,7 @@ public class IndexFormulationCplex {
         Random random = new Random(1);
         long startTime = System.currentTimeMillis();
         MasterYardTemplateHeuristic heuristic = new MasterYardTemplateHeuristic(instance);
-        Map<VesselPeriod, Map<Subblock, Double>> costs = heuristic.getDistanceCostsByEqualStorage();
+        CostMatrix costs = heuristic.getDistanceCostsByEqualStorage();
         List<VesselPeriod> priority = heuristic.getFirstCommeFirstServedPriority();
         Map<VesselPeriod, Set<Subblock>> initialSubblockAssignment = heuristic.assignNeededSubblocksByCost(priority, costs);
         while (initialSubblockAssignment == null) {
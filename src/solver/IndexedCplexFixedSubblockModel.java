@@ -5,6 +5,7 @@ import ilog.concert.*;
 import ilog.cplex.IloCplex;
 import main.InstanceGenerator;
 import util.MyMathMethods;
+import util.TripletBuilder;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -18,24 +19,30 @@ public class IndexedCplexFixedSubblockModel {
     //    private Map<VesselPeriod, Map<Subblock, Map<VesselPeriod, Integer>>> containerAssignment; // ip -> k -> jqs -> w
     private Map<VesselPeriod, List<Subblock>> subblockAssignment; // solution of Y: ip -> k
 
-    private Map<VesselPeriod, Map<Integer, Map<VesselPeriod, IloIntVar>>> varZ; // ip->k->jq
-    private Map<VesselPeriod, Map<Integer, Map<VesselPeriod, IloIntVar>>> varW; // ip->k->jq
+    // the dense offsets of the variables and rows below, built with the subblock assignment
+    private VariableIndex offsets;
 
-    // ip->k->t, a^M_ip <= t < b^M_ip
-    private Map<VesselPeriod, Map<Integer, Map<Integer, IloIntVar>>> varDeltaL;
-    // ip->k->jq->t, a^M_jq <= t < b^M_jq, t \in E^i_p
-    private Map<VesselPeriod, Map<Integer, Map<VesselPeriod, Map<Integer, IloIntVar>>>> varDeltaU;
+    private IloIntVar[] varZ; // (ip, k, jq)
+    private IloIntVar[] varW; // (ip, k, jq)
+
+    // (ip, k, t), a^M_ip <= t < b^M_ip
+    private IloIntVar[] varDeltaL;
+    // (ip, k, jq, t), a^M_jq <= t < b^M_jq, t \in E^i_p
+    private IloIntVar[] varDeltaU;
 
     // ip->t, a^M_ip <= t < b^M_ip
     private Map<VesselPeriod, Map<Integer, IloIntVar>> varPiU, varPiL;
     // ip->t, t \in E^i_p
     private Map<VesselPeriod, Map<Integer, IloIntVar>> varPiUD;
     private Map<VesselPeriod, IloIntVar> varIota, varKappa;
-    private Map<Subblock, Map<Integer, IloIntVar>> varRho;
+    private IloIntVar[] varRho; // (k, t)
 
     private IloIntVar varUnloadOverload;
     private IloIntVar varLoadOverload;
 
+    public static final double NO_CUTOFF = 1e75; // the default upper cutoff of CPLEX
+    private double upperCutoff = NO_CUTOFF;
+
     public IloObjective objective;
     public IloLinearNumExpr objTime;
     public IloLinearNumExpr objRoute;
@@ -61,7 +68,7 @@ public class IndexedCplexFixedSubblockModel {
                 SubblockChange change = pair.getValue();
                 if (change.isReplace()) {
 //                    System.out.print(change.oldSubblock + "->" + change.newSubblock + ", ");
-                    changeSubblockAssignmentInBatch(ip, index, change.oldSubblock, change.newSubblock);
+                    changeSubblock(ip, index, change.oldSubblock, change.newSubblock);
                     changeCnt++;
                 } else {
                     throw new IllegalArgumentException("Unsupported change type: " + change);
@@ -69,119 +76,198 @@ public class IndexedCplexFixedSubblockModel {
             }
 //            System.out.println();
         }
+        applyLPMatrixChanges();
         int total = subblockAssignment.values().stream().mapToInt(Collection::size).sum();
 //        System.out.println("Number of changed subblock: " + changeCnt + "/" + total + "(" + changeCnt * 100.0 / total + "%)");
         return this;
     }
 
+    /**
+     * Apply a move generated from the current subblock assignment of the model, without diffing whole assignments.
+     */
+    public IndexedCplexFixedSubblockModel applyMove(SubblockMove move) throws IloException {
+        for (Map.Entry<VesselPeriod, SubblockChange> entry : move.getChanges(subblockAssignment).entrySet()) {
+            VesselPeriod ip = entry.getKey();
+            SubblockChange change = entry.getValue();
+            changeSubblock(ip, subblockAssignment.get(ip).indexOf(change.oldSubblock), change.oldSubblock, change.newSubblock);
+        }
+        applyLPMatrixChanges();
+        return this;
+    }
+
     public void changeSubblockAssignmentInBatch(VesselPeriod ip, Subblock oldSubblock, Subblock newSubblock) throws IloException {
-        List<Subblock> subblocks = subblockAssignment.get(ip);
-        int index = subblocks.indexOf(oldSubblock);
-        subblocks.set(index, newSubblock);
-        modifyOneByOne(ip, index, oldSubblock, newSubblock);
+        changeSubblock(ip, subblockAssignment.get(ip).indexOf(oldSubblock), oldSubblock, newSubblock);
+        applyLPMatrixChanges();
     }
 
     public void changeSubblockAssignmentInBatch(VesselPeriod ip, int index, Subblock oldSubblock, Subblock newSubblock) throws IloException {
-        List<Subblock> subblocks = subblockAssignment.get(ip);
-        subblocks.set(index, newSubblock);
-        modifyOneByOne(ip, index, oldSubblock, newSubblock);
+        changeSubblock(ip, index, oldSubblock, newSubblock);
+        applyLPMatrixChanges();
     }
 
+    /**
+     * Replace the subblock of a slot, in the model at once or, in a batched model, in the changes of the LP matrix
+     * until {@link #applyLPMatrixChanges()}.
+     */
+    private void changeSubblock(VesselPeriod ip, int index, Subblock oldSubblock, Subblock newSubblock) throws IloException {
+        subblockAssignment.get(ip).set(index, newSubblock);
+        if (lpMatrix != null)
+            modifyByLPMatrix(ip, index, oldSubblock, newSubblock);
+        else
+            modifyOneByOne(ip, index, oldSubblock, newSubblock);
+    }
+
+    // a batched model creates the rows of the Rho-Delta links and of the road flows in an LP matrix, see initLPMatrix
+    private boolean batched;
     private IloLPMatrix lpMatrix;
-    private Map<VesselPeriod, Map<Integer, Map<Integer, Integer>>> NlinkRhoDeltaL;
-    private Map<VesselPeriod, Map<Integer, Map<VesselPeriod, Map<Integer, Integer>>>> NlinkRhoDeltaU;
-    private int[][] NconstraintLoadFlows;
-    private int[][] NconstraintUnloadFlows;
+    private int rhoColumns, deltaLColumns, deltaUColumns;
+    private int linkRhoDeltaLRows, linkRhoDeltaURows, unloadFlowRows, loadFlowRows;
+    // the changes of the slots replaced since the last applyLPMatrixChanges, the last change of a position wins
+    private TripletBuilder matrixChanges;
+    private Map<IloNumVar, Double> objectiveChanges;
+
+    /**
+     * Add the columns, then the rows, to the LP matrix of the model. The columns are Rho, DeltaL, DeltaU and the
+     * overloads, the rows the Rho-DeltaL links, the Rho-DeltaU links, the unload flows and the load flows, each in the
+     * order of its array, so that the positions of a coefficient follow from the offsets of its variable and row.
+     */
+    private void initLPMatrix() throws IloException {
+        lpMatrix = cplex.addLPMatrix();
+        rhoColumns = lpMatrix.addCols(varRho);
+        deltaLColumns = rhoColumns + varRho.length;
+        deltaUColumns = deltaLColumns + varDeltaL.length;
+        lpMatrix.addCols(varDeltaL);
+        lpMatrix.addCols(varDeltaU);
+        lpMatrix.addCols(new IloNumVar[]{varUnloadOverload, varLoadOverload});
+
+        linkRhoDeltaLRows = lpMatrix.addRows(linkRhoDeltaL);
+        linkRhoDeltaURows = linkRhoDeltaLRows + linkRhoDeltaL.length;
+        unloadFlowRows = linkRhoDeltaURows + linkRhoDeltaU.length;
+        loadFlowRows = unloadFlowRows + roads * horizon;
+        lpMatrix.addRows(linkRhoDeltaU);
+        for (int l = 0; l < roads; l++)
+            lpMatrix.addRows(constraintUnloadFlows[l]);
+        for (int l = 0; l < roads; l++)
+            lpMatrix.addRows(constraintLoadFlows[l]);
 
+        matrixChanges = TripletBuilder.merging(1024);
+        objectiveChanges = new LinkedHashMap<>();
+    }
 
-    public void modifyByLPMatrix(VesselPeriod ip, int index, Subblock oldSubblock, Subblock newSubblock) throws IloException {
-        if (lpMatrix == null) {
-            Iterator<IloLPMatrix> matrices = cplex.LPMatrixIterator();
-            if (matrices.hasNext()) {
-                lpMatrix = matrices.next(); // 获取第一个 IloLPMatrix
-            }
-            NlinkRhoDeltaL = new HashMap<>();
-            for (Map.Entry<VesselPeriod, Map<Integer, Map<Integer, IloRange>>> entry : linkRhoDeltaL.entrySet()) {
-                VesselPeriod p = entry.getKey();
-                for (Map.Entry<Integer, Map<Integer, IloRange>> entry1 : entry.getValue().entrySet()) {
-                    int k = entry1.getKey();
-                    for (Map.Entry<Integer, IloRange> entry2 : entry1.getValue().entrySet()) {
-                        int t = entry2.getKey();
-                        IloRange constraint = entry2.getValue();
-                        NlinkRhoDeltaL.computeIfAbsent(p, k1 -> new HashMap<>())
-                                .computeIfAbsent(k, k1 -> new HashMap<>())
-                                .put(t, lpMatrix.getIndex(constraint));
-                    }
-                }
-            }
-            NlinkRhoDeltaU = new HashMap<>();
-            for (Map.Entry<VesselPeriod, Map<Integer, Map<VesselPeriod, Map<Integer, IloRange>>>> entry : linkRhoDeltaU.entrySet()) {
-                VesselPeriod p = entry.getKey();
-                for (Map.Entry<Integer, Map<VesselPeriod, Map<Integer, IloRange>>> entry1 : entry.getValue().entrySet()) {
-                    int k = entry1.getKey();
-                    for (Map.Entry<VesselPeriod, Map<Integer, IloRange>> entry2 : entry1.getValue().entrySet()) {
-                        VesselPeriod q = entry2.getKey();
-                        for (Map.Entry<Integer, IloRange> entry3 : entry2.getValue().entrySet()) {
-                            int t = entry3.getKey();
-                            IloRange constraint = entry3.getValue();
-                            NlinkRhoDeltaU.computeIfAbsent(p, k1 -> new HashMap<>())
-                                    .computeIfAbsent(k, k1 -> new HashMap<>())
-                                    .computeIfAbsent(q, k1 -> new HashMap<>())
-                                    .put(t, lpMatrix.getIndex(constraint));
-                        }
-                    }
-                }
-            }
-            NconstraintLoadFlows = new int[roads][instance.horizon];
-            for (int l = 0; l < roads; l++)
-                for (int t = 0; t < instance.horizon; t++) {
-                    NconstraintLoadFlows[l][t] = lpMatrix.getIndex(constraintLoadFlows[l][t]);
-                }
-            NconstraintUnloadFlows = new int[roads][instance.horizon];
-            for (int l = 0; l < roads; l++)
-                for (int t = 0; t < instance.horizon; t++) {
-                    NconstraintUnloadFlows[l][t] = lpMatrix.getIndex(constraintUnloadFlows[l][t]);
-                }
+    /**
+     * @return the LP matrix of a batched model, or null
+     */
+    IloLPMatrix getLPMatrix() {
+        return lpMatrix;
+    }
+
+    /**
+     * @return the range added to the model, or only created in a batched model, whose LP matrix adds it
+     */
+    private IloRange addRange(IloRange range) throws IloException {
+        return batched ? range : (IloRange) cplex.add(range);
+    }
 
+    /**
+     * Record the coefficient changes of a slot replacing its subblock, as {@link #modifyOneByOne} makes them.
+     */
+    private void modifyByLPMatrix(VesselPeriod ip, int index, Subblock oldSubblock, Subblock newSubblock) throws IloException {
+        VesselPeriod[] sources = offsets.getSources(ip);
+        for (int j = 0; j < sources.length; j++) {
+            VesselPeriod jq = sources[j];
+            double oldDistance = instance.getDistanceToSubblock(jq, oldSubblock) + instance.getDistanceFromSubblock(ip, oldSubblock);
+            double newDistance = instance.getDistanceToSubblock(jq, newSubblock) + instance.getDistanceFromSubblock(ip, newSubblock);
+            IloIntVar w = varW[offsets.getTransferIndex(ip, index, j)];
+            objectiveChanges.put(w, newDistance * instance.etaRoute);
+            objRoute.addTerm(newDistance - oldDistance, w);
         }
 
+        int[] loadTimes = offsets.getLoadTimes(ip);
+        for (int i = 0; i < loadTimes.length; i++) {
+            int t = loadTimes[i];
+            int load = offsets.getLoadIndex(ip, index, i);
+            matrixChanges.set(linkRhoDeltaLRows + load, rhoColumns + offsets.getRhoIndex(oldSubblock, t), 0);
+            matrixChanges.set(linkRhoDeltaLRows + load, rhoColumns + offsets.getRhoIndex(newSubblock, t), 1);
+            for (int l : instance.getRouteFromSubblock(ip, oldSubblock))
+                matrixChanges.set(loadFlowRows + l * horizon + t, deltaLColumns + load, 0);
+            for (int l : instance.getRouteFromSubblock(ip, newSubblock))
+                matrixChanges.set(loadFlowRows + l * horizon + t, deltaLColumns + load, 1);
+        }
 
+        for (int j = 0; j < sources.length; j++) {
+            VesselPeriod jq = sources[j];
+            int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+            for (int i = 0; i < unloadTimes.length; i++) {
+                int t = unloadTimes[i];
+                int unload = offsets.getUnloadIndex(ip, index, j, i);
+                matrixChanges.set(linkRhoDeltaURows + unload, rhoColumns + offsets.getRhoIndex(oldSubblock, t), 0);
+                matrixChanges.set(linkRhoDeltaURows + unload, rhoColumns + offsets.getRhoIndex(newSubblock, t), 1);
+                for (int l : instance.getRouteToSubblock(jq, oldSubblock))
+                    matrixChanges.set(unloadFlowRows + l * horizon + t, deltaUColumns + unload, 0);
+                for (int l : instance.getRouteToSubblock(jq, newSubblock))
+                    matrixChanges.set(unloadFlowRows + l * horizon + t, deltaUColumns + unload, 1);
+            }
+        }
+    }
+
+    /**
+     * Apply the recorded changes of a batched model, with one {@code setNZs} on the LP matrix and one
+     * {@code setLinearCoefs} on the objective.
+     */
+    private void applyLPMatrixChanges() throws IloException {
+        if (lpMatrix == null)
+            return;
+        if (matrixChanges.size() > 0) {
+            lpMatrix.setNZs(matrixChanges.getRowIndices(), matrixChanges.getColIndices(), matrixChanges.getValues());
+            matrixChanges.clear();
+        }
+        if (!objectiveChanges.isEmpty()) {
+            cplex.setLinearCoefs(objective,
+                    objectiveChanges.values().stream().mapToDouble(Double::doubleValue).toArray(),
+                    objectiveChanges.keySet().toArray(new IloNumVar[0]));
+            objectiveChanges.clear();
+        }
     }
 
     public void modifyInBatch(VesselPeriod ip, int index, Subblock oldSubblock, Subblock newSubblock) throws IloException {
-        ArrayList<IloIntVar> vars = new ArrayList<>();
-        ArrayList<Double> vals = new ArrayList<>();
+        VesselPeriod[] sources = offsets.getSources(ip);
+        IloIntVar[] vars = new IloIntVar[sources.length];
+        double[] vals = new double[sources.length];
         // modify the objRoute
-        for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
+        for (int j = 0; j < sources.length; j++) {
+            VesselPeriod jq = sources[j];
             double oldDistance = instance.getDistanceToSubblock(jq, oldSubblock) + instance.getDistanceFromSubblock(ip, oldSubblock);
             double newDistance = instance.getDistanceToSubblock(jq, newSubblock) + instance.getDistanceFromSubblock(ip, newSubblock);
-            vars.add(varW.get(ip).get(index).get(jq));
-            vals.add(newDistance * instance.etaRoute);
-            objRoute.addTerm(newDistance - oldDistance, varW.get(ip).get(index).get(jq));
+            vars[j] = varW[offsets.getTransferIndex(ip, index, j)];
+            vals[j] = newDistance * instance.etaRoute;
+            objRoute.addTerm(newDistance - oldDistance, vars[j]);
         }
 
-        cplex.setLinearCoefs(objective,
-                vals.stream().mapToDouble(Double::doubleValue).toArray(),
-                vars.toArray(new IloIntVar[0]));
+        cplex.setLinearCoefs(objective, vals, vars);
 
 
-        for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-            IloRange constraint = linkRhoDeltaL.get(ip).get(index).get(t);
+        int[] loadTimes = offsets.getLoadTimes(ip);
+        for (int i = 0; i < loadTimes.length; i++) {
+            int t = loadTimes[i];
+            IloRange constraint = linkRhoDeltaL[offsets.getLoadIndex(ip, index, i)];
             cplex.setLinearCoefs(constraint, new double[]{0, 1},
-                    new IloIntVar[]{varRho.get(oldSubblock).get(t), varRho.get(newSubblock).get(t)});
+                    new IloIntVar[]{varRho[offsets.getRhoIndex(oldSubblock, t)], varRho[offsets.getRhoIndex(newSubblock, t)]});
         }
 
-        for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-            for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                IloRange constraint = linkRhoDeltaU.get(ip).get(index).get(jq).get(t);
+        for (int j = 0; j < sources.length; j++) {
+            int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+            for (int i = 0; i < unloadTimes.length; i++) {
+                int t = unloadTimes[i];
+                IloRange constraint = linkRhoDeltaU[offsets.getUnloadIndex(ip, index, j, i)];
                 cplex.setLinearCoefs(constraint, new double[]{0, 1},
-                        new IloIntVar[]{varRho.get(oldSubblock).get(t), varRho.get(newSubblock).get(t)});
+                        new IloIntVar[]{varRho[offsets.getRhoIndex(oldSubblock, t)], varRho[offsets.getRhoIndex(newSubblock, t)]});
             }
         }
 
         Map<IloRange, Map<IloIntVar, Double>> loadChanges = new HashMap<>();
-        for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-            IloIntVar deltaL = varDeltaL.get(ip).get(index).get(t);
+        for (int i = 0; i < loadTimes.length; i++) {
+            int t = loadTimes[i];
+            IloIntVar deltaL = varDeltaL[offsets.getLoadIndex(ip, index, i)];
             for (int l : instance.getRouteFromSubblock(ip, oldSubblock)) {
                 IloRange constraint = constraintLoadFlows[l][t];
                 loadChanges.computeIfAbsent(constraint, key -> new HashMap<>())
@@ -209,9 +295,12 @@ public class IndexedCplexFixedSubblockModel {
 
 
         Map<IloRange, Map<IloIntVar, Double>> unloadChanges = new HashMap<>();
-        for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-            for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                IloIntVar deltaU = varDeltaU.get(ip).get(index).get(jq).get(t);
+        for (int j = 0; j < sources.length; j++) {
+            VesselPeriod jq = sources[j];
+            int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+            for (int i = 0; i < unloadTimes.length; i++) {
+                int t = unloadTimes[i];
+                IloIntVar deltaU = varDeltaU[offsets.getUnloadIndex(ip, index, j, i)];
                 for (int l : instance.getRouteToSubblock(jq, oldSubblock)) {
                     IloRange constraint = constraintUnloadFlows[l][t];
                     unloadChanges.computeIfAbsent(constraint, key -> new HashMap<>())
@@ -223,6 +312,7 @@ public class IndexedCplexFixedSubblockModel {
                             .put(deltaU, 1.0);
                 }
             }
+        }
 
         for (Map.Entry<IloRange, Map<IloIntVar, Double>> entry : unloadChanges.entrySet()) {
             IloRange constraint = entry.getKey();
@@ -241,31 +331,39 @@ public class IndexedCplexFixedSubblockModel {
     }
 
     public void modifyOneByOne(VesselPeriod ip, int index, Subblock oldSubblock, Subblock newSubblock) throws IloException {
+        VesselPeriod[] sources = offsets.getSources(ip);
 
         // modify the objRoute
-        for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
+        for (int j = 0; j < sources.length; j++) {
+            VesselPeriod jq = sources[j];
             double oldDistance = instance.getDistanceToSubblock(jq, oldSubblock) + instance.getDistanceFromSubblock(ip, oldSubblock);
             double newDistance = instance.getDistanceToSubblock(jq, newSubblock) + instance.getDistanceFromSubblock(ip, newSubblock);
-            cplex.setLinearCoef(objective, newDistance * instance.etaRoute, varW.get(ip).get(index).get(jq));
-            objRoute.addTerm(newDistance - oldDistance, varW.get(ip).get(index).get(jq));
+            IloIntVar w = varW[offsets.getTransferIndex(ip, index, j)];
+            cplex.setLinearCoef(objective, newDistance * instance.etaRoute, w);
+            objRoute.addTerm(newDistance - oldDistance, w);
         }
 
 
-        for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-            IloRange constraint = linkRhoDeltaL.get(ip).get(index).get(t);
-            cplex.setLinearCoef(constraint, 0, varRho.get(oldSubblock).get(t));
-            cplex.setLinearCoef(constraint, 1, varRho.get(newSubblock).get(t));
+        int[] loadTimes = offsets.getLoadTimes(ip);
+        for (int i = 0; i < loadTimes.length; i++) {
+            int t = loadTimes[i];
+            IloRange constraint = linkRhoDeltaL[offsets.getLoadIndex(ip, index, i)];
+            cplex.setLinearCoef(constraint, 0, varRho[offsets.getRhoIndex(oldSubblock, t)]);
+            cplex.setLinearCoef(constraint, 1, varRho[offsets.getRhoIndex(newSubblock, t)]);
         }
-        for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-            for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                IloRange constraint = linkRhoDeltaU.get(ip).get(index).get(jq).get(t);
-                cplex.setLinearCoef(constraint, 0, varRho.get(oldSubblock).get(t));
-                cplex.setLinearCoef(constraint, 1, varRho.get(newSubblock).get(t));
+        for (int j = 0; j < sources.length; j++) {
+            int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+            for (int i = 0; i < unloadTimes.length; i++) {
+                int t = unloadTimes[i];
+                IloRange constraint = linkRhoDeltaU[offsets.getUnloadIndex(ip, index, j, i)];
+                cplex.setLinearCoef(constraint, 0, varRho[offsets.getRhoIndex(oldSubblock, t)]);
+                cplex.setLinearCoef(constraint, 1, varRho[offsets.getRhoIndex(newSubblock, t)]);
             }
         }
 
-        for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-            IloIntVar deltaL = varDeltaL.get(ip).get(index).get(t);
+        for (int i = 0; i < loadTimes.length; i++) {
+            int t = loadTimes[i];
+            IloIntVar deltaL = varDeltaL[offsets.getLoadIndex(ip, index, i)];
             for (int l : instance.getRouteFromSubblock(ip, oldSubblock)) {
                 IloRange constraint = constraintLoadFlows[l][t];
                 cplex.setLinearCoef(constraint, 0, deltaL);
@@ -277,9 +375,12 @@ public class IndexedCplexFixedSubblockModel {
         }
 
 
-        for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-            for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                IloIntVar deltaU = varDeltaU.get(ip).get(index).get(jq).get(t);
+        for (int j = 0; j < sources.length; j++) {
+            VesselPeriod jq = sources[j];
+            int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+            for (int i = 0; i < unloadTimes.length; i++) {
+                int t = unloadTimes[i];
+                IloIntVar deltaU = varDeltaU[offsets.getUnloadIndex(ip, index, j, i)];
                 for (int l : instance.getRouteToSubblock(jq, oldSubblock)) {
                     IloRange constraint = constraintUnloadFlows[l][t];
                     cplex.setLinearCoef(constraint, 0, deltaU);
@@ -289,6 +390,7 @@ public class IndexedCplexFixedSubblockModel {
                     cplex.setLinearCoef(constraint, 1, deltaU);
                 }
             }
+        }
     }
 
 
@@ -297,6 +399,90 @@ public class IndexedCplexFixedSubblockModel {
 
     }
 
+    /**
+     * Let the next solves abandon the subproblem once no solution better than the cutoff can be found.
+     *
+     * @param cutoff the objective to beat, or {@link #NO_CUTOFF}
+     */
+    public void setUpperCutoff(double cutoff) throws IloException {
+        this.upperCutoff = cutoff;
+        cplex.setParam(IloCplex.Param.MIP.Tolerances.UpperCutoff, cutoff);
+    }
+
+    /**
+     * @return whether the last solve found no solution under an upper cutoff. CPLEX reports a subproblem without
+     * solution below the cutoff as infeasible, so the subproblem is either dominated by the cutoff or infeasible: only a
+     * solve without the cutoff tells them apart.
+     */
+    public boolean isCutOff() throws IloException {
+        return upperCutoff < NO_CUTOFF && cplex.getStatus() == IloCplex.Status.Infeasible;
+    }
+
+    /**
+     * Replace the MIP start of the next solves by the schedule of a solution of a nearby subblock assignment, e.g. the
+     * current solution of a neighbor. A subblock kept by a vessel period keeps its container assignment and load/unload
+     * times; the subblocks new to a vessel period, in the order of their slots, inherit them from the subblocks it no
+     * longer has, in the order of their ids, as a solution does not tell which slot a subblock was in. The other
+     * variables are left for CPLEX to complete.
+     *
+     * @return whether a start was added, i.e. any subblock schedule could be carried over
+     */
+    public boolean addMipStart(Solution solution) throws IloException {
+        deleteMipStarts();
+
+        Map<VesselPeriod, Set<Subblock>> solved = solution.getSubblockAssignments();
+        List<IloNumVar> vars = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (VesselPeriod ip : instance.getVesselPeriods()) {
+            List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
+            Set<Subblock> solvedSubblocks = solved.getOrDefault(ip, Collections.emptySet());
+            Deque<Subblock> replaced = solvedSubblocks.stream()
+                    .filter(subblock -> !subblocks.contains(subblock))
+                    .sorted(Comparator.comparingInt(Subblock::getId))
+                    .collect(Collectors.toCollection(ArrayDeque::new));
+
+            for (int k = 0; k < subblocks.size(); k++) {
+                Subblock from = solvedSubblocks.contains(subblocks.get(k)) ? subblocks.get(k) : replaced.poll();
+                Solution.Schedule load = from != null ? solution.getLoadSchedule(ip, from) : null;
+                if (load == null)
+                    continue;
+                int[] loadTimes = offsets.getLoadTimes(ip);
+                for (int i = 0; i < loadTimes.length; i++) {
+                    vars.add(varDeltaL[offsets.getLoadIndex(ip, k, i)]);
+                    values.add(Objects.equals(load.time, loadTimes[i]) ? 1. : 0.);
+                }
+                Map<VesselPeriod, Solution.Schedule> unloads = solution.getUnloadSchedules(ip, from);
+                VesselPeriod[] sources = offsets.getSources(ip);
+                for (int j = 0; j < sources.length; j++) {
+                    Solution.Schedule unload = unloads.get(sources[j]);
+                    vars.add(varZ[offsets.getTransferIndex(ip, k, j)]);
+                    values.add(unload != null ? 1. : 0.);
+                    vars.add(varW[offsets.getTransferIndex(ip, k, j)]);
+                    values.add(unload != null ? (double) unload.number : 0.);
+                    int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+                    for (int i = 0; i < unloadTimes.length; i++) {
+                        vars.add(varDeltaU[offsets.getUnloadIndex(ip, k, j, i)]);
+                        values.add(unload != null && Objects.equals(unload.time, unloadTimes[i]) ? 1. : 0.);
+                    }
+                }
+            }
+        }
+        if (vars.isEmpty())
+            return false;
+        cplex.addMIPStart(vars.toArray(new IloNumVar[0]), values.stream().mapToDouble(Double::doubleValue).toArray(),
+                IloCplex.MIPStartEffort.Auto);
+        return true;
+    }
+
+    /**
+     * Delete the MIP starts, e.g. of a previous neighbor before the model is changed.
+     */
+    public void deleteMipStarts() throws IloException {
+        int starts = cplex.getNMIPStarts();
+        if (starts > 0)
+            cplex.deleteMIPStarts(0, starts);
+    }
+
     public Solution solveSP2WithSolution(Map<VesselPeriod, Map<Subblock, Map<VesselPeriod, Integer>>> containerAssignment) throws IloException {
         Map<VesselPeriod, Map<Subblock, Set<VesselPeriod>>> transferAssignment = containerAssignment.entrySet().stream().collect(Collectors.toMap(
                 Map.Entry::getKey,
@@ -321,8 +507,19 @@ public class IndexedCplexFixedSubblockModel {
 
     public static IndexedCplexFixedSubblockModel buildIntegratedSubproblemModel(
             Instance instance, IloCplex cplex, Map<VesselPeriod, ? extends Collection<Subblock>> subblockAssignment) throws IloException {
+        return buildIntegratedSubproblemModel(instance, cplex, subblockAssignment, false);
+    }
+
+    /**
+     * @param batched whether the subblock changes of the model are applied as one LP matrix update per call, instead
+     *                of one Concert coefficient change at a time
+     */
+    public static IndexedCplexFixedSubblockModel buildIntegratedSubproblemModel(
+            Instance instance, IloCplex cplex, Map<VesselPeriod, ? extends Collection<Subblock>> subblockAssignment,
+            boolean batched) throws IloException {
         IndexedCplexFixedSubblockModel model = new IndexedCplexFixedSubblockModel(instance, cplex);
         model.setSubblockAssignment(subblockAssignment);
+        model.batched = batched;
 
         model.initVarZ();
         model.variableSP1();
@@ -360,10 +557,12 @@ public class IndexedCplexFixedSubblockModel {
             List<Subblock> subblocks = model.subblockAssignment.getOrDefault(ip, Collections.emptyList());
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
+                VesselPeriod[] sources = model.offsets.getSources(ip);
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
                     IloLinearIntExpr expr = cplex.linearIntExpr();
-                    for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon))
-                        expr.addTerm(1, model.varDeltaU.get(ip).get(k).get(jq).get(t));
+                    for (int i = 0; i < model.offsets.getUnloadTimes(ip, j).length; i++)
+                        expr.addTerm(1, model.varDeltaU[model.offsets.getUnloadIndex(ip, k, j, i)]);
 
                     if (transferAssignment.get(ip).get(subblock).contains(jq))
                         cplex.addEq(expr, 1, String.format("ConsHandleZ_%d,%d,%d,%d,%d",
@@ -392,9 +591,10 @@ public class IndexedCplexFixedSubblockModel {
             List<Subblock> subblocks = model.subblockAssignment.getOrDefault(ip, Collections.emptyList());
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-                    if (!transferAssignment.get(ip).get(subblock).contains(jq))
-                        model.varW.get(ip).get(k).get(jq).setUB(0);
+                VesselPeriod[] sources = model.offsets.getSources(ip);
+                for (int j = 0; j < sources.length; j++)
+                    if (!transferAssignment.get(ip).get(subblock).contains(sources[j]))
+                        model.varW[model.offsets.getTransferIndex(ip, k, j)].setUB(0);
             }
         }
 
@@ -442,48 +642,146 @@ public class IndexedCplexFixedSubblockModel {
         return mergeSolution(getSolutionContainerAssignment(), getSolutionOperationSchedule());
     }
 
+    /**
+     * Dense offsets of the variables and rows of the slots (ip, k), the k-th subblock assigned to ip: (ip, k, jq) of
+     * Z and W, (ip, k, t) of DeltaL and (ip, k, jq, t) of DeltaU, with jq and t given by their positions j in
+     * {@link #getSources} and i in {@link #getLoadTimes} or {@link #getUnloadTimes}. The slots of ip follow each
+     * other and have the same size, which only depends on the number of subblocks of ip, so that the offsets stay
+     * valid when a slot changes its subblock.
+     */
+    private class VariableIndex {
+        private final VesselPeriod[][] sources; // vpId -> j
+        private final int[][] loadTimes; // vpId -> i
+        private final int[][][] unloadTimes; // vpId -> j -> i
+        private final int[][] unloadSlotOffsets; // vpId -> j, the offset of jq within a slot of DeltaU
+
+        private final int[] transferStarts, loadStarts, unloadStarts; // vpId
+        private final int[] unloadSlotSizes; // vpId
+        private int numTransfers, numLoads, numUnloads;
+
+        VariableIndex() {
+            int vesselPeriods = instance.getNumVesselPeriods();
+            sources = new VesselPeriod[vesselPeriods][];
+            loadTimes = new int[vesselPeriods][];
+            unloadTimes = new int[vesselPeriods][][];
+            unloadSlotOffsets = new int[vesselPeriods][];
+            transferStarts = new int[vesselPeriods];
+            loadStarts = new int[vesselPeriods];
+            unloadStarts = new int[vesselPeriods];
+            unloadSlotSizes = new int[vesselPeriods];
+
+            for (VesselPeriod ip : instance.getVesselPeriods()) {
+                int vp = ip.getVpId();
+                int numK = subblockAssignment.getOrDefault(ip, Collections.emptyList()).size();
+                sources[vp] = instance.getSourceVesselPeriodsOf(ip).toArray(new VesselPeriod[0]);
+                loadTimes[vp] = ip.getFeasibleInterval().intStream(horizon).toArray();
+                unloadTimes[vp] = new int[sources[vp].length][];
+                unloadSlotOffsets[vp] = new int[sources[vp].length];
+                for (int j = 0; j < sources[vp].length; j++) {
+                    unloadTimes[vp][j] = ip.getPeriodInterval().intersection(sources[vp][j].getFeasibleInterval(), horizon).toArray();
+                    unloadSlotOffsets[vp][j] = unloadSlotSizes[vp];
+                    unloadSlotSizes[vp] += unloadTimes[vp][j].length;
+                }
+
+                transferStarts[vp] = numTransfers;
+                numTransfers += numK * sources[vp].length;
+                loadStarts[vp] = numLoads;
+                numLoads += numK * loadTimes[vp].length;
+                unloadStarts[vp] = numUnloads;
+                numUnloads += numK * unloadSlotSizes[vp];
+            }
+        }
+
+        VesselPeriod[] getSources(VesselPeriod ip) {
+            return sources[ip.getVpId()];
+        }
+
+        int[] getLoadTimes(VesselPeriod ip) {
+            return loadTimes[ip.getVpId()];
+        }
+
+        int[] getUnloadTimes(VesselPeriod ip, int j) {
+            return unloadTimes[ip.getVpId()][j];
+        }
+
+        int getTransferIndex(VesselPeriod ip, int k, int j) {
+            int vp = ip.getVpId();
+            return transferStarts[vp] + k * sources[vp].length + j;
+        }
+
+        int getLoadIndex(VesselPeriod ip, int k, int i) {
+            int vp = ip.getVpId();
+            return loadStarts[vp] + k * loadTimes[vp].length + i;
+        }
+
+        int getUnloadIndex(VesselPeriod ip, int k, int j, int i) {
+            int vp = ip.getVpId();
+            return unloadStarts[vp] + k * unloadSlotSizes[vp] + unloadSlotOffsets[vp][j] + i;
+        }
+
+        int getRhoIndex(Subblock k, int t) {
+            return k.getId() * horizon + t;
+        }
+
+        int getNumTransfers() {
+            return numTransfers;
+        }
+
+        int getNumLoads() {
+            return numLoads;
+        }
+
+        int getNumUnloads() {
+            return numUnloads;
+        }
+    }
+
     private void initVarZ() throws IloException {
-        varZ = new HashMap<>(instance.getNumVesselPeriods());
+        varZ = new IloIntVar[offsets.getNumTransfers()];
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             int numK = subblockAssignment.getOrDefault(ip, Collections.emptyList()).size();
-            Map<Integer, Map<VesselPeriod, IloIntVar>> _varZ = new HashMap<>(numK);
-            varZ.put(ip, _varZ);
-            for (int k = 0; k < numK; k++) {
-                HashMap<VesselPeriod, IloIntVar> __varZ = new HashMap<>(instance.getSourceVesselPeriodsOf(ip).size());
-                _varZ.put(k, __varZ);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-                    __varZ.put(jq, cplex.boolVar(String.format("Z_%d,%d,%d,%d,%d",
-                            k, ip.getVid(), ip.getPid(), jq.getVid(), jq.getPid())));
+            VesselPeriod[] sources = offsets.getSources(ip);
+            for (int k = 0; k < numK; k++)
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
+                    varZ[offsets.getTransferIndex(ip, k, j)] = cplex.boolVar(String.format("Z_%d,%d,%d,%d,%d",
+                            k, ip.getVid(), ip.getPid(), jq.getVid(), jq.getPid()));
                 }
-            }
         }
     }
 
     private void linkZW() throws IloException {
         for (VesselPeriod ip : instance.getVesselPeriods()) {
+            VesselPeriod[] sources = offsets.getSources(ip);
             for (int k = 0; k < subblockAssignment.getOrDefault(ip, Collections.emptyList()).size(); k++)
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-                    cplex.addLe(varW.get(ip).get(k).get(jq),
-                            cplex.prod(instance.spaceCapacity, varZ.get(ip).get(k).get(jq)),
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
+                    int transfer = offsets.getTransferIndex(ip, k, j);
+                    cplex.addLe(varW[transfer],
+                            cplex.prod(instance.spaceCapacity, varZ[transfer]),
                             String.format("link_Z_W_%d,%d,%d,%d,%d", ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid()));
+                }
         }
     }
 
     private void linkZDelta() throws IloException {
-        for (VesselPeriod ip : instance.getVesselPeriods())
+        for (VesselPeriod ip : instance.getVesselPeriods()) {
+            VesselPeriod[] sources = offsets.getSources(ip);
             for (int k = 0; k < subblockAssignment.getOrDefault(ip, Collections.emptyList()).size(); k++)
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
                     IloLinearIntExpr expr = cplex.linearIntExpr();
-                    for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon))
-                        expr.addTerm(1, varDeltaU.get(ip).get(k).get(jq).get(t));
-                    cplex.addEq(expr, varZ.get(ip).get(k).get(jq), String.format("link_Z_DeltaU_%d,%d,%d,%d,%d",
+                    for (int i = 0; i < offsets.getUnloadTimes(ip, j).length; i++)
+                        expr.addTerm(1, varDeltaU[offsets.getUnloadIndex(ip, k, j, i)]);
+                    cplex.addEq(expr, varZ[offsets.getTransferIndex(ip, k, j)], String.format("link_Z_DeltaU_%d,%d,%d,%d,%d",
                             ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid()));
                 }
+        }
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (int k = 0; k < subblockAssignment.getOrDefault(ip, Collections.emptyList()).size(); k++) {
                 IloLinearIntExpr expr = cplex.linearIntExpr();
-                for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-                    expr.addTerm(1, varDeltaL.get(ip).get(k).get(t));
+                for (int i = 0; i < offsets.getLoadTimes(ip).length; i++) {
+                    expr.addTerm(1, varDeltaL[offsets.getLoadIndex(ip, k, i)]);
                 }
 
 
@@ -523,6 +821,7 @@ public class IndexedCplexFixedSubblockModel {
 
             this.subblockAssignment.put(ip, new ArrayList<>(subblocks));
         }
+        this.offsets = new VariableIndex();
     }
 
     private void setSubblockAssignmentWithTransferAssignment(Map<VesselPeriod, Map<Subblock, Set<VesselPeriod>>> transferAssignment) {
@@ -536,7 +835,7 @@ public class IndexedCplexFixedSubblockModel {
                     entry.getKey(),
                     new ArrayList<>(entry.getValue().keySet()));
         }
-
+        this.offsets = new VariableIndex();
     }
 
 
@@ -552,7 +851,7 @@ public class IndexedCplexFixedSubblockModel {
 
     public Map<VesselPeriod, Map<Subblock, Map<VesselPeriod, Integer>>> getSolutionContainerAssignment() throws IloException {
         validateCplexStatus();
-        if (varW == null || varW.isEmpty()) {
+        if (varW == null) {
             throw new IllegalStateException("Variable varW is not initialized or is empty.");
         }
 
@@ -560,12 +859,13 @@ public class IndexedCplexFixedSubblockModel {
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (int k = 0; k < subblockAssignment.getOrDefault(ip, Collections.emptyList()).size(); k++) {
                 Subblock subblock = subblockAssignment.getOrDefault(ip, Collections.emptyList()).get(k);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-                    int w = getIntValue(varW.get(ip).get(k).get(jq));
+                VesselPeriod[] sources = offsets.getSources(ip);
+                for (int j = 0; j < sources.length; j++) {
+                    int w = getIntValue(varW[offsets.getTransferIndex(ip, k, j)]);
                     if (w > 0)
                         containerAssignment.computeIfAbsent(ip, key -> new HashMap<>())
                                 .computeIfAbsent(subblock, key -> new HashMap<>())
-                                .put(jq, w);
+                                .put(sources[j], w);
                 }
             }
         return containerAssignment;
@@ -577,19 +877,16 @@ public class IndexedCplexFixedSubblockModel {
 
 
     private void initVarW() throws IloException {
-        varW = new HashMap<>(instance.getNumVesselPeriods());
+        varW = new IloIntVar[offsets.getNumTransfers()];
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             int numK = subblockAssignment.getOrDefault(ip, Collections.emptyList()).size();
-            Map<Integer, Map<VesselPeriod, IloIntVar>> _varW = new HashMap<>(numK);
-            varW.put(ip, _varW);
-            for (int k = 0; k < numK; k++) {
-                Map<VesselPeriod, IloIntVar> __varW = new HashMap<>(instance.getSourceVesselPeriodsOf(ip).size());
-                _varW.put(k, __varW);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-                    __varW.put(jq, cplex.intVar(0, instance.spaceCapacity, String.format("W_%d,%d,%d,%d,%d",
-                            ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid())));
+            VesselPeriod[] sources = offsets.getSources(ip);
+            for (int k = 0; k < numK; k++)
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
+                    varW[offsets.getTransferIndex(ip, k, j)] = cplex.intVar(0, instance.spaceCapacity, String.format("W_%d,%d,%d,%d,%d",
+                            ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid()));
                 }
-            }
         }
     }
 
@@ -599,9 +896,10 @@ public class IndexedCplexFixedSubblockModel {
             for (VesselPeriod ip : instance.getDestinationVesselPeriodsOf(jq)) {
                 int n = instance.getTransshipmentTo(jq, ip);
 
+                int j = Arrays.asList(offsets.getSources(ip)).indexOf(jq);
                 IloLinearIntExpr expr = cplex.linearIntExpr();
                 for (int k = 0; k < subblockAssignment.getOrDefault(ip, Collections.emptyList()).size(); k++) {
-                    expr.addTerm(1, varW.get(ip).get(k).get(jq));
+                    expr.addTerm(1, varW[offsets.getTransferIndex(ip, k, j)]);
                 }
                 cplex.addEq(expr, n, String.format("ConsFlowN_%d,%d,%d,%d",
                         ip.getVid(), ip.getPid(), jq.getVid(), jq.getPid()));
@@ -610,8 +908,8 @@ public class IndexedCplexFixedSubblockModel {
         for (VesselPeriod ip : instance.getVesselPeriods())
             for (int k = 0; k < subblockAssignment.getOrDefault(ip, Collections.emptyList()).size(); k++) {
                 IloLinearIntExpr expr = cplex.linearIntExpr();
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-                    expr.addTerm(1, varW.get(ip).get(k).get(jq));
+                for (int j = 0; j < offsets.getSources(ip).length; j++)
+                    expr.addTerm(1, varW[offsets.getTransferIndex(ip, k, j)]);
                 cplex.addLe(expr, instance.spaceCapacity,
                         String.format("ConsFlowC_%d,%d,%d", ip.getVid(), ip.getPid(), k));
             }
@@ -623,9 +921,10 @@ public class IndexedCplexFixedSubblockModel {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-                    double distance = instance.getDistanceToSubblock(jq, subblock) + instance.getDistanceFromSubblock(ip, subblock);
-                    objRoute.addTerm(distance * instance.etaRoute, varW.get(ip).get(k).get(jq));
+                VesselPeriod[] sources = offsets.getSources(ip);
+                for (int j = 0; j < sources.length; j++) {
+                    double distance = instance.getDistanceToSubblock(sources[j], subblock) + instance.getDistanceFromSubblock(ip, subblock);
+                    objRoute.addTerm(distance * instance.etaRoute, varW[offsets.getTransferIndex(ip, k, j)]);
                 }
             }
         }
@@ -634,10 +933,10 @@ public class IndexedCplexFixedSubblockModel {
 
     public Map<VesselPeriod, Map<Subblock, Map<VesselPeriod, Integer>>> getSolutionOperationSchedule() throws IloException {
         validateCplexStatus();
-        if (varDeltaL == null || varDeltaL.isEmpty()) {
+        if (varDeltaL == null) {
             throw new IllegalStateException("Variable varDeltaL is not initialized or is empty.");
         }
-        if (varDeltaU == null || varDeltaU.isEmpty()) {
+        if (varDeltaU == null) {
             throw new IllegalStateException("Variable varDeltaU is not initialized or is empty.");
         }
 
@@ -648,8 +947,10 @@ public class IndexedCplexFixedSubblockModel {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
-                for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-                    if (getIntValue(varDeltaL.get(ip).get(k).get(t)) == 1) {
+                int[] loadTimes = offsets.getLoadTimes(ip);
+                for (int i = 0; i < loadTimes.length; i++) {
+                    int t = loadTimes[i];
+                    if (getIntValue(varDeltaL[offsets.getLoadIndex(ip, k, i)]) == 1) {
                         Integer preT = operationSchedule.computeIfAbsent(ip, key -> new HashMap<>())
                                 .computeIfAbsent(subblock, key -> new HashMap<>())
                                 .put(ip, t);
@@ -665,9 +966,13 @@ public class IndexedCplexFixedSubblockModel {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-                    for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                        if (getIntValue(varDeltaU.get(ip).get(k).get(jq).get(t)) == 1) {
+                VesselPeriod[] sources = offsets.getSources(ip);
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
+                    int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+                    for (int i = 0; i < unloadTimes.length; i++) {
+                        int t = unloadTimes[i];
+                        if (getIntValue(varDeltaU[offsets.getUnloadIndex(ip, k, j, i)]) == 1) {
                             if (!operationSchedule.containsKey(ip) || !operationSchedule.get(ip).containsKey(subblock)) {
                                 throw new IllegalArgumentException("The subblock " + subblock + " for Vessel Period " + ip + " is not loaded.");
                             }
@@ -679,6 +984,7 @@ public class IndexedCplexFixedSubblockModel {
                                         + " from Vessel Period " + jq + " is unloaded twice.");
                         }
                     }
+                }
             }
         }
 
@@ -700,39 +1006,30 @@ public class IndexedCplexFixedSubblockModel {
     }
 
     private void initVarDelta() throws IloException {
-        varDeltaL = new HashMap<>(instance.getNumVesselPeriods());
+        varDeltaL = new IloIntVar[offsets.getNumLoads()];
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
-            Map<Integer, Map<Integer, IloIntVar>> _varDeltaL = new HashMap<>(subblocks.size());
-            varDeltaL.put(ip, _varDeltaL);
-            for (int k = 0; k < subblocks.size(); k++) {
-                Map<Integer, IloIntVar> __varDeltaL = new HashMap<>(ip.getFeasibleInterval().getLength());
-                _varDeltaL.put(k, __varDeltaL);
-                for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-                    __varDeltaL.put(t, cplex.boolVar(String.format("DeltaL_%d,%d,%d,%d",
-                            ip.getVid(), ip.getPid(), k, t)));
+            int[] loadTimes = offsets.getLoadTimes(ip);
+            for (int k = 0; k < subblocks.size(); k++)
+                for (int i = 0; i < loadTimes.length; i++) {
+                    varDeltaL[offsets.getLoadIndex(ip, k, i)] = cplex.boolVar(String.format("DeltaL_%d,%d,%d,%d",
+                            ip.getVid(), ip.getPid(), k, loadTimes[i]));
                 }
-            }
         }
 
-        varDeltaU = new HashMap<>(instance.getNumVesselPeriods());
+        varDeltaU = new IloIntVar[offsets.getNumUnloads()];
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
-            Map<Integer, Map<VesselPeriod, Map<Integer, IloIntVar>>> _varDeltaU = new HashMap<>(subblocks.size());
-            varDeltaU.put(ip, _varDeltaU);
-            for (int k = 0; k < subblocks.size(); k++) {
-                List<VesselPeriod> source = instance.getSourceVesselPeriodsOf(ip);
-                Map<VesselPeriod, Map<Integer, IloIntVar>> __varDeltaU = new HashMap<>(source.size());
-                _varDeltaU.put(k, __varDeltaU);
-                for (VesselPeriod jq : source) {
-                    Map<Integer, IloIntVar> ___varDeltaU = new HashMap<>();
-                    __varDeltaU.put(jq, ___varDeltaU);
-                    for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                        ___varDeltaU.put(t, cplex.boolVar(String.format("DeltaU_%d,%d,%d,%d,%d,%d",
-                                ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid(), t)));
+            VesselPeriod[] sources = offsets.getSources(ip);
+            for (int k = 0; k < subblocks.size(); k++)
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
+                    int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+                    for (int i = 0; i < unloadTimes.length; i++) {
+                        varDeltaU[offsets.getUnloadIndex(ip, k, j, i)] = cplex.boolVar(String.format("DeltaU_%d,%d,%d,%d,%d,%d",
+                                ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid(), unloadTimes[i]));
                     }
                 }
-            }
         }
     }
 
@@ -767,11 +1064,10 @@ public class IndexedCplexFixedSubblockModel {
     }
 
     private void initVarRho() throws IloException {
-        varRho = new HashMap<>(instance.getNumSubblocks());
+        varRho = new IloIntVar[instance.getNumSubblocks() * horizon];
         for (Subblock k : instance.getSubblocks()) {
             for (int t = 0; t < horizon; t++) {
-                varRho.computeIfAbsent(k, key -> new HashMap<>(horizon))
-                        .put(t, cplex.boolVar(String.format("Rho_%d,%d", k.getId(), t)));
+                varRho[offsets.getRhoIndex(k, t)] = cplex.boolVar(String.format("Rho_%d,%d", k.getId(), t));
             }
         }
     }
@@ -786,10 +1082,14 @@ public class IndexedCplexFixedSubblockModel {
 
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
+            VesselPeriod[] sources = offsets.getSources(ip);
             for (int k = 0; k < subblocks.size(); k++) {
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-                    for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                        cplex.addGe(varPiU.get(jq).get(t), varDeltaU.get(ip).get(k).get(jq).get(t),
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
+                    int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+                    for (int i = 0; i < unloadTimes.length; i++) {
+                        int t = unloadTimes[i];
+                        cplex.addGe(varPiU.get(jq).get(t), varDeltaU[offsets.getUnloadIndex(ip, k, j, i)],
                                 String.format("ConsHandlePiU_%d,%d,%d,%d,%d,%d",
                                         ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid(), t));
                     }
@@ -799,9 +1099,11 @@ public class IndexedCplexFixedSubblockModel {
 
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
+            int[] loadTimes = offsets.getLoadTimes(ip);
             for (int k = 0; k < subblocks.size(); k++) {
-                for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-                    cplex.addGe(varPiL.get(ip).get(t), varDeltaL.get(ip).get(k).get(t),
+                for (int i = 0; i < loadTimes.length; i++) {
+                    int t = loadTimes[i];
+                    cplex.addGe(varPiL.get(ip).get(t), varDeltaL[offsets.getLoadIndex(ip, k, i)],
                             String.format("ConsHandlePiL_%d,%d,%d,%d", ip.getVid(), ip.getPid(), k, t));
                 }
 
@@ -810,10 +1112,14 @@ public class IndexedCplexFixedSubblockModel {
 
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
+            VesselPeriod[] sources = offsets.getSources(ip);
             for (int k = 0; k < subblocks.size(); k++) {
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-                    for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                        cplex.addGe(varPiUD.get(ip).get(t), varDeltaU.get(ip).get(k).get(jq).get(t),
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
+                    int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+                    for (int i = 0; i < unloadTimes.length; i++) {
+                        int t = unloadTimes[i];
+                        cplex.addGe(varPiUD.get(ip).get(t), varDeltaU[offsets.getUnloadIndex(ip, k, j, i)],
                                 String.format("ConsHandlePiUD_%d,%d,%d,%d,%d,%d",
                                         ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid(), t));
 
@@ -884,8 +1190,8 @@ public class IndexedCplexFixedSubblockModel {
         }
     }
 
-    private Map<VesselPeriod, Map<Integer, Map<Integer, IloRange>>> linkRhoDeltaL;
-    private Map<VesselPeriod, Map<Integer, Map<VesselPeriod, Map<Integer, IloRange>>>> linkRhoDeltaU;
+    private IloRange[] linkRhoDeltaL; // indexed as varDeltaL
+    private IloRange[] linkRhoDeltaU; // indexed as varDeltaU
     private IloRange[][] constraintLoadFlows;
     private IloRange[][] constraintUnloadFlows;
 
@@ -896,44 +1202,44 @@ public class IndexedCplexFixedSubblockModel {
             for (Subblock k2 : instance.getSubblocks())
                 if ((!k1.equals(k2)) && (k1.isNeighborInSameBlock(k2) || k1.isNeighborAcrossLane(k2)))
                     for (int t = 0; t < horizon; t++) {
-                        cplex.addLe(cplex.sum(varRho.get(k1).get(t), varRho.get(k2).get(t)), 1,
+                        cplex.addLe(cplex.sum(varRho[offsets.getRhoIndex(k1, t)], varRho[offsets.getRhoIndex(k2, t)]), 1,
                                 String.format("ConsCongNeighbor%d,%d,%d", k1.getId(), k2.getId(), t));
                     }
 
 
-        linkRhoDeltaL = new HashMap<>(instance.getNumVesselPeriods());
+        linkRhoDeltaL = new IloRange[offsets.getNumLoads()];
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
+            int[] loadTimes = offsets.getLoadTimes(ip);
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
-                for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-
-                    IloRange constraint = cplex.addGe(cplex.diff(
-                            varRho.get(subblock).get(t), varDeltaL.get(ip).get(k).get(t)
-                    ), 0, String.format("ConsCongRhoL_%d,%d,%d,%d", ip.getVid(), ip.getPid(), k, t));
-
-                    linkRhoDeltaL.computeIfAbsent(ip, key -> new HashMap<>())
-                            .computeIfAbsent(k, key -> new HashMap<>())
-                            .put(t, constraint);
+                for (int i = 0; i < loadTimes.length; i++) {
+                    int t = loadTimes[i];
+                    int load = offsets.getLoadIndex(ip, k, i);
+                    linkRhoDeltaL[load] = addRange(cplex.ge(cplex.diff(
+                            varRho[offsets.getRhoIndex(subblock, t)], varDeltaL[load]
+                    ), 0, String.format("ConsCongRhoL_%d,%d,%d,%d", ip.getVid(), ip.getPid(), k, t)));
                 }
             }
         }
 
-        linkRhoDeltaU = new HashMap<>(instance.getNumVesselPeriods());
+        linkRhoDeltaU = new IloRange[offsets.getNumUnloads()];
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
+            VesselPeriod[] sources = offsets.getSources(ip);
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip))
-                    for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                        IloRange constraint = cplex.addGe(cplex.diff(
-                                varRho.get(subblock).get(t), varDeltaU.get(ip).get(k).get(jq).get(t)
-                        ), 0, String.format("ConsCongRhoU_%d,%d,%d,%d,%d,%d", ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid(), t));
-                        linkRhoDeltaU.computeIfAbsent(ip, key -> new HashMap<>())
-                                .computeIfAbsent(k, key -> new HashMap<>())
-                                .computeIfAbsent(jq, key -> new HashMap<>())
-                                .put(t, constraint);
+                for (int j = 0; j < sources.length; j++) {
+                    VesselPeriod jq = sources[j];
+                    int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+                    for (int i = 0; i < unloadTimes.length; i++) {
+                        int t = unloadTimes[i];
+                        int unload = offsets.getUnloadIndex(ip, k, j, i);
+                        linkRhoDeltaU[unload] = addRange(cplex.ge(cplex.diff(
+                                varRho[offsets.getRhoIndex(subblock, t)], varDeltaU[unload]
+                        ), 0, String.format("ConsCongRhoU_%d,%d,%d,%d,%d,%d", ip.getVid(), ip.getPid(), k, jq.getVid(), jq.getPid(), t)));
                     }
+                }
             }
         }
 
@@ -947,10 +1253,12 @@ public class IndexedCplexFixedSubblockModel {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
-                for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
-                    for (int l : instance.getRouteToSubblock(jq, subblock))
-                        for (int t : ip.getPeriodInterval().intersection(jq.getFeasibleInterval(), instance.horizon)) {
-                            exprU[l][t].addTerm(1, varDeltaU.get(ip).get(k).get(jq).get(t));
+                VesselPeriod[] sources = offsets.getSources(ip);
+                for (int j = 0; j < sources.length; j++) {
+                    int[] unloadTimes = offsets.getUnloadTimes(ip, j);
+                    for (int l : instance.getRouteToSubblock(sources[j], subblock))
+                        for (int i = 0; i < unloadTimes.length; i++) {
+                            exprU[l][unloadTimes[i]].addTerm(1, varDeltaU[offsets.getUnloadIndex(ip, k, j, i)]);
                         }
                 }
             }
@@ -960,8 +1268,8 @@ public class IndexedCplexFixedSubblockModel {
         for (int l = 0; l < roads; l++)
             for (int t = 0; t < horizon; t++) {
                 exprU[l][t].addTerm(-1, varUnloadOverload);
-                constraintUnloadFlows[l][t] = cplex.addLe(exprU[l][t], instance.maxUnloadFlows,
-                        String.format("ConsCongRoadU%d,%d", l, t));
+                constraintUnloadFlows[l][t] = addRange(cplex.le(exprU[l][t], instance.maxUnloadFlows,
+                        String.format("ConsCongRoadU%d,%d", l, t)));
             }
 
         IloLinearIntExpr[][] exprL = new IloLinearIntExpr[roads][horizon];
@@ -974,9 +1282,10 @@ public class IndexedCplexFixedSubblockModel {
             List<Subblock> subblocks = subblockAssignment.getOrDefault(ip, Collections.emptyList());
             for (int k = 0; k < subblocks.size(); k++) {
                 Subblock subblock = subblocks.get(k);
+                int[] loadTimes = offsets.getLoadTimes(ip);
                 for (int l : instance.getRouteFromSubblock(ip, subblock))
-                    for (int t : ip.getFeasibleInterval().intStream(instance.horizon)) {
-                        exprL[l][t].addTerm(1, varDeltaL.get(ip).get(k).get(t));
+                    for (int i = 0; i < loadTimes.length; i++) {
+                        exprL[l][loadTimes[i]].addTerm(1, varDeltaL[offsets.getLoadIndex(ip, k, i)]);
                     }
             }
         }
@@ -985,9 +1294,12 @@ public class IndexedCplexFixedSubblockModel {
         for (int l = 0; l < roads; l++)
             for (int t = 0; t < horizon; t++) {
                 exprL[l][t].addTerm(-1, varLoadOverload);
-                constraintLoadFlows[l][t] = cplex.addLe(exprL[l][t], instance.maxLoadFlows,
-                        String.format("ConsCongRoadL%d,%d", l, t));
+                constraintLoadFlows[l][t] = addRange(cplex.le(exprL[l][t], instance.maxLoadFlows,
+                        String.format("ConsCongRoadL%d,%d", l, t)));
             }
+
+        if (batched)
+            initLPMatrix();
     }
 
 
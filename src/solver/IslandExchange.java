@@ -0,0 +1,185 @@
+package solver;
+
+import entity.*;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The exchange of elite solutions between the islands of a search, i.e. searches run by separate processes on the
+ * same host, through a memory-mapped file.
+ * <p>
+ * The file holds a header and one slot per island. An island only writes its own slot and reads the slots of the
+ * others, under a file lock on the slot. A slot holds a version (0 if empty), the objective, the subblock assignment
+ * and the operation schedule, so that the solution is rebuilt by the reader without solving it again.
+ */
+public class IslandExchange implements AutoCloseable {
+    private static final int MAGIC = 0x49534C44;
+    private static final int HEADER_SIZE = 16; // magic, islands, slot size, reserved
+
+    public static class Elite {
+        public final int island;
+        public final Map<VesselPeriod, Set<Subblock>> assignment;
+        public final Solution solution;
+
+        private Elite(int island, Map<VesselPeriod, Set<Subblock>> assignment, Solution solution) {
+            this.island = island;
+            this.assignment = assignment;
+            this.solution = solution;
+        }
+    }
+
+    private final Instance instance;
+    private final int numSubblocks;
+    private final int islands, island;
+    private final int slotSize;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private long version = 0;
+    private final long[] readVersions; // the last version read from each island
+
+    /**
+     * @param file    the exchange file, created by the first island opening it
+     * @param islands number of islands
+     * @param island  the index of this island
+     */
+    public IslandExchange(Instance instance, Path file, int islands, int island) throws IOException {
+        if (islands < 1 || island < 0 || island >= islands)
+            throw new IllegalArgumentException("Invalid island " + island + " of " + islands);
+        this.instance = instance;
+        this.numSubblocks = instance.getNumSubblocks();
+        this.islands = islands;
+        this.island = island;
+        this.readVersions = new long[islands];
+
+        // an assigned subblock has at most one operation from each source vessel period
+        long pairs = 0, schedules = 0;
+        for (VesselPeriod ip : instance.getVesselPeriods()) {
+            pairs += numSubblocks;
+            schedules += (long) instance.getSourceVesselPeriodsOf(ip).size() * numSubblocks;
+        }
+        long slotSize = 8 + 8 + 4 + 4 + pairs * 8 + schedules * 24;
+        long size = HEADER_SIZE + islands * slotSize;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Exchange file of " + size + " bytes is too large");
+        this.slotSize = (int) slotSize;
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock = channel.lock(0, HEADER_SIZE, false);
+        try {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) == 0) {
+                buffer.putInt(4, islands);
+                buffer.putInt(8, this.slotSize);
+                buffer.putInt(0, MAGIC);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != islands || buffer.getInt(8) != this.slotSize) {
+                channel.close();
+                throw new IllegalStateException("Exchange file " + file + " belongs to another search");
+            }
+        } finally {
+            // closing the channel released it
+            if (lock.isValid())
+                lock.release();
+        }
+    }
+
+    private int slotOffset(int island) {
+        return HEADER_SIZE + island * slotSize;
+    }
+
+    /**
+     * Publish a solution of this island, replacing the previous one.
+     */
+    public void emigrate(Map<VesselPeriod, Set<Subblock>> assignment, Solution solution) throws IOException {
+        // load time of each (ip, k)
+        int[] loadTimes = new int[instance.getNumVesselPeriods() * numSubblocks];
+        solution.forEachLoadSchedule((ip, k, schedule) -> loadTimes[ip.getVpId() * numSubblocks + k.getId()] = schedule.time);
+
+        int offset = slotOffset(island);
+        FileLock lock = channel.lock(offset, slotSize, false);
+        try {
+            int position = offset + 24;
+            int pairs = 0;
+            for (Map.Entry<VesselPeriod, Set<Subblock>> entry : assignment.entrySet())
+                for (Subblock k : entry.getValue()) {
+                    buffer.putInt(position, entry.getKey().getVpId());
+                    buffer.putInt(position + 4, k.getId());
+                    position += 8;
+                    pairs++;
+                }
+
+            int[] cursor = {position, 0};
+            solution.forEachUnloadSchedule((ip, k, jq, schedule) -> {
+                int p = cursor[0];
+                buffer.putInt(p, jq.getVpId());
+                buffer.putInt(p + 4, ip.getVpId());
+                buffer.putInt(p + 8, k.getId());
+                buffer.putInt(p + 12, schedule.time);
+                buffer.putInt(p + 16, loadTimes[ip.getVpId() * numSubblocks + k.getId()]);
+                buffer.putInt(p + 20, schedule.number);
+                cursor[0] += 24;
+                cursor[1]++;
+            });
+
+            buffer.putDouble(offset + 8, solution.getObjAll());
+            buffer.putInt(offset + 16, pairs);
+            buffer.putInt(offset + 20, cursor[1]);
+            buffer.putLong(offset, ++version);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * @return the best of the solutions published by the other islands since the last call, or {@code null} if none
+     */
+    public Elite immigrate() throws IOException {
+        Elite best = null;
+        for (int i = 0; i < islands; i++) {
+            if (i == island)
+                continue;
+            int offset = slotOffset(i);
+            FileLock lock = channel.lock(offset, slotSize, true);
+            try {
+                long version = buffer.getLong(offset);
+                if (version == 0 || version == readVersions[i])
+                    continue;
+                readVersions[i] = version;
+                if (best == null || buffer.getDouble(offset + 8) < best.solution.getObjAll())
+                    best = read(i, offset);
+            } finally {
+                lock.release();
+            }
+        }
+        return best;
+    }
+
+    private Elite read(int island, int offset) {
+        Solution solution = new Solution(instance);
+        int pairs = buffer.getInt(offset + 16);
+        int schedules = buffer.getInt(offset + 20);
+        int position = offset + 24;
+        for (int n = 0; n < pairs; n++, position += 8)
+            solution.setSubBlock(instance.getVesselPeriod(buffer.getInt(position)),
+                    instance.getSubblock(buffer.getInt(position + 4)));
+        for (int n = 0; n < schedules; n++, position += 24)
+            solution.addScheduleProgressively(
+                    instance.getVesselPeriod(buffer.getInt(position)),
+                    instance.getVesselPeriod(buffer.getInt(position + 4)),
+                    instance.getSubblock(buffer.getInt(position + 8)),
+                    buffer.getInt(position + 12), buffer.getInt(position + 16), buffer.getInt(position + 20));
+        solution.calculateObjectives();
+        return new Elite(island, solution.getSubblockAssignments(), solution);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,5 +1,6 @@
 package solver;
 
+import entity.CostMatrix;
 import entity.Instance;
 import entity.Subblock;
 import entity.Vessel;
@@ -16,7 +17,7 @@ import java.util.stream.Collectors;
  */
 public class MasterYardTemplateHeuristic {
     private Instance instance;
-    public Map<VesselPeriod, Set<VesselPeriod>> conflictPeriods;
+    public final ConflictGraph conflictGraph;
 
     /**
      * Constructor initializing problem instance and conflict period mappings
@@ -25,25 +26,18 @@ public class MasterYardTemplateHeuristic {
      */
     public MasterYardTemplateHeuristic(Instance instance) {
         this.instance = instance;
-        this.conflictPeriods = identifyConflictPeriods();
+        this.conflictGraph = new ConflictGraph(instance);
     }
 
 
     public Map<VesselPeriod, Set<VesselPeriod>> assignConsistently(
-            List<VesselPeriod> vesselPeriodPriority, Map<VesselPeriod, Map<Subblock, Double>> costs) {
-        Map<Vessel, Map<Subblock, Double>> vesselSubblockCosts = costs.entrySet().stream()
-                .collect(
-                        Collectors.groupingBy(
-                                entry -> instance.getVessel(entry.getKey().getVid()),
-                                Collectors.flatMapping(
-                                        entry -> entry.getValue().entrySet().stream(),
-                                        Collectors.groupingBy(
-                                                Map.Entry::getKey,
-                                                Collectors.summingDouble(Map.Entry::getValue)
-                                        )
-                                )
-                        )
-                );
+            List<VesselPeriod> vesselPeriodPriority, CostMatrix costs) {
+        Map<Vessel, Map<Subblock, Double>> vesselSubblockCosts = new HashMap<>();
+        for (VesselPeriod vp : instance.getVesselPeriods())
+            for (Subblock k : instance.getSubblocks())
+                if (costs.isDefined(vp, k))
+                    vesselSubblockCosts.computeIfAbsent(instance.getVessel(vp.getVid()), key -> new HashMap<>())
+                            .merge(k, costs.get(vp, k), Double::sum);
         return null;
     }
 
@@ -73,30 +67,39 @@ public class MasterYardTemplateHeuristic {
     public Map<VesselPeriod, Set<Subblock>> assignOneSubblockByPreference(
             List<VesselPeriod> allocationSequence,
             Map<VesselPeriod, List<Subblock>> subblockPreference) {
-        Map<VesselPeriod, Set<Subblock>> banned = new HashMap<>();
-        for (VesselPeriod vp : instance.getVesselPeriods())
-            banned.put(vp, new HashSet<>());
+        return assignOneSubblockByPreference(allocationSequence, subblockPreference, Collections.emptyMap());
+    }
+
+    /**
+     * Assign subblocks as {@link #assignOneSubblockByPreference(List, Map)} does, on top of a partial assignment which
+     * is kept and whose subblocks are banned for the conflicting vessel periods.
+     *
+     * @param fixed the partial assignment, which is not modified
+     */
+    public Map<VesselPeriod, Set<Subblock>> assignOneSubblockByPreference(
+            List<VesselPeriod> allocationSequence,
+            Map<VesselPeriod, List<Subblock>> subblockPreference,
+            Map<VesselPeriod, ? extends Collection<Subblock>> fixed) {
+        // a subblock is banned for a vessel period holding it or conflicting with one of its holders
+        SubblockOccupancy banned = new SubblockOccupancy(instance, conflictGraph, fixed);
 
         Map<VesselPeriod, Set<Subblock>> assigned = new HashMap<>();
         for (VesselPeriod vp : instance.getVesselPeriods())
             assigned.put(vp, new HashSet<>());
 
+        fixed.forEach((vp, subblocks) -> assigned.get(vp).addAll(subblocks));
+
         Map<Subblock, Set<Subblock>> neighborSubblock = instance.getNeighborSubblock();
 
         for (VesselPeriod vp : allocationSequence) {
             boolean find = false;
             List<Subblock> preferredK = subblockPreference.get(vp);
-            Set<Subblock> bannedSubblocks = banned.get(vp);
             for (Subblock k : preferredK) {
-                if (!bannedSubblocks.contains(k)) {
+                // the same subblock cannot be assigned to the same vessel period twice,
+                // nor to different vessel periods at the same time
+                if (banned.canTake(vp, k)) {
                     assigned.get(vp).add(k);
-
-                    // the same subblock cannot be assigned to the same vessel period twice
-                    banned.get(vp).add(k);
-                    // the same subblock cannot be assigned to different vessel periods at the same time
-                    for (VesselPeriod that : conflictPeriods.get(vp)) {
-                        banned.get(that).add(k);
-                    }
+                    banned.add(vp, k);
 //                    for (Subblock k2 : neighborSubblock.get(k)) {
 //                        banned.get(vp).add(k2);
 //                    }
@@ -114,7 +117,7 @@ public class MasterYardTemplateHeuristic {
 
     public Map<VesselPeriod, Set<Subblock>> assignOneSubblockByCost(
             List<VesselPeriod> allocationSequence,
-            Map<VesselPeriod, Map<Subblock, Double>> costs) {
+            CostMatrix costs) {
         Map<VesselPeriod, List<Subblock>> preferences = identifyPreference(costs);
         return assignOneSubblockByPreference(allocationSequence, preferences);
     }
@@ -126,21 +129,33 @@ public class MasterYardTemplateHeuristic {
         return assignOneSubblockByPreference(allocationSequence, subblockPreference);
     }
 
+    /**
+     * Assign the needed subblocks of the vessel periods in the priority on top of a partial assignment.
+     */
+    public Map<VesselPeriod, Set<Subblock>> assignNeededSubblocksByPreference(
+            List<VesselPeriod> vesselPeriodPriority,
+            Map<VesselPeriod, List<Subblock>> subblockPreference,
+            Map<VesselPeriod, ? extends Collection<Subblock>> fixed) {
+        List<VesselPeriod> allocationSequence = identifyAllocationSequence(vesselPeriodPriority);
+        return assignOneSubblockByPreference(allocationSequence, subblockPreference, fixed);
+    }
+
     public Map<VesselPeriod, Set<Subblock>> assignNeededSubblocksByCost(
             List<VesselPeriod> vesselPeriodPriority,
-            Map<VesselPeriod, Map<Subblock, Double>> costs) {
+            CostMatrix costs) {
         List<VesselPeriod> allocationSequence = identifyAllocationSequence(vesselPeriodPriority);
         Map<VesselPeriod, List<Subblock>> preferences = identifyPreference(costs);
         return assignOneSubblockByPreference(allocationSequence, preferences);
     }
 
-    public Map<VesselPeriod, List<Subblock>> identifyPreference(Map<VesselPeriod, Map<Subblock, Double>> costs) {
-        return costs.entrySet().stream().collect(Collectors.toMap(
-                Map.Entry::getKey,
-                entry -> entry.getValue().entrySet().stream()
-                        .sorted(Comparator.comparingDouble(Map.Entry::getValue))
-                        .map(Map.Entry::getKey).collect(Collectors.toList())
-        ));
+    public Map<VesselPeriod, List<Subblock>> identifyPreference(CostMatrix costs) {
+        Map<VesselPeriod, List<Subblock>> preferences = new HashMap<>(instance.getNumVesselPeriods());
+        for (VesselPeriod vp : instance.getVesselPeriods()) {
+            List<Subblock> preference = costs.getSubblocksByCost(vp);
+            if (!preference.isEmpty())
+                preferences.put(vp, preference);
+        }
+        return preferences;
     }
 
     private List<VesselPeriod> identifyAllocationSequence(List<VesselPeriod> priority) {
@@ -163,7 +178,7 @@ public class MasterYardTemplateHeuristic {
 
         List<VesselPeriod> allocationSequence = identifyAllocationSequence(sortedUniqueVesselPeriodsByStartTime);
 
-        Map<VesselPeriod, Map<Subblock, Double>> costs = getDistanceCostsByEqualStorage();
+        CostMatrix costs = getDistanceCostsByEqualStorage();
 
 //        HashMap<VesselPeriod, List<Subblock>> nearestSubblocks = getLoadingBasedPreference();
 
@@ -193,35 +208,18 @@ public class MasterYardTemplateHeuristic {
         return new LinkedList<>(instance.getVesselPeriods());
     }
 
-    private Map<VesselPeriod, Set<VesselPeriod>> identifyConflictPeriods() {
-        Map<VesselPeriod, Set<VesselPeriod>> conflictPeriods = new HashMap<>();
-        for (VesselPeriod vp1 : instance.getVesselPeriods()) {
-            HashSet<VesselPeriod> _conflictPeriods = new HashSet<>();
-            for (VesselPeriod vp2 : instance.getVesselPeriods()) {
-                if (vp1.equals(vp2) || instance.getVesselOf(vp1).equals(instance.getVesselOf(vp2)))
-                    continue;
-                if (vp1.getPeriodInterval().isIntersecting(vp2.getPeriodInterval(), instance.horizon))
-                    _conflictPeriods.add(vp2);
-            }
-            conflictPeriods.put(vp1, _conflictPeriods);
-        }
-        return conflictPeriods;
-    }
-
-    public Map<VesselPeriod, Map<Subblock, Double>> getDistanceCostsByEqualStorage() {
-        Map<VesselPeriod, Map<Subblock, Double>> costs = new HashMap<>(instance.getNumVesselPeriods());
+    public CostMatrix getDistanceCostsByEqualStorage() {
+        CostMatrix costs = new CostMatrix(instance);
         for (VesselPeriod ip : instance.getVesselPeriods()) {
             int numSubblocks = MyMathMethods.ceilDiv(ip.totalLoadContainers, instance.spaceCapacity);
-            Map<Subblock, Double> map = new HashMap<>(instance.getNumSubblocks());
             for (Subblock subblock : instance.getSubblocks()) {
                 double routeCost = 0;
                 for (VesselPeriod jq : instance.getSourceVesselPeriodsOf(ip)) {
                     routeCost += instance.getTransshipmentTo(jq, ip) * (instance.getDistanceToSubblock(jq, subblock)
                             + instance.getDistanceFromSubblock(ip, subblock));
                 }
-                map.put(subblock, routeCost / numSubblocks * instance.etaRoute);
+                costs.set(ip, subblock, routeCost / numSubblocks * instance.etaRoute);
             }
-            costs.put(ip, map);
         }
         return costs;
     }
@@ -229,7 +227,7 @@ public class MasterYardTemplateHeuristic {
     public static void main(String[] args) {
         Instance instance = InstanceGenerator.generate(12, 3, 3, 4, 6, 1);
         MasterYardTemplateHeuristic heuristic = new MasterYardTemplateHeuristic(instance);
-        Map<VesselPeriod, Map<Subblock, Double>> costs = heuristic.getDistanceCostsByEqualStorage();
+        CostMatrix costs = heuristic.getDistanceCostsByEqualStorage();
         List<VesselPeriod> priority = heuristic.getFirstCommeFirstServedPriority();
         Map<VesselPeriod, Set<Subblock>> assignment = heuristic.assignNeededSubblocksByCost(priority, costs);
         if (assignment == null) {
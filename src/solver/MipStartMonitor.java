@@ -0,0 +1,70 @@
+package solver;
+
+import ilog.cplex.IloCplex;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the MIP starts given to CPLEX and the ones it accepted as initial solution.
+ * <p>
+ * CPLEX does not report the outcome of a MIP start through its API, only in its log ("MIP start 'm1' defined initial
+ * solution with objective ..."), so the log of every attached {@link IloCplex} is scanned for that line and otherwise
+ * discarded. A rejected start produces no such line. The counters may be updated by several solver threads.
+ */
+public class MipStartMonitor {
+    private static final byte[] ACCEPTED = "defined initial solution".getBytes(StandardCharsets.US_ASCII);
+
+    private final AtomicInteger starts = new AtomicInteger();
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    /**
+     * Replace the log output of a CPLEX by a scanner of this monitor. Each CPLEX needs its own scanner.
+     */
+    public void attach(IloCplex cplex) {
+        cplex.setOut(new LogScanner());
+    }
+
+    public void started() {
+        starts.incrementAndGet();
+    }
+
+    public int getStarts() {
+        return starts.get();
+    }
+
+    public int getAccepted() {
+        return accepted.get();
+    }
+
+    public String summary() {
+        int n = getStarts();
+        return String.format("Warm Starts: added = %d, accepted = %d (%.1f%%)%n", n, getAccepted(),
+                n == 0 ? 0 : 100. * getAccepted() / n);
+    }
+
+    /**
+     * Matches the accepted line byte by byte, without keeping the log.
+     */
+    private class LogScanner extends OutputStream {
+        private int matched = 0;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                matched = 0;
+            } else if (matched < ACCEPTED.length) {
+                matched = b == ACCEPTED[matched] ? matched + 1 : (b == ACCEPTED[0] ? 1 : 0);
+                if (matched == ACCEPTED.length)
+                    accepted.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            for (int i = offset; i < offset + length; i++)
+                write(bytes[i]);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package solver;
+
+import entity.Instance;
+import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
+import ilog.concert.IloNumVar;
+import ilog.cplex.IloCplex;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A directory of built CPLEX models, so that a run on an instance seen before imports its model instead of building it.
+ * <p>
+ * An entry is keyed by the name and the formulation version of a model and by the fingerprint of the instance (see
+ * {@link Instance#getFingerprint()}). It holds the model exported as SAV and the variable table: the names of the
+ * variables in the order the Java side creates them, which maps the imported columns back to the variable maps of the
+ * model. A model whose formulation changes bumps its version, so that its old entries are no longer found; they are
+ * deleted when the new one is stored.
+ */
+public class ModelCache {
+    public static final String MODEL_FILE = "model.sav";
+    public static final String VARIABLES_FILE = "variables.txt";
+
+    private final Path directory;
+
+    public ModelCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Entry entry(String model, int version, Instance instance) {
+        return new Entry(model, version, instance.getFingerprint());
+    }
+
+    public class Entry {
+        private final String model;
+        private final String fingerprint;
+        private final Path path;
+
+        private Entry(String model, int version, String fingerprint) {
+            this.model = model;
+            this.fingerprint = fingerprint;
+            this.path = directory.resolve(String.format("%s_v%d_%s", model, version, fingerprint));
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public boolean exists() {
+            return Files.isRegularFile(path.resolve(MODEL_FILE)) && Files.isRegularFile(path.resolve(VARIABLES_FILE));
+        }
+
+        /**
+         * Import the model of the entry into the empty cplex.
+         *
+         * @return the variables of the table in its order, null for the ones absent from the imported model (i.e.
+         * used by no constraint nor the objective), or null if the entry does not exist or does not match its table,
+         * in which case the cplex is left empty; an unreadable table is as a missing entry
+         */
+        public LinkedHashMap<String, IloNumVar> load(IloCplex cplex) throws IloException {
+            if (!exists())
+                return null;
+            List<String> names;
+            try {
+                names = Files.readAllLines(path.resolve(VARIABLES_FILE));
+            } catch (IOException e) {
+                // built again, as for a table mismatch
+                return null;
+            }
+
+            cplex.importModel(path.resolve(MODEL_FILE).toString());
+            Map<String, IloNumVar> importedByName = new HashMap<>();
+            for (Iterator<IloLPMatrix> it = cplex.LPMatrixIterator(); it.hasNext(); )
+                for (IloNumVar var : it.next().getNumVars())
+                    importedByName.put(var.getName(), var);
+
+            LinkedHashMap<String, IloNumVar> variables = new LinkedHashMap<>(names.size() * 2);
+            for (String name : names)
+                variables.put(name, importedByName.get(name));
+            if (variables.size() != names.size() || !variables.keySet().containsAll(importedByName.keySet())) {
+                cplex.clearModel();
+                return null;
+            }
+            return variables;
+        }
+
+        /**
+         * Export the model built in the cplex with its variable table, replacing the entry and the entries of the
+         * other versions of the model for the same instance.
+         */
+        public void save(IloCplex cplex, List<String> variableNames) throws IloException {
+            try {
+                Files.createDirectories(path);
+                // CPLEX picks the format from the extension
+                Path temporaryModel = path.resolve("model.tmp.sav");
+                Path temporaryVariables = path.resolve(VARIABLES_FILE + ".tmp");
+                cplex.exportModel(temporaryModel.toString());
+                Files.write(temporaryVariables, variableNames);
+                // the table goes last, so that an interrupted save leaves no entry
+                Files.deleteIfExists(path.resolve(VARIABLES_FILE));
+                Files.move(temporaryModel, path.resolve(MODEL_FILE), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporaryVariables, path.resolve(VARIABLES_FILE), StandardCopyOption.REPLACE_EXISTING);
+
+                try (DirectoryStream<Path> others = Files.newDirectoryStream(directory,
+                        model + "_v*_" + fingerprint)) {
+                    for (Path other : others)
+                        if (!other.equals(path))
+                            delete(other);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static void delete(Path entry) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(entry)) {
+            for (Path file : files)
+                Files.delete(file);
+        }
+        Files.delete(entry);
+    }
+}
@@ -0,0 +1,150 @@
+package solver;
+
+import entity.Solution;
+import entity.Subblock;
+import entity.SubblockMove;
+import entity.VesselPeriod;
+import util.Deadline;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A fixed pool of {@link AssignmentEvaluator}s for the neighbors of {@link DecomposedNeighborhoodSearch}.
+ * <p>
+ * Every evaluator keeps its own state, e.g. the model of a {@link CplexAssignmentEvaluator}, which reaches a neighbor
+ * from the previous one it evaluated. Neighbors of a batch are evaluated concurrently, while {@link Batch#get(int)}
+ * returns the results in the neighbor order, so the caller can accept them exactly as in the sequential search.
+ */
+public class NeighborEvaluationPool implements AutoCloseable {
+    private static final AssignmentEvaluator.Evaluation CANCELLED =
+            AssignmentEvaluator.Evaluation.of(AssignmentEvaluator.Status.NO_SOLUTION);
+
+    private final List<AssignmentEvaluator> evaluators;
+    private final BlockingQueue<AssignmentEvaluator> idleEvaluators;
+    private final ExecutorService executor;
+
+    /**
+     * @param size    number of evaluators, i.e. neighbors evaluated at the same time
+     * @param factory the evaluators, e.g. a {@link CplexAssignmentEvaluator} with a CPLEX of its own each
+     */
+    public NeighborEvaluationPool(int size, AssignmentEvaluator.Factory factory) {
+        if (size < 1)
+            throw new IllegalArgumentException("Invalid pool size: " + size);
+        this.evaluators = new ArrayList<>(size);
+        this.idleEvaluators = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            AssignmentEvaluator evaluator = factory.create();
+            evaluators.add(evaluator);
+            idleEvaluators.add(evaluator);
+        }
+        this.executor = Executors.newFixedThreadPool(size);
+    }
+
+    public int size() {
+        return evaluators.size();
+    }
+
+    /**
+     * Submit all neighbors for evaluation.
+     *
+     * @param base            the assignment the moves are generated from, which must not be modified afterward
+     * @param moves           the neighbor moves, in the order they are going to be consumed
+     * @param deadline            the deadline of the search
+     * @param evaluationTimeLimit the seconds a single neighbor may be evaluated for, or 0 for no cap
+     * @param cutoff              the objective the neighbors have to beat, see {@link AssignmentEvaluator#evaluate}
+     * @param warmStart           the solution of the base assignment the neighbors start from, or {@code null}
+     * @return the batch from which the evaluations are retrieved in the neighbor order
+     */
+    public Batch submit(Map<VesselPeriod, Set<Subblock>> base, List<SubblockMove> moves, Deadline deadline,
+                        double evaluationTimeLimit, double cutoff, Solution warmStart) {
+        Batch batch = new Batch(moves.size());
+        for (int i = 0; i < moves.size(); i++) {
+            SubblockMove move = moves.get(i);
+            batch.futures.add(executor.submit(() -> evaluate(batch, base, move, deadline, evaluationTimeLimit,
+                    cutoff, warmStart)));
+        }
+        return batch;
+    }
+
+    private AssignmentEvaluator.Evaluation evaluate(Batch batch, Map<VesselPeriod, Set<Subblock>> base,
+                                                    SubblockMove move, Deadline deadline, double evaluationTimeLimit,
+                                                    double cutoff, Solution warmStart)
+            throws InterruptedException {
+        AssignmentEvaluator evaluator = idleEvaluators.take();
+        try {
+            synchronized (batch) {
+                if (batch.cancelled)
+                    return CANCELLED;
+                batch.running.add(evaluator);
+                evaluator.clearAbort();
+            }
+            try {
+                return evaluator.evaluate(base, move, deadline.limitedTo(evaluationTimeLimit), cutoff, warmStart);
+            } finally {
+                synchronized (batch) {
+                    batch.running.remove(evaluator);
+                }
+            }
+        } finally {
+            idleEvaluators.add(evaluator);
+        }
+    }
+
+    public class Batch {
+        private final List<Future<AssignmentEvaluator.Evaluation>> futures;
+        private final Set<AssignmentEvaluator> running = new HashSet<>();
+        private boolean cancelled = false;
+
+        private Batch(int size) {
+            this.futures = new ArrayList<>(size);
+        }
+
+        /**
+         * Wait for the evaluation of the index-th neighbor.
+         *
+         * @return the evaluation of the neighbor, without solution if it was cancelled
+         */
+        public AssignmentEvaluator.Evaluation get(int index) {
+            try {
+                return futures.get(index).get();
+            } catch (CancellationException e) {
+                return CANCELLED;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        /**
+         * Drop the neighbors not started yet and abort the ones being evaluated. The results of this batch should
+         * not be used afterward.
+         */
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                for (AssignmentEvaluator evaluator : running)
+                    evaluator.abort();
+            }
+            for (Future<AssignmentEvaluator.Evaluation> future : futures)
+                future.cancel(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (AssignmentEvaluator evaluator : evaluators)
+            evaluator.abort();
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                throw new IllegalStateException("Neighbor evaluators did not terminate.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (AssignmentEvaluator evaluator : evaluators)
+            evaluator.close();
+    }
+}
@@ -0,0 +1,135 @@
+package solver;
+
+import entity.Instance;
+import entity.Subblock;
+import entity.SubblockMove;
+import entity.VesselPeriod;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The neighbors of a subblock assignment, kept as moves encoded in {@code long}s and materialized as
+ * {@link SubblockMove}s only when read.
+ * <p>
+ * A ranked neighborhood holds the selected moves in a min-heap on their estimated delta and takes them out in order as
+ * they are read, so reading the best move costs O(log k) instead of a sort of all k moves, and the part of the
+ * neighborhood left behind by an early break is never ordered nor materialized.
+ */
+class Neighborhood extends AbstractList<SubblockMove> implements RandomAccess {
+    private static final int ID_BITS = 20;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+
+    private final Instance instance;
+    private final int size;
+    // codes[0, ordered) are in their final order
+    private final long[] codes;
+    private int ordered;
+    // the remaining moves of a ranked neighborhood, a min-heap on the delta
+    private final long[] heapCodes;
+    private final double[] heapDeltas;
+    private int heapSize;
+    private final SubblockMove[] moves;
+
+    private Neighborhood(Instance instance, long[] codes, int size, double[] deltas) {
+        this.instance = instance;
+        this.size = size;
+        this.moves = new SubblockMove[size];
+        if (deltas == null) {
+            this.codes = codes;
+            this.ordered = size;
+            this.heapCodes = null;
+            this.heapDeltas = null;
+        } else {
+            this.codes = new long[size];
+            this.heapCodes = codes;
+            this.heapDeltas = deltas;
+            this.heapSize = size;
+            for (int i = size / 2 - 1; i >= 0; i--)
+                siftDown(i);
+        }
+    }
+
+    /**
+     * @param codes the moves in the order they are read, of which the first {@code size} are used
+     */
+    static Neighborhood of(Instance instance, long[] codes, int size) {
+        return new Neighborhood(instance, codes, size, null);
+    }
+
+    /**
+     * @param codes  the moves, which are reordered in place
+     * @param deltas the estimated delta of each move, the smallest being read first
+     */
+    static Neighborhood ranked(Instance instance, long[] codes, double[] deltas, int size) {
+        return new Neighborhood(instance, codes, size, deltas);
+    }
+
+    static long single(VesselPeriod ip, Subblock oldSubblock, Subblock newSubblock) {
+        return encode(ip.getVpId() + 1, oldSubblock.getId(), newSubblock.getId());
+    }
+
+    /**
+     * A swap is symmetric in its subblocks, and so is its code.
+     */
+    static long swap(Subblock oldSubblock, Subblock newSubblock) {
+        return encode(0, Math.min(oldSubblock.getId(), newSubblock.getId()),
+                Math.max(oldSubblock.getId(), newSubblock.getId()));
+    }
+
+    private static long encode(int vp, int oldId, int newId) {
+        if (vp > ID_MASK || oldId > ID_MASK || newId > ID_MASK)
+            throw new IllegalArgumentException("Id out of range for a move code");
+        return ((long) vp << (2 * ID_BITS)) | ((long) oldId << ID_BITS) | newId;
+    }
+
+    private SubblockMove decode(long code) {
+        int vp = (int) (code >>> (2 * ID_BITS));
+        Subblock oldSubblock = instance.getSubblock((int) ((code >>> ID_BITS) & ID_MASK));
+        Subblock newSubblock = instance.getSubblock((int) (code & ID_MASK));
+        return vp == 0 ? SubblockMove.swap(oldSubblock, newSubblock)
+                : SubblockMove.single(instance.getVesselPeriod(vp - 1), oldSubblock, newSubblock);
+    }
+
+    @Override
+    public SubblockMove get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        while (ordered <= index)
+            codes[ordered++] = pollHeap();
+        if (moves[index] == null)
+            moves[index] = decode(codes[index]);
+        return moves[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private long pollHeap() {
+        long code = heapCodes[0];
+        heapSize--;
+        heapCodes[0] = heapCodes[heapSize];
+        heapDeltas[0] = heapDeltas[heapSize];
+        siftDown(0);
+        return code;
+    }
+
+    private void siftDown(int i) {
+        long code = heapCodes[i];
+        double delta = heapDeltas[i];
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heapDeltas[child + 1] < heapDeltas[child])
+                child++;
+            if (heapDeltas[child] >= delta)
+                break;
+            heapCodes[i] = heapCodes[child];
+            heapDeltas[i] = heapDeltas[child];
+            i = child;
+        }
+        heapCodes[i] = code;
+        heapDeltas[i] = delta;
+    }
+}
@@ -0,0 +1,137 @@
+package solver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dto.SearchCheckpointData;
+import entity.Solution;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes the checkpoints and the improving incumbents of a search to a directory on a background thread, so that the
+ * search does not wait for the disk.
+ * <p>
+ * Only the latest checkpoint and incumbent are kept: one submitted while the previous one is still pending replaces it.
+ * Each file is written to a temporary file and moved over the previous one, so that a search killed while writing
+ * leaves the previous file intact.
+ */
+public class SearchCheckpointer implements AutoCloseable {
+    public static final String CHECKPOINT_FILE = "checkpoint.json";
+    public static final String INCUMBENT_FILE = "incumbent.json";
+
+    private final Path directory;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService writer;
+
+    private final AtomicReference<SearchCheckpointData> pendingCheckpoint = new AtomicReference<>();
+    private final AtomicReference<Solution> pendingIncumbent = new AtomicReference<>();
+    private final AtomicInteger checkpoints = new AtomicInteger();
+    private final AtomicInteger incumbents = new AtomicInteger();
+    private volatile IOException failure;
+
+    public SearchCheckpointer(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void saveAsync(SearchCheckpointData checkpoint) {
+        if (pendingCheckpoint.getAndSet(checkpoint) == null)
+            writer.execute(() -> {
+                SearchCheckpointData latest = pendingCheckpoint.getAndSet(null);
+                if (latest != null && write(CHECKPOINT_FILE, latest))
+                    checkpoints.incrementAndGet();
+            });
+    }
+
+    /**
+     * Write a solution as the incumbent. The solution must not be modified afterwards.
+     */
+    public void writeIncumbentAsync(Solution solution) {
+        if (pendingIncumbent.getAndSet(solution) == null)
+            writer.execute(() -> {
+                Solution latest = pendingIncumbent.getAndSet(null);
+                if (latest != null && write(INCUMBENT_FILE, latest.toData()))
+                    incumbents.incrementAndGet();
+            });
+    }
+
+    private boolean write(String fileName, Object data) {
+        Path target = directory.resolve(fileName);
+        Path temporary = directory.resolve(fileName + ".tmp");
+        try {
+            mapper.writeValue(temporary.toFile(), data);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+            return false;
+        }
+    }
+
+    public int getCheckpoints() {
+        return checkpoints.get();
+    }
+
+    public int getIncumbents() {
+        return incumbents.get();
+    }
+
+    /**
+     * Wait for the pending writes.
+     *
+     * @throws IOException the first failure of a write
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(1, TimeUnit.MINUTES))
+                throw new IOException("Checkpoint writer did not finish in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the checkpoint writer");
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    public static SearchCheckpointData load(Path directory) throws IOException {
+        return new ObjectMapper().readValue(directory.resolve(CHECKPOINT_FILE).toFile(), SearchCheckpointData.class);
+    }
+
+    static String encode(Random random) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+            stream.writeObject(random);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    static Random decodeRandom(String encoded) {
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            return (Random) stream.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Invalid random state in the checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package solver;
+
+import entity.IndexBasedSolution;
+import entity.Solution;
+
+/**
+ * Receives the events of a {@link DecomposedNeighborhoodSearch}. The events only hold numbers and references to
+ * solutions, which are not modified afterwards; formatting them is left to the listeners.
+ * <p>
+ * The times are in milliseconds since the start of the search.
+ */
+public interface SearchListener {
+
+    enum Outcome {
+        BEST("***"), IMPROVED("+++"), WORSE("---"), INFEASIBLE("   "),
+        // abandoned at the upper cutoff, i.e. not better than the current solution, unless infeasible
+        DOMINATED("   ");
+
+        public final String marker;
+
+        Outcome(String marker) {
+            this.marker = marker;
+        }
+    }
+
+    record ShakeStarted(int shake, long elapsedMillis) {
+    }
+
+    /**
+     * @param solution null if the heuristic found no assignment or the assignment is infeasible
+     */
+    record HeuristicAttempt(int attempt, Solution solution, long elapsedMillis, int evaluatedSolutions) {
+    }
+
+    record NeighborsGenerated(int explored, int neighbors) {
+    }
+
+    /**
+     * @param solution        null if the neighbor is infeasible or dominated
+     * @param evaluationNanos the time the search waited for the evaluation, 0 if it was cached
+     */
+    record NeighborEvaluated(int explored, Solution solution, Outcome outcome, long elapsedMillis,
+                             int evaluatedSolutions, long evaluationNanos) {
+    }
+
+    record NoFeasibleNeighbor(int explored, int neighbors, int neighborLimit) {
+    }
+
+    record NeighborhoodSearchEnded(Solution best, Solution initial) {
+    }
+
+    /**
+     * @param step "OptGivenT" or "OptGivenK", the part of the solution fixed by the next step
+     */
+    record RefinementStep(String step, IndexBasedSolution solution, long elapsedMillis, int evaluatedSolutions,
+                          long evaluationNanos) {
+    }
+
+    record RefinementEnded(Solution best, Solution refined, Solution current) {
+    }
+
+    record IncumbentImproved(Solution solution, long elapsedMillis) {
+    }
+
+    record ShakeAttemptsExhausted(int attempts) {
+    }
+
+    /**
+     * @param previousBest the best solution before the shake, null for the first one
+     */
+    record ShakeEnded(int shake, Solution best, Solution previousBest, long elapsedMillis, int evaluatedSolutions) {
+    }
+
+    default void shakeStarted(ShakeStarted event) {
+    }
+
+    default void heuristicAttempt(HeuristicAttempt event) {
+    }
+
+    default void neighborsGenerated(NeighborsGenerated event) {
+    }
+
+    default void neighborEvaluated(NeighborEvaluated event) {
+    }
+
+    default void noFeasibleNeighbor(NoFeasibleNeighbor event) {
+    }
+
+    default void neighborhoodSearchEnded(NeighborhoodSearchEnded event) {
+    }
+
+    default void refinementStep(RefinementStep event) {
+    }
+
+    default void refinementEnded(RefinementEnded event) {
+    }
+
+    default void incumbentImproved(IncumbentImproved event) {
+    }
+
+    default void shakeAttemptsExhausted(ShakeAttemptsExhausted event) {
+    }
+
+    default void shakeEnded(ShakeEnded event) {
+    }
+}
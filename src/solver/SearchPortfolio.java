@@ -0,0 +1,85 @@
+package solver;
+
+import entity.Instance;
+import entity.Solution;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * A portfolio of {@link DecomposedNeighborhoodSearch} workers running their shakes in parallel.
+ * <p>
+ * Every worker runs the whole search (shake, heuristic, neighborhood search and local refinement) with its own random
+ * stream and CPLEX environments. The workers publish their best solutions to a {@link SharedSearchState}, continue
+ * from its incumbent at the end of a shake when another worker has found a better one, and share the tabu priorities.
+ * Only the first worker logs its search process.
+ */
+public class SearchPortfolio {
+    private final List<DecomposedNeighborhoodSearch> searchers;
+    private final SharedSearchState sharedState;
+
+    /**
+     * @param size          number of workers
+     * @param seed          the seed of the first worker; worker w uses seed + w
+     * @param configuration applied to every worker before the seeds and the shared state are set
+     */
+    public SearchPortfolio(Instance instance, int size, long seed, Consumer<DecomposedNeighborhoodSearch> configuration) {
+        if (size < 1)
+            throw new IllegalArgumentException("Invalid portfolio size: " + size);
+        this.searchers = new ArrayList<>(size);
+        for (int w = 0; w < size; w++) {
+            DecomposedNeighborhoodSearch searcher = new DecomposedNeighborhoodSearch(instance);
+            configuration.accept(searcher);
+            searcher.setSeed(new Random(seed + w));
+            if (w > 0) {
+                searcher.verbose = false;
+                searcher.verboseLog = false;
+            }
+            searchers.add(searcher);
+        }
+        this.sharedState = new SharedSearchState(size, searchers.get(0).MAX_TABU_SIZE);
+        for (int w = 0; w < size; w++)
+            searchers.get(w).setSharedState(sharedState, w);
+    }
+
+    public void search() {
+        ExecutorService executor = Executors.newFixedThreadPool(searchers.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>(searchers.size());
+            for (DecomposedNeighborhoodSearch searcher : searchers)
+                futures.add(executor.submit(searcher::newSearch));
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        // the other workers may have improved the incumbent after the first one finished
+        searchers.get(0).adoptSharedIncumbent();
+    }
+
+    /**
+     * @return the worker which logs its search process, e.g. to be listened to
+     */
+    public DecomposedNeighborhoodSearch getFirstSearcher() {
+        return searchers.get(0);
+    }
+
+    public Solution getBestSolution() {
+        SharedSearchState.Incumbent incumbent = sharedState.getIncumbent();
+        return incumbent != null ? incumbent.solution : null;
+    }
+
+    public String searchProcessSummary() {
+        return searchers.get(0).searchProcessSummary();
+    }
+
+    public String resultSummary() {
+        return searchers.get(0).resultSummary();
+    }
+}
@@ -0,0 +1,80 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects statistics of the search process in memory. The events are expected from a single thread.
+ */
+public class SearchStatistics implements SearchListener {
+    private int shakes = 0;
+    private final int[] neighbors = new int[Outcome.values().length];
+    private int evaluations = 0;
+    private long evaluationNanos = 0;
+    private long maxEvaluationNanos = 0;
+    private int refinementSteps = 0;
+    private long refinementNanos = 0;
+    // elapsed millis and objective of each improvement of the incumbent
+    private final List<Long> incumbentMillis = new ArrayList<>();
+    private final List<Double> incumbentObjectives = new ArrayList<>();
+
+    @Override
+    public void shakeStarted(ShakeStarted event) {
+        shakes++;
+    }
+
+    @Override
+    public void neighborEvaluated(NeighborEvaluated event) {
+        neighbors[event.outcome().ordinal()]++;
+        if (event.evaluationNanos() > 0) {
+            evaluations++;
+            evaluationNanos += event.evaluationNanos();
+            maxEvaluationNanos = Math.max(maxEvaluationNanos, event.evaluationNanos());
+        }
+    }
+
+    @Override
+    public void refinementStep(RefinementStep event) {
+        refinementSteps++;
+        refinementNanos += event.evaluationNanos();
+    }
+
+    @Override
+    public void incumbentImproved(IncumbentImproved event) {
+        incumbentMillis.add(event.elapsedMillis());
+        incumbentObjectives.add(event.solution().getObjAll());
+    }
+
+    public int getShakes() {
+        return shakes;
+    }
+
+    public int getNeighbors(Outcome outcome) {
+        return neighbors[outcome.ordinal()];
+    }
+
+    /**
+     * @return the mean time the search waited for a neighbor evaluation in milliseconds, NaN if none was solved
+     */
+    public double getMeanEvaluationMillis() {
+        return evaluations == 0 ? Double.NaN : evaluationNanos / 1e6 / evaluations;
+    }
+
+    public int getIncumbentImprovements() {
+        return incumbentObjectives.size();
+    }
+
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Search Statistics: shakes = %d, neighbors = %d best, %d improved, %d worse, %d dominated, %d infeasible%n",
+                shakes, getNeighbors(Outcome.BEST), getNeighbors(Outcome.IMPROVED), getNeighbors(Outcome.WORSE),
+                getNeighbors(Outcome.DOMINATED), getNeighbors(Outcome.INFEASIBLE)));
+        summary.append(String.format("Evaluation Time: solved = %d, mean = %.2f ms, max = %.2f ms; refinement steps = %d, mean = %.2f ms%n",
+                evaluations, getMeanEvaluationMillis(), maxEvaluationNanos / 1e6,
+                refinementSteps, refinementSteps == 0 ? Double.NaN : refinementNanos / 1e6 / refinementSteps));
+        summary.append("Incumbent Trace:");
+        for (int i = 0; i < incumbentObjectives.size(); i++)
+            summary.append(String.format(" %.2fs=%.4f", incumbentMillis.get(i) / 1000., incumbentObjectives.get(i)));
+        return summary.append("\n").toString();
+    }
+}
@@ -0,0 +1,97 @@
+package solver;
+
+import entity.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The state shared by the searchers of a {@link SearchPortfolio}: the global incumbent and the tabu priorities of the
+ * shakes. Both are updated without locks, so that a searcher never waits for another one.
+ */
+public class SharedSearchState {
+    private static final double PRECISION = 1e-8;
+
+    public static class Incumbent {
+        public final Map<VesselPeriod, Set<Subblock>> assignment;
+        public final Solution solution;
+        public final int worker;
+
+        private Incumbent(Map<VesselPeriod, Set<Subblock>> assignment, Solution solution, int worker) {
+            this.assignment = assignment;
+            this.solution = solution;
+            this.worker = worker;
+        }
+    }
+
+    private final int workers;
+    private final AtomicReference<Incumbent> incumbent = new AtomicReference<>();
+    private final AtomicInteger improvements = new AtomicInteger();
+
+    private final int maxTabuSize;
+    private final Set<List<VesselPeriod>> tabuPriorities = ConcurrentHashMap.newKeySet();
+    private final Queue<List<VesselPeriod>> tabuOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger tabuSize = new AtomicInteger();
+
+    public SharedSearchState(int workers, int maxTabuSize) {
+        this.workers = workers;
+        this.maxTabuSize = maxTabuSize;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Publish a solution found by a worker. The assignment must not be modified afterwards.
+     *
+     * @return whether the solution replaced the incumbent
+     */
+    public boolean offer(Map<VesselPeriod, Set<Subblock>> assignment, Solution solution, int worker) {
+        Incumbent candidate = new Incumbent(assignment, solution, worker);
+        while (true) {
+            Incumbent current = incumbent.get();
+            if (current != null && solution.getObjAll() >= current.solution.getObjAll() - PRECISION)
+                return false;
+            if (incumbent.compareAndSet(current, candidate)) {
+                improvements.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the incumbent, or {@code null} if no solution has been published
+     */
+    public Incumbent getIncumbent() {
+        return incumbent.get();
+    }
+
+    public int getImprovements() {
+        return improvements.get();
+    }
+
+    public boolean isTabu(List<VesselPeriod> priority) {
+        return tabuPriorities.contains(priority);
+    }
+
+    /**
+     * Add a priority to the tabu set, evicting the oldest ones beyond the maximal tabu size.
+     */
+    public void addTabu(List<VesselPeriod> priority) {
+        if (maxTabuSize <= 0 || !tabuPriorities.add(priority))
+            return;
+        tabuOrder.add(priority);
+        // each addition evicts at most one priority, so concurrent additions cannot evict each other's
+        if (tabuSize.incrementAndGet() > maxTabuSize) {
+            List<VesselPeriod> eldest = tabuOrder.poll();
+            if (eldest != null) {
+                tabuPriorities.remove(eldest);
+                tabuSize.decrementAndGet();
+            }
+        }
+    }
+}
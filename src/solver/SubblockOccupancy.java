@@ -0,0 +1,95 @@
+package solver;
+
+import entity.Instance;
+import entity.Subblock;
+import entity.SubblockMove;
+import entity.VesselPeriod;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The vessel periods holding each subblock in a subblock assignment, as a bitset over the vpIds per subblock.
+ * <p>
+ * Whether a vessel period can take a subblock, i.e. does not hold it yet and conflicts with none of its holders, is a
+ * single AND of the occupancy of the subblock with the {@link ConflictGraph} neighbors of the vessel period. The
+ * occupancy is updated in place as subblocks are assigned or moves are applied.
+ */
+public class SubblockOccupancy {
+    private final ConflictGraph graph;
+    private final int words;
+    private final long[] holders; // subblockId * words + word
+
+    public SubblockOccupancy(Instance instance, ConflictGraph graph) {
+        this.graph = graph;
+        this.words = graph.getWords();
+        this.holders = new long[instance.getNumSubblocks() * words];
+    }
+
+    public SubblockOccupancy(Instance instance, ConflictGraph graph,
+                             Map<VesselPeriod, ? extends Collection<Subblock>> assignment) {
+        this(instance, graph);
+        assignment.forEach((vp, subblocks) -> {
+            for (Subblock k : subblocks)
+                add(vp, k);
+        });
+    }
+
+    public SubblockOccupancy(SubblockOccupancy other) {
+        this.graph = other.graph;
+        this.words = other.words;
+        this.holders = other.holders.clone();
+    }
+
+    public boolean isHeldBy(VesselPeriod ip, Subblock k) {
+        return (holders[k.getId() * words + (ip.getVpId() >>> 6)] & (1L << ip.getVpId())) != 0;
+    }
+
+    public boolean isOccupied(Subblock k) {
+        int from = k.getId() * words;
+        for (int w = 0; w < words; w++)
+            if (holders[from + w] != 0)
+                return true;
+        return false;
+    }
+
+    /**
+     * @return whether no vessel period conflicting with ip holds the subblock
+     */
+    public boolean isCompatible(VesselPeriod ip, Subblock k) {
+        return !graph.conflictsWithAny(ip.getVpId(), holders, k.getId() * words);
+    }
+
+    /**
+     * @return whether ip can take the subblock in addition to its own ones
+     */
+    public boolean canTake(VesselPeriod ip, Subblock k) {
+        return !isHeldBy(ip, k) && isCompatible(ip, k);
+    }
+
+    public void add(VesselPeriod ip, Subblock k) {
+        holders[k.getId() * words + (ip.getVpId() >>> 6)] |= 1L << ip.getVpId();
+    }
+
+    public void remove(VesselPeriod ip, Subblock k) {
+        holders[k.getId() * words + (ip.getVpId() >>> 6)] &= ~(1L << ip.getVpId());
+    }
+
+    /**
+     * Apply a move generated from the assignment of this occupancy.
+     */
+    public void apply(SubblockMove move) {
+        if (!move.isSwap()) {
+            remove(move.vesselPeriod, move.oldSubblock);
+            add(move.vesselPeriod, move.newSubblock);
+            return;
+        }
+        // the holders of one subblock take the other; the ones holding both keep them
+        int a = move.oldSubblock.getId() * words;
+        int b = move.newSubblock.getId() * words;
+        long[] swapped = Arrays.copyOfRange(holders, a, a + words);
+        System.arraycopy(holders, b, holders, a, words);
+        System.arraycopy(swapped, 0, holders, b, words);
+    }
+}
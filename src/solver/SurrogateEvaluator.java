@@ -0,0 +1,168 @@
+package solver;
+
+import entity.*;
+
+import java.util.*;
+
+/**
+ * A CPLEX-free estimate of the objective of the neighbors of a base assignment, used to screen the neighbors before
+ * they are solved by the subproblem model.
+ * <p>
+ * The route cost of each vessel period is the cost of a greedy transportation plan, which sends the transshipment
+ * containers to its subblocks by increasing distance within the space capacity. The time cost is kept from the base
+ * solution, and the congestion cost is recomputed from the road flows of the base schedule, in which the operations of
+ * a replaced subblock are moved to its new subblock at the same time steps.
+ */
+public class SurrogateEvaluator {
+    private final Instance instance;
+    private final Map<VesselPeriod, Set<Subblock>> base;
+
+    private final Map<VesselPeriod, Double> routeCosts = new HashMap<>();
+    private double routeCost = 0;
+    private final double timeCost;
+
+    // operation times of the base schedule: ip -> k -> t for loading, ip -> k -> jq -> t for unloading
+    private final Map<VesselPeriod, Map<Subblock, Integer>> loadTimes = new HashMap<>();
+    private final Map<VesselPeriod, Map<Subblock, Map<VesselPeriod, Integer>>> unloadTimes = new HashMap<>();
+    private final int[][] loadFlows, unloadFlows; // road -> t
+
+    /**
+     * @param base         the assignment the evaluated moves are generated from
+     * @param baseSolution the solution of the base assignment
+     */
+    public SurrogateEvaluator(Instance instance, Map<VesselPeriod, Set<Subblock>> base, Solution baseSolution) {
+        this.instance = instance;
+        this.base = base;
+        this.timeCost = baseSolution.getObjTime();
+
+        for (Map.Entry<VesselPeriod, Set<Subblock>> entry : base.entrySet()) {
+            double cost = routeCost(entry.getKey(), entry.getValue());
+            routeCosts.put(entry.getKey(), cost);
+            routeCost += cost;
+        }
+
+        loadFlows = new int[instance.roads][instance.horizon];
+        unloadFlows = new int[instance.roads][instance.horizon];
+        baseSolution.forEachLoadSchedule((ip, k, schedule) -> {
+            loadTimes.computeIfAbsent(ip, key -> new HashMap<>()).put(k, schedule.time);
+            for (int l : instance.getRouteFromSubblock(ip, k))
+                loadFlows[l][schedule.time]++;
+        });
+        baseSolution.forEachUnloadSchedule((ip, k, jq, schedule) -> {
+            unloadTimes.computeIfAbsent(ip, key -> new HashMap<>())
+                    .computeIfAbsent(k, key -> new HashMap<>()).put(jq, schedule.time);
+            for (int l : instance.getRouteToSubblock(jq, k))
+                unloadFlows[l][schedule.time]++;
+        });
+    }
+
+    /**
+     * @return the estimated objective of the neighbor, or {@link Double#POSITIVE_INFINITY} if the subblocks of a
+     * vessel period cannot store its transshipment containers.
+     */
+    public double evaluate(SubblockMove move) {
+        Map<VesselPeriod, SubblockChange> changes = move.getChanges(base);
+
+        double route = routeCost;
+        for (Map.Entry<VesselPeriod, SubblockChange> entry : changes.entrySet()) {
+            VesselPeriod ip = entry.getKey();
+            Set<Subblock> subblocks = new HashSet<>(base.get(ip));
+            subblocks.remove(entry.getValue().oldSubblock);
+            subblocks.add(entry.getValue().newSubblock);
+            route += routeCost(ip, subblocks) - routeCosts.get(ip);
+        }
+
+        changes.forEach((ip, change) -> moveOperations(ip, change.oldSubblock, change.newSubblock));
+        double congestion = instance.etaCongestion * (overload(loadFlows, instance.maxLoadFlows)
+                + overload(unloadFlows, instance.maxUnloadFlows));
+        changes.forEach((ip, change) -> moveOperations(ip, change.newSubblock, change.oldSubblock));
+
+        return route + timeCost + congestion;
+    }
+
+    private void moveOperations(VesselPeriod ip, Subblock from, Subblock to) {
+        Integer loadTime = loadTimes.getOrDefault(ip, Collections.emptyMap()).get(from);
+        if (loadTime != null) {
+            for (int l : instance.getRouteFromSubblock(ip, from))
+                loadFlows[l][loadTime]--;
+            for (int l : instance.getRouteFromSubblock(ip, to))
+                loadFlows[l][loadTime]++;
+        }
+        Map<VesselPeriod, Integer> times = unloadTimes.getOrDefault(ip, Collections.emptyMap()).get(from);
+        if (times != null)
+            times.forEach((jq, t) -> {
+                for (int l : instance.getRouteToSubblock(jq, from))
+                    unloadFlows[l][t]--;
+                for (int l : instance.getRouteToSubblock(jq, to))
+                    unloadFlows[l][t]++;
+            });
+    }
+
+    private static int overload(int[][] flows, int expectedFlow) {
+        int overload = 0;
+        for (int[] roadFlows : flows)
+            for (int f : roadFlows)
+                overload = Math.max(overload, f - expectedFlow);
+        return overload;
+    }
+
+    /**
+     * The route cost of a greedy transportation plan from the source vessel periods of ip to the given subblocks.
+     */
+    private double routeCost(VesselPeriod ip, Collection<Subblock> subblocks) {
+        return greedyTransportation(instance, ip, new ArrayList<>(subblocks), null);
+    }
+
+    /**
+     * Send the transshipment containers of the source vessel periods of ip to its subblocks by increasing distance,
+     * within the space capacity.
+     *
+     * @param ks   the subblocks of ip
+     * @param plan the containers sent from each source (in the order of {@link Instance#getSourceVesselPeriodsOf}) to
+     *             each subblock, filled if not null
+     * @return the route cost of the plan, or {@link Double#POSITIVE_INFINITY} if the subblocks cannot store the
+     * containers, in which case the plan is left empty
+     */
+    static double greedyTransportation(Instance instance, VesselPeriod ip, List<Subblock> ks, int[][] plan) {
+        List<VesselPeriod> sources = instance.getSourceVesselPeriodsOf(ip);
+
+        int[] supply = new int[sources.size()];
+        int totalSupply = 0;
+        for (int s = 0; s < sources.size(); s++) {
+            supply[s] = instance.getTransshipmentTo(sources.get(s), ip);
+            totalSupply += supply[s];
+        }
+        if (totalSupply > ks.size() * instance.spaceCapacity)
+            return Double.POSITIVE_INFINITY;
+
+        int[] space = new int[ks.size()];
+        Arrays.fill(space, instance.spaceCapacity);
+
+        // (source, subblock) pairs by increasing distance
+        double[] distances = new double[sources.size() * ks.size()];
+        Integer[] pairs = new Integer[distances.length];
+        for (int s = 0; s < sources.size(); s++)
+            for (int k = 0; k < ks.size(); k++) {
+                int pair = s * ks.size() + k;
+                pairs[pair] = pair;
+                distances[pair] = instance.getDistanceToSubblock(sources.get(s), ks.get(k))
+                        + instance.getDistanceFromSubblock(ip, ks.get(k));
+            }
+        Arrays.sort(pairs, Comparator.comparingDouble(pair -> distances[pair]));
+
+        double cost = 0;
+        for (int pair : pairs) {
+            int s = pair / ks.size();
+            int k = pair % ks.size();
+            int n = Math.min(supply[s], space[k]);
+            if (n > 0) {
+                supply[s] -= n;
+                space[k] -= n;
+                cost += n * distances[pair] * instance.etaRoute;
+                if (plan != null)
+                    plan[s][k] = n;
+            }
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,123 @@
+package solver;
+
+import entity.CostMatrix;
+import entity.Instance;
+import entity.Subblock;
+import entity.VesselPeriod;
+import main.InstanceGenerator;
+
+import java.util.*;
+
+/**
+ * The estimated cost deltas of the batch swaps of all subblock pairs, as a dense {@code double[K * K]} indexed by
+ * {@code oldSubblockId * K + newSubblockId}.
+ * <p>
+ * With {@code S[a][b]} the cost of the holders of subblock a on subblock b, the delta of swapping a and b is
+ * {@code S[a][b] + S[b][a] - S[a][a] - S[b][b]}. S is accumulated from contiguous rows of the cost matrix, one
+ * holder at a time, and the deltas are computed in square blocks so that the transposed reads of S stay in cache.
+ * Only the rows of the occupied subblocks are filled, since a swap from a free subblock is no neighbor.
+ */
+class SwapDeltaMatrix {
+    private static final int BLOCK = 64;
+
+    static double[] compute(CostMatrix costs, int numSubblocks, Map<Subblock, Set<VesselPeriod>> holders) {
+        int n = numSubblocks;
+        boolean[] occupied = new boolean[n];
+        double[] held = new double[n * n]; // S
+        holders.forEach((k, vps) -> {
+            occupied[k.getId()] = true;
+            for (VesselPeriod vp : vps)
+                costs.addRowTo(vp, held, k.getId() * n);
+        });
+        double[] diagonal = new double[n];
+        for (int k = 0; k < n; k++)
+            diagonal[k] = held[k * n + k];
+
+        double[] deltas = new double[n * n];
+        for (int a0 = 0; a0 < n; a0 += BLOCK)
+            for (int b0 = 0; b0 < n; b0 += BLOCK)
+                for (int a = a0, aEnd = Math.min(a0 + BLOCK, n); a < aEnd; a++) {
+                    if (!occupied[a])
+                        continue;
+                    for (int b = b0, bEnd = Math.min(b0 + BLOCK, n); b < bEnd; b++)
+                        deltas[a * n + b] = held[a * n + b] + held[b * n + a] - diagonal[a] - diagonal[b];
+                }
+        return deltas;
+    }
+
+    /**
+     * The loop of {@code addBatchSwaNeighbors} before the delta matrix, kept for the benchmark.
+     */
+    private static int countByLookups(Instance instance, CostMatrix costs, Map<Subblock, Set<VesselPeriod>> holders,
+                                      double precision) {
+        List<Subblock> subblocks = instance.getSubblocks();
+        int candidates = 0;
+        for (Map.Entry<Subblock, Set<VesselPeriod>> entry : holders.entrySet()) {
+            Subblock oldK = entry.getKey();
+            Set<VesselPeriod> vpOfOldK = entry.getValue();
+            double oldCost = 0;
+            for (VesselPeriod vp : vpOfOldK)
+                oldCost += costs.get(vp, oldK);
+            for (Subblock newK : subblocks)
+                if (!oldK.equals(newK)) {
+                    Set<VesselPeriod> vpOfNewK = holders.getOrDefault(newK, Collections.emptySet());
+                    double delta = -oldCost;
+                    for (VesselPeriod ip : vpOfNewK)
+                        delta -= costs.get(ip, newK);
+                    for (VesselPeriod ip : vpOfOldK)
+                        delta += costs.get(ip, newK);
+                    for (VesselPeriod vp : vpOfNewK)
+                        delta += costs.get(vp, oldK);
+                    if (delta < -precision)
+                        candidates++;
+                }
+        }
+        return candidates;
+    }
+
+    private static int countByMatrix(Instance instance, CostMatrix costs, Map<Subblock, Set<VesselPeriod>> holders,
+                                     double precision) {
+        int n = instance.getNumSubblocks();
+        double[] deltas = compute(costs, n, holders);
+        int candidates = 0;
+        for (Subblock oldK : holders.keySet())
+            for (int b = 0; b < n; b++)
+                if (b != oldK.getId() && deltas[oldK.getId() * n + b] < -precision)
+                    candidates++;
+        return candidates;
+    }
+
+    public static void main(String[] args) {
+        int repeats = 200;
+        System.out.printf("%10s %10s %12s %12s %8s%n", "subblocks", "holders", "lookups ms", "matrix ms", "same");
+        for (int cols : new int[]{6, 10, 16}) {
+            Instance instance = InstanceGenerator.generate(12, 3, 3, 6, cols, 1);
+            MasterYardTemplateHeuristic heuristic = new MasterYardTemplateHeuristic(instance);
+            CostMatrix costs = heuristic.getDistanceCostsByEqualStorage();
+            Map<VesselPeriod, Set<Subblock>> assignment = heuristic.assignNeededSubblocksByCost(
+                    heuristic.getFirstCommeFirstServedPriority(), costs);
+            if (assignment == null) {
+                System.out.printf("%10d no assignment%n", instance.getNumSubblocks());
+                continue;
+            }
+            Map<Subblock, Set<VesselPeriod>> holders = new HashMap<>();
+            assignment.forEach((vp, subblocks) -> subblocks.forEach(k ->
+                    holders.computeIfAbsent(k, key -> new HashSet<>()).add(vp)));
+
+            long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+            int[] candidates = new int[2];
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int r = 0; r < repeats; r++)
+                    candidates[0] = countByLookups(instance, costs, holders, 1e-6);
+                best[0] = Math.min(best[0], System.nanoTime() - start);
+                start = System.nanoTime();
+                for (int r = 0; r < repeats; r++)
+                    candidates[1] = countByMatrix(instance, costs, holders, 1e-6);
+                best[1] = Math.min(best[1], System.nanoTime() - start);
+            }
+            System.out.printf("%10d %10d %12.3f %12.3f %8s%n", instance.getNumSubblocks(), holders.size(),
+                    best[0] / 1e6 / repeats, best[1] / 1e6 / repeats, candidates[0] == candidates[1]);
+        }
+    }
+}
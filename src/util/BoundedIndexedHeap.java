@@ -0,0 +1,175 @@
+package util;
+
+import java.util.*;
+
+/**
+ * Keeps the {@code capacity} entries of smallest priority among the ones put, with {@code long} keys (e.g. encoded
+ * moves or fingerprints) and {@code double} priorities in parallel arrays.
+ * <p>
+ * The entries form a max-heap, so the worst one is evicted in O(log k), and an index from key to heap position makes
+ * putting an existing key an O(log k) update instead of the linear scan of {@link CapacityLimitedMapPriorityQueue}.
+ * Like there, putting an existing key replaces its priority, and a key once evicted is new again.
+ */
+public class BoundedIndexedHeap {
+    private final int capacity;
+    private final long[] keys;
+    private final double[] priorities;
+    private final LongIntHashMap positions;
+    private int size;
+
+    public BoundedIndexedHeap(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.priorities = new double[capacity];
+        this.positions = new LongIntHashMap(capacity);
+    }
+
+    public void put(long key, double priority) {
+        int i = positions.get(key);
+        if (i != LongIntHashMap.MISSING) {
+            double previous = priorities[i];
+            priorities[i] = priority;
+            if (priority > previous)
+                siftUp(i);
+            else
+                siftDown(i);
+        } else if (size < capacity) {
+            keys[size] = key;
+            priorities[size] = priority;
+            positions.put(key, size);
+            siftUp(size++);
+        } else if (priority < priorities[0]) {
+            // the worst entry gives way, otherwise the new one is the worst and is dropped
+            positions.remove(keys[0]);
+            keys[0] = key;
+            priorities[0] = priority;
+            positions.put(key, 0);
+            siftDown(0);
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return positions.containsKey(key);
+    }
+
+    /**
+     * @return the priority of the key, or NaN if it is not kept
+     */
+    public double getPriority(long key) {
+        int i = positions.get(key);
+        return i == LongIntHashMap.MISSING ? Double.NaN : priorities[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        positions.clear();
+        size = 0;
+    }
+
+    /**
+     * @return a copy of the keys, in heap order, aligned with {@link #getPriorities()}
+     */
+    public long[] getKeys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    public double[] getPriorities() {
+        return Arrays.copyOf(priorities, size);
+    }
+
+    /**
+     * @return the keys from the smallest priority, sorted on a copy
+     */
+    public long[] getSortedKeys() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> priorities[i]));
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++)
+            sorted[i] = keys[order[i]];
+        return sorted;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (priorities[parent] >= priorities[i])
+                break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && priorities[child + 1] > priorities[child])
+                child++;
+            if (priorities[child] <= priorities[i])
+                break;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        double priority = priorities[i];
+        keys[i] = keys[j];
+        priorities[i] = priorities[j];
+        keys[j] = key;
+        priorities[j] = priority;
+        positions.put(keys[i], i);
+        positions.put(keys[j], j);
+    }
+
+    /**
+     * Compare with {@link CapacityLimitedMapPriorityQueue} on the same stream of puts, a fifth of which repeat a key.
+     */
+    public static void main(String[] args) {
+        int puts = 200_000;
+        int[] capacities = {500, 1000, 2000, 5000};
+        Random rand = new Random(0);
+        long[] streamKeys = new long[puts];
+        double[] streamPriorities = new double[puts];
+        for (int i = 0; i < puts; i++) {
+            streamKeys[i] = i > 0 && rand.nextInt(5) == 0 ? streamKeys[rand.nextInt(i)] : rand.nextLong();
+            streamPriorities[i] = rand.nextGaussian();
+        }
+
+        System.out.printf("%8s %14s %14s %8s%n", "capacity", "map queue ms", "indexed ms", "same");
+        for (int capacity : capacities) {
+            long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+            Set<Long> queueKeys = null;
+            Set<Long> heapKeys = null;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                CapacityLimitedMapPriorityQueue<Long, Double> queue = new CapacityLimitedMapPriorityQueue<>(capacity);
+                for (int i = 0; i < puts; i++)
+                    queue.put(streamKeys[i], streamPriorities[i]);
+                List<Long> sortedQueueKeys = queue.getSortedKeys();
+                best[0] = Math.min(best[0], System.nanoTime() - start);
+
+                start = System.nanoTime();
+                BoundedIndexedHeap heap = new BoundedIndexedHeap(capacity);
+                for (int i = 0; i < puts; i++)
+                    heap.put(streamKeys[i], streamPriorities[i]);
+                long[] sortedHeapKeys = heap.getSortedKeys();
+                best[1] = Math.min(best[1], System.nanoTime() - start);
+
+                queueKeys = new HashSet<>(sortedQueueKeys);
+                heapKeys = new HashSet<>();
+                for (long key : sortedHeapKeys)
+                    heapKeys.add(key);
+            }
+            System.out.printf("%8d %14.2f %14.2f %8s%n", capacity, best[0] / 1e6, best[1] / 1e6,
+                    queueKeys.equals(heapKeys));
+        }
+    }
+}
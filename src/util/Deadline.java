@@ -0,0 +1,94 @@
+package util;
+
+/**
+ * The wall-clock deadline of a search, measured with {@link System#nanoTime()}, from which the time limits of the
+ * solver calls are derived in fractions of a second.
+ */
+public final class Deadline {
+    /**
+     * The time limit of a solver call without deadline (the default time limit of CPLEX).
+     */
+    public static final double UNLIMITED_SECONDS = 1e75;
+
+    private final long start;
+    private final long end;
+    private final boolean limited;
+
+    private Deadline(long start, long end, boolean limited) {
+        this.start = start;
+        this.end = end;
+        this.limited = limited;
+    }
+
+    public static Deadline unlimited() {
+        return new Deadline(System.nanoTime(), Long.MAX_VALUE, false);
+    }
+
+    public static Deadline after(double seconds) {
+        long now = System.nanoTime();
+        return new Deadline(now, now + (long) (seconds * 1e9), true);
+    }
+
+    /**
+     * @param seconds the time limit, or {@code null} for no limit
+     */
+    public static Deadline of(Integer seconds) {
+        return of(seconds, 0);
+    }
+
+    /**
+     * The deadline of a run which started some time ago, e.g. a resumed search.
+     *
+     * @param seconds       the time limit of the whole run, or {@code null} for no limit
+     * @param elapsedMillis the time already spent by the run
+     */
+    public static Deadline of(Integer seconds, long elapsedMillis) {
+        long start = System.nanoTime() - elapsedMillis * 1_000_000L;
+        return seconds == null ? new Deadline(start, Long.MAX_VALUE, false)
+                : new Deadline(start, start + seconds * 1_000_000_000L, true);
+    }
+
+    public boolean isLimited() {
+        return limited;
+    }
+
+    public boolean isExpired() {
+        return limited && System.nanoTime() - end >= 0;
+    }
+
+    public long elapsedMillis() {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    public double elapsedSeconds() {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * @return the remaining seconds, at least 0, or {@link #UNLIMITED_SECONDS} if unlimited
+     */
+    public double remainingSeconds() {
+        return limited ? Math.max((end - System.nanoTime()) / 1e9, 0) : UNLIMITED_SECONDS;
+    }
+
+    /**
+     * @param cap the time limit of a single call in seconds, or a non-positive value for no cap
+     * @return the deadline of a solver call started now, i.e. this deadline or the cap from now if earlier
+     */
+    public Deadline limitedTo(double cap) {
+        if (cap <= 0)
+            return this;
+        long now = System.nanoTime();
+        long capped = now + (long) (cap * 1e9);
+        return limited && end - capped <= 0 ? this : new Deadline(now, capped, true);
+    }
+
+    /**
+     * @param cap the time limit of a single call in seconds, or a non-positive value for no cap
+     * @return the time limit of a solver call started now, 0 if the deadline has passed
+     */
+    public double timeLimit(double cap) {
+        double remaining = remainingSeconds();
+        return cap > 0 ? Math.min(remaining, cap) : remaining;
+    }
+}
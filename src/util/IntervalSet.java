@@ -134,6 +134,23 @@ public class IntervalSet implements Iterable<Integer> {
         return result;
     }
 
+    public int size() {
+        int size = 0;
+        for (int[] interval : intervals)
+            size += interval[1] - interval[0] + 1;
+        return size;
+    }
+
+    // The values in the iteration order, e.g. to index them by position
+    public int[] toArray() {
+        int[] values = new int[size()];
+        int i = 0;
+        for (int[] interval : intervals)
+            for (int value = interval[0]; value <= interval[1]; value++)
+                values[i++] = value;
+        return values;
+    }
+
     // New of method
     public static IntervalSet of(int... values) {
         IntervalSet intervalSet = new IntervalSet();
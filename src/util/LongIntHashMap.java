@@ -0,0 +1,115 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from {@code long} to {@code int} with linear probing, without boxing.
+ * <p>
+ * The table is kept at most half full and grows by doubling. Removal shifts the following entries of the probe
+ * sequence back instead of leaving tombstones.
+ */
+public class LongIntHashMap {
+    public static final int MISSING = -1;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @return the value of the key, or {@link #MISSING}
+     */
+    public int get(long key) {
+        for (int i = slot(key); used[i]; i = (i + 1) & mask)
+            if (keys[i] == key)
+                return values[i];
+        return MISSING;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * @return the previous value of the key, or {@link #MISSING}
+     */
+    public int put(long key, int value) {
+        int i = slot(key);
+        for (; used[i]; i = (i + 1) & mask)
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length)
+            rehash();
+        return MISSING;
+    }
+
+    /**
+     * @return the removed value, or {@link #MISSING}
+     */
+    public int remove(long key) {
+        int i = slot(key);
+        for (; used[i]; i = (i + 1) & mask)
+            if (keys[i] == key)
+                break;
+        if (!used[i])
+            return MISSING;
+        int removed = values[i];
+        // shift back the entries whose probe sequence passes the freed slot
+        int free = i;
+        for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        used[free] = false;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldUsed[i])
+                put(oldKeys[i], oldValues[i]);
+    }
+}
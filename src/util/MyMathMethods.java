@@ -1,5 +1,8 @@
 package util;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 public class MyMathMethods {
 
     public static int greatestCommonDivisor(int a, int b) {
@@ -26,4 +29,44 @@ public class MyMathMethods {
     public static int ceilDiv(int s, int d) {
         return Math.floorDiv(s + d - 1, d);
     }
+
+    /**
+     * Spearman's rank correlation of the first n values of x and y. Tied values get their average rank.
+     *
+     * @return the correlation in [-1, 1], or NaN if all the values of x or y are tied
+     */
+    public static double rankCorrelation(double[] x, double[] y, int n) {
+        if (n > x.length || n > y.length)
+            throw new IllegalArgumentException("Not enough values: " + n);
+        double[] rx = ranks(x, n);
+        double[] ry = ranks(y, n);
+
+        double mean = (n + 1) / 2.;
+        double cov = 0, varX = 0, varY = 0;
+        for (int i = 0; i < n; i++) {
+            cov += (rx[i] - mean) * (ry[i] - mean);
+            varX += (rx[i] - mean) * (rx[i] - mean);
+            varY += (ry[i] - mean) * (ry[i] - mean);
+        }
+        return cov / Math.sqrt(varX * varY);
+    }
+
+    private static double[] ranks(double[] values, int n) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+
+        double[] ranks = new double[n];
+        for (int i = 0; i < n; ) {
+            int j = i;
+            while (j + 1 < n && values[order[j + 1]] == values[order[i]])
+                j++;
+            double rank = (i + j) / 2. + 1;
+            for (int r = i; r <= j; r++)
+                ranks[order[r]] = rank;
+            i = j + 1;
+        }
+        return ranks;
+    }
 }
@@ -0,0 +1,295 @@
+package util;
+
+import java.util.*;
+
+/**
+ * The nonzeros of a sparse matrix as (row, column, value) triplets in growable {@code int[]}/{@code double[]} buffers,
+ * e.g. for {@code IloLPMatrix.setNZs}, or compressed to CSR for {@code IloLPMatrix.addRows}.
+ * <p>
+ * A merging builder sums the values of a repeated (row, column) on add, through an open-addressing map from the
+ * position key to the triplet index. An appending builder skips the map and leaves the repeated positions to
+ * {@link #compressToCsr(int)}, which sorts the triplets by row and column in place and merges the adjacent repeats.
+ */
+public class TripletBuilder {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private int[] rows;
+    private int[] cols;
+    private double[] values;
+    private int size;
+    private final LongIntHashMap index;
+
+    private TripletBuilder(int expectedSize, boolean merging) {
+        int capacity = Math.max(expectedSize, 16);
+        this.rows = new int[capacity];
+        this.cols = new int[capacity];
+        this.values = new double[capacity];
+        this.index = merging ? new LongIntHashMap(expectedSize) : null;
+    }
+
+    public static TripletBuilder merging(int expectedSize) {
+        return new TripletBuilder(expectedSize, true);
+    }
+
+    public static TripletBuilder appending(int expectedSize) {
+        return new TripletBuilder(expectedSize, false);
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    public void add(int row, int col, double value) {
+        if (index != null) {
+            int i = index.get(key(row, col));
+            if (i != LongIntHashMap.MISSING) {
+                values[i] += value;
+                return;
+            }
+            index.put(key(row, col), size);
+        }
+        if (size == rows.length) {
+            int capacity = size * 2;
+            rows = Arrays.copyOf(rows, capacity);
+            cols = Arrays.copyOf(cols, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        rows[size] = row;
+        cols[size] = col;
+        values[size++] = value;
+    }
+
+    /**
+     * Like {@link #add}, but a repeated position takes the value instead of summing it, e.g. for the coefficient
+     * changes of {@code IloLPMatrix.setNZs}, where the last change of a position wins.
+     */
+    public void set(int row, int col, double value) {
+        if (index == null)
+            throw new IllegalStateException("Only a merging builder can set a position");
+        int i = index.get(key(row, col));
+        if (i != LongIntHashMap.MISSING)
+            values[i] = value;
+        else
+            add(row, col, value);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+        if (index != null)
+            index.clear();
+    }
+
+    public int[] getRowIndices() {
+        return Arrays.copyOf(rows, size);
+    }
+
+    public int[] getColIndices() {
+        return Arrays.copyOf(cols, size);
+    }
+
+    public double[] getValues() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return the column indices of the triplets from (inclusive) to (exclusive), e.g. of a row after compression
+     */
+    public int[] getColIndices(int from, int to) {
+        return Arrays.copyOfRange(cols, from, to);
+    }
+
+    public double[] getValues(int from, int to) {
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    /**
+     * Sort the triplets by row and column and merge the repeated positions, in place. The triplets of row r are then
+     * the ones from {@code rowStarts[r]} to {@code rowStarts[r + 1]}.
+     *
+     * @return the row starts, of length {@code numRows + 1}
+     */
+    public int[] compressToCsr(int numRows) {
+        // rows added in order only need their columns sorted
+        boolean rowsSorted = true;
+        for (int i = 1; i < size && rowsSorted; i++)
+            rowsSorted = rows[i - 1] <= rows[i];
+        if (rowsSorted) {
+            for (int from = 0, to; from < size; from = to) {
+                for (to = from + 1; to < size && rows[to] == rows[from]; to++) ;
+                sort(from, to);
+            }
+        } else {
+            sort(0, size);
+        }
+
+        int merged = 0;
+        for (int i = 0; i < size; i++) {
+            if (merged > 0 && rows[merged - 1] == rows[i] && cols[merged - 1] == cols[i]) {
+                values[merged - 1] += values[i];
+                continue;
+            }
+            rows[merged] = rows[i];
+            cols[merged] = cols[i];
+            values[merged++] = values[i];
+        }
+        size = merged;
+        if (index != null) {
+            index.clear();
+            for (int i = 0; i < size; i++)
+                index.put(key(rows[i], cols[i]), i);
+        }
+
+        int[] rowStarts = new int[numRows + 1];
+        for (int i = 0; i < size; i++) {
+            if (rows[i] < 0 || rows[i] >= numRows)
+                throw new IllegalArgumentException("Row out of range: " + rows[i]);
+            rowStarts[rows[i] + 1]++;
+        }
+        for (int r = 0; r < numRows; r++)
+            rowStarts[r + 1] += rowStarts[r];
+        return rowStarts;
+    }
+
+    private int compare(int i, int j) {
+        return rows[i] != rows[j] ? Integer.compare(rows[i], rows[j]) : Integer.compare(cols[i], cols[j]);
+    }
+
+    /**
+     * Quicksort of [from, to) by row and column, recursing into the smaller part only.
+     */
+    private void sort(int from, int to) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            int mid = (from + to) >>> 1;
+            // median of three as the pivot, moved to the end
+            if (compare(mid, from) < 0) swap(mid, from);
+            if (compare(to - 1, from) < 0) swap(to - 1, from);
+            if (compare(mid, to - 1) < 0) swap(mid, to - 1);
+            int pivot = to - 1;
+            int store = from;
+            for (int i = from; i < pivot; i++)
+                if (compare(i, pivot) < 0)
+                    swap(i, store++);
+            swap(store, pivot);
+            if (store - from < to - store - 1) {
+                sort(from, store);
+                from = store + 1;
+            } else {
+                sort(store + 1, to);
+                to = store;
+            }
+        }
+        for (int i = from + 1; i < to; i++)
+            for (int j = i; j > from && compare(j, j - 1) < 0; j--)
+                swap(j, j - 1);
+    }
+
+    private void swap(int i, int j) {
+        int row = rows[i];
+        int col = cols[i];
+        double value = values[i];
+        rows[i] = rows[j];
+        cols[i] = cols[j];
+        values[i] = values[j];
+        rows[j] = row;
+        cols[j] = col;
+        values[j] = value;
+    }
+
+    /**
+     * The {@code TripletPool} of {@code IndexFormulationCplex} before this builder, kept for the benchmark.
+     */
+    private static class BoxedTripletPool {
+        private final List<Integer> rows = new ArrayList<>();
+        private final List<Integer> cols = new ArrayList<>();
+        private final List<Double> values = new ArrayList<>();
+        private final Map<Long, Integer> indexMap = new HashMap<>();
+
+        void add(int row, int col, double val) {
+            long key = ((long) row << 32) | (col & 0xFFFFFFFFL);
+            Integer index = indexMap.get(key);
+            if (index != null) {
+                values.set(index, values.get(index) + val);
+            } else {
+                indexMap.put(key, rows.size());
+                rows.add(row);
+                cols.add(col);
+                values.add(val);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Compare with the boxed triplet pool on the same stream of adds, a fifth of which repeat a position: the build
+     * time, and the heap held by the filled structure.
+     */
+    public static void main(String[] args) {
+        int[] sizes = {100_000, 1_000_000, 3_000_000};
+        System.out.printf("%10s %12s %12s %12s %12s %12s %8s%n", "adds", "boxed ms", "merging ms", "appending ms",
+                "boxed MB", "merging MB", "same");
+        for (int adds : sizes) {
+            Random rand = new Random(0);
+            int[] addRows = new int[adds];
+            int[] addCols = new int[adds];
+            for (int i = 0; i < adds; i++) {
+                if (i > 0 && rand.nextInt(5) == 0) {
+                    int j = rand.nextInt(i);
+                    addRows[i] = addRows[j];
+                    addCols[i] = addCols[j];
+                } else {
+                    addRows[i] = rand.nextInt(adds / 10);
+                    addCols[i] = rand.nextInt(adds);
+                }
+            }
+
+            long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+            long[] heap = new long[2];
+            int[] nonZeros = new int[3];
+            for (int round = 0; round < 3; round++) {
+                long before = usedHeap();
+                long start = System.nanoTime();
+                BoxedTripletPool pool = new BoxedTripletPool();
+                for (int i = 0; i < adds; i++)
+                    pool.add(addRows[i], addCols[i], 1);
+                int[] poolRows = pool.rows.stream().mapToInt(Integer::intValue).toArray();
+                best[0] = Math.min(best[0], System.nanoTime() - start);
+                heap[0] = usedHeap() - before;
+                // still referenced here, so that it is measured
+                nonZeros[0] = pool.indexMap.size() == poolRows.length ? poolRows.length : -1;
+                pool = null;
+
+                before = usedHeap();
+                start = System.nanoTime();
+                TripletBuilder merging = TripletBuilder.merging(16);
+                for (int i = 0; i < adds; i++)
+                    merging.add(addRows[i], addCols[i], 1);
+                int[] builderRows = merging.getRowIndices();
+                best[1] = Math.min(best[1], System.nanoTime() - start);
+                heap[1] = usedHeap() - before;
+                nonZeros[1] = merging.size() == builderRows.length ? builderRows.length : -1;
+                merging = null;
+
+                start = System.nanoTime();
+                TripletBuilder appending = TripletBuilder.appending(16);
+                for (int i = 0; i < adds; i++)
+                    appending.add(addRows[i], addCols[i], 1);
+                appending.compressToCsr(adds / 10);
+                best[2] = Math.min(best[2], System.nanoTime() - start);
+                nonZeros[2] = appending.size();
+            }
+            System.out.printf("%10d %12.1f %12.1f %12.1f %12.1f %12.1f %8s%n", adds,
+                    best[0] / 1e6, best[1] / 1e6, best[2] / 1e6, heap[0] / 1e6, heap[1] / 1e6,
+                    nonZeros[0] == nonZeros[1] && nonZeros[1] == nonZeros[2]);
+        }
+    }
+}